@@ -0,0 +1,64 @@
+package com.outbrain.ob1k.benchmarks;
+
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures processing many elements with a bounded parallelism.
+ *
+ * Only eager futures are measured, lazy continuations of large batches recurse deep enough to overflow the stack.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+
+  @Param({"10", "1000", "100000"})
+  public int size;
+
+  @Param({"10", "100"})
+  public int parallelism;
+
+  private List<Integer> elements;
+
+  @Setup
+  public void setup() {
+    elements = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      elements.add(i);
+    }
+  }
+
+  private static ComposableFuture<Integer> process(final Integer element) {
+    return ComposableFutures.fromValue(element);
+  }
+
+  @Benchmark
+  public List<Integer> batch() throws ExecutionException, InterruptedException {
+    return ComposableFutures.batch(elements, parallelism, BatchBenchmark::process).get();
+  }
+
+  @Benchmark
+  public List<Integer> batchUnordered() throws ExecutionException, InterruptedException {
+    return ComposableFutures.batchUnordered(elements, parallelism, BatchBenchmark::process).get();
+  }
+}
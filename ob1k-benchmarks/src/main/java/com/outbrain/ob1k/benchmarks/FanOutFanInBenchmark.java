@@ -0,0 +1,111 @@
+package com.outbrain.ob1k.benchmarks;
+
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import com.outbrain.ob1k.concurrent.eager.EagerComposableFuture;
+import com.outbrain.ob1k.concurrent.lazy.LazyComposableFuture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures fanning out to many futures and collecting them back into one.
+ *
+ * The pending variants complete the futures only after they were combined,
+ * which is the usual case of fanning out to remote calls. Promises are always eager,
+ * the lazy variant wraps them with lazy futures.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanOutFanInBenchmark {
+
+  @Param({"10", "1000", "100000"})
+  public int size;
+
+  @Param({"eager", "lazy"})
+  public String impl;
+
+  private List<Integer> elements;
+  private boolean lazy;
+
+  @Setup
+  public void setup() {
+    lazy = "lazy".equals(impl);
+    elements = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      elements.add(i);
+    }
+  }
+
+  private ComposableFuture<Integer> value(final Integer value) {
+    return lazy ? LazyComposableFuture.fromValue(value) : EagerComposableFuture.fromValue(value);
+  }
+
+  @Benchmark
+  public List<Integer> allCompleted() throws ExecutionException, InterruptedException {
+    final List<ComposableFuture<Integer>> futures = new ArrayList<>(size);
+    for (final Integer element : elements) {
+      futures.add(value(element));
+    }
+
+    return ComposableFutures.all(true, futures).get();
+  }
+
+  @Benchmark
+  public List<Integer> allPending() throws ExecutionException, InterruptedException {
+    final List<ComposablePromise<Integer>> promises = new ArrayList<>(size);
+    final List<ComposableFuture<Integer>> futures = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      final ComposablePromise<Integer> promise = ComposableFutures.newPromise();
+      promises.add(promise);
+      futures.add(lazy ? ComposableFutures.buildLazy(promise.future()::consume) : promise.future());
+    }
+
+    final ComposableFuture<List<Integer>> all = ComposableFutures.all(true, futures);
+    for (int i = 0; i < size; i++) {
+      promises.get(i).set(i);
+    }
+
+    return all.get();
+  }
+
+  @Benchmark
+  public Map<Integer, Integer> firstHalf() throws ExecutionException, InterruptedException {
+    final Map<Integer, ComposableFuture<Integer>> futures = new HashMap<>(size * 2);
+    for (final Integer element : elements) {
+      futures.put(element, value(element));
+    }
+
+    return ComposableFutures.first(futures, size / 2).get();
+  }
+
+  @Benchmark
+  public Integer any() throws ExecutionException, InterruptedException {
+    final List<ComposableFuture<Integer>> futures = new ArrayList<>(size);
+    for (final Integer element : elements) {
+      futures.add(value(element));
+    }
+
+    return ComposableFutures.any(futures).get();
+  }
+}
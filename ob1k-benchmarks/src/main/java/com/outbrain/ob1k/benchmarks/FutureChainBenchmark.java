@@ -0,0 +1,82 @@
+package com.outbrain.ob1k.benchmarks;
+
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.outbrain.ob1k.concurrent.ComposableFutures.fromValue;
+
+/**
+ * Measures the cost of {@code map}/{@code flatMap} chains of eager futures,
+ * both on already completed futures and on futures that complete after the chain was built.
+ *
+ * Run with {@code -prof gc} to get the allocated bytes per chain ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FutureChainBenchmark {
+
+  @Param({"1", "10"})
+  public int chainLength;
+
+  @Benchmark
+  public void mapCompleted(final Blackhole blackhole) {
+    ComposableFuture<Integer> future = fromValue(0);
+    for (int i = 0; i < chainLength; i++) {
+      future = future.map(value -> value + 1);
+    }
+
+    future.consume(blackhole::consume);
+  }
+
+  @Benchmark
+  public void flatMapCompleted(final Blackhole blackhole) {
+    ComposableFuture<Integer> future = fromValue(0);
+    for (int i = 0; i < chainLength; i++) {
+      future = future.flatMap(value -> fromValue(value + 1));
+    }
+
+    future.consume(blackhole::consume);
+  }
+
+  @Benchmark
+  public void mapPending(final Blackhole blackhole) {
+    final ComposablePromise<Integer> promise = ComposableFutures.newPromise(false);
+    ComposableFuture<Integer> future = promise.future();
+    for (int i = 0; i < chainLength; i++) {
+      future = future.map(value -> value + 1);
+    }
+
+    future.consume(blackhole::consume);
+    promise.set(0);
+  }
+
+  @Benchmark
+  public void flatMapPending(final Blackhole blackhole) {
+    final ComposablePromise<Integer> promise = ComposableFutures.newPromise(false);
+    ComposableFuture<Integer> future = promise.future();
+    for (int i = 0; i < chainLength; i++) {
+      future = future.flatMap(value -> fromValue(value + 1));
+    }
+
+    future.consume(blackhole::consume);
+    promise.set(0);
+  }
+}
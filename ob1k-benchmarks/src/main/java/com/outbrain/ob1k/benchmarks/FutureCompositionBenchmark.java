@@ -0,0 +1,110 @@
+package com.outbrain.ob1k.benchmarks;
+
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.Producer;
+import com.outbrain.ob1k.concurrent.Try;
+import com.outbrain.ob1k.concurrent.combiners.BiFunction;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import com.outbrain.ob1k.concurrent.eager.EagerComposableFuture;
+import com.outbrain.ob1k.concurrent.lazy.LazyComposableFuture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the creation and composition of eager versus lazy futures.
+ *
+ * Lazy futures only run when consumed, so every benchmark consumes its result.
+ * Promises are always eager, so the {@code promise} benchmark is the same for both.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FutureCompositionBenchmark {
+
+  private static final IllegalStateException ERROR = new IllegalStateException("benchmark error");
+
+  @Param({"eager", "lazy"})
+  public String impl;
+
+  private boolean lazy;
+
+  @Setup
+  public void setup() {
+    lazy = "lazy".equals(impl);
+  }
+
+  private <T> ComposableFuture<T> value(final T value) {
+    return lazy ? LazyComposableFuture.fromValue(value) : EagerComposableFuture.fromValue(value);
+  }
+
+  private <T> ComposableFuture<T> error() {
+    return lazy ? LazyComposableFuture.fromError(ERROR) : EagerComposableFuture.fromError(ERROR);
+  }
+
+  @Benchmark
+  public void fromValue(final Blackhole blackhole) {
+    value(1).consume(blackhole::consume);
+  }
+
+  @Benchmark
+  public void build(final Blackhole blackhole) {
+    final Producer<Integer> producer = consumer -> consumer.consume(Try.fromValue(1));
+    (lazy ? ComposableFutures.buildLazy(producer) : ComposableFutures.buildEager(producer)).consume(blackhole::consume);
+  }
+
+  @Benchmark
+  public void promise(final Blackhole blackhole) {
+    final ComposablePromise<Integer> promise = ComposableFutures.newPromise();
+    promise.future().consume(blackhole::consume);
+    promise.set(1);
+  }
+
+  @Benchmark
+  public void mapFlatMapChain(final Blackhole blackhole) {
+    value(1).
+      map(value -> value + 1).
+      flatMap(value -> value(value * 2)).
+      map(String::valueOf).
+      consume(blackhole::consume);
+  }
+
+  @Benchmark
+  public void recoverChain(final Blackhole blackhole) {
+    this.<Integer>error().
+      map(value -> value + 1).
+      recover(error -> 0).
+      flatMap(value -> this.<Integer>error()).
+      recoverWith(error -> value(1)).
+      consume(blackhole::consume);
+  }
+
+  @Benchmark
+  public void combine(final Blackhole blackhole) {
+    ComposableFutures.combine(value(1), value(2), (BiFunction<Integer, Integer, Integer>) (left, right) -> left + right).
+      consume(blackhole::consume);
+  }
+
+  @Benchmark
+  public void alwaysAndThen(final Blackhole blackhole) {
+    value(1).
+      andThen(blackhole::consume).
+      always(result -> result.isSuccess() ? result.getValue() : 0).
+      consume(blackhole::consume);
+  }
+}
@@ -0,0 +1,81 @@
+package com.outbrain.ob1k.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.outbrain.ob1k.cache.LocalAsyncCache;
+import com.outbrain.ob1k.cache.TypedCache;
+import com.outbrain.ob1k.cache.memcache.IdentityCacheKeyTranslator;
+import com.outbrain.ob1k.cache.memcache.folsom.JsonTranscoder;
+import com.outbrain.ob1k.cache.offheap.OffHeapTypedCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the on heap {@link LocalAsyncCache} with the {@link OffHeapTypedCache}.
+ *
+ * The caches are filled with {@code entries} JSON encoded values before the measurement,
+ * and are then read and written by random keys from several threads.
+ * Run with {@code -prof gc} to compare the allocation rates as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-XX:MaxDirectMemorySize=1g")
+@Threads(4)
+public class LocalCacheBenchmark {
+
+  @Param({"local", "offHeap"})
+  public String cacheType;
+
+  @Param({"100000", "1000000"})
+  public int entries;
+
+  private TypedCache<String, String> cache;
+  private String[] keys;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    cache = "offHeap".equals(cacheType) ?
+      OffHeapTypedCache.newBuilder(IdentityCacheKeyTranslator.getInstance(), new JsonTranscoder<>(new ObjectMapper(), String.class)).
+        withMaxMemory(512L * 1024 * 1024).
+        withTtl(1, TimeUnit.HOURS).
+        build() :
+      new LocalAsyncCache<>(entries, 1, TimeUnit.HOURS);
+
+    keys = new String[entries];
+    for (int i = 0; i < entries; i++) {
+      keys[i] = "key-" + i;
+      cache.setAsync(keys[i], "value-" + i).get();
+    }
+  }
+
+  private String randomKey() {
+    return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+  }
+
+  @Benchmark
+  public String get() throws Exception {
+    return cache.getAsync(randomKey()).get();
+  }
+
+  @Benchmark
+  public Boolean set() throws Exception {
+    final String key = randomKey();
+    return cache.setAsync(key, key).get();
+  }
+}
@@ -0,0 +1,56 @@
+package com.outbrain.ob1k.benchmarks;
+
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the bookkeeping of {@code retry}, {@code doubleDispatch} and {@code withTimeout} on the default scheduler,
+ * with actions that complete right away, so that only the combinators themselves are measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResilienceBenchmark {
+
+  private static final IllegalStateException ERROR = new IllegalStateException("benchmark error");
+
+  @Param({"0", "3"})
+  public int failedAttempts;
+
+  @Benchmark
+  public void retry(final Blackhole blackhole) {
+    ComposableFutures.retry(failedAttempts, attempt -> attempt < failedAttempts ?
+      ComposableFutures.<Integer>fromError(ERROR) :
+      ComposableFutures.fromValue(attempt)).consume(blackhole::consume);
+  }
+
+  @Benchmark
+  public void doubleDispatch(final Blackhole blackhole) {
+    ComposableFutures.doubleDispatch(1, TimeUnit.SECONDS, () -> ComposableFutures.fromValue(1)).consume(blackhole::consume);
+  }
+
+  @Benchmark
+  public void withTimeout(final Blackhole blackhole) {
+    final ComposablePromise<Integer> promise = ComposableFutures.newPromise(false);
+    final ComposableFuture<Integer> future = promise.future().withTimeout(1, TimeUnit.SECONDS);
+    future.consume(blackhole::consume);
+    promise.set(1);
+  }
+}
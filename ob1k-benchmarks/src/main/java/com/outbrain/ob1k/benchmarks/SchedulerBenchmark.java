@@ -0,0 +1,84 @@
+package com.outbrain.ob1k.benchmarks;
+
+import com.outbrain.ob1k.concurrent.CancellationToken;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.HashedWheelScheduler;
+import com.outbrain.ob1k.concurrent.PrefixBasedThreadFactory;
+import com.outbrain.ob1k.concurrent.Scheduler;
+import com.outbrain.ob1k.concurrent.ThreadPoolBasedScheduler;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the schedulers under many concurrent timeouts.
+ *
+ * Each operation guards a request with a timeout that is cancelled once the request completes,
+ * which is the common case of {@link ComposableFuture#withTimeout(Scheduler, long, TimeUnit)},
+ * while {@code liveTimeouts} timers that never complete are kept in the scheduler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class SchedulerBenchmark {
+
+  private static final Runnable NOOP = () -> {};
+
+  @Param({"threadPool", "hashedWheel"})
+  public String schedulerType;
+
+  @Param({"0", "100000"})
+  public int liveTimeouts;
+
+  private Scheduler scheduler;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    final PrefixBasedThreadFactory threadFactory = new PrefixBasedThreadFactory("benchmark-scheduler").withDaemonThreads();
+    scheduler = "hashedWheel".equals(schedulerType) ?
+      new HashedWheelScheduler(threadFactory, HashedWheelScheduler.DEFAULT_TICK_DURATION_MS, TimeUnit.MILLISECONDS) :
+      new ThreadPoolBasedScheduler(10, threadFactory);
+
+    for (int i = 0; i < liveTimeouts; i++) {
+      scheduler.schedule(NOOP, 1, TimeUnit.HOURS);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    scheduler.shutdown();
+  }
+
+  @Benchmark
+  public boolean scheduleAndCancel() {
+    final CancellationToken token = scheduler.schedule(NOOP, 1, TimeUnit.SECONDS);
+    return token.cancel(false);
+  }
+
+  @Benchmark
+  public ComposableFuture<String> withTimeout() {
+    final ComposablePromise<String> promise = ComposableFutures.newPromise(false);
+    final ComposableFuture<String> future = promise.future().withTimeout(scheduler, 1, TimeUnit.SECONDS);
+    promise.set("response");
+    return future;
+  }
+}
@@ -0,0 +1,77 @@
+package com.outbrain.ob1k.benchmarks;
+
+import com.outbrain.ob1k.concurrent.Try;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of {@link Try} compared to plain code doing the same work.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TryBenchmark {
+
+  private static final IllegalStateException ERROR = new IllegalStateException("benchmark error");
+
+  public int value = 42;
+
+  private int compute() {
+    if (value < 0) {
+      throw ERROR;
+    }
+
+    return value + 1;
+  }
+
+  @Benchmark
+  public int plainSuccess() {
+    try {
+      return compute() * 2;
+    } catch (final RuntimeException e) {
+      return 0;
+    }
+  }
+
+  @Benchmark
+  public int trySuccess() {
+    return Try.apply(this::compute).map(result -> result * 2).getOrElse(() -> 0);
+  }
+
+  @Benchmark
+  public Try<Integer> tryChain() {
+    return Try.apply(this::compute).
+      map(result -> result * 2).
+      flatMap(result -> Try.fromValue(result + 1)).
+      ensure(result -> result > 0).
+      recover(error -> 0);
+  }
+
+  @Benchmark
+  public int plainFailure() {
+    try {
+      throw ERROR;
+    } catch (final RuntimeException e) {
+      return 0;
+    }
+  }
+
+  @Benchmark
+  public Try<Integer> tryFailure() {
+    return Try.<Integer>fromError(ERROR).
+      map(result -> result * 2).
+      recover(IllegalStateException.class, error -> 0);
+  }
+}
@@ -0,0 +1,137 @@
+package com.outbrain.ob1k.benchmarks;
+
+import com.outbrain.ob1k.cache.CacheLoader;
+import com.outbrain.ob1k.cache.LocalAsyncCache;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a Zipfian trace of reads through a loading {@link LocalAsyncCache} of each engine.
+ *
+ * The cache holds {@code cacheSize} of the {@code keys} keys, and the misses are loaded right away,
+ * so the score is the cost of the cache itself. The loads run on the reading thread, which counts them,
+ * and {@code misses} divided by {@code requests} is the miss ratio of the eviction policy on the trace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class ZipfCacheBenchmark {
+
+  private static final int TRACE_SIZE = 1 << 20;
+  private static final ThreadLocal<Position> CURRENT = new ThreadLocal<>();
+
+  @Param({"GUAVA", "CAFFEINE"})
+  public LocalAsyncCache.Engine engine;
+
+  @Param({"0.8", "1.0"})
+  public double skew;
+
+  @Param({"1000000"})
+  public int keys;
+
+  @Param({"10000"})
+  public int cacheSize;
+
+  private LocalAsyncCache<Integer, Integer> cache;
+  private int[] trace;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    cache = LocalAsyncCache.<Integer, Integer>newBuilder(cacheSize).
+      expireAfterWrite(1, TimeUnit.HOURS).
+      withLoader(new CountingLoader()).
+      withEngine(engine).
+      build();
+    trace = zipfTrace(keys, skew, TRACE_SIZE, new Random(42));
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Position {
+    public long requests;
+    public long misses;
+    private int index = (int) Thread.currentThread().getId() * 7919;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      requests = 0;
+      misses = 0;
+      CURRENT.set(this);
+    }
+  }
+
+  @Benchmark
+  public Integer get(final Position position) throws Exception {
+    final int key = trace[position.index++ & (TRACE_SIZE - 1)];
+    position.requests++;
+    return cache.getAsync(key).get();
+  }
+
+  /**
+   * samples the trace by inverting the cumulative distribution of a Zipf distribution over the keys.
+   */
+  private static int[] zipfTrace(final int keys, final double skew, final int size, final Random random) {
+    final double[] cumulative = new double[keys];
+    double sum = 0;
+    for (int i = 0; i < keys; i++) {
+      sum += 1 / Math.pow(i + 1, skew);
+      cumulative[i] = sum;
+    }
+
+    final int[] trace = new int[size];
+    for (int i = 0; i < size; i++) {
+      final double point = random.nextDouble() * sum;
+      int index = Arrays.binarySearch(cumulative, point);
+      if (index < 0) {
+        index = -index - 1;
+      }
+      // spreads the popular keys over the hash space
+      trace[i] = Integer.reverse(Math.min(index, keys - 1));
+    }
+
+    return trace;
+  }
+
+  private static class CountingLoader implements CacheLoader<Integer, Integer> {
+    @Override
+    public ComposableFuture<Integer> load(final String cacheName, final Integer key) {
+      CURRENT.get().misses++;
+      return ComposableFutures.fromValue(key);
+    }
+
+    @Override
+    public ComposableFuture<Map<Integer, Integer>> load(final String cacheName, final Iterable<? extends Integer> keys) {
+      final Map<Integer, Integer> values = new HashMap<>();
+      for (final Integer key : keys) {
+        CURRENT.get().misses++;
+        values.put(key, key);
+      }
+
+      return ComposableFutures.fromValue(values);
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package com.outbrain.ob1k.cache;
+
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.Scheduler;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.outbrain.ob1k.concurrent.ComposableFutures.newPromise;
+
+/**
+ * a loader merging concurrent single key loads into bulk loads of the wrapped loader.
+ *
+ * the keys loaded for a cache during the batching window, up to the max batch size, are loaded
+ * with a single bulk load, see {@link KeyBatcher}, and each key gets its own value, or the error of the bulk load.
+ * a key loaded more than once in a batch is loaded once, and each of its callers gets a future of its own,
+ * which may be cancelled without affecting the others.
+ * bulk loads are passed on as is.
+ *
+ * batching trades a window's worth of latency for fewer round trips, and is only worth it
+ * if the wrapped loader sees many concurrent misses; e.g.
+ * <pre>
+ *   new LoadingCacheDelegate&lt;&gt;(cache, new BatchingCacheLoader&lt;&gt;(loader, 200, TimeUnit.MICROSECONDS, 100), cacheName)
+ * </pre>
+ * the actual window is bounded by the resolution of the scheduler.
+ */
+public class BatchingCacheLoader<K, V> implements CacheLoader<K, V> {
+
+  private final CacheLoader<K, V> loader;
+  private final long window;
+  private final TimeUnit unit;
+  private final int maxBatchSize;
+  private final Scheduler scheduler;
+
+  // a bulk load is made for a single cache name
+  private final ConcurrentMap<String, KeyBatcher<K, ComposablePromise<V>>> batchers = new ConcurrentHashMap<>();
+
+  public BatchingCacheLoader(final CacheLoader<K, V> loader, final long window, final TimeUnit unit,
+                             final int maxBatchSize) {
+    this(loader, window, unit, maxBatchSize, ComposableFutures.getScheduler());
+  }
+
+  public BatchingCacheLoader(final CacheLoader<K, V> loader, final long window, final TimeUnit unit,
+                             final int maxBatchSize, final Scheduler scheduler) {
+    checkArgument(window > 0, "window must be positive");
+    checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+
+    this.loader = checkNotNull(loader, "loader may not be null");
+    this.window = window;
+    this.unit = checkNotNull(unit, "unit may not be null");
+    this.maxBatchSize = maxBatchSize;
+    this.scheduler = checkNotNull(scheduler, "scheduler may not be null");
+  }
+
+  @Override
+  public ComposableFuture<V> load(final String cacheName, final K key) {
+    final ComposablePromise<V> promise = batchers.computeIfAbsent(cacheName, name ->
+      new KeyBatcher<K, ComposablePromise<V>>(window, unit, maxBatchSize, scheduler, ComposableFutures::newPromise,
+        promises -> load(name, promises))).add(key);
+
+    // callers of the same key share its load, so cancelling one of them must not fail the others
+    final ComposablePromise<V> caller = newPromise();
+    promise.future().consume(caller::setTry);
+    return caller.future();
+  }
+
+  @Override
+  public ComposableFuture<Map<K, V>> load(final String cacheName, final Iterable<? extends K> keys) {
+    return loader.load(cacheName, keys);
+  }
+
+  private void load(final String cacheName, final Map<K, ComposablePromise<V>> promises) {
+    try {
+      loader.load(cacheName, promises.keySet()).consume(result -> {
+        if (result.isSuccess()) {
+          final Map<K, V> values = result.getValue();
+          promises.forEach((key, promise) -> promise.set(values.get(key)));
+        } else {
+          promises.values().forEach(promise -> promise.setException(result.getError()));
+        }
+      });
+    } catch (final Exception e) {
+      // defensive coding, loader should not throw exceptions.
+      promises.values().forEach(promise -> promise.setException(e));
+    }
+  }
+}
@@ -0,0 +1,179 @@
+package com.outbrain.ob1k.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * a {@link LocalCacheEngine} over a Caffeine cache: w-tinylfu eviction, lock free reads,
+ * and optionally a variable expiry computed from the values.
+ *
+ * with a variable expiry the ttl of an entry is computed once its future completes;
+ * until then, or if the value is null, the entry lives for the expireAfterWrite ttl, if any.
+ */
+class CaffeineCacheEngine<K, V> implements LocalCacheEngine<K, V> {
+
+  private final Cache<K, ComposableFuture<V>> cache;
+  private final LoadingCache<K, ComposableFuture<V>> loadingCache;
+  private final EntryExpiry<K, V> expiry;
+  private final long defaultTtlNanos;
+
+  CaffeineCacheEngine(final LocalAsyncCache.Builder<K, V> settings,
+                      final Function<K, ComposableFuture<V>> load,
+                      final Function<Iterable<? extends K>, Map<K, ComposableFuture<V>>> loadAll) {
+    final MetricFactory metricFactory = settings.metricFactory;
+    this.expiry = settings.expiry;
+    this.defaultTtlNanos = settings.expireAfterWriteUnit != null ?
+      settings.expireAfterWriteUnit.toNanos(settings.expireAfterWrite) : Long.MAX_VALUE;
+
+    final Caffeine<Object, Object> builder = Caffeine.newBuilder().maximumSize(settings.maximumSize);
+    if (expiry != null) {
+      builder.expireAfter(new ValueExpiry());
+    } else if (settings.expireAfterWriteUnit != null) {
+      builder.expireAfterWrite(settings.expireAfterWrite, settings.expireAfterWriteUnit);
+    }
+    if (settings.expireAfterAccessUnit != null) {
+      builder.expireAfterAccess(settings.expireAfterAccess, settings.expireAfterAccessUnit);
+    }
+    if (metricFactory != null) {
+      builder.recordStats();
+    }
+
+    if (load != null) {
+      this.loadingCache = builder.build(new com.github.benmanes.caffeine.cache.CacheLoader<K, ComposableFuture<V>>() {
+        @Override
+        public ComposableFuture<V> load(final K key) {
+          return expireOnCompletion(key, load.apply(key));
+        }
+
+        @Override
+        public Map<K, ComposableFuture<V>> loadAll(final Iterable<? extends K> keys) {
+          final Map<K, ComposableFuture<V>> loaded = loadAll.apply(keys);
+          loaded.forEach(CaffeineCacheEngine.this::expireOnCompletion);
+          return loaded;
+        }
+      });
+      this.cache = loadingCache;
+    } else {
+      this.loadingCache = null;
+      this.cache = builder.build();
+    }
+
+    if (metricFactory != null) {
+      createGauges(metricFactory, "LocalAsyncCache-" + settings.cacheName);
+    }
+  }
+
+  @Override
+  public ComposableFuture<V> get(final K key) throws ExecutionException {
+    if (loadingCache == null) {
+      return cache.getIfPresent(key);
+    }
+
+    try {
+      return loadingCache.get(key);
+    } catch (final CompletionException e) {
+      throw new ExecutionException(e.getCause());
+    } catch (final RuntimeException e) {
+      throw new ExecutionException(e);
+    }
+  }
+
+  @Override
+  public Map<K, ComposableFuture<V>> getAll(final Iterable<? extends K> keys) throws ExecutionException {
+    if (loadingCache == null) {
+      return cache.getAllPresent(keys);
+    }
+
+    try {
+      return loadingCache.getAll(keys);
+    } catch (final CompletionException e) {
+      throw new ExecutionException(e.getCause());
+    } catch (final RuntimeException e) {
+      throw new ExecutionException(e);
+    }
+  }
+
+  @Override
+  public ConcurrentMap<K, ComposableFuture<V>> asMap() {
+    return cache.asMap();
+  }
+
+  /**
+   * the ttl of a value still loading is set once it completes, as long as it is still the entry's value.
+   * a value completing while it is loaded gets its ttl from the expiry right away.
+   */
+  private ComposableFuture<V> expireOnCompletion(final K key, final ComposableFuture<V> future) {
+    if (expiry == null) {
+      return future;
+    }
+
+    final AtomicBoolean loading = new AtomicBoolean(true);
+    future.consume(result -> {
+      if (!loading.get() && result.isSuccess() && result.getValue() != null && cache.asMap().get(key) == future) {
+        final long ttl = expiry.expireAfterMillis(key, result.getValue());
+        cache.policy().expireVariably().ifPresent(expiration -> expiration.setExpiresAfter(key, ttl, TimeUnit.MILLISECONDS));
+      }
+    });
+    loading.set(false);
+
+    return future;
+  }
+
+  private long ttlNanos(final K key, final ComposableFuture<V> future) {
+    // the value of a completed future is consumed right away
+    final AtomicLong ttl = new AtomicLong(defaultTtlNanos);
+    future.consume(result -> {
+      if (result.isSuccess() && result.getValue() != null) {
+        ttl.set(TimeUnit.MILLISECONDS.toNanos(expiry.expireAfterMillis(key, result.getValue())));
+      }
+    });
+
+    return ttl.get();
+  }
+
+  private void createGauges(final MetricFactory metricFactory, final String component) {
+    metricFactory.registerGauge(component, "averageLoadPenalty", () -> cache.stats().averageLoadPenalty());
+    metricFactory.registerGauge(component, "hitRate", () -> cache.stats().hitRate());
+    metricFactory.registerGauge(component, "loadExceptionRate", () -> cache.stats().loadFailureRate());
+    metricFactory.registerGauge(component, "missRate", () -> cache.stats().missRate());
+    metricFactory.registerGauge(component, "evictionCount", () -> cache.stats().evictionCount());
+    metricFactory.registerGauge(component, "hitCount", () -> cache.stats().hitCount());
+    metricFactory.registerGauge(component, "loadCount", () -> cache.stats().loadCount());
+    metricFactory.registerGauge(component, "loadExceptionCount", () -> cache.stats().loadFailureCount());
+    metricFactory.registerGauge(component, "loadSuccessCount", () -> cache.stats().loadSuccessCount());
+    metricFactory.registerGauge(component, "missCount", () -> cache.stats().missCount());
+    metricFactory.registerGauge(component, "requestCount", () -> cache.stats().requestCount());
+    metricFactory.registerGauge(component, "totalLoadTime", () -> cache.stats().totalLoadTime());
+    metricFactory.registerGauge(component, "size", cache::estimatedSize);
+  }
+
+  private class ValueExpiry implements Expiry<K, ComposableFuture<V>> {
+    @Override
+    public long expireAfterCreate(final K key, final ComposableFuture<V> value, final long currentTime) {
+      return ttlNanos(key, value);
+    }
+
+    @Override
+    public long expireAfterUpdate(final K key, final ComposableFuture<V> value, final long currentTime, final long currentDuration) {
+      return ttlNanos(key, value);
+    }
+
+    @Override
+    public long expireAfterRead(final K key, final ComposableFuture<V> value, final long currentTime, final long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
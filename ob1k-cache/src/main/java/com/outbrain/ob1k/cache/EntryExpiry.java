@@ -0,0 +1,11 @@
+package com.outbrain.ob1k.cache;
+
+/**
+ * computes the time to live of a cache entry from its value, for caches whose entries don't all live as long.
+ */
+public interface EntryExpiry<K, V> {
+  /**
+   * @return the number of milliseconds the entry lives after it was written.
+   */
+  long expireAfterMillis(K key, V value);
+}
@@ -0,0 +1,75 @@
+package com.outbrain.ob1k.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * a {@link LocalCacheEngine} over a Guava cache: lru eviction per segment, reads and writes lock their segment.
+ */
+class GuavaCacheEngine<K, V> implements LocalCacheEngine<K, V> {
+
+  private final Cache<K, ComposableFuture<V>> cache;
+  private final LoadingCache<K, ComposableFuture<V>> loadingCache;
+
+  GuavaCacheEngine(final LocalAsyncCache.Builder<K, V> settings,
+                   final Function<K, ComposableFuture<V>> load,
+                   final Function<Iterable<? extends K>, Map<K, ComposableFuture<V>>> loadAll) {
+    final MetricFactory metricFactory = settings.metricFactory;
+    final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(settings.maximumSize);
+    if (settings.expireAfterWriteUnit != null) {
+      builder.expireAfterWrite(settings.expireAfterWrite, settings.expireAfterWriteUnit);
+    }
+    if (settings.expireAfterAccessUnit != null) {
+      builder.expireAfterAccess(settings.expireAfterAccess, settings.expireAfterAccessUnit);
+    }
+    if (metricFactory != null) {
+      builder.recordStats();
+    }
+
+    if (load != null) {
+      this.loadingCache = builder.build(new com.google.common.cache.CacheLoader<K, ComposableFuture<V>>() {
+        public ComposableFuture<V> load(final K key) throws Exception {
+          return load.apply(key);
+        }
+
+        @Override
+        public Map<K, ComposableFuture<V>> loadAll(final Iterable<? extends K> keys) throws Exception {
+          return loadAll.apply(Lists.newArrayList(keys));
+        }
+      });
+      this.cache = loadingCache;
+    } else {
+      this.loadingCache = null;
+      this.cache = builder.build();
+    }
+
+    if (metricFactory != null) {
+      GuavaCacheGaugesFactory.createGauges(metricFactory, cache, "LocalAsyncCache-" + settings.cacheName);
+    }
+  }
+
+  @Override
+  public ComposableFuture<V> get(final K key) throws ExecutionException {
+    return loadingCache != null ? loadingCache.get(key) : cache.getIfPresent(key);
+  }
+
+  @Override
+  public Map<K, ComposableFuture<V>> getAll(final Iterable<? extends K> keys) throws ExecutionException {
+    return loadingCache != null ? loadingCache.getAll(keys) : cache.getAllPresent(keys);
+  }
+
+  @Override
+  public ConcurrentMap<K, ComposableFuture<V>> asMap() {
+    return cache.asMap();
+  }
+}
@@ -0,0 +1,25 @@
+package com.outbrain.ob1k.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * an invalidation channel delivering the invalidations synchronously to the subscribers in the same process.
+ * mostly useful for tests, and for several tiered caches sharing a remote cache in one process.
+ */
+public class InProcessInvalidationChannel<K> implements InvalidationChannel<K> {
+
+  private final List<Listener<K>> listeners = new CopyOnWriteArrayList<>();
+
+  @Override
+  public void publish(final String source, final K key) {
+    for (final Listener<K> listener : listeners) {
+      listener.invalidated(source, key);
+    }
+  }
+
+  @Override
+  public void subscribe(final Listener<K> listener) {
+    listeners.add(listener);
+  }
+}
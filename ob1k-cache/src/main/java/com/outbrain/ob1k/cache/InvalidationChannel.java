@@ -0,0 +1,30 @@
+package com.outbrain.ob1k.cache;
+
+/**
+ * a broadcast channel for invalidating keys held in the near caches of other instances.
+ *
+ * implementations may be backed by any pub/sub transport; delivery is best effort,
+ * stale entries missed by the channel live until the near cache ttl expires them.
+ *
+ * @see TieredTypedCache
+ * @see InProcessInvalidationChannel
+ */
+public interface InvalidationChannel<K> {
+
+  /**
+   * broadcasts the invalidation of a key to all the subscribers, including the publishing instance.
+   *
+   * @param source identifies the publishing instance, so it can ignore its own invalidations.
+   * @param key    the invalidated key
+   */
+  void publish(String source, K key);
+
+  /**
+   * subscribes to the invalidations published on the channel.
+   */
+  void subscribe(Listener<K> listener);
+
+  interface Listener<K> {
+    void invalidated(String source, K key);
+  }
+}
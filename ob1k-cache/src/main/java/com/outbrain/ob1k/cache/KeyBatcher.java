@@ -0,0 +1,113 @@
+package com.outbrain.ob1k.cache;
+
+import com.outbrain.ob1k.concurrent.CancellationToken;
+import com.outbrain.ob1k.concurrent.Scheduler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * collects concurrently requested keys into batches, so they can be fetched together.
+ *
+ * the first key opens a batch, which collects the keys added during the batching window, up to the max batch size.
+ * the batch is then flushed, on the scheduler thread or on the thread adding its last key.
+ * a key added more than once to a batch is kept once, with a single pending result for all its callers.
+ *
+ * @param <K> the type of the keys
+ * @param <P> the type of the pending results, completed by the flush
+ * @see BatchingCacheLoader
+ */
+public final class KeyBatcher<K, P> {
+
+  private final long window;
+  private final TimeUnit unit;
+  private final int maxBatchSize;
+  private final Scheduler scheduler;
+  private final Supplier<? extends P> newPending;
+  private final Consumer<Map<K, P>> flush;
+
+  private final Object lock = new Object();
+  // the batch still collecting keys, guarded by the lock
+  private Batch<K, P> openBatch;
+
+  /**
+   * @param newPending creates the pending result of a key added to a batch.
+   * @param flush      fetches the keys of a batch, in the order they were added, and completes their pending results.
+   */
+  public KeyBatcher(final long window, final TimeUnit unit, final int maxBatchSize, final Scheduler scheduler,
+                    final Supplier<? extends P> newPending, final Consumer<Map<K, P>> flush) {
+    checkArgument(window > 0, "window must be positive");
+    checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+
+    this.window = window;
+    this.unit = checkNotNull(unit, "unit may not be null");
+    this.maxBatchSize = maxBatchSize;
+    this.scheduler = checkNotNull(scheduler, "scheduler may not be null");
+    this.newPending = checkNotNull(newPending, "newPending may not be null");
+    this.flush = checkNotNull(flush, "flush may not be null");
+  }
+
+  /**
+   * @return the pending result of the key, shared by its callers within the batch.
+   */
+  public P add(final K key) {
+    final Batch<K, P> batch;
+    final P pending;
+    final boolean opened;
+    final boolean full;
+
+    synchronized (lock) {
+      opened = openBatch == null;
+      if (opened) {
+        openBatch = new Batch<>();
+      }
+
+      batch = openBatch;
+      pending = batch.pending.computeIfAbsent(key, k -> newPending.get());
+      full = batch.pending.size() >= maxBatchSize;
+      if (full) {
+        openBatch = null;
+      }
+    }
+
+    if (full) {
+      flush(batch);
+    } else if (opened) {
+      batch.timer = scheduler.schedule(() -> flush(batch), window, unit);
+    }
+
+    return pending;
+  }
+
+  private void flush(final Batch<K, P> batch) {
+    if (!batch.flushed.compareAndSet(false, true)) {
+      return;
+    }
+
+    synchronized (lock) {
+      if (openBatch == batch) {
+        openBatch = null;
+      }
+    }
+
+    final CancellationToken timer = batch.timer;
+    if (timer != null) {
+      timer.cancel(false);
+    }
+
+    flush.accept(batch.pending);
+  }
+
+  private static class Batch<K, P> {
+    private final Map<K, P> pending = new LinkedHashMap<>();
+    private final AtomicBoolean flushed = new AtomicBoolean();
+    private volatile CancellationToken timer;
+  }
+}
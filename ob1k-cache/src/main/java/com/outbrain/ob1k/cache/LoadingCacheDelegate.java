@@ -13,41 +13,85 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 import static com.outbrain.ob1k.concurrent.ComposableFutures.newPromise;
 
 /**
  * a wrapper for TypedCache implementation that delegate missing entries to a loader.
  * the loader is used a such a way that prevents concurrent activations on the same key.
  * <p>
+ * created {@link #withSoftTtl(TypedCache, CacheLoader, String, MetricFactory, long, long, TimeUnit) with a soft ttl},
+ * values are cached along with their write time. values older than the soft ttl are still served right away,
+ * while a single background load per key refreshes them; only values older than the hard ttl
+ * (or evicted by the underlying cache) wait for the loader.
+ * with {@link Builder#withEarlyRefresh(double) early refresh}, values are refreshed at random ahead of the soft ttl,
+ * the more likely the closer they get to it and the longer loads take, so the refreshes of values
+ * written together spread over time.
+ * <p>
+ * concurrent loads of a key are merged within a single process only. when many processes share a remote cache,
+ * {@link Builder#withLeases(TypedCache, long, long, TimeUnit) leases} keep them from all loading a missing key at once:
+ * the process adding the key's lease to the leases cache loads it, while the others serve the expired value if
+ * the cache still holds one, or poll the cache for the loaded value, loading it themselves if it doesn't show up in time.
+ * <p>
+ * the loader is called once per missing key; wrap it with a {@link BatchingCacheLoader}
+ * to merge the concurrent misses into bulk loads.
+ * <p>
  * @author aronen 10/26/14.
  */
 public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
   private static final long DEFAULT_DURATION_MS = 500;
+  // the owner of a released lease, free for the next process to take
+  private static final String RELEASED_LEASE = "";
   private static final Logger log = LoggerFactory.getLogger(LoadingCacheDelegate.class);
 
-  private final TypedCache<K, V> cache;
+  // holds TimestampedValue<V> values if there's a soft ttl, and plain V values otherwise
+  private final TypedCache<K, Object> cache;
   private final CacheLoader<K, V> loader;
   private final String cacheName;
   private final ConcurrentMap<K, ComposablePromise<V>> futureValues;
+  private final ConcurrentMap<K, Boolean> refreshedKeys;
   private final boolean failOnError;
+  private final long softTtlMs;
+  private final long hardTtlMs;
+  private final double earlyRefreshBeta;
+  private final TypedCache<K, String> leases;
+  private final String leaseOwner;
+  private final long leaseWaitMs;
+  private final long leasePollMs;
 
   private final long duration;
   private final TimeUnit timeUnit;
 
+  // a moving average of the load times, scaling the early refreshes
+  private volatile double loadTimeMs;
+
   private final Counter cacheHits;
   private final Counter cacheMiss;
   private final Counter cacheErrors;
   private final Counter loaderErrors;
   private final Counter cacheTimeouts;
   private final Counter loaderTimeouts;
+  private final Counter staleServes;
+  private final Counter refreshes;
+  private final Counter refreshErrors;
+  private final Counter leasesAcquired;
+  private final Counter leaseWaits;
+  private final Counter leaseWaitTimeouts;
+  private final Counter leaseErrors;
 
   public LoadingCacheDelegate(final TypedCache<K, V> cache, final CacheLoader<K, V> loader, final String cacheName) {
     this(cache, loader, cacheName, null);
@@ -67,15 +111,29 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
   public LoadingCacheDelegate(final TypedCache<K, V> cache, final CacheLoader<K, V> loader, final String cacheName,
                               final MetricFactory metricFactory, final long duration, final TimeUnit timeUnit,
                               final boolean failOnError) {
-    this.cache = cache;
-    this.loader = loader;
-    this.cacheName = cacheName;
-    this.futureValues = new ConcurrentHashMap<>();
-    this.failOnError = failOnError;
-
-    this.duration = duration;
-    this.timeUnit = timeUnit;
+    this(newBuilder(cache, loader, cacheName).withMetrics(metricFactory).withTimeout(duration, timeUnit).failOnError(failOnError));
+  }
 
+  @SuppressWarnings("unchecked")
+  private LoadingCacheDelegate(final Builder<K, V> builder) {
+    this.cache = (TypedCache<K, Object>) builder.cache;
+    this.loader = builder.loader;
+    this.cacheName = builder.cacheName;
+    this.futureValues = new ConcurrentHashMap<>();
+    this.refreshedKeys = new ConcurrentHashMap<>();
+    this.failOnError = builder.failOnError;
+    this.softTtlMs = builder.softTtlMs;
+    this.hardTtlMs = builder.hardTtlMs;
+    this.earlyRefreshBeta = builder.earlyRefreshBeta;
+    this.leases = builder.leases;
+    this.leaseOwner = UUID.randomUUID().toString();
+    this.leaseWaitMs = builder.leaseWaitMs;
+    this.leasePollMs = builder.leasePollMs;
+
+    this.duration = builder.duration;
+    this.timeUnit = builder.timeUnit;
+
+    final MetricFactory metricFactory = builder.metricFactory;
     if (metricFactory != null) {
       metricFactory.registerGauge("LoadingCacheDelegate." + cacheName, "mapSize", futureValues::size);
 
@@ -85,6 +143,13 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
       loaderErrors = metricFactory.createCounter("LoadingCacheDelegate." + cacheName, "loaderErrors");
       cacheTimeouts = metricFactory.createCounter("LoadingCacheDelegate." + cacheName, "cacheTimeouts");
       loaderTimeouts = metricFactory.createCounter("LoadingCacheDelegate." + cacheName, "loaderTimeouts");
+      staleServes = metricFactory.createCounter("LoadingCacheDelegate." + cacheName, "staleServes");
+      refreshes = metricFactory.createCounter("LoadingCacheDelegate." + cacheName, "refreshes");
+      refreshErrors = metricFactory.createCounter("LoadingCacheDelegate." + cacheName, "refreshErrors");
+      leasesAcquired = metricFactory.createCounter("LoadingCacheDelegate." + cacheName, "leasesAcquired");
+      leaseWaits = metricFactory.createCounter("LoadingCacheDelegate." + cacheName, "leaseWaits");
+      leaseWaitTimeouts = metricFactory.createCounter("LoadingCacheDelegate." + cacheName, "leaseWaitTimeouts");
+      leaseErrors = metricFactory.createCounter("LoadingCacheDelegate." + cacheName, "leaseErrors");
 
     } else {
       cacheHits = null;
@@ -93,9 +158,70 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
       loaderErrors = null;
       cacheTimeouts = null;
       loaderTimeouts = null;
+      staleServes = null;
+      refreshes = null;
+      refreshErrors = null;
+      leasesAcquired = null;
+      leaseWaits = null;
+      leaseWaitTimeouts = null;
+      leaseErrors = null;
     }
   }
 
+  public static <K, V> Builder<K, V> newBuilder(final TypedCache<K, V> cache, final CacheLoader<K, V> loader,
+                                                final String cacheName) {
+    return new Builder<>(cache, loader, cacheName, -1, -1);
+  }
+
+  /**
+   * creates a builder of a loading cache that serves stale values while refreshing them in the background.
+   *
+   * @param cache      the underlying cache, holding the values along with their write time.
+   * @param softTtl    the age after which a value is refreshed in the background, while still being served.
+   * @param hardTtl    the age after which a value isn't served anymore, and has to be loaded again.
+   *                   the underlying cache should keep values at least as long.
+   */
+  public static <K, V> Builder<K, V> newBuilder(final TypedCache<K, TimestampedValue<V>> cache,
+                                                final CacheLoader<K, V> loader, final String cacheName,
+                                                final long softTtl, final long hardTtl, final TimeUnit ttlUnit) {
+    checkArgument(softTtl >= 0, "softTtl must not be negative");
+    checkArgument(hardTtl >= softTtl, "hardTtl must not be shorter than softTtl");
+
+    return new Builder<>(cache, loader, cacheName, ttlUnit.toMillis(softTtl), ttlUnit.toMillis(hardTtl));
+  }
+
+  /**
+   * creates a loading cache that serves stale values while refreshing them in the background.
+   *
+   * @param cache      the underlying cache, holding the values along with their write time.
+   * @param softTtl    the age after which a value is refreshed in the background, while still being served.
+   * @param hardTtl    the age after which a value isn't served anymore, and has to be loaded again.
+   *                   the underlying cache should keep values at least as long.
+   */
+  public static <K, V> LoadingCacheDelegate<K, V> withSoftTtl(final TypedCache<K, TimestampedValue<V>> cache,
+                                                              final CacheLoader<K, V> loader, final String cacheName,
+                                                              final MetricFactory metricFactory,
+                                                              final long softTtl, final long hardTtl, final TimeUnit ttlUnit) {
+    return withSoftTtl(cache, loader, cacheName, metricFactory, DEFAULT_DURATION_MS, TimeUnit.MILLISECONDS, false,
+      softTtl, hardTtl, ttlUnit);
+  }
+
+  /**
+   * @see #withSoftTtl(TypedCache, CacheLoader, String, MetricFactory, long, long, TimeUnit)
+   */
+  public static <K, V> LoadingCacheDelegate<K, V> withSoftTtl(final TypedCache<K, TimestampedValue<V>> cache,
+                                                              final CacheLoader<K, V> loader, final String cacheName,
+                                                              final MetricFactory metricFactory,
+                                                              final long duration, final TimeUnit timeUnit,
+                                                              final boolean failOnError,
+                                                              final long softTtl, final long hardTtl, final TimeUnit ttlUnit) {
+    return newBuilder(cache, loader, cacheName, softTtl, hardTtl, ttlUnit).
+      withMetrics(metricFactory).
+      withTimeout(duration, timeUnit).
+      failOnError(failOnError).
+      build();
+  }
+
   @Override
   public ComposableFuture<V> getAsync(final K key) {
     return ComposableFutures.build(consumer -> {
@@ -106,22 +232,30 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
           return;
         }
 
-        final ComposableFuture<V> cachedResult = cache.getAsync(key).withTimeout(duration, timeUnit, "LoadingCacheDelegate fetch from cache named: " + cacheName);
+        final ComposableFuture<Object> cachedResult = cache.getAsync(key).withTimeout(duration, timeUnit, "LoadingCacheDelegate fetch from cache named: " + cacheName);
         cachedResult.consume(res -> {
           if (res.isSuccess()) {
-            final V result = res.getValue();
-            if (result == null) {
+            final Object cached = res.getValue();
+            if (cached == null || isExpired(cached)) {
               if (cacheMiss != null) {
                 cacheMiss.inc();
               }
 
-              fetchFromLoader(key, promise);
+              if (leases == null) {
+                fetchFromLoader(key, promise, false);
+              } else {
+                fetchUnderLease(key, cached, promise);
+              }
             } else {
               if (cacheHits != null) {
                 cacheHits.inc();
               }
-              promise.set(result);
+              promise.set(valueOf(cached));
               futureValues.remove(key);
+
+              if (isStale(cached)) {
+                refresh(key);
+              }
             }
           } else {
             final Throwable error = res.getError();
@@ -141,14 +275,94 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
     );
   }
 
-  private void fetchFromLoader(final K key, final ComposablePromise<V> promise) {
+  /**
+   * loads the key if this process acquires its lease. otherwise another process is loading it, and meanwhile
+   * the expired value is served if there's one, or the loaded value is waited for.
+   */
+  private void fetchUnderLease(final K key, final Object expired, final ComposablePromise<V> promise) {
+    acquireLease(key).consume(acquired -> {
+      if (!acquired.isSuccess()) {
+        // without leases every process loads for itself
+        inc(leaseErrors);
+        fetchFromLoader(key, promise, false);
+      } else if (acquired.getValue()) {
+        inc(leasesAcquired);
+        fetchFromLoader(key, promise, true);
+      } else if (expired != null) {
+        inc(staleServes);
+        promise.set(valueOf(expired));
+        futureValues.remove(key);
+      } else {
+        inc(leaseWaits);
+        awaitLoadedValue(key, promise, System.currentTimeMillis() + leaseWaitMs);
+      }
+    });
+  }
+
+  /**
+   * polls the cache for the value loaded by the lease holder, loading it here if it doesn't show up in time.
+   */
+  private void awaitLoadedValue(final K key, final ComposablePromise<V> promise, final long deadlineMs) {
+    final ComposableFuture<Object> polled = ComposableFutures.scheduleFuture(() -> cache.getAsync(key).
+      withTimeout(duration, timeUnit, "LoadingCacheDelegate poll from cache named: " + cacheName), leasePollMs, TimeUnit.MILLISECONDS);
+
+    polled.consume(res -> {
+      if (res.isSuccess() && res.getValue() != null && !isExpired(res.getValue())) {
+        inc(cacheHits);
+        promise.set(valueOf(res.getValue()));
+        futureValues.remove(key);
+      } else if (res.isSuccess() && System.currentTimeMillis() + leasePollMs <= deadlineMs) {
+        awaitLoadedValue(key, promise, deadlineMs);
+      } else {
+        inc(leaseWaitTimeouts);
+        fetchFromLoader(key, promise, false);
+      }
+    });
+  }
+
+  private ComposableFuture<Boolean> acquireLease(final K key) {
     try {
+      return leases.setIfAbsentAsync(key, leaseOwner).
+        flatMap(added -> added ? ComposableFutures.fromValue(true) :
+          leases.setAsync(key, (k, owner) -> RELEASED_LEASE.equals(owner) ? leaseOwner : null, 1)).
+        withTimeout(duration, timeUnit, "LoadingCacheDelegate lease from cache named: " + cacheName);
+    } catch (final Exception e) {
+      return ComposableFutures.fromError(e);
+    }
+  }
+
+  private void releaseLease(final K key, final boolean leased) {
+    if (!leased) {
+      return;
+    }
+
+    // released with a cas rather than deleted, as a lease that expired during the load
+    // may have been taken by another process, which keeps it.
+    final ComposableFuture<Boolean> released;
+    try {
+      released = leases.setAsync(key, (k, owner) -> leaseOwner.equals(owner) ? RELEASED_LEASE : null, 1);
+    } catch (final Exception e) {
+      inc(leaseErrors);
+      return;
+    }
+
+    released.consume(result -> {
+      if (!result.isSuccess()) {
+        inc(leaseErrors);
+      }
+    });
+  }
+
+  private void fetchFromLoader(final K key, final ComposablePromise<V> promise, final boolean leased) {
+    try {
+      final long startNanos = System.nanoTime();
       final ComposableFuture<V> loadedResult = loader.load(cacheName, key).withTimeout(duration, timeUnit, "LoadingCacheDelegate fetch from loader; cache name:" + cacheName);
 
       loadedResult.consume(loadedRes -> {
         if (loadedRes.isSuccess()) {
+          recordLoadTime(startNanos);
           promise.set(loadedRes.getValue());
-          cacheLoadedValue(key, loadedRes);
+          cacheLoadedValue(key, loadedRes, leased);
         } else {
           final Throwable error = loadedRes.getError();
           if (loaderErrors != null) {
@@ -159,18 +373,21 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
           }
           promise.setException(error);
           futureValues.remove(key);
+          releaseLease(key, leased);
         }
       });
     } catch (final Exception e) {
       // defensive coding, loader should not throw exceptions.
       promise.setException(e);
       futureValues.remove(key);
+      releaseLease(key, leased);
     }
   }
 
-  private void cacheLoadedValue(final K key, final Try<V> loadedRes) {
-    cache.setAsync(key, loadedRes.getValue()).consume(result -> {
+  private void cacheLoadedValue(final K key, final Try<V> loadedRes, final boolean leased) {
+    cache.setAsync(key, toCached(loadedRes.getValue())).consume(result -> {
       futureValues.remove(key);
+      releaseLease(key, leased);
       handleCacheLoadedResultsFailure(result);
     });
   }
@@ -197,24 +414,34 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
         }
       }
 
-      final ComposableFuture<Map<K, V>> cachedResults = cache.getBulkAsync(processedKeys).
+      final ComposableFuture<Map<K, Object>> cachedResults = cache.getBulkAsync(processedKeys).
         withTimeout(duration, timeUnit, "LoadingCacheDelegate fetch bulk from cache named: " + cacheName);
 
       cachedResults.consume(tryGet -> {
         if (tryGet.isSuccess()) {
-          final Map<K, V> result = tryGet.getValue();
+          final Map<K, Object> result = tryGet.getValue();
           final List<K> missingFromCacheKeys = new ArrayList<>();
+          final Map<K, Object> expiredValues = new HashMap<>();
+          final List<K> staleKeys = new ArrayList<>();
           for (final K key : processedKeys) {
-            if (result.containsKey(key)) {
+            final Object cached = result.get(key);
+            if (result.containsKey(key) && !isExpired(cached)) {
               final ComposablePromise<V> promise = futureValues.get(key);
-              promise.set(result.get(key));
+              promise.set(valueOf(cached));
               futureValues.remove(key);
 
               if (cacheHits != null) {
                 cacheHits.inc();
               }
+
+              if (isStale(cached)) {
+                staleKeys.add(key);
+              }
             } else {
               missingFromCacheKeys.add(key);
+              if (cached != null) {
+                expiredValues.put(key, cached);
+              }
               if (cacheMiss != null) {
                 cacheMiss.inc();
               }
@@ -222,7 +449,15 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
           }
 
           if (!missingFromCacheKeys.isEmpty()) {
-            fetchFromLoader(missingFromCacheKeys);
+            if (leases == null) {
+              fetchFromLoader(missingFromCacheKeys, Collections.emptySet());
+            } else {
+              fetchUnderLeases(missingFromCacheKeys, expiredValues);
+            }
+          }
+
+          if (!staleKeys.isEmpty()) {
+            refresh(staleKeys);
           }
         } else {
           for (final K key : processedKeys) {
@@ -241,23 +476,68 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
     });
   }
 
-  private void fetchFromLoader(final List<K> missingFromCacheKeys) {
+  /**
+   * the bulk {@link #fetchUnderLease(Object, Object, ComposablePromise)}: the keys whose leases this process acquires
+   * are loaded together, while the others are served expired or waited for, key by key.
+   */
+  private void fetchUnderLeases(final List<K> missingFromCacheKeys, final Map<K, Object> expiredValues) {
+    final Map<K, ComposableFuture<Boolean>> acquiring = Maps.newHashMapWithExpectedSize(missingFromCacheKeys.size());
+    for (final K key : missingFromCacheKeys) {
+      acquiring.put(key, acquireLease(key));
+    }
+
+    // keys whose lease couldn't be acquired are left out
+    ComposableFutures.all(false, acquiring).consume(acquired -> {
+      final Map<K, Boolean> acquiredLeases = acquired.isSuccess() ? acquired.getValue() : Collections.emptyMap();
+      final List<K> loadedKeys = new ArrayList<>();
+      final Set<K> leasedKeys = new HashSet<>();
+      for (final K key : missingFromCacheKeys) {
+        final Boolean leased = acquiredLeases.get(key);
+        final Object expired = expiredValues.get(key);
+        if (leased == null) {
+          // without leases every process loads for itself
+          inc(leaseErrors);
+          loadedKeys.add(key);
+        } else if (leased) {
+          inc(leasesAcquired);
+          loadedKeys.add(key);
+          leasedKeys.add(key);
+        } else if (expired != null) {
+          inc(staleServes);
+          futureValues.get(key).set(valueOf(expired));
+          futureValues.remove(key);
+        } else {
+          inc(leaseWaits);
+          awaitLoadedValue(key, futureValues.get(key), System.currentTimeMillis() + leaseWaitMs);
+        }
+      }
+
+      if (!loadedKeys.isEmpty()) {
+        fetchFromLoader(loadedKeys, leasedKeys);
+      }
+    });
+  }
+
+  private void fetchFromLoader(final List<K> missingFromCacheKeys, final Set<K> leasedKeys) {
     try {
+      final long startNanos = System.nanoTime();
       final ComposableFuture<Map<K, V>> loadedResults = loader.load(cacheName, missingFromCacheKeys).withTimeout(duration, timeUnit, "LoadingCacheDelegate fetch bulk from loader for cache named: " + cacheName);
       loadedResults.consume(loadedRes -> {
         if (loadedRes.isSuccess()) {
+          recordLoadTime(startNanos);
           final Map<K, V> elements = loadedRes.getValue();
           for (final K key : missingFromCacheKeys) {
             futureValues.get(key).set(elements.get(key));
           }
 
-          cacheLoadedValues(missingFromCacheKeys, elements);
+          cacheLoadedValues(missingFromCacheKeys, elements, leasedKeys);
         } else {
           for (final K key : missingFromCacheKeys) {
             final ComposablePromise<V> promise = futureValues.get(key);
             promise.setException(loadedRes.getError());
             futureValues.remove(key);
           }
+          leasedKeys.forEach(key -> releaseLease(key, true));
 
           if (loaderErrors != null) {
             loaderErrors.inc();
@@ -270,12 +550,14 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
         promise.setException(e);
         futureValues.remove(key);
       }
+      leasedKeys.forEach(key -> releaseLease(key, true));
     }
   }
 
-  private void cacheLoadedValues(final List<K> missingFromCacheKeys, final Map<K, V> elements) {
-    cache.setBulkAsync(elements).consume(setBulkResult -> {
+  private void cacheLoadedValues(final List<K> missingFromCacheKeys, final Map<K, V> elements, final Set<K> leasedKeys) {
+    cache.setBulkAsync(toCached(elements)).consume(setBulkResult -> {
       missingFromCacheKeys.forEach(futureValues::remove);
+      leasedKeys.forEach(key -> releaseLease(key, true));
 
       handleCacheLoadedResultsFailure(setBulkResult);
     });
@@ -290,6 +572,182 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
     }
   }
 
+  /**
+   * reloads a stale value in the background, unless it's already being reloaded, here or by the lease holder.
+   */
+  private void refresh(final K key) {
+    if (staleServes != null) {
+      staleServes.inc();
+    }
+
+    if (refreshedKeys.putIfAbsent(key, Boolean.TRUE) != null) {
+      return;
+    }
+
+    if (leases == null) {
+      reload(key, false);
+      return;
+    }
+
+    acquireLease(key).consume(acquired -> {
+      if (acquired.isSuccess() && !acquired.getValue()) {
+        // another process refreshes the value, the key isn't leased again here for a while
+        ComposableFutures.schedule(() -> refreshedKeys.remove(key), leaseWaitMs, TimeUnit.MILLISECONDS);
+        return;
+      }
+
+      if (acquired.isSuccess()) {
+        inc(leasesAcquired);
+      } else {
+        inc(leaseErrors);
+      }
+      reload(key, acquired.isSuccess());
+    });
+  }
+
+  private void reload(final K key, final boolean leased) {
+    if (refreshes != null) {
+      refreshes.inc();
+    }
+
+    try {
+      final long startNanos = System.nanoTime();
+      loader.load(cacheName, key).withTimeout(duration, timeUnit, "LoadingCacheDelegate refresh from loader; cache name:" + cacheName).consume(loadedRes -> {
+        if (loadedRes.isSuccess() && loadedRes.getValue() != null) {
+          recordLoadTime(startNanos);
+          cache.setAsync(key, toCached(loadedRes.getValue())).consume(result -> {
+            refreshedKeys.remove(key);
+            releaseLease(key, leased);
+            handleCacheLoadedResultsFailure(result);
+          });
+        } else {
+          refreshedKeys.remove(key);
+          releaseLease(key, leased);
+          handleRefreshFailure(loadedRes);
+        }
+      });
+    } catch (final Exception e) {
+      // defensive coding, loader should not throw exceptions.
+      refreshedKeys.remove(key);
+      releaseLease(key, leased);
+      handleRefreshFailure(Try.fromError(e));
+    }
+  }
+
+  private void refresh(final List<K> staleKeys) {
+    if (staleServes != null) {
+      staleServes.inc(staleKeys.size());
+    }
+
+    final List<K> refreshedStaleKeys = new ArrayList<>();
+    for (final K key : staleKeys) {
+      if (refreshedKeys.putIfAbsent(key, Boolean.TRUE) == null) {
+        refreshedStaleKeys.add(key);
+      }
+    }
+
+    if (refreshedStaleKeys.isEmpty()) {
+      return;
+    }
+
+    if (refreshes != null) {
+      refreshes.inc(refreshedStaleKeys.size());
+    }
+
+    try {
+      final long startNanos = System.nanoTime();
+      loader.load(cacheName, refreshedStaleKeys).withTimeout(duration, timeUnit, "LoadingCacheDelegate bulk refresh from loader; cache name:" + cacheName).consume(loadedRes -> {
+        if (loadedRes.isSuccess()) {
+          recordLoadTime(startNanos);
+          final Map<K, V> elements = new HashMap<>();
+          for (final K key : refreshedStaleKeys) {
+            final V value = loadedRes.getValue().get(key);
+            if (value != null) {
+              elements.put(key, value);
+            } else {
+              refreshedKeys.remove(key);
+            }
+          }
+
+          cache.setBulkAsync(toCached(elements)).consume(setBulkResult -> {
+            elements.keySet().forEach(refreshedKeys::remove);
+            handleCacheLoadedResultsFailure(setBulkResult);
+          });
+        } else {
+          refreshedStaleKeys.forEach(refreshedKeys::remove);
+          handleRefreshFailure(loadedRes);
+        }
+      });
+    } catch (final Exception e) {
+      refreshedStaleKeys.forEach(refreshedKeys::remove);
+      handleRefreshFailure(Try.fromError(e));
+    }
+  }
+
+  private void handleRefreshFailure(final Try<?> loadedRes) {
+    if (refreshErrors != null) {
+      refreshErrors.inc();
+    }
+
+    if (!loadedRes.isSuccess()) {
+      log.warn("Failed to refresh stale value in cache named: {}", cacheName, loadedRes.getError());
+    }
+  }
+
+  private boolean isStale(final Object cached) {
+    if (softTtlMs < 0 || cached == null) {
+      return false;
+    }
+
+    if (earlyRefreshBeta <= 0) {
+      return age(cached) >= softTtlMs;
+    }
+
+    // xfetch: the age is pushed forward by a random, exponentially distributed, multiple of the load time
+    final double gap = -loadTimeMs * earlyRefreshBeta * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+    return age(cached) + gap >= softTtlMs;
+  }
+
+  private void recordLoadTime(final long startNanos) {
+    final double sample = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos) / 1000.0;
+    final double current = loadTimeMs;
+    // the first load seeds the average, rather than having it climb from zero.
+    // racing updates may lose a sample, which the average can live with
+    loadTimeMs = current == 0 ? sample : current + (sample - current) * 0.1;
+  }
+
+  private static void inc(final Counter counter) {
+    if (counter != null) {
+      counter.inc();
+    }
+  }
+
+  private boolean isExpired(final Object cached) {
+    return hardTtlMs >= 0 && cached != null && age(cached) >= hardTtlMs;
+  }
+
+  private static long age(final Object cached) {
+    return System.currentTimeMillis() - ((TimestampedValue<?>) cached).getTimestamp();
+  }
+
+  @SuppressWarnings("unchecked")
+  private V valueOf(final Object cached) {
+    return softTtlMs >= 0 && cached != null ? ((TimestampedValue<V>) cached).getValue() : (V) cached;
+  }
+
+  private Object toCached(final V value) {
+    return softTtlMs >= 0 ? new TimestampedValue<>(value, System.currentTimeMillis()) : value;
+  }
+
+  private Map<K, Object> toCached(final Map<? extends K, ? extends V> values) {
+    final Map<K, Object> cached = Maps.newHashMapWithExpectedSize(values.size());
+    for (final Map.Entry<? extends K, ? extends V> entry : values.entrySet()) {
+      cached.put(entry.getKey(), toCached(entry.getValue()));
+    }
+
+    return cached;
+  }
+
   private static <K, V> Map<K, ComposableFuture<V>> mapToFutures(final Map<K, ComposablePromise<V>> promises) {
     final Map<K, ComposableFuture<V>> result = Maps.newHashMapWithExpectedSize(promises.size());
     for (final Map.Entry<K, ComposablePromise<V>> promiseEntry : promises.entrySet()) {
@@ -301,26 +759,115 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
 
   @Override
   public ComposableFuture<Boolean> setAsync(final K key, final V value) {
-    return cache.setAsync(key, value);
+    return cache.setAsync(key, toCached(value));
   }
 
   @Override
   public ComposableFuture<Boolean> setIfAbsentAsync(final K key, final V value) {
-    return cache.setIfAbsentAsync(key, value);
+    return cache.setIfAbsentAsync(key, toCached(value));
   }
 
   @Override
+  @SuppressWarnings("unchecked")
   public ComposableFuture<Boolean> setAsync(final K key, final EntryMapper<K, V> mapper, final int maxIterations) {
-    return cache.setAsync(key, mapper, maxIterations);
+    if (softTtlMs < 0) {
+      return cache.setAsync(key, (EntryMapper<K, Object>) (EntryMapper<K, ?>) mapper, maxIterations);
+    }
+
+    return cache.setAsync(key, (k, cached) -> {
+      final V value = mapper.map(k, cached == null ? null : valueOf(cached));
+      return value == null ? null : toCached(value);
+    }, maxIterations);
   }
 
   @Override
   public ComposableFuture<Map<K, Boolean>> setBulkAsync(final Map<? extends K, ? extends V> entries) {
-    return cache.setBulkAsync(entries);
+    return softTtlMs < 0 ? cache.setBulkAsync(entries) : cache.setBulkAsync(toCached(entries));
   }
 
   @Override
   public ComposableFuture<Boolean> deleteAsync(final K key) {
     return cache.deleteAsync(key);
   }
+
+  public static class Builder<K, V> {
+
+    private final TypedCache<K, ?> cache;
+    private final CacheLoader<K, V> loader;
+    private final String cacheName;
+    private final long softTtlMs;
+    private final long hardTtlMs;
+    private MetricFactory metricFactory;
+    private long duration = DEFAULT_DURATION_MS;
+    private TimeUnit timeUnit = TimeUnit.MILLISECONDS;
+    private boolean failOnError;
+    private double earlyRefreshBeta;
+    private TypedCache<K, String> leases;
+    private long leaseWaitMs;
+    private long leasePollMs;
+
+    private Builder(final TypedCache<K, ?> cache, final CacheLoader<K, V> loader, final String cacheName,
+                    final long softTtlMs, final long hardTtlMs) {
+      this.cache = cache;
+      this.loader = loader;
+      this.cacheName = cacheName;
+      this.softTtlMs = softTtlMs;
+      this.hardTtlMs = hardTtlMs;
+    }
+
+    public Builder<K, V> withMetrics(final MetricFactory metricFactory) {
+      this.metricFactory = metricFactory;
+      return this;
+    }
+
+    /**
+     * @param duration the timeout of the cache and loader calls.
+     */
+    public Builder<K, V> withTimeout(final long duration, final TimeUnit timeUnit) {
+      this.duration = duration;
+      this.timeUnit = timeUnit;
+      return this;
+    }
+
+    public Builder<K, V> failOnError(final boolean failOnError) {
+      this.failOnError = failOnError;
+      return this;
+    }
+
+    /**
+     * refreshes values ahead of the soft ttl at random, see the xfetch algorithm.
+     *
+     * @param beta scales how early values are refreshed; 1 is a good default, higher values refresh earlier.
+     */
+    public Builder<K, V> withEarlyRefresh(final double beta) {
+      checkState(softTtlMs >= 0, "early refresh requires a soft ttl");
+      checkArgument(beta > 0, "beta must be positive");
+      this.earlyRefreshBeta = beta;
+      return this;
+    }
+
+    /**
+     * lets a single process at a time load, or refresh, a key missing from a cache shared by many processes.
+     * bulk loads lease each of the missing keys, while bulk refreshes are not leased.
+     *
+     * @param leases       holds the leases of the keys being loaded. its keys must not collide with the keys of the
+     *                     values cache, and its entries should expire after about the loader timeout, so the lease of
+     *                     a process that failed to release it doesn't outlive the load.
+     * @param maxWait      how long processes not holding the lease wait for the loaded value before loading it themselves.
+     * @param pollInterval how often they look for the loaded value meanwhile.
+     */
+    public Builder<K, V> withLeases(final TypedCache<K, String> leases, final long maxWait, final long pollInterval,
+                                    final TimeUnit unit) {
+      checkArgument(maxWait >= pollInterval, "maxWait must not be shorter than pollInterval");
+      checkArgument(pollInterval > 0, "pollInterval must be positive");
+      this.leases = leases;
+      this.leaseWaitMs = unit.toMillis(maxWait);
+      this.leasePollMs = unit.toMillis(pollInterval);
+      return this;
+    }
+
+    public LoadingCacheDelegate<K, V> build() {
+      return new LoadingCacheDelegate<>(this);
+    }
+  }
 }
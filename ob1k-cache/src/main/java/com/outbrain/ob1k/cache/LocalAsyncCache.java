@@ -1,10 +1,5 @@
 package com.outbrain.ob1k.cache;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.LoadingCache;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ExecutionError;
 import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.outbrain.ob1k.concurrent.UncheckedExecutionException;
@@ -17,6 +12,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 import static com.outbrain.ob1k.concurrent.ComposableFutures.all;
 import static com.outbrain.ob1k.concurrent.ComposableFutures.fromError;
 import static com.outbrain.ob1k.concurrent.ComposableFutures.fromNull;
@@ -27,10 +24,31 @@ import static com.outbrain.ob1k.concurrent.ComposableFutures.fromValue;
  * User: aronen
  * Date: 6/30/13
  * Time: 6:08 PM
+ *
+ * the loader is called once per missing key on single key reads; wrap it with a {@link BatchingCacheLoader}
+ * to merge the concurrent misses into bulk loads.
+ *
+ * the values are kept by one of two engines, chosen with {@link #newBuilder(int)}:
+ * a Guava cache (the default), or a Caffeine cache, whose frequency based eviction keeps a better hit ratio on skewed
+ * workloads, and whose reads don't lock, so it scales better on many cores. it can also expire entries by their values.
  */
 public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
-  private final LoadingCache<K, ComposableFuture<V>> loadingCache;
-  private final Cache<K, ComposableFuture<V>> localCache;
+
+  /**
+   * the engines keeping the values of the cache.
+   */
+  public enum Engine {
+    /**
+     * Guava's cache: lru eviction per segment, reads and writes lock their segment.
+     */
+    GUAVA,
+    /**
+     * Caffeine's cache: w-tinylfu eviction, lock free reads, and variable expiry.
+     */
+    CAFFEINE
+  }
+
+  private final LocalCacheEngine<K, V> engine;
   private final CacheLoader<K, V> loader;
   private final String cacheName;
   private final boolean failOnMissingEntries;
@@ -42,35 +60,10 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
 
   public LocalAsyncCache(final int maximumSize, final int ttl, final TimeUnit unit, final CacheLoader<K, V> loader,
                          final MetricFactory metricFactory, final String cacheName, final boolean failOnMissingEntries) {
-    this.loader = loader;
-    this.cacheName = cacheName;
-    this.failOnMissingEntries = failOnMissingEntries;
-
-    final boolean collectStats = metricFactory != null;
-    final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
-        .maximumSize(maximumSize)
-        .expireAfterWrite(ttl, unit);
-
-    if (collectStats)
-      builder.recordStats();
-
-    this.loadingCache = builder
-        .build(new com.google.common.cache.CacheLoader<K, ComposableFuture<V>>() {
-          public ComposableFuture<V> load(final K key) throws Exception {
-            return loadElement(key);
-          }
-
-          @Override
-          public Map<K, ComposableFuture<V>> loadAll(final Iterable<? extends K> keys) throws Exception {
-            return loadElements(Lists.newArrayList(keys));
-          }
-        });
-
-    if (collectStats) {
-      GuavaCacheGaugesFactory.createGauges(metricFactory, loadingCache, "LocalAsyncCache-" + cacheName);
-    }
-
-    this.localCache = null;
+    this(LocalAsyncCache.<K, V>newBuilder(maximumSize).
+      expireAfterWrite(ttl, unit).
+      withLoader(loader, failOnMissingEntries).
+      withMetrics(metricFactory, cacheName));
   }
 
   public LocalAsyncCache(final int maximumSize, final int ttl, final TimeUnit unit, final CacheLoader<K, V> loader) {
@@ -78,24 +71,9 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
   }
 
   public LocalAsyncCache(final int maximumSize, final int ttl, final TimeUnit unit, final MetricFactory metricFactory, final String cacheName) {
-    this.loader = null;
-    this.loadingCache = null;
-    this.failOnMissingEntries = true; // fake value, not in use.
-    this.cacheName = cacheName;
-
-    final boolean collectStats = metricFactory != null;
-    final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
-        .maximumSize(maximumSize)
-        .expireAfterWrite(ttl, unit);
-
-    if (collectStats) {
-      builder.recordStats();
-    }
-
-    this.localCache = builder.build();
-    if (collectStats) {
-      GuavaCacheGaugesFactory.createGauges(metricFactory, localCache, "LocalAsyncCache-" + cacheName);
-    }
+    this(LocalAsyncCache.<K, V>newBuilder(maximumSize).
+      expireAfterWrite(ttl, unit).
+      withMetrics(metricFactory, cacheName));
   }
 
   public LocalAsyncCache(final int maximumSize, final int ttl, final TimeUnit unit) {
@@ -107,6 +85,22 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
     this(1000, 20, TimeUnit.SECONDS);
   }
 
+  private LocalAsyncCache(final Builder<K, V> builder) {
+    this.loader = builder.loader;
+    this.cacheName = builder.cacheName;
+    this.failOnMissingEntries = builder.failOnMissingEntries;
+
+    final Function<K, ComposableFuture<V>> load = loader == null ? null : this::loadElement;
+    final Function<Iterable<? extends K>, Map<K, ComposableFuture<V>>> loadAll = loader == null ? null : this::loadElements;
+    this.engine = builder.engine == Engine.CAFFEINE ?
+      new CaffeineCacheEngine<>(builder, load, loadAll) :
+      new GuavaCacheEngine<>(builder, load, loadAll);
+  }
+
+  public static <K, V> Builder<K, V> newBuilder(final int maximumSize) {
+    return new Builder<>(maximumSize);
+  }
+
   private ComposableFuture<V> loadElement(final K key) {
     return loader.load(cacheName, key).materialize();
   }
@@ -138,22 +132,19 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
   @Override
   public ComposableFuture<V> getAsync(final K key) {
     try {
-      if (loadingCache != null) {
-        final ComposableFuture<V> res = loadingCache.get(key);
-        if (res == null) {
-          return fromNull();
-        }
+      final ComposableFuture<V> res = engine.get(key);
+      if (res == null) {
+        return fromNull();
+      }
+
+      if (loader != null) {
         return res.recoverWith(error -> {
-          loadingCache.asMap().remove(key, res);
+          engine.asMap().remove(key, res);
           return fromError(error);
         });
-      } else {
-        final ComposableFuture<V> res = localCache.getIfPresent(key);
-        if (res == null) {
-          return fromNull();
-        }
-        return res;
       }
+
+      return res;
     } catch (final com.google.common.util.concurrent.UncheckedExecutionException e) {
       return fromError(e.getCause());
     } catch (final ExecutionException | UncheckedExecutionException | ExecutionError e) {
@@ -161,11 +152,11 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
     }
   }
 
-  private void unloadErrorsFromCache(final ImmutableMap<K, ComposableFuture<V>> innerMap, final Iterable<? extends K> keys) {
+  private void unloadErrorsFromCache(final Map<K, ComposableFuture<V>> innerMap, final Iterable<? extends K> keys) {
     for (final K key : keys) {
       innerMap.get(key).consume(result -> {
         if (!result.isSuccess() || result.getValue() == null) {
-          loadingCache.asMap().remove(key);
+          engine.asMap().remove(key);
         }
       });
     }
@@ -174,12 +165,9 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
   @Override
   public ComposableFuture<Map<K, V>> getBulkAsync(final Iterable<? extends K> keys) {
     try {
-      final ImmutableMap<K, ComposableFuture<V>> innerMap;
-      if (loadingCache != null) {
-        innerMap = loadingCache.getAll(keys);
+      final Map<K, ComposableFuture<V>> innerMap = engine.getAll(keys);
+      if (loader != null) {
         unloadErrorsFromCache(innerMap, keys);
-      } else {
-        innerMap = localCache.getAllPresent(keys);
       }
 
       final Map<K, ComposableFuture<V>> result = new HashMap<>();
@@ -198,35 +186,26 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
 
   @Override
   public ComposableFuture<Boolean> deleteAsync(final K key) {
-    if (loadingCache != null) {
-      loadingCache.invalidate(key);
-    } else {
-      localCache.invalidate(key);
-    }
+    engine.asMap().remove(key);
 
     return fromValue(true);
   }
 
   @Override
   public ComposableFuture<Boolean> setAsync(final K key, final V value) {
-    if (loadingCache != null) {
-      loadingCache.put(key, fromValue(value));
-    } else {
-      localCache.put(key, fromValue(value));
-    }
+    engine.asMap().put(key, fromValue(value));
 
     return fromValue(true);
   }
 
   @Override
   public ComposableFuture<Boolean> setIfAbsentAsync(final K key, final V value) {
-    final Cache<K, ComposableFuture<V>> cache = loadingCache == null ? localCache : loadingCache;
-    return fromValue(cache.asMap().putIfAbsent(key, fromValue(value)) == null);
+    return fromValue(engine.asMap().putIfAbsent(key, fromValue(value)) == null);
   }
 
   @Override
   public ComposableFuture<Boolean> setAsync(final K key, final EntryMapper<K, V> mapper, final int maxIterations) {
-    final ConcurrentMap<K, ComposableFuture<V>> map = loadingCache != null ? loadingCache.asMap() : localCache.asMap();
+    final ConcurrentMap<K, ComposableFuture<V>> map = engine.asMap();
     try {
       if (maxIterations == 0) {
         return fromValue(false);
@@ -281,4 +260,77 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
     return all(false, result);
   }
 
+  public static class Builder<K, V> {
+
+    final int maximumSize;
+    long expireAfterWrite;
+    TimeUnit expireAfterWriteUnit;
+    long expireAfterAccess;
+    TimeUnit expireAfterAccessUnit;
+    EntryExpiry<K, V> expiry;
+    CacheLoader<K, V> loader;
+    boolean failOnMissingEntries;
+    MetricFactory metricFactory;
+    String cacheName;
+    Engine engine = Engine.GUAVA;
+
+    private Builder(final int maximumSize) {
+      checkArgument(maximumSize >= 0, "maximumSize must not be negative");
+      this.maximumSize = maximumSize;
+    }
+
+    public Builder<K, V> expireAfterWrite(final long ttl, final TimeUnit unit) {
+      this.expireAfterWrite = ttl;
+      this.expireAfterWriteUnit = unit;
+      return this;
+    }
+
+    public Builder<K, V> expireAfterAccess(final long ttl, final TimeUnit unit) {
+      this.expireAfterAccess = ttl;
+      this.expireAfterAccessUnit = unit;
+      return this;
+    }
+
+    /**
+     * expires every entry by its value; entries whose value is missing or still loading expire after the
+     * expireAfterWrite ttl, if any. supported by the {@link Engine#CAFFEINE} engine only.
+     */
+    public Builder<K, V> withVariableExpiry(final EntryExpiry<K, V> expiry) {
+      this.expiry = expiry;
+      return this;
+    }
+
+    public Builder<K, V> withLoader(final CacheLoader<K, V> loader) {
+      return withLoader(loader, false);
+    }
+
+    /**
+     * @param failOnMissingEntries whether keys missing from the bulk loads fail, or are read as null.
+     */
+    public Builder<K, V> withLoader(final CacheLoader<K, V> loader, final boolean failOnMissingEntries) {
+      this.loader = loader;
+      this.failOnMissingEntries = failOnMissingEntries;
+      return this;
+    }
+
+    public Builder<K, V> withMetrics(final MetricFactory metricFactory, final String cacheName) {
+      this.metricFactory = metricFactory;
+      this.cacheName = cacheName;
+      return this;
+    }
+
+    public Builder<K, V> withEngine(final Engine engine) {
+      this.engine = engine;
+      return this;
+    }
+
+    public LocalAsyncCache<K, V> build() {
+      if (expiry != null) {
+        checkState(engine == Engine.CAFFEINE, "variable expiry is supported by the CAFFEINE engine only");
+        checkState(expireAfterAccessUnit == null, "variable expiry can't be combined with expireAfterAccess");
+      }
+
+      return new LocalAsyncCache<>(this);
+    }
+  }
 }
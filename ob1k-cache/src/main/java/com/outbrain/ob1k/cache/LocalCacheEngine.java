@@ -0,0 +1,30 @@
+package com.outbrain.ob1k.cache;
+
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * the in memory storage behind a {@link LocalAsyncCache}, holding the futures of the values.
+ *
+ * @see LocalAsyncCache.Engine
+ */
+interface LocalCacheEngine<K, V> {
+
+  /**
+   * @return the future value of the key, loaded if it is missing and the engine has a loader, or null.
+   * @throws ExecutionException if the loader failed to start loading the value.
+   */
+  ComposableFuture<V> get(K key) throws ExecutionException;
+
+  /**
+   * @return the future values of the keys, loaded if they are missing and the engine has a loader,
+   * or only the present ones otherwise.
+   * @throws ExecutionException if the loader failed to start loading the values.
+   */
+  Map<K, ComposableFuture<V>> getAll(Iterable<? extends K> keys) throws ExecutionException;
+
+  ConcurrentMap<K, ComposableFuture<V>> asMap();
+}
@@ -0,0 +1,423 @@
+package com.outbrain.ob1k.cache;
+
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.Try;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.outbrain.ob1k.concurrent.ComposableFutures.all;
+import static com.outbrain.ob1k.concurrent.ComposableFutures.fromError;
+import static com.outbrain.ob1k.concurrent.ComposableFutures.fromNull;
+import static com.outbrain.ob1k.concurrent.ComposableFutures.fromValue;
+import static com.outbrain.ob1k.concurrent.ComposableFutures.newPromise;
+
+/**
+ * a two tier cache, keeping a short lived in process near cache in front of a shared remote cache (e.g. memcached).
+ *
+ * reads go to the near cache first, then to the remote cache, and finally to the loader if there's one,
+ * filling the tiers they missed on the way back. bulk reads only ask the remote cache for the near cache misses,
+ * and concurrent reads of a key missing from the near cache share a single remote fetch.
+ *
+ * writes always go to the remote cache, and update (write through) or invalidate (write around) the near cache.
+ * near caches of other instances are only invalidated if an {@link InvalidationChannel} is configured,
+ * otherwise they may serve a stale value for up to the near cache ttl, which should be kept short accordingly.
+ *
+ * @see #newBuilder(String, TypedCache)
+ */
+public class TieredTypedCache<K, V> implements TypedCache<K, V> {
+  private static final Logger log = LoggerFactory.getLogger(TieredTypedCache.class);
+
+  private static final int DEFAULT_NEAR_CACHE_SIZE = 10000;
+  private static final int DEFAULT_NEAR_CACHE_TTL_SECONDS = 5;
+
+  public enum WriteMode {
+    /**
+     * writes update the remote cache and the near cache of the writing instance.
+     */
+    WRITE_THROUGH,
+    /**
+     * writes update the remote cache and invalidate the near cache of the writing instance,
+     * so written values are only kept near once they are read.
+     */
+    WRITE_AROUND
+  }
+
+  private final String cacheName;
+  private final TypedCache<K, V> nearCache;
+  private final TypedCache<K, V> remoteCache;
+  private final CacheLoader<K, V> loader;
+  private final WriteMode writeMode;
+  private final InvalidationChannel<K> invalidationChannel;
+  private final String instanceId;
+
+  // fetches of near cache misses in progress, removed by an invalidation so their possibly stale values aren't kept near
+  private final ConcurrentMap<K, ComposablePromise<V>> pendingFetches;
+
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder nearHits = new LongAdder();
+  private final LongAdder remoteRequests = new LongAdder();
+  private final LongAdder remoteHits = new LongAdder();
+  private final LongAdder remoteErrors = new LongAdder();
+  private final LongAdder loaderRequests = new LongAdder();
+  private final LongAdder loaderHits = new LongAdder();
+
+  private TieredTypedCache(final Builder<K, V> builder) {
+    this.cacheName = builder.cacheName;
+    this.nearCache = new LocalAsyncCache<>(builder.nearCacheSize, builder.nearCacheTtl, builder.nearCacheTtlUnit,
+      builder.metricFactory, builder.cacheName + "-near");
+    this.remoteCache = builder.remoteCache;
+    this.loader = builder.loader;
+    this.writeMode = builder.writeMode;
+    this.invalidationChannel = builder.invalidationChannel;
+    this.instanceId = UUID.randomUUID().toString();
+    this.pendingFetches = new ConcurrentHashMap<>();
+
+    if (builder.metricFactory != null) {
+      final String component = "TieredTypedCache." + cacheName;
+      builder.metricFactory.registerGauge(component, "requests", requests::sum);
+      builder.metricFactory.registerGauge(component, "nearHitRatio", this::getNearHitRatio);
+      builder.metricFactory.registerGauge(component, "remoteHitRatio", this::getRemoteHitRatio);
+      builder.metricFactory.registerGauge(component, "loaderHitRatio", this::getLoaderHitRatio);
+      builder.metricFactory.registerGauge(component, "remoteErrors", remoteErrors::sum);
+      builder.metricFactory.registerGauge(component, "pendingFetches", pendingFetches::size);
+    }
+
+    if (invalidationChannel != null) {
+      invalidationChannel.subscribe((source, key) -> {
+        if (!instanceId.equals(source)) {
+          invalidateNear(key);
+        }
+      });
+    }
+  }
+
+  public static <K, V> Builder<K, V> newBuilder(final String cacheName, final TypedCache<K, V> remoteCache) {
+    return new Builder<>(cacheName, remoteCache);
+  }
+
+  @Override
+  public ComposableFuture<V> getAsync(final K key) {
+    requests.increment();
+    return nearCache.getAsync(key).flatMap(value -> {
+      if (value != null) {
+        nearHits.increment();
+        return fromValue(value);
+      }
+
+      final ComposablePromise<V> promise = newPromise();
+      final ComposablePromise<V> pending = pendingFetches.putIfAbsent(key, promise);
+      if (pending != null) {
+        return pending.future();
+      }
+
+      fetchRemote(key).consume(result -> complete(key, promise, result));
+      return promise.future();
+    });
+  }
+
+  @Override
+  public ComposableFuture<Map<K, V>> getBulkAsync(final Iterable<? extends K> keys) {
+    final Set<K> uniqueKeys = new LinkedHashSet<>();
+    keys.forEach(uniqueKeys::add);
+    requests.add(uniqueKeys.size());
+
+    return nearCache.getBulkAsync(uniqueKeys).flatMap(nearValues -> {
+      nearHits.add(nearValues.size());
+      if (nearValues.size() == uniqueKeys.size()) {
+        return fromValue(nearValues);
+      }
+
+      final Map<K, ComposableFuture<V>> missingValues = new HashMap<>();
+      final Map<K, ComposablePromise<V>> fetches = new HashMap<>();
+      for (final K key : uniqueKeys) {
+        if (nearValues.containsKey(key)) {
+          continue;
+        }
+
+        final ComposablePromise<V> promise = newPromise();
+        final ComposablePromise<V> pending = pendingFetches.putIfAbsent(key, promise);
+        if (pending != null) {
+          missingValues.put(key, pending.future());
+        } else {
+          missingValues.put(key, promise.future());
+          fetches.put(key, promise);
+        }
+      }
+
+      if (!fetches.isEmpty()) {
+        fetchRemote(fetches.keySet()).consume(result -> {
+          for (final Map.Entry<K, ComposablePromise<V>> fetch : fetches.entrySet()) {
+            final K key = fetch.getKey();
+            complete(key, fetch.getValue(), result.isSuccess() ? Try.fromValue(result.getValue().get(key)) : Try.fromError(result.getError()));
+          }
+        });
+      }
+
+      return all(true, missingValues).map(fetchedValues -> {
+        final Map<K, V> values = new HashMap<>(nearValues);
+        for (final Map.Entry<K, V> fetched : fetchedValues.entrySet()) {
+          if (fetched.getValue() != null) {
+            values.put(fetched.getKey(), fetched.getValue());
+          }
+        }
+
+        return values;
+      });
+    });
+  }
+
+  private ComposableFuture<V> fetchRemote(final K key) {
+    remoteRequests.increment();
+    return remoteCache.getAsync(key).recoverWith(error -> {
+      remoteErrors.increment();
+      if (loader == null) {
+        return fromError(error);
+      }
+
+      log.warn("failed reading {} from the remote cache of {}, loading it instead", key, cacheName, error);
+      return fromNull();
+    }).flatMap(value -> {
+      if (value != null) {
+        remoteHits.increment();
+        return fromValue(value);
+      }
+
+      if (loader == null) {
+        return fromNull();
+      }
+
+      loaderRequests.increment();
+      return loader.load(cacheName, key).map(loaded -> {
+        if (loaded != null) {
+          loaderHits.increment();
+          remoteCache.setAsync(key, loaded).consume(this::logFailedRemoteFill);
+        }
+
+        return loaded;
+      });
+    });
+  }
+
+  private ComposableFuture<Map<K, V>> fetchRemote(final Set<K> keys) {
+    remoteRequests.add(keys.size());
+    return remoteCache.getBulkAsync(keys).recoverWith(error -> {
+      remoteErrors.increment();
+      if (loader == null) {
+        return fromError(error);
+      }
+
+      log.warn("failed reading {} keys from the remote cache of {}, loading them instead", keys.size(), cacheName, error);
+      return fromValue(Collections.<K, V>emptyMap());
+    }).flatMap(remoteValues -> {
+      remoteHits.add(remoteValues.size());
+      if (loader == null || remoteValues.size() == keys.size()) {
+        return fromValue(remoteValues);
+      }
+
+      final List<K> missingKeys = new ArrayList<>();
+      for (final K key : keys) {
+        if (!remoteValues.containsKey(key)) {
+          missingKeys.add(key);
+        }
+      }
+
+      loaderRequests.add(missingKeys.size());
+      return loader.load(cacheName, missingKeys).map(loadedValues -> {
+        final Map<K, V> values = new HashMap<>(remoteValues);
+        final Map<K, V> loaded = new HashMap<>();
+        for (final K key : missingKeys) {
+          final V value = loadedValues.get(key);
+          if (value != null) {
+            loaded.put(key, value);
+          }
+        }
+
+        if (!loaded.isEmpty()) {
+          loaderHits.add(loaded.size());
+          values.putAll(loaded);
+          remoteCache.setBulkAsync(loaded).consume(this::logFailedRemoteFill);
+        }
+
+        return values;
+      });
+    });
+  }
+
+  private void complete(final K key, final ComposablePromise<V> promise, final Try<V> result) {
+    final boolean stillPending = pendingFetches.remove(key, promise);
+    if (stillPending && result.isSuccess() && result.getValue() != null) {
+      nearCache.setAsync(key, result.getValue());
+    }
+
+    promise.setTry(result);
+  }
+
+  private void logFailedRemoteFill(final Try<?> result) {
+    if (!result.isSuccess()) {
+      log.error("failed filling the remote cache of {} with loaded values", cacheName, result.getError());
+    }
+  }
+
+  @Override
+  public ComposableFuture<Boolean> setAsync(final K key, final V value) {
+    return remoteCache.setAsync(key, value).andThen(result -> afterWrite(key, value, isTrue(result)));
+  }
+
+  @Override
+  public ComposableFuture<Boolean> setIfAbsentAsync(final K key, final V value) {
+    return remoteCache.setIfAbsentAsync(key, value).andThen(result -> {
+      // a value that was already there isn't changed, so there's nothing to invalidate
+      if (isTrue(result)) {
+        afterWrite(key, value, true);
+      }
+    });
+  }
+
+  /**
+   * the mapped value is never written through, as it's only known to the remote cache.
+   */
+  @Override
+  public ComposableFuture<Boolean> setAsync(final K key, final EntryMapper<K, V> mapper, final int maxIterations) {
+    return remoteCache.setAsync(key, mapper, maxIterations).andThen(result -> afterWrite(key, null, false));
+  }
+
+  @Override
+  public ComposableFuture<Map<K, Boolean>> setBulkAsync(final Map<? extends K, ? extends V> entries) {
+    return remoteCache.setBulkAsync(entries).andThen(result -> {
+      for (final Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+        final boolean written = result.isSuccess() && Boolean.TRUE.equals(result.getValue().get(entry.getKey()));
+        afterWrite(entry.getKey(), entry.getValue(), written);
+      }
+    });
+  }
+
+  @Override
+  public ComposableFuture<Boolean> deleteAsync(final K key) {
+    return remoteCache.deleteAsync(key).andThen(result -> afterWrite(key, null, false));
+  }
+
+  private void afterWrite(final K key, final V value, final boolean written) {
+    invalidateNear(key);
+    if (written && writeMode == WriteMode.WRITE_THROUGH) {
+      nearCache.setAsync(key, value);
+    }
+
+    if (invalidationChannel != null) {
+      try {
+        invalidationChannel.publish(instanceId, key);
+      } catch (final RuntimeException e) {
+        log.warn("failed publishing the invalidation of {} in {}", key, cacheName, e);
+      }
+    }
+  }
+
+  private void invalidateNear(final K key) {
+    pendingFetches.remove(key);
+    nearCache.deleteAsync(key);
+  }
+
+  private static boolean isTrue(final Try<Boolean> result) {
+    return result.isSuccess() && Boolean.TRUE.equals(result.getValue());
+  }
+
+  /**
+   * @return the ratio of the requested keys found in the near cache.
+   */
+  public double getNearHitRatio() {
+    return ratio(nearHits.sum(), requests.sum());
+  }
+
+  /**
+   * @return the ratio of the keys missing from the near cache that were found in the remote cache.
+   */
+  public double getRemoteHitRatio() {
+    return ratio(remoteHits.sum(), remoteRequests.sum());
+  }
+
+  /**
+   * @return the ratio of the keys missing from both caches that were found by the loader.
+   */
+  public double getLoaderHitRatio() {
+    return ratio(loaderHits.sum(), loaderRequests.sum());
+  }
+
+  private static double ratio(final long hits, final long total) {
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  public static class Builder<K, V> {
+    private final String cacheName;
+    private final TypedCache<K, V> remoteCache;
+    private CacheLoader<K, V> loader;
+    private int nearCacheSize = DEFAULT_NEAR_CACHE_SIZE;
+    private int nearCacheTtl = DEFAULT_NEAR_CACHE_TTL_SECONDS;
+    private TimeUnit nearCacheTtlUnit = TimeUnit.SECONDS;
+    private WriteMode writeMode = WriteMode.WRITE_THROUGH;
+    private InvalidationChannel<K> invalidationChannel;
+    private MetricFactory metricFactory;
+
+    private Builder(final String cacheName, final TypedCache<K, V> remoteCache) {
+      this.cacheName = checkNotNull(cacheName, "cacheName may not be null");
+      this.remoteCache = checkNotNull(remoteCache, "remoteCache may not be null");
+    }
+
+    /**
+     * loads the keys missing from both caches, filling the remote cache with the loaded values.
+     */
+    public Builder<K, V> withLoader(final CacheLoader<K, V> loader) {
+      this.loader = loader;
+      return this;
+    }
+
+    /**
+     * sets the size and the ttl of the near cache; the ttl bounds how long a stale value can be served.
+     */
+    public Builder<K, V> withNearCache(final int maximumSize, final int ttl, final TimeUnit unit) {
+      checkArgument(maximumSize > 0, "maximumSize must be positive");
+      checkArgument(ttl > 0, "ttl must be positive");
+      this.nearCacheSize = maximumSize;
+      this.nearCacheTtl = ttl;
+      this.nearCacheTtlUnit = checkNotNull(unit, "unit may not be null");
+      return this;
+    }
+
+    public Builder<K, V> withWriteMode(final WriteMode writeMode) {
+      this.writeMode = checkNotNull(writeMode, "writeMode may not be null");
+      return this;
+    }
+
+    /**
+     * broadcasts every write to the near caches of the other instances subscribed to the channel.
+     */
+    public Builder<K, V> withInvalidationChannel(final InvalidationChannel<K> invalidationChannel) {
+      this.invalidationChannel = invalidationChannel;
+      return this;
+    }
+
+    public Builder<K, V> withMetrics(final MetricFactory metricFactory) {
+      this.metricFactory = metricFactory;
+      return this;
+    }
+
+    public TieredTypedCache<K, V> build() {
+      return new TieredTypedCache<>(this);
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package com.outbrain.ob1k.cache;
+
+import java.io.Serializable;
+
+/**
+ * a cached value along with the time it was written at, used to tell a stale value from a fresh one.
+ * has a default constructor and setters so that any of the memcached transcoders can serialize it.
+ *
+ * @see LoadingCacheDelegate#withSoftTtl(TypedCache, CacheLoader, String, com.outbrain.swinfra.metrics.api.MetricFactory, long, long, java.util.concurrent.TimeUnit)
+ */
+public class TimestampedValue<V> implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private V value;
+  private long timestamp;
+
+  public TimestampedValue() {
+  }
+
+  public TimestampedValue(final V value, final long timestamp) {
+    this.value = value;
+    this.timestamp = timestamp;
+  }
+
+  public V getValue() {
+    return value;
+  }
+
+  public void setValue(final V value) {
+    this.value = value;
+  }
+
+  /**
+   * @return the write time of the value, in epoch millis.
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public void setTimestamp(final long timestamp) {
+    this.timestamp = timestamp;
+  }
+
+  @Override
+  public String toString() {
+    return "TimestampedValue{value=" + value + ", timestamp=" + timestamp + '}';
+  }
+}
@@ -120,11 +120,9 @@ public class MemcacheClient<K, V> implements TypedCache<K, V> {
   private ComposableFuture<CASResponse> casUpdate(final K key, final EntryMapper<K, V> mapper) {
     try {
       final String cacheKey = keyTranslator.translateKey(key);
-      final ComposableFuture<CASValue<V>> getFutureValue = SpyFutureHelper.fromCASValue(() -> {
-        @SuppressWarnings("unchecked")
-        final Transcoder<V> transcoder = (Transcoder<V>) spyClient.getTranscoder();
-        return spyClient.asyncGets(cacheKey, transcoder);
-      });
+      @SuppressWarnings("unchecked")
+      final Transcoder<V> transcoder = (Transcoder<V>) spyClient.getTranscoder();
+      final ComposableFuture<CASValue<V>> getFutureValue = SpyFutureHelper.fromCASValue(() -> spyClient.asyncGets(cacheKey, transcoder));
 
       return getFutureValue.flatMap(result -> {
         final V newValue = result == null ? mapper.map(key, null) : mapper.map(key, result.getValue());
@@ -133,7 +131,7 @@ public class MemcacheClient<K, V> implements TypedCache<K, V> {
         }
 
         if (result != null) {
-          return SpyFutureHelper.fromCASResponse(() -> spyClient.asyncCAS(cacheKey, result.getCas(), newValue));
+          return SpyFutureHelper.fromCASResponse(() -> spyClient.asyncCAS(cacheKey, result.getCas(), expirationSpyUnits, newValue, transcoder));
 
         } else {
           final ComposableFuture<Boolean> addResponse = SpyFutureHelper.fromOperation(
@@ -2,7 +2,8 @@ package com.outbrain.ob1k.cache.memcache;
 
 import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.outbrain.ob1k.concurrent.ComposableFutures;
-import com.outbrain.ob1k.concurrent.Try;
+import com.outbrain.ob1k.concurrent.ExecutionAffinity;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
 import net.spy.memcached.CASResponse;
 import net.spy.memcached.CASValue;
 import net.spy.memcached.internal.BulkFuture;
@@ -13,12 +14,16 @@ import net.spy.memcached.internal.OperationFuture;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 
 /**
  * User: aronen
  * Date: 9/18/13
  * Time: 11:34 AM
+ *
+ * cancelling the returned futures cancels the underlying spymemcached operations.
+ * the futures complete on the spymemcached listener thread, unless an executor is bound, see {@link ExecutionAffinity}.
  */
 public class SpyFutureHelper {
   public interface GetFutureProducer<T> {
@@ -26,25 +31,28 @@ public class SpyFutureHelper {
   }
 
   public static <T> ComposableFuture<T> fromGet(final GetFutureProducer<T> source) {
-    return ComposableFutures.build(consumer -> {
-      try {
-        final GetFuture<T> realFuture = (GetFuture<T>) source.createFuture();
-        realFuture.addListener(future -> {
-          try {
-            final T value = realFuture.get();
-            consumer.consume(Try.fromValue(value));
-          } catch (final InterruptedException e) {
-            consumer.consume(Try.fromError(e));
-          } catch (final ExecutionException e) {
-            consumer.consume(Try.fromError(e.getCause() == null ? e : e.getCause()));
-          } catch (final Exception e) {
-            consumer.consume(Try.fromError(e));
-          }
-        });
-      } catch (final Exception e) {
-        consumer.consume(Try.fromError(e));
-      }
-    });
+    final ComposablePromise<T> promise = ComposableFutures.newPromise();
+    final Executor resumeOn = resumeExecutor();
+    try {
+      final GetFuture<T> realFuture = (GetFuture<T>) source.createFuture();
+      promise.onCancel(realFuture::cancel);
+      realFuture.addListener(future -> resumeOn.execute(() -> {
+        try {
+          final T value = realFuture.get();
+          promise.set(value);
+        } catch (final InterruptedException e) {
+          promise.setException(e);
+        } catch (final ExecutionException e) {
+          promise.setException(e.getCause() == null ? e : e.getCause());
+        } catch (final Exception e) {
+          promise.setException(e);
+        }
+      }));
+    } catch (final Exception e) {
+      promise.setException(e);
+    }
+
+    return promise.future();
   }
 
   public interface CASValueFutureProducer<T> {
@@ -52,22 +60,25 @@ public class SpyFutureHelper {
   }
 
   public static <T> ComposableFuture<CASValue<T>> fromCASValue(final CASValueFutureProducer<T> source) {
-    return ComposableFutures.build(consumer -> {
-      final OperationFuture<CASValue<T>> realFuture = (OperationFuture<CASValue<T>>) source.createFuture();
-      realFuture.addListener(future -> {
-        try {
-          @SuppressWarnings("unchecked")
-          final CASValue<T> value = realFuture.get();
-          consumer.consume(Try.fromValue(value));
-        } catch (final InterruptedException e) {
-          consumer.consume(Try.fromError(e));
-        } catch (final ExecutionException e) {
-          consumer.consume(Try.fromError(e.getCause() == null ? e : e.getCause()));
-        } catch (final Exception e) {
-          consumer.consume(Try.fromError(e));
-        }
-      });
-    });
+    final ComposablePromise<CASValue<T>> promise = ComposableFutures.newPromise();
+    final Executor resumeOn = resumeExecutor();
+    final OperationFuture<CASValue<T>> realFuture = (OperationFuture<CASValue<T>>) source.createFuture();
+    promise.onCancel(realFuture::cancel);
+    realFuture.addListener(future -> resumeOn.execute(() -> {
+      try {
+        @SuppressWarnings("unchecked")
+        final CASValue<T> value = realFuture.get();
+        promise.set(value);
+      } catch (final InterruptedException e) {
+        promise.setException(e);
+      } catch (final ExecutionException e) {
+        promise.setException(e.getCause() == null ? e : e.getCause());
+      } catch (final Exception e) {
+        promise.setException(e);
+      }
+    }));
+
+    return promise.future();
   }
 
   public interface CASFutureProducer {
@@ -75,21 +86,24 @@ public class SpyFutureHelper {
   }
 
   public static ComposableFuture<CASResponse> fromCASResponse(final CASFutureProducer source) {
-    return ComposableFutures.build(consumer -> {
-      final OperationFuture<CASResponse> realFuture = (OperationFuture<CASResponse>) source.createFuture();
-      realFuture.addListener(future -> {
-        try {
-          final CASResponse casResponse = realFuture.get();
-          consumer.consume(Try.fromValue(casResponse));
-        } catch (final InterruptedException e) {
-          consumer.consume(Try.fromError(e));
-        } catch (final ExecutionException e) {
-          consumer.consume(Try.fromError(e.getCause() == null ? e : e.getCause()));
-        } catch (final Exception e) {
-          consumer.consume(Try.fromError(e));
-        }
-      });
-    });
+    final ComposablePromise<CASResponse> promise = ComposableFutures.newPromise();
+    final Executor resumeOn = resumeExecutor();
+    final OperationFuture<CASResponse> realFuture = (OperationFuture<CASResponse>) source.createFuture();
+    promise.onCancel(realFuture::cancel);
+    realFuture.addListener(future -> resumeOn.execute(() -> {
+      try {
+        final CASResponse casResponse = realFuture.get();
+        promise.set(casResponse);
+      } catch (final InterruptedException e) {
+        promise.setException(e);
+      } catch (final ExecutionException e) {
+        promise.setException(e.getCause() == null ? e : e.getCause());
+      } catch (final Exception e) {
+        promise.setException(e);
+      }
+    }));
+
+    return promise.future();
   }
 
   public interface BulkGetFutureProducer<V> {
@@ -97,27 +111,30 @@ public class SpyFutureHelper {
   }
 
   public static <K, V> ComposableFuture<Map<K, V>> fromBulkGet(final BulkGetFutureProducer<V> source, final Map<String, K> keysMap) {
-    return ComposableFutures.build(consumer -> {
-      final BulkGetFuture<V> realFuture = (BulkGetFuture<V>) source.createFuture();
-      realFuture.addListener(future -> {
-        try {
-          final Map<String, V> values = realFuture.get();
-          final Map<K, V> translatedValues = new HashMap<>();
-          for (final String key : values.keySet()) {
-            final V value = values.get(key);
-            translatedValues.put(keysMap.get(key), value);
-          }
-
-          consumer.consume(Try.fromValue(translatedValues));
-        } catch (final InterruptedException e) {
-          consumer.consume(Try.fromError(e));
-        } catch (final ExecutionException e) {
-          consumer.consume(Try.fromError(e.getCause() == null ? e : e.getCause()));
-        } catch (final Exception e) {
-          consumer.consume(Try.fromError(e));
+    final ComposablePromise<Map<K, V>> promise = ComposableFutures.newPromise();
+    final Executor resumeOn = resumeExecutor();
+    final BulkGetFuture<V> realFuture = (BulkGetFuture<V>) source.createFuture();
+    promise.onCancel(realFuture::cancel);
+    realFuture.addListener(future -> resumeOn.execute(() -> {
+      try {
+        final Map<String, V> values = realFuture.get();
+        final Map<K, V> translatedValues = new HashMap<>();
+        for (final String key : values.keySet()) {
+          final V value = values.get(key);
+          translatedValues.put(keysMap.get(key), value);
         }
-      });
-    });
+
+        promise.set(translatedValues);
+      } catch (final InterruptedException e) {
+        promise.setException(e);
+      } catch (final ExecutionException e) {
+        promise.setException(e.getCause() == null ? e : e.getCause());
+      } catch (final Exception e) {
+        promise.setException(e);
+      }
+    }));
+
+    return promise.future();
   }
 
   public interface OperationFutureProducer {
@@ -125,25 +142,31 @@ public class SpyFutureHelper {
   }
 
   public static ComposableFuture<Boolean> fromOperation(final OperationFutureProducer source) {
-    return ComposableFutures.build(consumer -> {
-      try {
-        final OperationFuture<Boolean> realFuture = (OperationFuture<Boolean>) source.createFuture();
-        realFuture.addListener(future -> {
-          try {
-            final Boolean value = realFuture.get();
-            consumer.consume(Try.fromValue(value));
-          } catch (final InterruptedException e) {
-            consumer.consume(Try.fromError(e));
-          } catch (final ExecutionException e) {
-            consumer.consume(Try.fromError(e.getCause() == null ? e : e.getCause()));
-          } catch (final Exception e) {
-            consumer.consume(Try.fromError(e));
-          }
-        });
-      } catch (final Exception e) {
-        consumer.consume(Try.fromError(e));
-      }
-    });
+    final ComposablePromise<Boolean> promise = ComposableFutures.newPromise();
+    final Executor resumeOn = resumeExecutor();
+    try {
+      final OperationFuture<Boolean> realFuture = (OperationFuture<Boolean>) source.createFuture();
+      promise.onCancel(realFuture::cancel);
+      realFuture.addListener(future -> resumeOn.execute(() -> {
+        try {
+          final Boolean value = realFuture.get();
+          promise.set(value);
+        } catch (final InterruptedException e) {
+          promise.setException(e);
+        } catch (final ExecutionException e) {
+          promise.setException(e.getCause() == null ? e : e.getCause());
+        } catch (final Exception e) {
+          promise.setException(e);
+        }
+      }));
+    } catch (final Exception e) {
+      promise.setException(e);
+    }
+
+    return promise.future();
   }
 
+  private static Executor resumeExecutor() {
+    return ExecutionAffinity.currentOr(Runnable::run);
+  }
 }
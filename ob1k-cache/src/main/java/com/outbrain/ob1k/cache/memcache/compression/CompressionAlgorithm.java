@@ -5,38 +5,67 @@ import java.util.zip.Deflater;
 /**
  * Enum containing available compression algorithms
  * Default one is GZIP.
+ * <p>
+ * Each algorithm has an id, recorded in the values written by the {@link com.outbrain.ob1k.cache.memcache.folsom.CompressionTranscoder},
+ * so the ids must never change.
  *
  * @see Compressor
  */
 public enum CompressionAlgorithm {
 
-  DEFAULT {
+  DEFAULT(3) {
     @Override
     public Compressor getCompressor() {
       return GZIP.getCompressor();
     }
   },
 
-  LZ4 {
+  LZ4(1) {
     @Override
     public Compressor getCompressor() {
       return new LZ4Compressor();
     }
   },
 
-  DEFLATE {
+  DEFLATE(2) {
     @Override
     public Compressor getCompressor() {
       return new DeflateCompressor(Deflater.FULL_FLUSH); // optimal between speed and compression size
     }
   },
 
-  GZIP {
+  GZIP(3) {
     @Override
     public Compressor getCompressor() {
       return new GzipCompressor();
     }
   };
 
+  private final int id;
+
+  CompressionAlgorithm(final int id) {
+    this.id = id;
+  }
+
   public abstract Compressor getCompressor();
+
+  /**
+   * @return the id of the algorithm, between 1 and 15.
+   */
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * @return the algorithm of the id, or null if there's none.
+   */
+  public static CompressionAlgorithm fromId(final int id) {
+    for (final CompressionAlgorithm algorithm : values()) {
+      if (algorithm != DEFAULT && algorithm.id == id) {
+        return algorithm;
+      }
+    }
+
+    return null;
+  }
 }
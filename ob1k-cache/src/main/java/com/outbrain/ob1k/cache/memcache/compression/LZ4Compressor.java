@@ -2,9 +2,14 @@ package com.outbrain.ob1k.cache.memcache.compression;
 
 import net.jpountz.lz4.LZ4Factory;
 
+import java.util.Arrays;
+
 /**
  * LZ4 compressor, using jpountz' library
  *
+ * a raw LZ4 block doesn't tell the size of the data it was compressed from, so the compressed data starts with it,
+ * as a 4 bytes big endian int, for the decompression to allocate its output.
+ *
  * @author bshushi
  * @see <a href="https://github.com/lz4/lz4-java">lz4</a>
  * @see com.outbrain.ob1k.cache.memcache.compression.Compressor
@@ -12,6 +17,7 @@ import net.jpountz.lz4.LZ4Factory;
 public class LZ4Compressor implements Compressor {
 
   private static final LZ4Factory lz4Factory = LZ4Factory.fastestInstance();
+  private static final int LENGTH_BYTES = 4;
 
   @Override
   public byte[] compress(final byte[] data) {
@@ -19,7 +25,16 @@ public class LZ4Compressor implements Compressor {
       throw new NullPointerException("compress data is null");
     }
 
-    return lz4Factory.fastCompressor().compress(data);
+    final net.jpountz.lz4.LZ4Compressor compressor = lz4Factory.fastCompressor();
+    final int maxLength = compressor.maxCompressedLength(data.length);
+    final byte[] compressed = new byte[LENGTH_BYTES + maxLength];
+    compressed[0] = (byte) (data.length >>> 24);
+    compressed[1] = (byte) (data.length >>> 16);
+    compressed[2] = (byte) (data.length >>> 8);
+    compressed[3] = (byte) data.length;
+
+    final int length = compressor.compress(data, 0, data.length, compressed, LENGTH_BYTES, maxLength);
+    return Arrays.copyOf(compressed, LENGTH_BYTES + length);
   }
 
   @Override
@@ -28,6 +43,20 @@ public class LZ4Compressor implements Compressor {
       return null;
     }
 
-    return lz4Factory.safeDecompressor().decompress(data, data.length);
+    if (data.length < LENGTH_BYTES) {
+      throw new IllegalArgumentException("compressed data is too short: " + data.length + " bytes");
+    }
+
+    final int length = (data[0] & 0xff) << 24 | (data[1] & 0xff) << 16 | (data[2] & 0xff) << 8 | (data[3] & 0xff);
+    if (length < 0) {
+      throw new IllegalArgumentException("malformed length of compressed data: " + length);
+    }
+
+    final byte[] decompressed = lz4Factory.safeDecompressor().decompress(data, LENGTH_BYTES, data.length - LENGTH_BYTES, length);
+    if (decompressed.length != length) {
+      throw new IllegalArgumentException("compressed data holds " + decompressed.length + " bytes instead of " + length);
+    }
+
+    return decompressed;
   }
 }
@@ -1,12 +1,26 @@
 package com.outbrain.ob1k.cache.memcache.folsom;
 
 import com.outbrain.ob1k.cache.memcache.compression.*;
+import com.outbrain.swinfra.metrics.api.Counter;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
 import com.spotify.folsom.Transcoder;
 
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
 
 /**
  * Compression transcoder implementation
+ * <p>
+ * Transcoders created by {@link #newBuilder(CompressionAlgorithm)} write self describing values: a header byte
+ * recording the compression algorithm, or that the value is stored as is, followed by the value.
+ * Values smaller than the min size, or that don't compress below the max ratio, are stored as is,
+ * so small values don't pay for compression, and values written under any algorithm can be read after changing it.
+ * <p>
+ * Transcoders created by the constructor keep writing the legacy format, compressing every value with no header.
+ * Both read either format, so the readers can be upgraded before the writers.
  *
  * @author bshushi
  * @param <T>
@@ -15,21 +29,197 @@ import java.util.Objects;
  */
 public class CompressionTranscoder<T> implements Transcoder<T> {
 
+  // a header byte is the format mark followed by the algorithm id
+  private static final int FORMAT_MASK = 0xf0;
+  private static final int FORMAT_MARK = 0xc0;
+  private static final int ID_MASK = 0x0f;
+  private static final int UNCOMPRESSED = 0;
+
+  // the compressors by algorithm id, created on first use
+  private static final Compressor[] COMPRESSORS = new Compressor[16];
+
   private final Transcoder<T> delegate;
   private final Compressor compressor;
+  private final int algorithmId;
+  private final Compressor legacyCompressor;
+  private final int minSize;
+  private final double maxRatio;
+
+  private final LongAdder uncompressedBytes = new LongAdder();
+  private final LongAdder compressedBytes = new LongAdder();
+  private final Counter compressions;
+  private final Counter skippedCompressions;
+  private final Counter legacyReads;
 
   public CompressionTranscoder(final Transcoder<T> delegate, final Compressor compressor) {
     this.delegate = Objects.requireNonNull(delegate, "delegated transcoder may not be null");
     this.compressor = compressor;
+    this.algorithmId = -1;
+    this.legacyCompressor = compressor;
+    this.minSize = 0;
+    this.maxRatio = Double.MAX_VALUE;
+    this.compressions = null;
+    this.skippedCompressions = null;
+    this.legacyReads = null;
+  }
+
+  private CompressionTranscoder(final Transcoder<T> delegate, final Builder builder) {
+    this.delegate = Objects.requireNonNull(delegate, "delegated transcoder may not be null");
+    this.compressor = compressorOf(builder.algorithm.getId());
+    this.algorithmId = builder.algorithm.getId();
+    this.legacyCompressor = builder.legacyAlgorithm == null ? null : compressorOf(builder.legacyAlgorithm.getId());
+    this.minSize = builder.minSize;
+    this.maxRatio = builder.maxRatio;
+
+    if (builder.metricFactory != null) {
+      final String component = "folsom." + (builder.cacheName == null ? "" : builder.cacheName + ".") + "compression";
+      this.compressions = builder.metricFactory.createCounter(component, "compressions");
+      this.skippedCompressions = builder.metricFactory.createCounter(component, "skippedCompressions");
+      this.legacyReads = builder.metricFactory.createCounter(component, "legacyReads");
+      builder.metricFactory.registerGauge(component, "compressionRatio", this::getCompressionRatio);
+    } else {
+      this.compressions = null;
+      this.skippedCompressions = null;
+      this.legacyReads = null;
+    }
+  }
+
+  /**
+   * @param algorithm the algorithm compressing the written values.
+   */
+  public static Builder newBuilder(final CompressionAlgorithm algorithm) {
+    return new Builder(algorithm);
   }
 
   @Override
   public T decode(final byte[] bytes) {
-    return delegate.decode(compressor.decompress(bytes));
+    if (bytes.length > 0 && ((bytes[0] & FORMAT_MASK) == FORMAT_MARK)) {
+      final int id = bytes[0] & ID_MASK;
+      final Compressor valueCompressor = id == UNCOMPRESSED ? null : compressorOf(id);
+      if (id == UNCOMPRESSED || valueCompressor != null) {
+        try {
+          final byte[] value = Arrays.copyOfRange(bytes, 1, bytes.length);
+          return delegate.decode(valueCompressor == null ? value : valueCompressor.decompress(value));
+        } catch (final RuntimeException e) {
+          // a legacy value may happen to start like a header
+          if (legacyCompressor == null) {
+            throw e;
+          }
+        }
+      }
+    }
+
+    if (legacyCompressor == null) {
+      throw new IllegalArgumentException("value of unknown format, starting with " + (bytes.length > 0 ? bytes[0] : "nothing"));
+    }
+
+    inc(legacyReads);
+    return delegate.decode(legacyCompressor.decompress(bytes));
   }
 
   @Override
   public byte[] encode(final T t) {
-    return compressor.compress(delegate.encode(t));
+    final byte[] bytes = delegate.encode(t);
+    if (algorithmId < 0) {
+      return compressor.compress(bytes);
+    }
+
+    if (bytes.length >= minSize) {
+      final byte[] compressed = compressor.compress(bytes);
+      if (compressed.length <= bytes.length * maxRatio) {
+        uncompressedBytes.add(bytes.length);
+        compressedBytes.add(compressed.length);
+        inc(compressions);
+        return withHeader(algorithmId, compressed);
+      }
+    }
+
+    inc(skippedCompressions);
+    return withHeader(UNCOMPRESSED, bytes);
+  }
+
+  /**
+   * @return the ratio between the compressed and uncompressed sizes of the compressed values.
+   */
+  public double getCompressionRatio() {
+    final long uncompressed = uncompressedBytes.sum();
+    return uncompressed == 0 ? 1 : (double) compressedBytes.sum() / uncompressed;
+  }
+
+  private static Compressor compressorOf(final int id) {
+    Compressor compressor = COMPRESSORS[id];
+    if (compressor == null) {
+      final CompressionAlgorithm algorithm = CompressionAlgorithm.fromId(id);
+      if (algorithm != null) {
+        // compressors are stateless, racing threads may each create one
+        compressor = algorithm.getCompressor();
+        COMPRESSORS[id] = compressor;
+      }
+    }
+
+    return compressor;
+  }
+
+  private static byte[] withHeader(final int id, final byte[] value) {
+    final byte[] bytes = new byte[value.length + 1];
+    bytes[0] = (byte) (FORMAT_MARK | id);
+    System.arraycopy(value, 0, bytes, 1, value.length);
+    return bytes;
+  }
+
+  private static void inc(final Counter counter) {
+    if (counter != null) {
+      counter.inc();
+    }
+  }
+
+  public static class Builder {
+
+    private final CompressionAlgorithm algorithm;
+    private CompressionAlgorithm legacyAlgorithm;
+    private int minSize = 256;
+    private double maxRatio = 0.9;
+    private MetricFactory metricFactory;
+    private String cacheName;
+
+    private Builder(final CompressionAlgorithm algorithm) {
+      this.algorithm = Objects.requireNonNull(algorithm, "algorithm may not be null");
+    }
+
+    /**
+     * @param minSize values smaller than this number of bytes are stored uncompressed.
+     */
+    public Builder withMinSize(final int minSize) {
+      checkArgument(minSize >= 0, "minSize must not be negative");
+      this.minSize = minSize;
+      return this;
+    }
+
+    /**
+     * @param maxRatio values whose compressed size is above this ratio of their size are stored uncompressed.
+     */
+    public Builder withMaxRatio(final double maxRatio) {
+      checkArgument(maxRatio > 0, "maxRatio must be positive");
+      this.maxRatio = maxRatio;
+      return this;
+    }
+
+    /**
+     * reads the values written by the legacy transcoder, compressed with the given algorithm and no header.
+     */
+    public Builder withLegacyAlgorithm(final CompressionAlgorithm legacyAlgorithm) {
+      this.legacyAlgorithm = legacyAlgorithm;
+      return this;
+    }
+
+    public Builder withMetrics(final MetricFactory metricFactory, final String cacheName) {
+      this.metricFactory = metricFactory;
+      this.cacheName = cacheName;
+      return this;
+    }
+
+    public <T> CompressionTranscoder<T> build(final Transcoder<T> delegate) {
+      return new CompressionTranscoder<>(delegate, this);
+    }
   }
 }
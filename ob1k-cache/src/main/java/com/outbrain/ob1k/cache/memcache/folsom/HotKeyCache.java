@@ -0,0 +1,153 @@
+package com.outbrain.ob1k.cache.memcache.folsom;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.outbrain.swinfra.metrics.api.Counter;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * serves the hottest keys of a {@link MemcachedClient} from a small in process cache,
+ * so a handful of very popular keys don't saturate the memcached node that holds them.
+ *
+ * every read is recorded by a streaming heavy hitters detector; keys read more than the threshold
+ * within a sample of reads become hot, up to maxHotKeys of them, and their values are kept locally for a short ttl.
+ * keys that cool down stop being served locally once the detector notices it.
+ *
+ * writes through the client drop the local copy, both when they are sent and when they complete, as reads that were
+ * in flight meanwhile may bring back the previous value. writes of other clients are only seen once it expires,
+ * so the ttl bounds how stale a hot key can be.
+ *
+ * @see #newBuilder()
+ */
+public class HotKeyCache<V> {
+
+  private final HotKeyDetector detector;
+  private final Cache<String, V> values;
+  private final LongAdder hits = new LongAdder();
+  private final Counter hitsCounter;
+
+  private HotKeyCache(final Builder builder) {
+    this.detector = new HotKeyDetector(builder.threshold, builder.maxHotKeys, builder.sampleSize);
+    this.values = CacheBuilder.newBuilder().
+      maximumSize(builder.maxHotKeys).
+      expireAfterWrite(builder.ttl, builder.ttlUnit).
+      build();
+
+    if (builder.metricFactory != null) {
+      final String component = "HotKeyCache." + builder.cacheName;
+      this.hitsCounter = builder.metricFactory.createCounter(component, "hotKeyHits");
+      builder.metricFactory.registerGauge(component, "hotKeys", () -> detector.getHotKeys().size());
+    } else {
+      this.hitsCounter = null;
+    }
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /**
+   * records a read of the key.
+   *
+   * @return the local value of the key if it is hot, null otherwise.
+   */
+  V getIfHot(final String key) {
+    if (!detector.record(key)) {
+      return null;
+    }
+
+    final V value = values.getIfPresent(key);
+    if (value != null) {
+      hits.increment();
+      if (hitsCounter != null) {
+        hitsCounter.inc();
+      }
+    }
+
+    return value;
+  }
+
+  /**
+   * keeps the value read from memcached, if its key is hot.
+   */
+  void offer(final String key, final V value) {
+    if (value != null && detector.getHotKeys().contains(key)) {
+      values.put(key, value);
+    }
+  }
+
+  void invalidate(final String key) {
+    values.invalidate(key);
+  }
+
+  /**
+   * @return the keys currently detected as hot.
+   */
+  public Set<String> getHotKeys() {
+    return detector.getHotKeys();
+  }
+
+  /**
+   * @return the number of reads served locally.
+   */
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public static class Builder {
+
+    private int threshold = 1000;
+    private int maxHotKeys = 100;
+    private int sampleSize = 100_000;
+    private long ttl = 1;
+    private TimeUnit ttlUnit = TimeUnit.SECONDS;
+    private MetricFactory metricFactory;
+    private String cacheName;
+
+    private Builder() {}
+
+    /**
+     * @param threshold the number of reads within a sample after which a key becomes hot.
+     * @param sampleSize the number of reads after which the read counts are halved.
+     */
+    public Builder withThreshold(final int threshold, final int sampleSize) {
+      checkArgument(threshold > 0, "threshold must be positive");
+      checkArgument(sampleSize >= threshold, "sampleSize must not be smaller than the threshold");
+      this.threshold = threshold;
+      this.sampleSize = sampleSize;
+      return this;
+    }
+
+    public Builder withMaxHotKeys(final int maxHotKeys) {
+      checkArgument(maxHotKeys > 0, "maxHotKeys must be positive");
+      this.maxHotKeys = maxHotKeys;
+      return this;
+    }
+
+    /**
+     * @param ttl how long the value of a hot key is served locally before it is read again from memcached.
+     */
+    public Builder withTtl(final long ttl, final TimeUnit unit) {
+      checkArgument(ttl > 0, "ttl must be positive");
+      this.ttl = ttl;
+      this.ttlUnit = unit;
+      return this;
+    }
+
+    public Builder withMetrics(final MetricFactory metricFactory, final String cacheName) {
+      this.metricFactory = metricFactory;
+      this.cacheName = cacheName;
+      return this;
+    }
+
+    public <V> HotKeyCache<V> build() {
+      return new HotKeyCache<>(this);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package com.outbrain.ob1k.cache.memcache.folsom;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * a streaming heavy hitters detector: a count-min sketch estimating the number of reads of every key,
+ * and the top k keys whose estimate crossed the threshold.
+ *
+ * once sampleSize reads were recorded all the counters are halved, so the estimates reflect the recent reads
+ * and keys that cooled down leave the hot keys.
+ * the counters are updated without synchronization, and concurrent increments may be lost;
+ * a small error the estimation can live with.
+ */
+final class HotKeyDetector {
+
+  private static final int[] SEEDS = {0x9e3779b9, 0x85ebca6b, 0xc2b2ae35, 0x27d4eb2f};
+
+  private final int[][] counters;
+  private final int mask;
+  private final int threshold;
+  private final int maxHotKeys;
+  private final int sampleSize;
+  private final AtomicInteger sampled = new AtomicInteger();
+  private final Map<String, Integer> hotKeys = new ConcurrentHashMap<>();
+
+  HotKeyDetector(final int threshold, final int maxHotKeys, final int sampleSize) {
+    this.threshold = threshold;
+    this.maxHotKeys = maxHotKeys;
+    this.sampleSize = sampleSize;
+    // wide enough to tell apart the keys that can make it to the threshold within a sample
+    final int width = Integer.highestOneBit(Math.max(1024, (sampleSize / threshold) * 16) - 1) << 1;
+    this.counters = new int[SEEDS.length][width];
+    this.mask = width - 1;
+  }
+
+  /**
+   * records a read of the key.
+   *
+   * @return true if the key is one of the hot keys.
+   */
+  boolean record(final String key) {
+    final int hash = key.hashCode();
+    int estimate = Integer.MAX_VALUE;
+    for (int i = 0; i < SEEDS.length; i++) {
+      final int[] row = counters[i];
+      final int index = indexOf(hash, i);
+      if (row[index] < Integer.MAX_VALUE) {
+        row[index]++;
+      }
+      estimate = Math.min(estimate, row[index]);
+    }
+
+    if (sampled.incrementAndGet() == sampleSize) {
+      decay();
+    }
+
+    if (estimate < threshold) {
+      return false;
+    }
+
+    if (hotKeys.containsKey(key)) {
+      hotKeys.put(key, estimate);
+      return true;
+    }
+
+    return admit(key, estimate);
+  }
+
+  Set<String> getHotKeys() {
+    return Collections.unmodifiableSet(hotKeys.keySet());
+  }
+
+  private synchronized boolean admit(final String key, final int estimate) {
+    if (hotKeys.size() >= maxHotKeys) {
+      Map.Entry<String, Integer> coldest = null;
+      for (final Map.Entry<String, Integer> entry : hotKeys.entrySet()) {
+        if (coldest == null || entry.getValue() < coldest.getValue()) {
+          coldest = entry;
+        }
+      }
+
+      if (coldest == null || coldest.getValue() >= estimate) {
+        return false;
+      }
+
+      hotKeys.remove(coldest.getKey());
+    }
+
+    hotKeys.put(key, estimate);
+    return true;
+  }
+
+  private synchronized void decay() {
+    for (final int[] row : counters) {
+      for (int i = 0; i < row.length; i++) {
+        row[i] >>>= 1;
+      }
+    }
+
+    for (final Iterator<Map.Entry<String, Integer>> entries = hotKeys.entrySet().iterator(); entries.hasNext(); ) {
+      final Map.Entry<String, Integer> entry = entries.next();
+      final int estimate = estimate(entry.getKey());
+      if (estimate < threshold) {
+        entries.remove();
+      } else {
+        entry.setValue(estimate);
+      }
+    }
+
+    sampled.set(0);
+  }
+
+  private int estimate(final String key) {
+    final int hash = key.hashCode();
+    int estimate = Integer.MAX_VALUE;
+    for (int i = 0; i < SEEDS.length; i++) {
+      estimate = Math.min(estimate, counters[i][indexOf(hash, i)]);
+    }
+
+    return estimate;
+  }
+
+  private int indexOf(final int hash, final int i) {
+    int h = (hash ^ SEEDS[i]) * SEEDS[(i + 1) % SEEDS.length];
+    h ^= h >>> 16;
+    return h & mask;
+  }
+}
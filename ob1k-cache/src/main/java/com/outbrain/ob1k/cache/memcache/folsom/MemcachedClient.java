@@ -7,7 +7,9 @@ import com.outbrain.ob1k.cache.TypedCache;
 import com.outbrain.ob1k.cache.memcache.CacheKeyTranslator;
 import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.outbrain.ob1k.concurrent.ComposableFutures;
-import com.outbrain.ob1k.concurrent.Try;
+import com.outbrain.ob1k.concurrent.ExecutionAffinity;
+import com.outbrain.ob1k.concurrent.Scheduler;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
 import com.spotify.folsom.MemcacheClient;
 import com.spotify.folsom.MemcacheStatus;
 import org.slf4j.Logger;
@@ -22,8 +24,11 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 import static com.outbrain.ob1k.concurrent.ComposableFutures.fromValue;
 
 /**
@@ -32,6 +37,14 @@ import static com.outbrain.ob1k.concurrent.ComposableFutures.fromValue;
  * it creates a typed "view" over the content of the cache with predefined expiration for all entries in it.
  * </p>
  * all operations are async and return ComposableFuture.
+ * <p>
+ * a {@link HotKeyCache} can be given to serve the few hottest keys from memory instead of from the memcached node holding them.
+ * </p>
+ * <p>
+ * single key gets can be batched: the gets issued within a short window are merged into a single multiget,
+ * which folsom splits into a request per node, trading the window's latency for far fewer requests.
+ * see {@link #newBuilder(MemcacheClient, CacheKeyTranslator)}.
+ * </p>
  *
  * @author Eran Harel
  */
@@ -45,6 +58,8 @@ public class MemcachedClient<K, V> implements TypedCache<K, V> {
   // TODO should we create a dedicated executor?
   private final Executor executor = ComposableFutures.getExecutor();
   private final String cacheName;
+  private final HotKeyCache<V> hotKeyCache;
+  private final MultigetBatcher<V> batcher;
 
   // TODO add docs (especially about the expiration rules)
   public MemcachedClient(final MemcacheClient<V> folsomClient, final CacheKeyTranslator<K> keyTranslator, final long expiration, final TimeUnit timeUnit) {
@@ -56,35 +71,96 @@ public class MemcachedClient<K, V> implements TypedCache<K, V> {
                          final long expiration,
                          final TimeUnit timeUnit,
                          final String cacheName) {
+    this(folsomClient, keyTranslator, expiration, timeUnit, cacheName, null);
+  }
+
+  /**
+   * @param hotKeyCache serves the hot keys locally, or null to always read from memcached.
+   */
+  public MemcachedClient(final MemcacheClient<V> folsomClient,
+                         final CacheKeyTranslator<K> keyTranslator,
+                         final long expiration,
+                         final TimeUnit timeUnit,
+                         final String cacheName,
+                         final HotKeyCache<V> hotKeyCache) {
+    this(folsomClient, keyTranslator, expiration, timeUnit, cacheName, hotKeyCache, null);
+  }
+
+  private MemcachedClient(final MemcacheClient<V> folsomClient,
+                          final CacheKeyTranslator<K> keyTranslator,
+                          final long expiration,
+                          final TimeUnit timeUnit,
+                          final String cacheName,
+                          final HotKeyCache<V> hotKeyCache,
+                          final MultigetBatcher<V> batcher) {
     this.folsomClient = Objects.requireNonNull(folsomClient, "folsomClient must not be null");
     this.keyTranslator = Objects.requireNonNull(keyTranslator, "keyTranslator must not be null");
     this.expirationSeconds = (int) timeUnit.toSeconds(expiration);
     this.cacheName = Objects.requireNonNull(cacheName, "cacheName must not be null");
+    this.hotKeyCache = hotKeyCache;
+    this.batcher = batcher;
+  }
+
+  public static <K, V> Builder<K, V> newBuilder(final MemcacheClient<V> folsomClient, final CacheKeyTranslator<K> keyTranslator) {
+    return new Builder<>(folsomClient, keyTranslator);
   }
 
   @Override
   public ComposableFuture<V> getAsync(final K key) {
-    return fromListenableFuture(() -> folsomClient.get(key(key)));
+    if (hotKeyCache == null) {
+      return fromListenableFuture(() -> get(key(key)));
+    }
+
+    final String stringKey;
+    try {
+      stringKey = key(key);
+    } catch (final RuntimeException e) {
+      return ComposableFutures.fromError(e);
+    }
+
+    final V localValue = hotKeyCache.getIfHot(stringKey);
+    if (localValue != null) {
+      return fromValue(localValue);
+    }
+
+    return fromListenableFuture(() -> get(stringKey), value -> {
+      hotKeyCache.offer(stringKey, value);
+      return value;
+    });
   }
 
   @Override
   public ComposableFuture<Map<K, V>> getBulkAsync(final Iterable<? extends K> keys) {
     final Map<String, K> keyMap = new HashMap<>();
     final List<String> stringKeys = new ArrayList<>();
+    final Map<K, V> localValues = new HashMap<>();
     for (final K key : keys) {
       final String stringKey = key(key);
-      stringKeys.add(stringKey);
-      keyMap.put(stringKey, key);
+      final V localValue = hotKeyCache == null ? null : hotKeyCache.getIfHot(stringKey);
+      if (localValue != null) {
+        localValues.put(key, localValue);
+      } else {
+        stringKeys.add(stringKey);
+        keyMap.put(stringKey, key);
+      }
+    }
+
+    if (stringKeys.isEmpty()) {
+      return fromValue(localValues);
     }
 
     return fromListenableFuture(
       () -> folsomClient.get(stringKeys),
       values -> {
-        final Map<K, V> res = Maps.newHashMapWithExpectedSize(values.size());
+        final Map<K, V> res = Maps.newHashMapWithExpectedSize(values.size() + localValues.size());
+        res.putAll(localValues);
         for (int i = 0; i < stringKeys.size(); i++) {
           final V value = values.get(i);
           if (value != null) {
             res.put(keyMap.get(stringKeys.get(i)), value);
+            if (hotKeyCache != null) {
+              hotKeyCache.offer(stringKeys.get(i), value);
+            }
           }
         }
         return res;
@@ -93,17 +169,17 @@ public class MemcachedClient<K, V> implements TypedCache<K, V> {
 
   @Override
   public ComposableFuture<Boolean> setAsync(final K key, final V value) {
-    return fromListenableFuture(() -> folsomClient.set(key(key), value, expirationSeconds), this::isOK);
+    return write(key, () -> fromListenableFuture(() -> folsomClient.set(key(key), value, expirationSeconds), this::isOK));
   }
 
   @Override
   public ComposableFuture<Boolean> setIfAbsentAsync(final K key, final V value) {
-    return fromListenableFuture(() -> folsomClient.add(key(key), value, expirationSeconds), this::isOK);
+    return write(key, () -> fromListenableFuture(() -> folsomClient.add(key(key), value, expirationSeconds), this::isOK));
   }
 
   @Override
   public ComposableFuture<Boolean> setAsync(final K key, final EntryMapper<K, V> mapper, final int maxIterations) {
-    return casUpdate(key, mapper).flatMap(result -> {
+    return write(key, () -> casUpdate(key, mapper).flatMap(result -> {
       if (result == MemcacheStatus.OK) {
         return ComposableFutures.fromValue(true);
       }
@@ -113,7 +189,7 @@ public class MemcachedClient<K, V> implements TypedCache<K, V> {
       }
 
       return ComposableFutures.fromValue(false);
-    });
+    }));
   }
 
   private boolean shouldRetry(final MemcacheStatus status) {
@@ -155,9 +231,31 @@ public class MemcachedClient<K, V> implements TypedCache<K, V> {
 
   @Override
   public ComposableFuture<Boolean> deleteAsync(final K key) {
-    return fromListenableFuture(() -> folsomClient.delete(key(key)), this::isOK);
+    return write(key, () -> fromListenableFuture(() -> folsomClient.delete(key(key)), this::isOK));
+  }
+
+  /**
+   * drops the local copy of a hot key once the write is sent, so it's no longer served,
+   * and again once the write completes, as a read sent before the write may have brought back the previous value.
+   */
+  private <T> ComposableFuture<T> write(final K key, final Supplier<ComposableFuture<T>> write) {
+    if (hotKeyCache == null) {
+      return write.get();
+    }
+
+    invalidateHotKey(key);
+    return write.get().andThen(result -> invalidateHotKey(key));
+  }
+
+  private void invalidateHotKey(final K key) {
+    if (hotKeyCache != null) {
+      hotKeyCache.invalidate(key(key));
+    }
   }
 
+  private ListenableFuture<V> get(final String key) {
+    return batcher != null ? batcher.get(key) : folsomClient.get(key);
+  }
 
   private String key(final K key) {
     return keyTranslator.translateKey(key);
@@ -177,24 +275,89 @@ public class MemcachedClient<K, V> implements TypedCache<K, V> {
 
   private <T, R> ComposableFuture<R> fromListenableFuture(final Provider<T> provider, final Function<T, R> resultTransformer) {
 
-    return ComposableFutures.build(consumer -> {
-      try {
-        final ListenableFuture<T> source = provider.provide();
-        source.addListener(() -> {
-          try {
-            final R result = resultTransformer.apply(source.get());
-            consumer.consume(Try.fromValue(result));
-          } catch (final InterruptedException | RuntimeException e) {
-            consumer.consume(Try.fromError(e));
-          } catch (final ExecutionException e) {
-            final Throwable error = e.getCause() != null ? e.getCause() : e;
-            log.error("Failed to run operation for " + cacheName, error);
-            consumer.consume(Try.fromError(error));
-          }
-        }, executor);
-      } catch (final Exception e) {
-        consumer.consume(Try.fromError(e));
-      }
-    });
+    final ComposablePromise<R> promise = ComposableFutures.newPromise();
+    final Executor resumeOn = ExecutionAffinity.currentOr(executor);
+    try {
+      final ListenableFuture<T> source = provider.provide();
+      // a request that was already sent is not recalled, but its caller is released once it is cancelled
+      promise.onCancel(source::cancel);
+      source.addListener(() -> {
+        try {
+          final R result = resultTransformer.apply(source.get());
+          promise.set(result);
+        } catch (final InterruptedException | RuntimeException e) {
+          promise.setException(e);
+        } catch (final ExecutionException e) {
+          final Throwable error = e.getCause() != null ? e.getCause() : e;
+          log.error("Failed to run operation for " + cacheName, error);
+          promise.setException(error);
+        }
+      }, resumeOn);
+    } catch (final Exception e) {
+      promise.setException(e);
+    }
+
+    return promise.future();
+  }
+
+  public static class Builder<K, V> {
+
+    private final MemcacheClient<V> folsomClient;
+    private final CacheKeyTranslator<K> keyTranslator;
+    private long expiration;
+    private TimeUnit expirationUnit;
+    private String cacheName = "UNKNOWN";
+    private HotKeyCache<V> hotKeyCache;
+    private long batchWindow;
+    private TimeUnit batchWindowUnit;
+    private int maxBatchSize;
+    private Scheduler scheduler = ComposableFutures.getScheduler();
+
+    private Builder(final MemcacheClient<V> folsomClient, final CacheKeyTranslator<K> keyTranslator) {
+      this.folsomClient = folsomClient;
+      this.keyTranslator = keyTranslator;
+    }
+
+    public Builder<K, V> withExpiration(final long expiration, final TimeUnit unit) {
+      this.expiration = expiration;
+      this.expirationUnit = unit;
+      return this;
+    }
+
+    public Builder<K, V> withCacheName(final String cacheName) {
+      this.cacheName = cacheName;
+      return this;
+    }
+
+    public Builder<K, V> withHotKeyCache(final HotKeyCache<V> hotKeyCache) {
+      this.hotKeyCache = hotKeyCache;
+      return this;
+    }
+
+    /**
+     * merges the single key gets issued within the window into multigets of up to maxBatchSize keys.
+     * the actual window is bounded by the resolution of the scheduler.
+     */
+    public Builder<K, V> withGetBatching(final long window, final TimeUnit unit, final int maxBatchSize) {
+      checkArgument(window > 0, "window must be positive");
+      checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+      this.batchWindow = window;
+      this.batchWindowUnit = Objects.requireNonNull(unit, "unit must not be null");
+      this.maxBatchSize = maxBatchSize;
+      return this;
+    }
+
+    public Builder<K, V> withScheduler(final Scheduler scheduler) {
+      this.scheduler = Objects.requireNonNull(scheduler, "scheduler must not be null");
+      return this;
+    }
+
+    public MemcachedClient<K, V> build() {
+      checkState(expirationUnit != null, "expiration must be set");
+      final MultigetBatcher<V> batcher = batchWindowUnit == null ? null :
+        new MultigetBatcher<>(Objects.requireNonNull(folsomClient, "folsomClient must not be null"),
+          batchWindow, batchWindowUnit, maxBatchSize, scheduler);
+      return new MemcachedClient<>(folsomClient, keyTranslator, expiration, expirationUnit, cacheName, hotKeyCache, batcher);
+    }
   }
 }
@@ -103,6 +103,16 @@ public class MemcachedClientBuilder<T> {
     return this;
   }
 
+  /**
+   * Compresses the values in the self describing format of the given compression, which skips small values and values
+   * that don't compress well, and records the algorithm of each value.
+   * @see CompressionTranscoder#newBuilder(CompressionAlgorithm)
+   */
+  public MemcachedClientBuilder<T> withCompression(final CompressionTranscoder.Builder compression) {
+    compressionApplier = compression::build;
+    return this;
+  }
+
   public MemcacheClientBuilder<T> build() {
     return new MemcacheClientBuilder<>(objectSizeMonitoringApplier.compose(compressionApplier).apply(transcoder));
   }
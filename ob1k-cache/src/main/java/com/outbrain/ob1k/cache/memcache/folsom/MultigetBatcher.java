@@ -0,0 +1,78 @@
+package com.outbrain.ob1k.cache.memcache.folsom;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.outbrain.ob1k.cache.KeyBatcher;
+import com.outbrain.ob1k.concurrent.Scheduler;
+import com.spotify.folsom.MemcacheClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * merges concurrent single key gets into multigets of the folsom client, which splits them by the nodes holding the keys.
+ * keys are batched by a {@link KeyBatcher}, and a key read more than once in a batch is read once.
+ */
+final class MultigetBatcher<V> {
+
+  private final MemcacheClient<V> folsomClient;
+  private final KeyBatcher<String, SettableFuture<V>> batcher;
+
+  MultigetBatcher(final MemcacheClient<V> folsomClient, final long window, final TimeUnit unit,
+                  final int maxBatchSize, final Scheduler scheduler) {
+    this.folsomClient = folsomClient;
+    this.batcher = new KeyBatcher<>(window, unit, maxBatchSize, scheduler, SettableFuture::create, this::multiget);
+  }
+
+  ListenableFuture<V> get(final String key) {
+    // callers of the same key share its read, so cancelling one of them must not fail the others
+    return Futures.nonCancellationPropagating(batcher.add(key));
+  }
+
+  private void multiget(final Map<String, SettableFuture<V>> futures) {
+    final List<String> keys = new ArrayList<>(futures.keySet());
+    final ListenableFuture<List<V>> multiget;
+    try {
+      multiget = folsomClient.get(keys);
+    } catch (final RuntimeException e) {
+      // an invalid key fails the whole multiget, so the keys are read one by one
+      futures.forEach(this::getSingle);
+      return;
+    }
+
+    multiget.addListener(() -> {
+      try {
+        final List<V> values = multiget.get();
+        for (int i = 0; i < keys.size(); i++) {
+          futures.get(keys.get(i)).set(values.get(i));
+        }
+      } catch (final ExecutionException e) {
+        final Throwable error = e.getCause() != null ? e.getCause() : e;
+        futures.values().forEach(future -> future.setException(error));
+      } catch (final InterruptedException | RuntimeException e) {
+        futures.values().forEach(future -> future.setException(e));
+      }
+    }, Runnable::run);
+  }
+
+  private void getSingle(final String key, final SettableFuture<V> future) {
+    try {
+      final ListenableFuture<V> source = folsomClient.get(key);
+      source.addListener(() -> {
+        try {
+          future.set(source.get());
+        } catch (final ExecutionException e) {
+          future.setException(e.getCause() != null ? e.getCause() : e);
+        } catch (final InterruptedException | RuntimeException e) {
+          future.setException(e);
+        }
+      }, Runnable::run);
+    } catch (final RuntimeException e) {
+      future.setException(e);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.outbrain.ob1k.cache.offheap;
+
+/**
+ * a count-min sketch estimating the recent access frequency of keys, used for the tiny lfu admission.
+ *
+ * every key has four 4 bit counters, held in a single table of longs; the estimated frequency is the smallest of them.
+ * once the number of increments reaches the sample size all the counters are halved,
+ * so the frequencies reflect the recent accesses.
+ *
+ * updates aren't atomic, and concurrent increments may be lost; a small error the estimation can live with.
+ */
+final class FrequencySketch {
+
+  private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final int MAX_TABLE_SIZE = 1 << 28;
+
+  private final long[] table;
+  private final int tableMask;
+  private final int sampleSize;
+  private int size;
+
+  /**
+   * @param expectedEntries the number of entries whose frequency should be told apart.
+   */
+  FrequencySketch(final long expectedEntries) {
+    final int tableSize = (int) Math.min(ceilingPowerOfTwo(Math.max(expectedEntries / 4, 8)), MAX_TABLE_SIZE);
+    this.table = new long[tableSize];
+    this.tableMask = tableSize - 1;
+    this.sampleSize = 10 * (int) Math.min(Math.max(expectedEntries, 8), Integer.MAX_VALUE / 10);
+  }
+
+  /**
+   * @return the estimated number of recent accesses to the key, up to 15.
+   */
+  int frequency(final int hash) {
+    final int start = (hash & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      final int index = indexOf(hash, i);
+      final int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+
+    return frequency;
+  }
+
+  void increment(final int hash) {
+    final int start = (hash & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(hash, i), start + i);
+    }
+
+    if (added && ++size >= sampleSize) {
+      reset();
+    }
+  }
+
+  private boolean incrementAt(final int index, final int counter) {
+    final int offset = counter << 2;
+    final long mask = 0xfL << offset;
+    if ((table[index] & mask) != mask) {
+      table[index] += 1L << offset;
+      return true;
+    }
+
+    return false;
+  }
+
+  private void reset() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+
+    size = size >>> 1;
+  }
+
+  private int indexOf(final int hash, final int i) {
+    long h = (hash + SEEDS[i]) * SEEDS[i];
+    h += h >>> 32;
+    return ((int) h) & tableMask;
+  }
+
+  private static long ceilingPowerOfTwo(final long value) {
+    return Long.highestOneBit(value - 1) << 1;
+  }
+}
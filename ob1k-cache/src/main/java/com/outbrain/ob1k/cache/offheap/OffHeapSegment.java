@@ -0,0 +1,530 @@
+package com.outbrain.ob1k.cache.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * a stripe of the off heap cache, holding its entries in direct memory slabs and indexing them in an open addressing table.
+ *
+ * entries are appended to one of two logs of slabs. new entries go to the small window log;
+ * when a window slab is reclaimed, its live entries are promoted to the main log only if the frequency sketch
+ * estimates them to be accessed more often than the entry the main log would evict next (tiny lfu admission).
+ * when a main slab is reclaimed, its frequently accessed entries are compacted in place and get another round,
+ * while the rest are evicted.
+ *
+ * reads are optimistic and take no lock unless they race with a write; writes are serialized by the segment's lock.
+ *
+ * an entry is laid out as: hash (int), key length (int), value length (int), expiration time (long), key, value.
+ */
+final class OffHeapSegment {
+
+  static final int HEADER_SIZE = 20;
+
+  private static final int HOT_FREQUENCY = 2;
+  private static final float LOAD_FACTOR = 0.75f;
+
+  private final StampedLock lock = new StampedLock();
+  private final FrequencySketch sketch;
+
+  private final int slabSize;
+  private final ByteBuffer[] slabs;
+  // duplicates of the slabs, only used by writers under the lock
+  private final ByteBuffer[] writeViews;
+  private final int[] slabEnds;
+  private final Log window;
+  private final Log main;
+  private byte[] scratch = new byte[256];
+
+  // the index: hashes and addresses of the entries. an address is (slab id + 1) << 32 | offset, and 0 marks an empty slot.
+  private int[] hashes;
+  private long[] addresses;
+
+  private volatile int size;
+  private volatile int allocatedSlabs;
+  private volatile long liveBytes;
+
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder rejections = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+
+  OffHeapSegment(final int slabSize, final int maxSlabs) {
+    this.slabSize = slabSize;
+    this.slabs = new ByteBuffer[maxSlabs];
+    this.writeViews = new ByteBuffer[maxSlabs];
+    this.slabEnds = new int[maxSlabs];
+
+    final int windowSlabs = Math.max(1, maxSlabs / 100);
+    this.window = new Log(windowSlabs);
+    this.main = new Log(maxSlabs - windowSlabs);
+    this.sketch = new FrequencySketch((long) slabSize * maxSlabs / 128);
+
+    this.hashes = new int[16];
+    this.addresses = new long[16];
+  }
+
+  /**
+   * @return the value of the key, or null if it's missing or expired.
+   */
+  byte[] get(final int hash, final byte[] key, final long now) {
+    sketch.increment(hash);
+
+    final long stamp = lock.tryOptimisticRead();
+    if (stamp != 0) {
+      try {
+        final byte[] value = read(hash, key, now);
+        if (lock.validate(stamp)) {
+          return value;
+        }
+      } catch (final RuntimeException e) {
+        // read an inconsistent state while racing with a writer; read again under the lock
+      }
+    }
+
+    final long readStamp = lock.readLock();
+    try {
+      return read(hash, key, now);
+    } finally {
+      lock.unlockRead(readStamp);
+    }
+  }
+
+  /**
+   * @return the address and the value of the key, or null if it's missing or expired.
+   */
+  Versioned getVersioned(final int hash, final byte[] key, final long now) {
+    final long stamp = lock.readLock();
+    try {
+      final int slot = find(hashes, addresses, hash, key);
+      if (slot < 0 || isExpired(addresses[slot], now)) {
+        return null;
+      }
+
+      return new Versioned(addresses[slot], readValue(addresses[slot]));
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  boolean put(final int hash, final byte[] key, final byte[] value, final long expireAt) {
+    final long stamp = lock.writeLock();
+    try {
+      sketch.increment(hash);
+      return write(hash, key, value, expireAt, find(hashes, addresses, hash, key));
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  boolean putIfAbsent(final int hash, final byte[] key, final byte[] value, final long expireAt, final long now) {
+    final long stamp = lock.writeLock();
+    try {
+      sketch.increment(hash);
+      final int slot = find(hashes, addresses, hash, key);
+      if (slot >= 0 && !isExpired(addresses[slot], now)) {
+        return false;
+      }
+
+      return write(hash, key, value, expireAt, slot);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * replaces the value of the key only if it's still at the expected address, or still missing if the address is 0.
+   */
+  boolean replace(final int hash, final byte[] key, final long expectedAddress, final byte[] value, final long expireAt,
+                  final long now) {
+    final long stamp = lock.writeLock();
+    try {
+      final int slot = find(hashes, addresses, hash, key);
+      final long current = slot < 0 || isExpired(addresses[slot], now) ? 0 : addresses[slot];
+      if (current != expectedAddress) {
+        return false;
+      }
+
+      return write(hash, key, value, expireAt, slot);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  boolean remove(final int hash, final byte[] key) {
+    final long stamp = lock.writeLock();
+    try {
+      final int slot = find(hashes, addresses, hash, key);
+      if (slot < 0) {
+        return false;
+      }
+
+      removeSlot(slot);
+      return true;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  private byte[] read(final int hash, final byte[] key, final long now) {
+    final int[] hashes = this.hashes;
+    final long[] addresses = this.addresses;
+    final int slot = find(hashes, addresses, hash, key);
+    if (slot < 0) {
+      return null;
+    }
+
+    final long address = addresses[slot];
+    return isExpired(address, now) ? null : readValue(address);
+  }
+
+  private byte[] readValue(final long address) {
+    final ByteBuffer slab = slabs[slabId(address)];
+    final int offset = offset(address);
+    final int keyLength = slab.getInt(offset + 4);
+    final int valueLength = slab.getInt(offset + 8);
+    if (keyLength < 0 || valueLength < 0 || valueLength > slabSize) {
+      throw new IllegalStateException("corrupted entry");
+    }
+
+    final byte[] value = new byte[valueLength];
+    final ByteBuffer view = slab.duplicate();
+    view.position(offset + HEADER_SIZE + keyLength);
+    view.get(value);
+    return value;
+  }
+
+  private boolean isExpired(final long address, final long now) {
+    final long expireAt = slabs[slabId(address)].getLong(offset(address) + 12);
+    return expireAt != 0 && expireAt <= now;
+  }
+
+  private int find(final int[] hashes, final long[] addresses, final int hash, final byte[] key) {
+    final int mask = addresses.length - 1;
+    for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+      final long address = addresses[i];
+      if (address == 0) {
+        return -1;
+      }
+
+      if (hashes[i] == hash && keyEquals(address, key)) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private int findAddress(final int hash, final long address) {
+    final int mask = addresses.length - 1;
+    for (int i = hash & mask; addresses[i] != 0; i = (i + 1) & mask) {
+      if (addresses[i] == address) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private boolean keyEquals(final long address, final byte[] key) {
+    final ByteBuffer slab = slabs[slabId(address)];
+    final int offset = offset(address);
+    if (slab.getInt(offset + 4) != key.length) {
+      return false;
+    }
+
+    final int keyOffset = offset + HEADER_SIZE;
+    for (int i = 0; i < key.length; i++) {
+      if (slab.get(keyOffset + i) != key[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private boolean write(final int hash, final byte[] key, final byte[] value, final long expireAt, final int slot) {
+    final int entrySize = HEADER_SIZE + key.length + value.length;
+    if (entrySize > slabSize) {
+      // a new value that can't be stored must not leave the previous one in place
+      if (slot >= 0) {
+        removeSlot(slot);
+      }
+
+      return false;
+    }
+
+    final long address = allocate(window, entrySize);
+    final ByteBuffer view = writeViews[slabId(address)];
+    final int offset = offset(address);
+    view.putInt(offset, hash);
+    view.putInt(offset + 4, key.length);
+    view.putInt(offset + 8, value.length);
+    view.putLong(offset + 12, expireAt);
+    view.position(offset + HEADER_SIZE);
+    view.put(key);
+    view.put(value);
+
+    // allocating may have reclaimed slabs and moved entries around the index
+    final int currentSlot = find(hashes, addresses, hash, key);
+    if (currentSlot >= 0) {
+      liveBytes -= entrySize(addresses[currentSlot]);
+      addresses[currentSlot] = address;
+    } else {
+      insert(hash, address);
+    }
+
+    liveBytes += entrySize;
+    return true;
+  }
+
+  private void insert(final int hash, final long address) {
+    if (size + 1 > addresses.length * LOAD_FACTOR) {
+      resize();
+    }
+
+    final int mask = addresses.length - 1;
+    int i = hash & mask;
+    while (addresses[i] != 0) {
+      i = (i + 1) & mask;
+    }
+
+    hashes[i] = hash;
+    addresses[i] = address;
+    size++;
+  }
+
+  private void resize() {
+    final int[] oldHashes = hashes;
+    final long[] oldAddresses = addresses;
+    final int[] newHashes = new int[oldAddresses.length * 2];
+    final long[] newAddresses = new long[oldAddresses.length * 2];
+    final int mask = newAddresses.length - 1;
+
+    for (int j = 0; j < oldAddresses.length; j++) {
+      if (oldAddresses[j] != 0) {
+        int i = oldHashes[j] & mask;
+        while (newAddresses[i] != 0) {
+          i = (i + 1) & mask;
+        }
+
+        newHashes[i] = oldHashes[j];
+        newAddresses[i] = oldAddresses[j];
+      }
+    }
+
+    hashes = newHashes;
+    addresses = newAddresses;
+  }
+
+  /**
+   * removes a slot, shifting back the entries that follow it so that no probe sequence is broken.
+   */
+  private void removeSlot(final int slot) {
+    liveBytes -= entrySize(addresses[slot]);
+    size--;
+
+    final int mask = addresses.length - 1;
+    int hole = slot;
+    int i = slot;
+    while (true) {
+      i = (i + 1) & mask;
+      if (addresses[i] == 0) {
+        break;
+      }
+
+      final int home = hashes[i] & mask;
+      final boolean stays = hole <= i ? (hole < home && home <= i) : (hole < home || home <= i);
+      if (!stays) {
+        hashes[hole] = hashes[i];
+        addresses[hole] = addresses[i];
+        hole = i;
+      }
+    }
+
+    addresses[hole] = 0;
+    hashes[hole] = 0;
+  }
+
+  private long allocate(final Log log, final int entrySize) {
+    if (log.tail < 0 || log.offset + entrySize > slabSize) {
+      if (log.slabs.size() < log.quota) {
+        final int slabId = allocatedSlabs;
+        slabs[slabId] = ByteBuffer.allocateDirect(slabSize);
+        writeViews[slabId] = slabs[slabId].duplicate();
+        allocatedSlabs = slabId + 1;
+        log.slabs.addLast(slabId);
+        log.tail = slabId;
+        log.offset = 0;
+      } else {
+        reclaim(log, entrySize);
+      }
+    }
+
+    final long address = address(log.tail, log.offset);
+    log.offset += entrySize;
+    slabEnds[log.tail] = log.offset;
+    return address;
+  }
+
+  /**
+   * reuses the oldest slab of a log as its tail, making room for at least the given number of bytes.
+   */
+  private void reclaim(final Log log, final int entrySize) {
+    final int slabId = log.slabs.pollFirst();
+    log.slabs.addLast(slabId);
+    // the entries are read up to the previous end of the slab, while the survivors are written from its start
+    final int end = slabEnds[slabId];
+    log.tail = slabId;
+    log.offset = 0;
+    slabEnds[slabId] = 0;
+
+    final ByteBuffer view = writeViews[slabId];
+    final long now = System.currentTimeMillis();
+    int offset = 0;
+    while (offset < end) {
+      final int hash = view.getInt(offset);
+      final int size = HEADER_SIZE + view.getInt(offset + 4) + view.getInt(offset + 8);
+      final int slot = findAddress(hash, address(slabId, offset));
+      if (slot >= 0) {
+        if (isExpired(addresses[slot], now)) {
+          expirations.increment();
+          removeSlot(slot);
+        } else if (log == window) {
+          promote(slot, hash, size);
+        } else if (log.offset + size <= slabSize - entrySize && sketch.frequency(hash) >= HOT_FREQUENCY) {
+          addresses[slot] = move(slabId, offset, size, log);
+        } else {
+          evictions.increment();
+          removeSlot(slot);
+        }
+      }
+
+      offset += size;
+    }
+  }
+
+  private void promote(final int slot, final int hash, final int size) {
+    if (!admit(hash)) {
+      rejections.increment();
+      removeSlot(slot);
+      return;
+    }
+
+    final long address = addresses[slot];
+    // allocating first, as reclaiming a main slab during the allocation uses the scratch buffer as well
+    final long newAddress = allocate(main, size);
+    copyToScratch(slabId(address), offset(address), size);
+    writeFromScratch(newAddress, size);
+    // reclaiming a main slab may have shifted the slot
+    addresses[findAddress(hash, address)] = newAddress;
+  }
+
+  /**
+   * the tiny lfu admission: a promoted entry replaces the main log's next victim only if it's accessed more frequently.
+   */
+  private boolean admit(final int hash) {
+    if (main.slabs.size() < main.quota) {
+      return true;
+    }
+
+    final int victimSlab = main.slabs.peekFirst();
+    if (slabEnds[victimSlab] == 0) {
+      return true;
+    }
+
+    final int victimHash = writeViews[victimSlab].getInt(0);
+    return sketch.frequency(hash) > sketch.frequency(victimHash);
+  }
+
+  private long move(final int slabId, final int offset, final int size, final Log log) {
+    copyToScratch(slabId, offset, size);
+    final long newAddress = address(log.tail, log.offset);
+    log.offset += size;
+    slabEnds[log.tail] = log.offset;
+    writeFromScratch(newAddress, size);
+    return newAddress;
+  }
+
+  private void copyToScratch(final int slabId, final int offset, final int size) {
+    if (scratch.length < size) {
+      scratch = new byte[Math.max(size, scratch.length * 2)];
+    }
+
+    final ByteBuffer view = writeViews[slabId];
+    view.position(offset);
+    view.get(scratch, 0, size);
+  }
+
+  private void writeFromScratch(final long address, final int size) {
+    final ByteBuffer view = writeViews[slabId(address)];
+    view.position(offset(address));
+    view.put(scratch, 0, size);
+  }
+
+  private int entrySize(final long address) {
+    final ByteBuffer slab = slabs[slabId(address)];
+    final int offset = offset(address);
+    return HEADER_SIZE + slab.getInt(offset + 4) + slab.getInt(offset + 8);
+  }
+
+  private static long address(final int slabId, final int offset) {
+    return ((long) (slabId + 1) << 32) | offset;
+  }
+
+  private static int slabId(final long address) {
+    return (int) (address >>> 32) - 1;
+  }
+
+  private static int offset(final long address) {
+    return (int) address;
+  }
+
+  int size() {
+    return size;
+  }
+
+  long getLiveBytes() {
+    return liveBytes;
+  }
+
+  long getAllocatedBytes() {
+    return (long) allocatedSlabs * slabSize;
+  }
+
+  long getEvictions() {
+    return evictions.sum();
+  }
+
+  long getRejections() {
+    return rejections.sum();
+  }
+
+  long getExpirations() {
+    return expirations.sum();
+  }
+
+  static final class Versioned {
+    final long address;
+    final byte[] value;
+
+    Versioned(final long address, final byte[] value) {
+      this.address = address;
+      this.value = value;
+    }
+  }
+
+  /**
+   * a ring of slabs written in order, the oldest first.
+   */
+  private static final class Log {
+    private final ArrayDeque<Integer> slabs = new ArrayDeque<>();
+    private final int quota;
+    private int tail = -1;
+    private int offset;
+
+    private Log(final int quota) {
+      this.quota = quota;
+    }
+  }
+}
@@ -0,0 +1,362 @@
+package com.outbrain.ob1k.cache.offheap;
+
+import com.google.common.hash.Hashing;
+import com.outbrain.ob1k.cache.EntryMapper;
+import com.outbrain.ob1k.cache.TypedCache;
+import com.outbrain.ob1k.cache.memcache.CacheKeyTranslator;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+import com.spotify.folsom.Transcoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.outbrain.ob1k.concurrent.ComposableFutures.fromError;
+import static com.outbrain.ob1k.concurrent.ComposableFutures.fromValue;
+
+/**
+ * a local cache keeping its entries serialized in direct memory, out of the reach of the garbage collector.
+ *
+ * meant for caching many millions of small entries, where an on heap cache such as {@link com.outbrain.ob1k.cache.LocalAsyncCache}
+ * would cause long gc pauses. the price is serializing the values on every write and deserializing them on every read,
+ * using the same transcoders as the memcached clients.
+ *
+ * the memory is split into segments, each allocating fixed size slabs up to its share of the max memory,
+ * so the cache never takes more than the max memory, plus a small on heap index.
+ * when the memory is full, entries are evicted by a frequency based (w-tinylfu like) policy:
+ * new entries are kept in a small window, and only make it to the main space if they are accessed more often
+ * than the entries they would replace, so one off scans don't flush the frequently accessed entries.
+ *
+ * all the operations complete synchronously, the returned futures are always done.
+ * values that don't fit in a slab aren't cached, and their set operations return false.
+ *
+ * @see #newBuilder(CacheKeyTranslator, Transcoder)
+ */
+public class OffHeapTypedCache<K, V> implements TypedCache<K, V> {
+
+  private static final long DEFAULT_MAX_MEMORY = 64 * 1024 * 1024;
+  private static final int DEFAULT_SEGMENTS = 16;
+  private static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+
+  private final CacheKeyTranslator<K> keyTranslator;
+  private final Transcoder<V> transcoder;
+  private final OffHeapSegment[] segments;
+  private final int segmentMask;
+  private final long ttlMs;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  private OffHeapTypedCache(final Builder<K, V> builder) {
+    this.keyTranslator = builder.keyTranslator;
+    this.transcoder = builder.transcoder;
+    this.ttlMs = builder.ttlMs;
+
+    final long segmentMemory = builder.maxMemory / builder.segments;
+    final int slabsPerSegment = (int) Math.min(segmentMemory / builder.slabSize, Integer.MAX_VALUE);
+    checkArgument(slabsPerSegment >= 2, "maxMemory must hold at least 2 slabs per segment");
+
+    this.segments = new OffHeapSegment[builder.segments];
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new OffHeapSegment(builder.slabSize, slabsPerSegment);
+    }
+    this.segmentMask = segments.length - 1;
+
+    if (builder.metricFactory != null) {
+      final String component = "OffHeapTypedCache-" + builder.cacheName;
+      final MetricFactory metricFactory = builder.metricFactory;
+      metricFactory.registerGauge(component, "hitCount", hits::sum);
+      metricFactory.registerGauge(component, "missCount", misses::sum);
+      metricFactory.registerGauge(component, "hitRate", this::getHitRate);
+      metricFactory.registerGauge(component, "size", this::size);
+      metricFactory.registerGauge(component, "liveBytes", this::getLiveBytes);
+      metricFactory.registerGauge(component, "allocatedBytes", this::getAllocatedBytes);
+      metricFactory.registerGauge(component, "evictionCount", this::getEvictionCount);
+      metricFactory.registerGauge(component, "rejectionCount", this::getRejectionCount);
+      metricFactory.registerGauge(component, "expirationCount", this::getExpirationCount);
+    }
+  }
+
+  /**
+   * @param keyTranslator translates the keys to strings, e.g. {@link com.outbrain.ob1k.cache.memcache.IdentityCacheKeyTranslator}.
+   * @param transcoder    serializes the values, e.g. a {@link com.outbrain.ob1k.cache.memcache.folsom.JsonTranscoder}
+   *                      or a {@link com.outbrain.ob1k.cache.memcache.folsom.MessagePackTranscoder}.
+   */
+  public static <K, V> Builder<K, V> newBuilder(final CacheKeyTranslator<K> keyTranslator, final Transcoder<V> transcoder) {
+    return new Builder<>(keyTranslator, transcoder);
+  }
+
+  @Override
+  public ComposableFuture<V> getAsync(final K key) {
+    try {
+      return fromValue(get(key));
+    } catch (final RuntimeException e) {
+      return fromError(e);
+    }
+  }
+
+  @Override
+  public ComposableFuture<Map<K, V>> getBulkAsync(final Iterable<? extends K> keys) {
+    try {
+      final Map<K, V> result = new HashMap<>();
+      for (final K key : keys) {
+        final V value = get(key);
+        if (value != null) {
+          result.put(key, value);
+        }
+      }
+
+      return fromValue(result);
+    } catch (final RuntimeException e) {
+      return fromError(e);
+    }
+  }
+
+  private V get(final K key) {
+    final byte[] keyBytes = keyBytes(key);
+    final int hash = hash(keyBytes);
+    final byte[] value = segmentFor(hash).get(hash, keyBytes, System.currentTimeMillis());
+    if (value == null) {
+      misses.increment();
+      return null;
+    }
+
+    hits.increment();
+    return transcoder.decode(value);
+  }
+
+  @Override
+  public ComposableFuture<Boolean> setAsync(final K key, final V value) {
+    try {
+      final byte[] keyBytes = keyBytes(key);
+      final int hash = hash(keyBytes);
+      return fromValue(segmentFor(hash).put(hash, keyBytes, transcoder.encode(value), expireAt()));
+    } catch (final RuntimeException e) {
+      return fromError(e);
+    }
+  }
+
+  @Override
+  public ComposableFuture<Boolean> setIfAbsentAsync(final K key, final V value) {
+    try {
+      final byte[] keyBytes = keyBytes(key);
+      final int hash = hash(keyBytes);
+      final long now = System.currentTimeMillis();
+      return fromValue(segmentFor(hash).putIfAbsent(hash, keyBytes, transcoder.encode(value), expireAt(), now));
+    } catch (final RuntimeException e) {
+      return fromError(e);
+    }
+  }
+
+  @Override
+  public ComposableFuture<Boolean> setAsync(final K key, final EntryMapper<K, V> mapper, final int maxIterations) {
+    try {
+      final byte[] keyBytes = keyBytes(key);
+      final int hash = hash(keyBytes);
+      final OffHeapSegment segment = segmentFor(hash);
+
+      for (int i = 0; i < maxIterations; i++) {
+        final OffHeapSegment.Versioned current = segment.getVersioned(hash, keyBytes, System.currentTimeMillis());
+        final V newValue = mapper.map(key, current == null ? null : transcoder.decode(current.value));
+        if (newValue == null) {
+          return fromValue(false);
+        }
+
+        final long expectedAddress = current == null ? 0 : current.address;
+        if (segment.replace(hash, keyBytes, expectedAddress, transcoder.encode(newValue), expireAt(), System.currentTimeMillis())) {
+          return fromValue(true);
+        }
+      }
+
+      return fromValue(false);
+    } catch (final RuntimeException e) {
+      return fromError(e);
+    }
+  }
+
+  @Override
+  public ComposableFuture<Map<K, Boolean>> setBulkAsync(final Map<? extends K, ? extends V> entries) {
+    final Map<K, Boolean> result = new HashMap<>();
+    try {
+      for (final Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+        final byte[] keyBytes = keyBytes(entry.getKey());
+        final int hash = hash(keyBytes);
+        result.put(entry.getKey(), segmentFor(hash).put(hash, keyBytes, transcoder.encode(entry.getValue()), expireAt()));
+      }
+
+      return fromValue(result);
+    } catch (final RuntimeException e) {
+      return fromError(e);
+    }
+  }
+
+  @Override
+  public ComposableFuture<Boolean> deleteAsync(final K key) {
+    try {
+      final byte[] keyBytes = keyBytes(key);
+      final int hash = hash(keyBytes);
+      return fromValue(segmentFor(hash).remove(hash, keyBytes));
+    } catch (final RuntimeException e) {
+      return fromError(e);
+    }
+  }
+
+  private byte[] keyBytes(final K key) {
+    return keyTranslator.translateKey(key).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static int hash(final byte[] keyBytes) {
+    return Hashing.murmur3_32().hashBytes(keyBytes).asInt();
+  }
+
+  private OffHeapSegment segmentFor(final int hash) {
+    // the index of the segment uses the low bits of the hash as well, so they are mixed first
+    int h = hash ^ (hash >>> 16);
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    return segments[h & segmentMask];
+  }
+
+  private long expireAt() {
+    return ttlMs > 0 ? System.currentTimeMillis() + ttlMs : 0;
+  }
+
+  public long size() {
+    long size = 0;
+    for (final OffHeapSegment segment : segments) {
+      size += segment.size();
+    }
+
+    return size;
+  }
+
+  /**
+   * @return the memory held by the cached entries, in bytes.
+   */
+  public long getLiveBytes() {
+    long liveBytes = 0;
+    for (final OffHeapSegment segment : segments) {
+      liveBytes += segment.getLiveBytes();
+    }
+
+    return liveBytes;
+  }
+
+  /**
+   * @return the direct memory allocated so far, in bytes; never more than the max memory.
+   */
+  public long getAllocatedBytes() {
+    long allocatedBytes = 0;
+    for (final OffHeapSegment segment : segments) {
+      allocatedBytes += segment.getAllocatedBytes();
+    }
+
+    return allocatedBytes;
+  }
+
+  public double getHitRate() {
+    final long hitCount = hits.sum();
+    final long requestCount = hitCount + misses.sum();
+    return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+  }
+
+  /**
+   * @return the number of entries evicted from the main space to make room for others.
+   */
+  public long getEvictionCount() {
+    long evictions = 0;
+    for (final OffHeapSegment segment : segments) {
+      evictions += segment.getEvictions();
+    }
+
+    return evictions;
+  }
+
+  /**
+   * @return the number of new entries dropped by the admission policy, as they were accessed less than the main space's.
+   */
+  public long getRejectionCount() {
+    long rejections = 0;
+    for (final OffHeapSegment segment : segments) {
+      rejections += segment.getRejections();
+    }
+
+    return rejections;
+  }
+
+  public long getExpirationCount() {
+    long expirations = 0;
+    for (final OffHeapSegment segment : segments) {
+      expirations += segment.getExpirations();
+    }
+
+    return expirations;
+  }
+
+  public static class Builder<K, V> {
+    private final CacheKeyTranslator<K> keyTranslator;
+    private final Transcoder<V> transcoder;
+    private long maxMemory = DEFAULT_MAX_MEMORY;
+    private int segments = DEFAULT_SEGMENTS;
+    private int slabSize = DEFAULT_SLAB_SIZE;
+    private long ttlMs;
+    private MetricFactory metricFactory;
+    private String cacheName;
+
+    private Builder(final CacheKeyTranslator<K> keyTranslator, final Transcoder<V> transcoder) {
+      this.keyTranslator = checkNotNull(keyTranslator, "keyTranslator may not be null");
+      this.transcoder = checkNotNull(transcoder, "transcoder may not be null");
+    }
+
+    /**
+     * bounds the direct memory taken by the cache, in bytes.
+     */
+    public Builder<K, V> withMaxMemory(final long maxMemory) {
+      checkArgument(maxMemory > 0, "maxMemory must be positive");
+      this.maxMemory = maxMemory;
+      return this;
+    }
+
+    /**
+     * sets the number of segments, each written under its own lock; must be a power of two.
+     */
+    public Builder<K, V> withSegments(final int segments) {
+      checkArgument(segments > 0 && Integer.bitCount(segments) == 1, "segments must be a power of two");
+      this.segments = segments;
+      return this;
+    }
+
+    /**
+     * sets the size of the memory slabs, bounding the size of a single entry.
+     */
+    public Builder<K, V> withSlabSize(final int slabSize) {
+      checkArgument(slabSize > OffHeapSegment.HEADER_SIZE, "slabSize is too small");
+      this.slabSize = slabSize;
+      return this;
+    }
+
+    /**
+     * expires entries a fixed time after they were written.
+     */
+    public Builder<K, V> withTtl(final long ttl, final TimeUnit unit) {
+      checkArgument(ttl > 0, "ttl must be positive");
+      this.ttlMs = unit.toMillis(ttl);
+      return this;
+    }
+
+    public Builder<K, V> withMetrics(final MetricFactory metricFactory, final String cacheName) {
+      this.metricFactory = metricFactory;
+      this.cacheName = cacheName;
+      return this;
+    }
+
+    public OffHeapTypedCache<K, V> build() {
+      return new OffHeapTypedCache<>(this);
+    }
+  }
+}
@@ -24,6 +24,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import static com.outbrain.ob1k.concurrent.BoundExecutorAssertions.assertResumesOnTheBoundExecutor;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
@@ -202,4 +203,12 @@ public abstract class AbstractMemcachedClientTest {
     assertEquals("value", client.getAsync(key).get());
   }
 
+  @Test
+  public void testResultsResumeOnTheBoundExecutor() throws Exception {
+    final String key = UUID.randomUUID().toString();
+    client.setAsync(key, "value").get();
+
+    assertResumesOnTheBoundExecutor(() -> client.getAsync(key));
+  }
+
 }
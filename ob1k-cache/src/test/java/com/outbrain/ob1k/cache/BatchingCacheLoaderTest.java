@@ -0,0 +1,149 @@
+package com.outbrain.ob1k.cache;
+
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class BatchingCacheLoaderTest {
+
+  private final List<List<String>> bulkLoads = new CopyOnWriteArrayList<>();
+  private final AtomicBoolean failLoads = new AtomicBoolean();
+
+  private final CacheLoader<String, String> bulkLoader = new CacheLoader<String, String>() {
+    @Override
+    public ComposableFuture<String> load(final String cacheName, final String key) {
+      throw new UnsupportedOperationException("single key loads should be batched");
+    }
+
+    @Override
+    public ComposableFuture<Map<String, String>> load(final String cacheName, final Iterable<? extends String> keys) {
+      final List<String> batch = new ArrayList<>();
+      keys.forEach(batch::add);
+      bulkLoads.add(batch);
+      if (failLoads.get()) {
+        return ComposableFutures.fromError(new RuntimeException("load failed"));
+      }
+
+      final Map<String, String> values = new HashMap<>();
+      for (final String key : batch) {
+        if (!key.startsWith("missing")) {
+          values.put(key, cacheName + "-" + key);
+        }
+      }
+
+      return ComposableFutures.fromValue(values);
+    }
+  };
+
+  @Test
+  public void testLoadsWithinTheWindowAreBatched() throws Exception {
+    final CacheLoader<String, String> loader = new BatchingCacheLoader<>(bulkLoader, 100, TimeUnit.MILLISECONDS, 100);
+
+    final ComposableFuture<String> first = loader.load("cache", "1");
+    final ComposableFuture<String> second = loader.load("cache", "2");
+    final ComposableFuture<String> duplicate = loader.load("cache", "1");
+    final ComposableFuture<String> missing = loader.load("cache", "missing");
+
+    Assert.assertEquals("cache-1", first.get());
+    Assert.assertEquals("cache-2", second.get());
+    Assert.assertEquals("cache-1", duplicate.get());
+    Assert.assertNull(missing.get());
+    Assert.assertEquals(1, bulkLoads.size());
+    Assert.assertEquals(3, bulkLoads.get(0).size());
+  }
+
+  @Test
+  public void testCancellingOneOfTheDuplicateLoadsKeepsTheOthers() throws Exception {
+    final CacheLoader<String, String> loader = new BatchingCacheLoader<>(bulkLoader, 1, TimeUnit.HOURS, 2);
+
+    final ComposableFuture<String> cancelled = loader.load("cache", "1");
+    final ComposableFuture<String> duplicate = loader.load("cache", "1");
+
+    Assert.assertTrue(cancelled.cancel(true));
+    Assert.assertTrue(bulkLoads.isEmpty());
+    final ComposableFuture<String> other = loader.load("cache", "2");
+
+    Assert.assertEquals("cache-1", duplicate.get(1, TimeUnit.SECONDS));
+    Assert.assertEquals("cache-2", other.get(1, TimeUnit.SECONDS));
+    try {
+      cancelled.get();
+      Assert.fail("the load was cancelled");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof CancellationException);
+    }
+  }
+
+  @Test
+  public void testFullBatchesAreLoadedRightAway() throws Exception {
+    final CacheLoader<String, String> loader = new BatchingCacheLoader<>(bulkLoader, 1, TimeUnit.HOURS, 3);
+
+    final List<ComposableFuture<String>> values = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      values.add(loader.load("cache", String.valueOf(i)));
+    }
+
+    for (int i = 0; i < 6; i++) {
+      Assert.assertEquals("cache-" + i, values.get(i).get(1, TimeUnit.SECONDS));
+    }
+    Assert.assertEquals(2, bulkLoads.size());
+  }
+
+  @Test
+  public void testBatchesAreSplitByCacheName() throws Exception {
+    final CacheLoader<String, String> loader = new BatchingCacheLoader<>(bulkLoader, 100, TimeUnit.MILLISECONDS, 100);
+
+    final ComposableFuture<String> first = loader.load("first", "1");
+    final ComposableFuture<String> second = loader.load("second", "1");
+
+    Assert.assertEquals("first-1", first.get());
+    Assert.assertEquals("second-1", second.get());
+    Assert.assertEquals(2, bulkLoads.size());
+  }
+
+  @Test
+  public void testBulkLoadErrorsAreRoutedToEachKey() throws Exception {
+    failLoads.set(true);
+    final CacheLoader<String, String> loader = new BatchingCacheLoader<>(bulkLoader, 100, TimeUnit.MILLISECONDS, 100);
+
+    final List<ComposableFuture<String>> values = new ArrayList<>();
+    values.add(loader.load("cache", "1"));
+    values.add(loader.load("cache", "2"));
+
+    for (final ComposableFuture<String> value : values) {
+      try {
+        value.get();
+        Assert.fail("the bulk load failed");
+      } catch (final ExecutionException e) {
+        Assert.assertEquals("load failed", e.getCause().getMessage());
+      }
+    }
+    Assert.assertEquals(1, bulkLoads.size());
+  }
+
+  @Test
+  public void testLocalAsyncCacheMissesAreBatched() throws Exception {
+    final TypedCache<String, String> cache = new LocalAsyncCache<>(100, 1, TimeUnit.MINUTES,
+      new BatchingCacheLoader<>(bulkLoader, 100, TimeUnit.MILLISECONDS, 100), null, "cache");
+
+    final List<ComposableFuture<String>> values = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      values.add(cache.getAsync(String.valueOf(i)));
+    }
+
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals("cache-" + i, values.get(i).get());
+    }
+    Assert.assertEquals(1, bulkLoads.size());
+  }
+}
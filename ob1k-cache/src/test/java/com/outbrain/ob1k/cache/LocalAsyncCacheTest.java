@@ -10,6 +10,7 @@ import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import static org.junit.Assert.*;
 
 /**
@@ -261,6 +262,86 @@ public class LocalAsyncCacheTest {
     assertComposableFutureError(TEMPORARY_ERROR_MESSAGE,RuntimeException.class,myCache.getAsync(NULL_KEY)); // nulls are not cached on bulk
   }
 
+  @Test
+  public void testCaffeineEngine() throws Exception {
+    final ExceptionalCacheLoader loader = new ExceptionalCacheLoader();
+    final LocalAsyncCache<String, String> myCache = LocalAsyncCache.<String, String>newBuilder(10).
+      expireAfterWrite(10, TimeUnit.MINUTES).
+      withLoader(loader).
+      withEngine(LocalAsyncCache.Engine.CAFFEINE).
+      build();
+
+    assertEquals(VALUE_FOR + "a", myCache.getAsync("a").get());
+    assertComposableFutureError(ERROR_MESSAGE, RuntimeException.class, myCache.getAsync(MISSING_KEY));
+
+    final Map<String, String> bulk = myCache.getBulkAsync(Arrays.asList("a", "b")).get();
+    assertEquals(VALUE_FOR + "a", bulk.get("a"));
+    assertEquals(VALUE_FOR_BULK + "b", bulk.get("b"));
+
+    loader.setGenerateLoaderErrors(true);
+    assertEquals(VALUE_FOR + "a", myCache.getAsync("a").get()); // already populated
+    assertComposableFutureError(TEMPORARY_ERROR_MESSAGE, RuntimeException.class, myCache.getAsync("c"));
+    loader.setGenerateLoaderErrors(false);
+    assertEquals("errors are not cached", VALUE_FOR + "c", myCache.getAsync("c").get());
+
+    assertTrue(myCache.setAsync("a", "other").get());
+    assertEquals("other", myCache.getAsync("a").get());
+    assertTrue(myCache.deleteAsync("a").get());
+    assertEquals(VALUE_FOR + "a", myCache.getAsync("a").get());
+  }
+
+  @Test
+  public void testVariableExpiry() throws Exception {
+    final LocalAsyncCache<String, String> myCache = LocalAsyncCache.<String, String>newBuilder(10).
+      withVariableExpiry((key, value) -> value.startsWith("short") ? 50 : TimeUnit.MINUTES.toMillis(10)).
+      withEngine(LocalAsyncCache.Engine.CAFFEINE).
+      build();
+
+    myCache.setAsync("a", "short lived").get();
+    myCache.setAsync("b", "long lived").get();
+    Thread.sleep(100);
+
+    assertNull(myCache.getAsync("a").get());
+    assertEquals("long lived", myCache.getAsync("b").get());
+  }
+
+  @Test
+  public void testVariableExpiryOfLoadedValues() throws Exception {
+    final AtomicInteger loads = new AtomicInteger();
+    final CacheLoader<String, String> slowLoader = new CacheLoader<String, String>() {
+      @Override
+      public ComposableFuture<String> load(final String cacheName, final String key) {
+        loads.incrementAndGet();
+        return ComposableFutures.schedule(() -> "short lived", 20, TimeUnit.MILLISECONDS);
+      }
+
+      @Override
+      public ComposableFuture<Map<String, String>> load(final String cacheName, final Iterable<? extends String> keys) {
+        throw new UnsupportedOperationException();
+      }
+    };
+
+    final LocalAsyncCache<String, String> myCache = LocalAsyncCache.<String, String>newBuilder(10).
+      expireAfterWrite(10, TimeUnit.MINUTES).
+      withVariableExpiry((key, value) -> 50).
+      withLoader(slowLoader).
+      withEngine(LocalAsyncCache.Engine.CAFFEINE).
+      build();
+
+    assertEquals("short lived", myCache.getAsync("a").get());
+    assertEquals("short lived", myCache.getAsync("a").get());
+    assertEquals(1, loads.get());
+
+    Thread.sleep(100);
+    assertEquals("short lived", myCache.getAsync("a").get());
+    assertEquals("the value expires by its ttl once it is loaded", 2, loads.get());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testVariableExpiryRequiresCaffeine() {
+    LocalAsyncCache.<String, String>newBuilder(10).withVariableExpiry((key, value) -> 50).build();
+  }
+
   private static <T> void assertComposableFutureError(String expectedMsg, Class<? extends Exception> exceptionType, ComposableFuture<T> future) {
     try {
       future.get();
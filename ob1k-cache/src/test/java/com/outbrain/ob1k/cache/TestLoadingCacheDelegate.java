@@ -1,6 +1,7 @@
 package com.outbrain.ob1k.cache;
 
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
 import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.outbrain.ob1k.concurrent.ComposableFutures;
 import com.outbrain.swinfra.metrics.api.MetricFactory;
@@ -142,4 +143,281 @@ public class TestLoadingCacheDelegate {
 
   }
 
+  @Test
+  public void testStaleValuesAreServedWhileRefreshing() throws Exception {
+    final AtomicInteger loaderCounter = new AtomicInteger();
+    final TypedCache<String, TimestampedValue<String>> cache = new LocalAsyncCache<>();
+    cache.setAsync("key", new TimestampedValue<>("stale", System.currentTimeMillis() - 2000)).get();
+    final TypedCache<String, String> loadingCache = LoadingCacheDelegate.withSoftTtl(cache, countingLoader(loaderCounter), "meh",
+      null, 1, 10, TimeUnit.SECONDS);
+
+    Assert.assertEquals("stale", loadingCache.getAsync("key").get());
+    Assert.assertEquals("stale", loadingCache.getAsync("key").get());
+
+    Assert.assertEquals("res-key", waitForRefresh(loadingCache, "key"));
+    Assert.assertEquals("a single refresh should be triggered", 1, loaderCounter.get());
+    Assert.assertEquals("res-key", loadingCache.getAsync("key").get());
+    Assert.assertEquals(1, loaderCounter.get());
+  }
+
+  @Test
+  public void testValuesPastTheHardTtlWaitForTheLoader() throws Exception {
+    final AtomicInteger loaderCounter = new AtomicInteger();
+    final TypedCache<String, TimestampedValue<String>> cache = new LocalAsyncCache<>();
+    cache.setAsync("key", new TimestampedValue<>("expired", System.currentTimeMillis() - 20000)).get();
+    final TypedCache<String, String> loadingCache = LoadingCacheDelegate.withSoftTtl(cache, countingLoader(loaderCounter), "meh",
+      null, 1, 10, TimeUnit.SECONDS);
+
+    Assert.assertEquals("res-key", loadingCache.getAsync("key").get());
+    Assert.assertEquals("res-key", loadingCache.getAsync("key").get());
+    Assert.assertEquals(1, loaderCounter.get());
+  }
+
+  @Test
+  public void testBulkStaleValuesAreServedWhileRefreshing() throws Exception {
+    final AtomicInteger loaderCounter = new AtomicInteger();
+    final TypedCache<String, TimestampedValue<String>> cache = new LocalAsyncCache<>();
+    cache.setAsync("1", new TimestampedValue<>("fresh", System.currentTimeMillis())).get();
+    cache.setAsync("2", new TimestampedValue<>("stale", System.currentTimeMillis() - 2000)).get();
+    final TypedCache<String, String> loadingCache = LoadingCacheDelegate.withSoftTtl(cache, countingLoader(loaderCounter), "meh",
+      null, 1, 10, TimeUnit.SECONDS);
+
+    final Map<String, String> values = loadingCache.getBulkAsync(Arrays.asList("1", "2", "3")).get();
+    Assert.assertEquals("fresh", values.get("1"));
+    Assert.assertEquals("stale", values.get("2"));
+    Assert.assertEquals("res-3", values.get("3"));
+
+    Assert.assertEquals("res-2", waitForRefresh(loadingCache, "2"));
+    Assert.assertEquals("only the missing and the stale keys should be loaded", 2, loaderCounter.get());
+  }
+
+  @Test
+  public void testOnlyTheLeaseHolderLoads() throws Exception {
+    final AtomicInteger loaderCounter = new AtomicInteger();
+    final TypedCache<String, String> cache = new LocalAsyncCache<>();
+    final TypedCache<String, String> leases = new LocalAsyncCache<>();
+    // two processes sharing the remote cache
+    final TypedCache<String, String> first = leasedLoadingCache(cache, leases, countingLoader(loaderCounter, 100));
+    final TypedCache<String, String> second = leasedLoadingCache(cache, leases, countingLoader(loaderCounter, 100));
+
+    final ComposableFuture<String> firstValue = first.getAsync("key");
+    final ComposableFuture<String> secondValue = second.getAsync("key");
+
+    Assert.assertEquals("res-key", firstValue.get());
+    Assert.assertEquals("res-key", secondValue.get());
+    Assert.assertEquals("only the lease holder should load", 1, loaderCounter.get());
+  }
+
+  @Test
+  public void testExpiredValuesAreServedWhileAnotherProcessLoads() throws Exception {
+    final AtomicInteger loaderCounter = new AtomicInteger();
+    final TypedCache<String, TimestampedValue<String>> cache = new LocalAsyncCache<>();
+    cache.setAsync("key", new TimestampedValue<>("expired", System.currentTimeMillis() - 20000)).get();
+    final TypedCache<String, String> leases = new LocalAsyncCache<>();
+    leases.setAsync("key", "other process").get();
+
+    final TypedCache<String, String> loadingCache = LoadingCacheDelegate.newBuilder(cache, countingLoader(loaderCounter, 20), "meh",
+      1, 10, TimeUnit.SECONDS).withLeases(leases, 1000, 10, TimeUnit.MILLISECONDS).build();
+
+    Assert.assertEquals("expired", loadingCache.getAsync("key").get());
+    Assert.assertEquals(0, loaderCounter.get());
+  }
+
+  @Test
+  public void testStaleValuesAreRefreshedByTheLeaseHolder() throws Exception {
+    final AtomicInteger loaderCounter = new AtomicInteger();
+    final TypedCache<String, TimestampedValue<String>> cache = new LocalAsyncCache<>();
+    cache.setAsync("key", new TimestampedValue<>("stale", System.currentTimeMillis() - 2000)).get();
+    final TypedCache<String, String> leases = new LocalAsyncCache<>();
+    leases.setAsync("key", "other process").get();
+
+    final TypedCache<String, String> loadingCache = LoadingCacheDelegate.newBuilder(cache, countingLoader(loaderCounter, 20), "meh",
+      1, 10, TimeUnit.SECONDS).withLeases(leases, 200, 10, TimeUnit.MILLISECONDS).build();
+
+    Assert.assertEquals("stale", loadingCache.getAsync("key").get());
+    Thread.sleep(50);
+    Assert.assertEquals("stale", loadingCache.getAsync("key").get());
+    Assert.assertEquals("the lease holder should refresh the value", 0, loaderCounter.get());
+
+    leases.deleteAsync("key").get();
+    Assert.assertEquals("res-key", waitForRefresh(loadingCache, "key"));
+    Assert.assertEquals(1, loaderCounter.get());
+  }
+
+  @Test
+  public void testLeaseWaitFallsBackToLoading() throws Exception {
+    final AtomicInteger loaderCounter = new AtomicInteger();
+    final TypedCache<String, String> cache = new LocalAsyncCache<>();
+    final TypedCache<String, String> leases = new LocalAsyncCache<>();
+    // held by a process that never completes its load
+    leases.setAsync("key", "dead process").get();
+
+    final TypedCache<String, String> loadingCache = leasedLoadingCache(cache, leases, countingLoader(loaderCounter, 20));
+
+    Assert.assertEquals("res-key", loadingCache.getAsync("key").get());
+    Assert.assertEquals(1, loaderCounter.get());
+  }
+
+  @Test
+  public void testLeasesTakenByOthersAreNotReleased() throws Exception {
+    final AtomicInteger leaseReleases = new AtomicInteger();
+    final TypedCache<String, String> cache = new LocalAsyncCache<>();
+    final TypedCache<String, String> leases = new LocalAsyncCache<String, String>() {
+      @Override
+      public ComposableFuture<Boolean> setAsync(final String key, final EntryMapper<String, String> mapper, final int maxIterations) {
+        final ComposableFuture<Boolean> released = super.setAsync(key, mapper, maxIterations);
+        leaseReleases.incrementAndGet();
+        return released;
+      }
+    };
+
+    // the lease expires during the load, and another process takes it
+    final CacheLoader<String, String> loader = countingLoader(new AtomicInteger(), 20);
+    final TypedCache<String, String> loadingCache = leasedLoadingCache(cache, leases, new CacheLoader<String, String>() {
+      @Override
+      public ComposableFuture<String> load(final String cacheName, final String key) {
+        leases.setAsync(key, "other process");
+        return loader.load(cacheName, key);
+      }
+
+      @Override
+      public ComposableFuture<Map<String, String>> load(final String cacheName, final Iterable<? extends String> keys) {
+        return loader.load(cacheName, keys);
+      }
+    });
+
+    Assert.assertEquals("res-key", loadingCache.getAsync("key").get());
+    for (int i = 0; i < 100 && leaseReleases.get() == 0; i++) {
+      Thread.sleep(10);
+    }
+
+    Assert.assertEquals(1, leaseReleases.get());
+    Assert.assertEquals("other process", leases.getAsync("key").get());
+  }
+
+  @Test
+  public void testReleasedLeasesAreTakenAgain() throws Exception {
+    final AtomicInteger loaderCounter = new AtomicInteger();
+    final TypedCache<String, String> cache = new LocalAsyncCache<>();
+    final TypedCache<String, String> leases = new LocalAsyncCache<>();
+    final TypedCache<String, String> first = leasedLoadingCache(cache, leases, countingLoader(loaderCounter, 20));
+    final TypedCache<String, String> second = LoadingCacheDelegate.newBuilder(cache, countingLoader(loaderCounter, 20), "meh").
+      withLeases(leases, 5000, 10, TimeUnit.MILLISECONDS).
+      build();
+
+    Assert.assertEquals("res-key", first.getAsync("key").get());
+    for (int i = 0; i < 100 && !leases.getAsync("key").get().isEmpty(); i++) {
+      Thread.sleep(10);
+    }
+
+    // evicted, the key is loaded by the second process right away rather than after waiting for the first one
+    cache.deleteAsync("key").get();
+    Assert.assertEquals("res-key", second.getAsync("key").get(1, TimeUnit.SECONDS));
+    Assert.assertEquals(2, loaderCounter.get());
+  }
+
+  @Test
+  public void testOnlyTheLeaseHolderBulkLoads() throws Exception {
+    final AtomicInteger loaderCounter = new AtomicInteger();
+    final TypedCache<String, String> cache = new LocalAsyncCache<>();
+    final TypedCache<String, String> leases = new LocalAsyncCache<>();
+    final TypedCache<String, String> first = leasedLoadingCache(cache, leases, countingLoader(loaderCounter, 100));
+    final TypedCache<String, String> second = leasedLoadingCache(cache, leases, countingLoader(loaderCounter, 100));
+
+    final ComposableFuture<Map<String, String>> firstValues = first.getBulkAsync(Arrays.asList("a", "b"));
+    final ComposableFuture<Map<String, String>> secondValues = second.getBulkAsync(Arrays.asList("a", "b"));
+
+    Assert.assertEquals(ImmutableMap.of("a", "res-a", "b", "res-b"), firstValues.get());
+    Assert.assertEquals(ImmutableMap.of("a", "res-a", "b", "res-b"), secondValues.get());
+    Assert.assertEquals("each key should be loaded by its lease holder only", 2, loaderCounter.get());
+  }
+
+  @Test
+  public void testValuesCloseToTheSoftTtlAreRefreshedEarly() throws Exception {
+    final AtomicInteger loaderCounter = new AtomicInteger();
+    final TypedCache<String, TimestampedValue<String>> cache = new LocalAsyncCache<>();
+    final TypedCache<String, String> loadingCache = LoadingCacheDelegate.newBuilder(cache, countingLoader(loaderCounter, 200), "meh",
+      10, 60, TimeUnit.SECONDS).withEarlyRefresh(10).build();
+
+    // a load tells how long loads take, which scales how early values are refreshed
+    Assert.assertEquals("res-other", loadingCache.getAsync("other").get());
+    Assert.assertEquals(1, loaderCounter.get());
+
+    // two seconds ahead of the soft ttl, each read refreshes it with a probability of about e^-1
+    cache.setAsync("key", new TimestampedValue<>("stale", System.currentTimeMillis() - 8000)).get();
+    for (int i = 0; i < 50 && loaderCounter.get() == 1; i++) {
+      Assert.assertEquals("stale", loadingCache.getAsync("key").get());
+    }
+
+    Assert.assertEquals("the value should be refreshed before its soft ttl", "res-key", waitForRefresh(loadingCache, "key"));
+    Assert.assertEquals(2, loaderCounter.get());
+  }
+
+  @Test
+  public void testBulkLoadTimesScaleTheEarlyRefreshes() throws Exception {
+    final AtomicInteger loaderCounter = new AtomicInteger();
+    final TypedCache<String, TimestampedValue<String>> cache = new LocalAsyncCache<>();
+    final TypedCache<String, String> loadingCache = LoadingCacheDelegate.newBuilder(cache, countingLoader(loaderCounter, 200), "meh",
+      10, 60, TimeUnit.SECONDS).withEarlyRefresh(10).build();
+
+    Assert.assertEquals("res-other", loadingCache.getBulkAsync(Arrays.asList("other")).get().get("other"));
+    Assert.assertEquals(1, loaderCounter.get());
+
+    cache.setAsync("key", new TimestampedValue<>("stale", System.currentTimeMillis() - 8000)).get();
+    for (int i = 0; i < 50 && loaderCounter.get() == 1; i++) {
+      Assert.assertEquals("stale", loadingCache.getBulkAsync(Arrays.asList("key")).get().get("key"));
+    }
+
+    Assert.assertEquals("the value should be refreshed before its soft ttl", "res-key", waitForRefresh(loadingCache, "key"));
+    Assert.assertEquals(2, loaderCounter.get());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testEarlyRefreshRequiresSoftTtl() {
+    LoadingCacheDelegate.newBuilder(new LocalAsyncCache<String, String>(), countingLoader(new AtomicInteger()), "meh").
+      withEarlyRefresh(1);
+  }
+
+  private static TypedCache<String, String> leasedLoadingCache(final TypedCache<String, String> cache,
+                                                               final TypedCache<String, String> leases,
+                                                               final CacheLoader<String, String> loader) {
+    return LoadingCacheDelegate.newBuilder(cache, loader, "meh").
+      withLeases(leases, 200, 10, TimeUnit.MILLISECONDS).
+      build();
+  }
+
+  private static CacheLoader<String, String> countingLoader(final AtomicInteger loaderCounter) {
+    return countingLoader(loaderCounter, 20);
+  }
+
+  private static CacheLoader<String, String> countingLoader(final AtomicInteger loaderCounter, final long loadTimeMs) {
+    return new CacheLoader<String, String>() {
+      @Override
+      public ComposableFuture<String> load(final String cacheName, final String key) {
+        loaderCounter.incrementAndGet();
+        return ComposableFutures.schedule(() -> "res-" + key, loadTimeMs, TimeUnit.MILLISECONDS);
+      }
+
+      @Override
+      public ComposableFuture<Map<String, String>> load(final String cacheName, final Iterable<? extends String> keys) {
+        final Map<String, ComposableFuture<String>> res = new HashMap<>();
+        for (final String key : keys) {
+          res.put(key, load(cacheName, key));
+        }
+
+        return ComposableFutures.all(true, res);
+      }
+    };
+  }
+
+  private static String waitForRefresh(final TypedCache<String, String> loadingCache, final String key) throws Exception {
+    String value = loadingCache.getAsync(key).get();
+    for (int i = 0; i < 100 && value.equals("stale"); i++) {
+      Thread.sleep(10);
+      value = loadingCache.getAsync(key).get();
+    }
+
+    return value;
+  }
+
 }
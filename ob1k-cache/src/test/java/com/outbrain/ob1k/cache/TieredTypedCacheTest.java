@@ -0,0 +1,150 @@
+package com.outbrain.ob1k.cache;
+
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TieredTypedCacheTest {
+
+  private final RecordingCache remoteCache = new RecordingCache();
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private final CacheLoader<String, String> loader = new CacheLoader<String, String>() {
+    @Override
+    public ComposableFuture<String> load(final String cacheName, final String key) {
+      loads.incrementAndGet();
+      return ComposableFutures.fromValue("loaded-" + key);
+    }
+
+    @Override
+    public ComposableFuture<Map<String, String>> load(final String cacheName, final Iterable<? extends String> keys) {
+      final Map<String, String> values = new HashMap<>();
+      for (final String key : keys) {
+        loads.incrementAndGet();
+        values.put(key, "loaded-" + key);
+      }
+
+      return ComposableFutures.fromValue(values);
+    }
+  };
+
+  @Test
+  public void testReadsFillTheTiersOnTheWayBack() throws Exception {
+    final TieredTypedCache<String, String> cache = TieredTypedCache.newBuilder("test", remoteCache).withLoader(loader).build();
+
+    Assert.assertEquals("loaded-a", cache.getAsync("a").get());
+    Assert.assertEquals("loaded-a", cache.getAsync("a").get());
+    Assert.assertEquals("loaded-a", cache.getAsync("a").get());
+
+    Assert.assertEquals(1, loads.get());
+    Assert.assertEquals("only the first read should leave the process", 1, remoteCache.requestedKeys.size());
+    Assert.assertEquals("the loaded value should be kept remotely", "loaded-a", remoteCache.getAsync("a").get());
+    Assert.assertEquals(2.0 / 3, cache.getNearHitRatio(), 0.001);
+    Assert.assertEquals(0, cache.getRemoteHitRatio(), 0.001);
+    Assert.assertEquals(1, cache.getLoaderHitRatio(), 0.001);
+  }
+
+  @Test
+  public void testBulkReadsOnlyAskTheRemoteCacheForNearMisses() throws Exception {
+    final TieredTypedCache<String, String> cache = TieredTypedCache.newBuilder("test", remoteCache).withLoader(loader).build();
+    remoteCache.setAsync("b", "remote-b").get();
+    cache.getAsync("a").get();
+    remoteCache.requestedKeys.clear();
+
+    final Map<String, String> values = cache.getBulkAsync(Arrays.asList("a", "b", "c", "a")).get();
+
+    Assert.assertEquals(3, values.size());
+    Assert.assertEquals("loaded-a", values.get("a"));
+    Assert.assertEquals("remote-b", values.get("b"));
+    Assert.assertEquals("loaded-c", values.get("c"));
+    Assert.assertEquals(Arrays.asList("b", "c"), sorted(remoteCache.requestedKeys));
+    // "a" was loaded by the first read
+    Assert.assertEquals(1.0 / 3, cache.getRemoteHitRatio(), 0.001);
+  }
+
+  @Test
+  public void testConcurrentMissesShareTheRemoteFetch() throws Exception {
+    final AtomicInteger remoteReads = new AtomicInteger();
+    final TypedCache<String, String> slowCache = new LocalAsyncCache<String, String>() {
+      @Override
+      public ComposableFuture<String> getAsync(final String key) {
+        remoteReads.incrementAndGet();
+        return ComposableFutures.schedule(() -> "remote-" + key, 50, TimeUnit.MILLISECONDS);
+      }
+    };
+    final TieredTypedCache<String, String> cache = TieredTypedCache.newBuilder("test", slowCache).build();
+
+    final ComposableFuture<String> first = cache.getAsync("a");
+    final ComposableFuture<String> second = cache.getAsync("a");
+
+    Assert.assertEquals("remote-a", first.get());
+    Assert.assertEquals("remote-a", second.get());
+    Assert.assertEquals(1, remoteReads.get());
+  }
+
+  @Test
+  public void testWriteModes() throws Exception {
+    final TieredTypedCache<String, String> writeThrough = TieredTypedCache.newBuilder("through", remoteCache).build();
+    writeThrough.setAsync("a", "1").get();
+    Assert.assertEquals("1", writeThrough.getAsync("a").get());
+    Assert.assertEquals("a written value should be read from the near cache", 1, writeThrough.getNearHitRatio(), 0.001);
+
+    final TieredTypedCache<String, String> writeAround = TieredTypedCache.newBuilder("around", remoteCache)
+      .withWriteMode(TieredTypedCache.WriteMode.WRITE_AROUND).build();
+    writeAround.setAsync("b", "2").get();
+    Assert.assertEquals("2", writeAround.getAsync("b").get());
+    Assert.assertEquals("a written value should be read from the remote cache", 0, writeAround.getNearHitRatio(), 0.001);
+    Assert.assertEquals(1, writeAround.getRemoteHitRatio(), 0.001);
+  }
+
+  @Test
+  public void testWritesInvalidateOtherNearCaches() throws Exception {
+    final InvalidationChannel<String> channel = new InProcessInvalidationChannel<>();
+    final TieredTypedCache<String, String> first = TieredTypedCache.newBuilder("test", remoteCache).withInvalidationChannel(channel).build();
+    final TieredTypedCache<String, String> second = TieredTypedCache.newBuilder("test", remoteCache).withInvalidationChannel(channel).build();
+    final TieredTypedCache<String, String> unsubscribed = TieredTypedCache.newBuilder("test", remoteCache).build();
+
+    first.setAsync("a", "old").get();
+    Assert.assertEquals("old", second.getAsync("a").get());
+    Assert.assertEquals("old", unsubscribed.getAsync("a").get());
+
+    first.setAsync("a", "new").get();
+    Assert.assertEquals("new", first.getAsync("a").get());
+    Assert.assertEquals("new", second.getAsync("a").get());
+    Assert.assertEquals("a near cache without the channel keeps the value until it expires", "old", unsubscribed.getAsync("a").get());
+
+    second.deleteAsync("a").get();
+    Assert.assertNull(first.getAsync("a").get());
+  }
+
+  private static List<String> sorted(final List<String> keys) {
+    final List<String> sorted = new ArrayList<>(keys);
+    sorted.sort(null);
+    return sorted;
+  }
+
+  private static class RecordingCache extends LocalAsyncCache<String, String> {
+    private final List<String> requestedKeys = new ArrayList<>();
+
+    @Override
+    public ComposableFuture<String> getAsync(final String key) {
+      requestedKeys.add(key);
+      return super.getAsync(key);
+    }
+
+    @Override
+    public ComposableFuture<Map<String, String>> getBulkAsync(final Iterable<? extends String> keys) {
+      keys.forEach(requestedKeys::add);
+      return super.getBulkAsync(keys);
+    }
+  }
+}
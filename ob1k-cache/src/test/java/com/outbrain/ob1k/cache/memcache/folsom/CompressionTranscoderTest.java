@@ -1,5 +1,6 @@
 package com.outbrain.ob1k.cache.memcache.folsom;
 
+import com.outbrain.ob1k.cache.memcache.compression.CompressionAlgorithm;
 import com.outbrain.ob1k.cache.memcache.compression.Compressor;
 import com.spotify.folsom.Transcoder;
 import org.junit.Assert;
@@ -10,6 +11,9 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
 /**
  * Created by bshushi on 26/03/2017.
  */
@@ -43,4 +47,101 @@ public class CompressionTranscoderTest {
     Mockito.verify(compressor).decompress(DATA.getBytes());
     Mockito.verify(transcoder).decode(DATA.getBytes());
   }
+
+  private static final Transcoder<String> STRING_TRANSCODER = new Transcoder<String>() {
+    @Override
+    public String decode(final byte[] b) {
+      return new String(b, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] encode(final String t) {
+      return t.getBytes(StandardCharsets.UTF_8);
+    }
+  };
+
+  private static final String SMALL = "a small value";
+  private static final String COMPRESSIBLE = repeat("a value that compresses well. ", 100);
+
+  @Test
+  public void testSmallValuesAreNotCompressed() {
+    final CompressionTranscoder<String> transcoder = CompressionTranscoder.newBuilder(CompressionAlgorithm.GZIP).build(STRING_TRANSCODER);
+
+    final byte[] encoded = transcoder.encode(SMALL);
+    Assert.assertEquals(SMALL.length() + 1, encoded.length);
+    Assert.assertEquals(SMALL, transcoder.decode(encoded));
+  }
+
+  @Test
+  public void testIncompressibleValuesAreNotCompressed() {
+    final byte[] noise = new byte[1000];
+    new Random(7).nextBytes(noise);
+    final String value = new String(noise, StandardCharsets.ISO_8859_1);
+    final Transcoder<String> latin = new Transcoder<String>() {
+      @Override
+      public String decode(final byte[] b) {
+        return new String(b, StandardCharsets.ISO_8859_1);
+      }
+
+      @Override
+      public byte[] encode(final String t) {
+        return t.getBytes(StandardCharsets.ISO_8859_1);
+      }
+    };
+    final CompressionTranscoder<String> transcoder = CompressionTranscoder.newBuilder(CompressionAlgorithm.DEFLATE).build(latin);
+
+    final byte[] encoded = transcoder.encode(value);
+    Assert.assertEquals(noise.length + 1, encoded.length);
+    Assert.assertEquals(value, transcoder.decode(encoded));
+  }
+
+  @Test
+  public void testValuesOfAnyAlgorithmAreRead() {
+    final CompressionTranscoder<String> gzip = CompressionTranscoder.newBuilder(CompressionAlgorithm.GZIP).build(STRING_TRANSCODER);
+    final CompressionTranscoder<String> deflate = CompressionTranscoder.newBuilder(CompressionAlgorithm.DEFLATE).build(STRING_TRANSCODER);
+
+    final byte[] encoded = gzip.encode(COMPRESSIBLE);
+    Assert.assertTrue(encoded.length < COMPRESSIBLE.length() / 2);
+    Assert.assertTrue(gzip.getCompressionRatio() < 0.5);
+    Assert.assertEquals(COMPRESSIBLE, deflate.decode(encoded));
+    Assert.assertEquals(COMPRESSIBLE, gzip.decode(deflate.encode(COMPRESSIBLE)));
+  }
+
+  @Test
+  public void testLZ4RoundTrip() {
+    final CompressionTranscoder<String> lz4 = CompressionTranscoder.newBuilder(CompressionAlgorithm.LZ4).build(STRING_TRANSCODER);
+
+    final byte[] encoded = lz4.encode(COMPRESSIBLE);
+    Assert.assertTrue(encoded.length < COMPRESSIBLE.length() / 2);
+    Assert.assertEquals(COMPRESSIBLE, lz4.decode(encoded));
+    Assert.assertEquals(SMALL, lz4.decode(lz4.encode(SMALL)));
+  }
+
+  @Test
+  public void testLegacyValuesAreRead() {
+    final CompressionTranscoder<String> legacy = new CompressionTranscoder<>(STRING_TRANSCODER, CompressionAlgorithm.GZIP.getCompressor());
+    final CompressionTranscoder<String> current = CompressionTranscoder.newBuilder(CompressionAlgorithm.DEFLATE).
+      withLegacyAlgorithm(CompressionAlgorithm.GZIP).
+      build(STRING_TRANSCODER);
+
+    Assert.assertEquals(SMALL, current.decode(legacy.encode(SMALL)));
+    Assert.assertEquals(COMPRESSIBLE, current.decode(legacy.encode(COMPRESSIBLE)));
+    // the legacy transcoder reads the new format too, so the readers can be upgraded first
+    Assert.assertEquals(SMALL, legacy.decode(current.encode(SMALL)));
+    Assert.assertEquals(COMPRESSIBLE, legacy.decode(current.encode(COMPRESSIBLE)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownFormatsFail() {
+    final CompressionTranscoder<String> transcoder = CompressionTranscoder.newBuilder(CompressionAlgorithm.GZIP).build(STRING_TRANSCODER);
+    transcoder.decode(CompressionAlgorithm.GZIP.getCompressor().compress(COMPRESSIBLE.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static String repeat(final String s, final int times) {
+    final char[] chars = new char[s.length() * times];
+    for (int i = 0; i < times; i++) {
+      s.getChars(0, s.length(), chars, i * s.length());
+    }
+    return new String(chars);
+  }
 }
@@ -0,0 +1,113 @@
+package com.outbrain.ob1k.cache.memcache.folsom;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.spotify.folsom.MemcacheClient;
+import com.spotify.folsom.MemcacheStatus;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+
+public class HotKeyCacheTest {
+
+  private static void read(final HotKeyCache<String> cache, final String key, final int times) {
+    for (int i = 0; i < times; i++) {
+      cache.getIfHot(key);
+    }
+  }
+
+  @Test
+  public void testHotKeysAreDetected() {
+    final HotKeyCache<String> cache = HotKeyCache.newBuilder().withThreshold(50, 10000).withMaxHotKeys(2).build();
+
+    for (int i = 0; i < 1000; i++) {
+      read(cache, "cold-" + i, 1);
+      if (i % 50 == 0) {
+        read(cache, "hot-1", 1);
+        read(cache, "hot-2", 1);
+      }
+    }
+    Assert.assertEquals(Collections.emptySet(), cache.getHotKeys());
+
+    read(cache, "hot-1", 100);
+    read(cache, "hot-2", 100);
+    Assert.assertEquals(new HashSet<>(Arrays.asList("hot-1", "hot-2")), cache.getHotKeys());
+  }
+
+  @Test
+  public void testOnlyTheHottestKeysAreKept() {
+    final HotKeyCache<String> cache = HotKeyCache.newBuilder().withThreshold(10, 10000).withMaxHotKeys(1).build();
+
+    read(cache, "a", 100);
+    Assert.assertEquals(Collections.singleton("a"), cache.getHotKeys());
+
+    read(cache, "b", 50);
+    Assert.assertEquals("b is not hotter than a yet", Collections.singleton("a"), cache.getHotKeys());
+
+    read(cache, "b", 100);
+    Assert.assertEquals(Collections.singleton("b"), cache.getHotKeys());
+  }
+
+  @Test
+  public void testHotValuesAreServedLocally() {
+    final HotKeyCache<String> cache = HotKeyCache.newBuilder().withThreshold(10, 10000).build();
+
+    cache.offer("key", "value");
+    read(cache, "key", 9);
+    Assert.assertNull("the key is not hot yet", cache.getIfHot("key"));
+
+    cache.offer("key", "value");
+    Assert.assertEquals("value", cache.getIfHot("key"));
+    Assert.assertEquals(1, cache.getHitCount());
+
+    cache.invalidate("key");
+    Assert.assertNull(cache.getIfHot("key"));
+  }
+
+  @Test
+  public void testKeysCoolDown() {
+    final HotKeyCache<String> cache = HotKeyCache.newBuilder().withThreshold(10, 100).build();
+
+    read(cache, "key", 20);
+    Assert.assertEquals(Collections.singleton("key"), cache.getHotKeys());
+
+    for (int i = 0; i < 300; i++) {
+      read(cache, "other-" + i, 1);
+    }
+    Assert.assertEquals(Collections.emptySet(), cache.getHotKeys());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testValuesReadDuringAWriteAreDropped() throws Exception {
+    final MemcacheClient<String> folsomClient = Mockito.mock(MemcacheClient.class);
+    final SettableFuture<String> read = SettableFuture.create();
+    final SettableFuture<MemcacheStatus> write = SettableFuture.create();
+    Mockito.when(folsomClient.get("key")).thenReturn(read, Futures.immediateFuture("new"));
+    Mockito.when(folsomClient.set(eq("key"), eq("new"), anyInt())).thenReturn(write);
+
+    final HotKeyCache<String> cache = HotKeyCache.newBuilder().withThreshold(5, 1000).withTtl(1, TimeUnit.MINUTES).build();
+    final MemcachedClient<String, String> client = new MemcachedClient<>(folsomClient, key -> key, 1, TimeUnit.MINUTES, "test", cache);
+    read(cache, "key", 10);
+
+    final ComposableFuture<String> oldValue = client.getAsync("key");
+    final ComposableFuture<Boolean> written = client.setAsync("key", "new");
+
+    // the read sent before the write completes first, with the previous value
+    read.set("old");
+    Assert.assertEquals("old", oldValue.get());
+
+    write.set(MemcacheStatus.OK);
+    Assert.assertTrue(written.get());
+    Assert.assertEquals("new", client.getAsync("key").get());
+  }
+}
@@ -4,6 +4,7 @@ import com.google.common.collect.Lists;
 import com.google.common.net.HostAndPort;
 import com.outbrain.ob1k.cache.AbstractMemcachedClientTest;
 import com.outbrain.ob1k.cache.TypedCache;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.spotify.folsom.AsciiMemcacheClient;
 import com.spotify.folsom.ConnectFuture;
 import com.spotify.folsom.MemcacheClient;
@@ -16,10 +17,16 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 /**
  * @author Eran Harel
  */
@@ -67,6 +74,51 @@ public class MemcachedClientTest extends AbstractMemcachedClientTest {
     client.getBulkAsync(Lists.newArrayList("meh", "bah")).get(1, TimeUnit.MINUTES);
   }
 
+  @Test
+  public void testHotKeysAreServedLocally() throws Exception {
+    final HotKeyCache<Serializable> hotKeyCache = HotKeyCache.newBuilder().withThreshold(10, 1000).withTtl(1, TimeUnit.MINUTES).build();
+    final MemcachedClient<String, Serializable> client = new MemcachedClient<>(folsomClient, key -> key, 1, TimeUnit.MINUTES, "hot", hotKeyCache);
+
+    client.setAsync("celebrity", "v1").get();
+    for (int i = 0; i < 20; i++) {
+      assertEquals("v1", client.getAsync("celebrity").get());
+    }
+    assertTrue(hotKeyCache.getHotKeys().contains("celebrity"));
+    assertTrue(hotKeyCache.getHitCount() > 0);
+
+    // writes of other clients are only seen once the local copy expires
+    folsomClient.set("celebrity", "v2", 60).get();
+    assertEquals("v1", client.getAsync("celebrity").get());
+    assertEquals("v1", client.getBulkAsync(Lists.newArrayList("celebrity")).get().get("celebrity"));
+
+    // writes through the client drop it right away
+    client.setAsync("celebrity", "v3").get();
+    assertEquals("v3", client.getAsync("celebrity").get());
+  }
+
+  @Test
+  public void testBatchedGets() throws Exception {
+    final MemcachedClient<String, Serializable> client = MemcachedClient.<String, Serializable>newBuilder(folsomClient, key -> key).
+      withExpiration(1, TimeUnit.MINUTES).
+      withGetBatching(10, TimeUnit.MILLISECONDS, 100).
+      build();
+
+    for (int i = 0; i < 10; i++) {
+      client.setAsync("batched-" + i, "value-" + i).get();
+    }
+
+    final List<ComposableFuture<Serializable>> values = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      values.add(client.getAsync("batched-" + i));
+    }
+    values.add(client.getAsync("batched-missing"));
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals("value-" + i, values.get(i).get());
+    }
+    assertNull(values.get(10).get());
+  }
+
   private MemcachedClient<Object, Serializable> createClient(final Transcoder<Serializable> transcoder) throws InterruptedException, ExecutionException {
     final AsciiMemcacheClient<Serializable> rawClient = new MemcacheClientBuilder<>(transcoder).withAddress(HostAndPort.fromParts("localhost", MEMCACHED_PORT))
       .withRequestTimeoutMillis(1000)
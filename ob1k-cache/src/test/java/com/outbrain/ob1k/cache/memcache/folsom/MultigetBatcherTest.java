@@ -0,0 +1,136 @@
+package com.outbrain.ob1k.cache.memcache.folsom;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.spotify.folsom.MemcacheClient;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+
+public class MultigetBatcherTest {
+
+  @SuppressWarnings("unchecked")
+  private final MemcacheClient<String> folsomClient = Mockito.mock(MemcacheClient.class);
+  private final List<List<String>> multigets = new ArrayList<>();
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setup() {
+    Mockito.when(folsomClient.get(anyListOf(String.class))).thenAnswer(invocation -> {
+      final List<String> keys = new ArrayList<>((List<String>) invocation.getArguments()[0]);
+      multigets.add(keys);
+      final List<String> values = new ArrayList<>();
+      for (final String key : keys) {
+        values.add(key.startsWith("missing") ? null : "value-" + key);
+      }
+      return Futures.immediateFuture(values);
+    });
+  }
+
+  private MultigetBatcher<String> newBatcher(final long window, final TimeUnit unit, final int maxBatchSize) {
+    return new MultigetBatcher<>(folsomClient, window, unit, maxBatchSize, ComposableFutures.getScheduler());
+  }
+
+  @Test
+  public void testGetsWithinTheWindowAreBatched() throws Exception {
+    final MultigetBatcher<String> batcher = newBatcher(100, TimeUnit.MILLISECONDS, 100);
+
+    final ListenableFuture<String> first = batcher.get("1");
+    final ListenableFuture<String> second = batcher.get("2");
+    final ListenableFuture<String> duplicate = batcher.get("1");
+    final ListenableFuture<String> missing = batcher.get("missing");
+
+    Assert.assertEquals("value-1", first.get());
+    Assert.assertEquals("value-2", second.get());
+    Assert.assertEquals("value-1", duplicate.get());
+    Assert.assertNull(missing.get());
+    Assert.assertEquals(1, multigets.size());
+    Assert.assertEquals(3, multigets.get(0).size());
+    Mockito.verify(folsomClient, Mockito.never()).get(anyString());
+  }
+
+  @Test
+  public void testCancellingOneOfTheDuplicateGetsKeepsTheOthers() throws Exception {
+    final SettableFuture<List<String>> multiget = SettableFuture.create();
+    Mockito.when(folsomClient.get(anyListOf(String.class))).thenReturn(multiget);
+    final MultigetBatcher<String> batcher = newBatcher(1, TimeUnit.HOURS, 2);
+
+    final ListenableFuture<String> cancelled = batcher.get("1");
+    final ListenableFuture<String> duplicate = batcher.get("1");
+    final ListenableFuture<String> other = batcher.get("2");
+
+    Assert.assertTrue(cancelled.cancel(true));
+    Assert.assertFalse(duplicate.isDone());
+    multiget.set(Arrays.asList("value-1", "value-2"));
+
+    Assert.assertTrue(cancelled.isCancelled());
+    Assert.assertEquals("value-1", duplicate.get(1, TimeUnit.SECONDS));
+    Assert.assertEquals("value-2", other.get(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testFullBatchesAreSentRightAway() throws Exception {
+    final MultigetBatcher<String> batcher = newBatcher(1, TimeUnit.HOURS, 2);
+
+    final List<ListenableFuture<String>> values = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      values.add(batcher.get(String.valueOf(i)));
+    }
+
+    for (int i = 0; i < 4; i++) {
+      Assert.assertEquals("value-" + i, values.get(i).get(1, TimeUnit.SECONDS));
+    }
+    Assert.assertEquals(2, multigets.size());
+  }
+
+  @Test
+  public void testMultigetErrorsAreRoutedToEachKey() throws Exception {
+    Mockito.when(folsomClient.get(anyListOf(String.class))).thenReturn(Futures.immediateFailedFuture(new RuntimeException("multiget failed")));
+    final MultigetBatcher<String> batcher = newBatcher(50, TimeUnit.MILLISECONDS, 100);
+
+    final List<ListenableFuture<String>> values = new ArrayList<>();
+    values.add(batcher.get("1"));
+    values.add(batcher.get("2"));
+
+    for (final ListenableFuture<String> value : values) {
+      try {
+        value.get();
+        Assert.fail("the multiget failed");
+      } catch (final ExecutionException e) {
+        Assert.assertEquals("multiget failed", e.getCause().getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void testInvalidKeysOnlyFailThemselves() throws Exception {
+    Mockito.when(folsomClient.get(anyListOf(String.class))).thenThrow(new IllegalArgumentException("invalid key"));
+    Mockito.when(folsomClient.get(eq("valid"))).thenReturn(Futures.immediateFuture("value-valid"));
+    Mockito.when(folsomClient.get(eq("in valid"))).thenThrow(new IllegalArgumentException("invalid key"));
+    final MultigetBatcher<String> batcher = newBatcher(50, TimeUnit.MILLISECONDS, 100);
+
+    final ListenableFuture<String> valid = batcher.get("valid");
+    final ListenableFuture<String> invalid = batcher.get("in valid");
+
+    Assert.assertEquals("value-valid", valid.get());
+    try {
+      invalid.get();
+      Assert.fail("the key is invalid");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+  }
+}
@@ -0,0 +1,185 @@
+package com.outbrain.ob1k.cache.offheap;
+
+import com.outbrain.ob1k.cache.memcache.IdentityCacheKeyTranslator;
+import com.spotify.folsom.Transcoder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class OffHeapTypedCacheTest {
+
+  private static final Transcoder<String> STRING_TRANSCODER = new Transcoder<String>() {
+    @Override
+    public String decode(final byte[] b) {
+      return new String(b, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] encode(final String t) {
+      return t.getBytes(StandardCharsets.UTF_8);
+    }
+  };
+
+  private static OffHeapTypedCache.Builder<String, String> newBuilder() {
+    return OffHeapTypedCache.newBuilder(IdentityCacheKeyTranslator.getInstance(), STRING_TRANSCODER);
+  }
+
+  @Test
+  public void testBasicOperations() throws Exception {
+    final OffHeapTypedCache<String, String> cache = newBuilder().build();
+
+    Assert.assertNull(cache.getAsync("a").get());
+    Assert.assertTrue(cache.setAsync("a", "1").get());
+    Assert.assertEquals("1", cache.getAsync("a").get());
+    Assert.assertTrue(cache.setAsync("a", "11").get());
+    Assert.assertEquals("11", cache.getAsync("a").get());
+
+    Assert.assertFalse(cache.setIfAbsentAsync("a", "111").get());
+    Assert.assertTrue(cache.setIfAbsentAsync("b", "2").get());
+
+    final Map<String, String> values = cache.getBulkAsync(Arrays.asList("a", "b", "c")).get();
+    Assert.assertEquals(2, values.size());
+    Assert.assertEquals("11", values.get("a"));
+    Assert.assertEquals("2", values.get("b"));
+
+    Assert.assertTrue(cache.deleteAsync("a").get());
+    Assert.assertNull(cache.getAsync("a").get());
+    Assert.assertEquals(1, cache.size());
+    Assert.assertEquals(OffHeapSegment.HEADER_SIZE + 2, cache.getLiveBytes());
+  }
+
+  @Test
+  public void testMappedUpdates() throws Exception {
+    final OffHeapTypedCache<String, String> cache = newBuilder().build();
+
+    Assert.assertTrue(cache.setAsync("counter", (key, value) -> value == null ? "1" : String.valueOf(Integer.parseInt(value) + 1), 3).get());
+    Assert.assertTrue(cache.setAsync("counter", (key, value) -> String.valueOf(Integer.parseInt(value) + 1), 3).get());
+    Assert.assertEquals("2", cache.getAsync("counter").get());
+
+    // a concurrent write in between makes the update retry with the new value
+    final AtomicReference<String> seen = new AtomicReference<>();
+    Assert.assertTrue(cache.setAsync("counter", (key, value) -> {
+      if (seen.getAndSet(value) == null) {
+        cache.setAsync("counter", "10");
+      }
+      return value + "!";
+    }, 3).get());
+    Assert.assertEquals("10!", cache.getAsync("counter").get());
+  }
+
+  @Test
+  public void testEntriesExpire() throws Exception {
+    final OffHeapTypedCache<String, String> cache = newBuilder().withTtl(50, TimeUnit.MILLISECONDS).build();
+
+    cache.setAsync("a", "1").get();
+    Assert.assertEquals("1", cache.getAsync("a").get());
+
+    Thread.sleep(100);
+    Assert.assertNull(cache.getAsync("a").get());
+    Assert.assertTrue("an expired entry is absent", cache.setIfAbsentAsync("a", "2").get());
+    Assert.assertEquals("2", cache.getAsync("a").get());
+  }
+
+  @Test
+  public void testValuesLargerThanASlabAreNotCached() throws Exception {
+    final OffHeapTypedCache<String, String> cache = newBuilder().withSlabSize(64).withMaxMemory(1024).withSegments(1).build();
+
+    cache.setAsync("a", "small").get();
+    Assert.assertFalse(cache.setAsync("a", repeat('x', 100)).get());
+    Assert.assertNull("the previous value should not be served", cache.getAsync("a").get());
+  }
+
+  @Test
+  public void testMemoryIsBounded() throws Exception {
+    final OffHeapTypedCache<String, String> cache = newBuilder().withSlabSize(4096).withMaxMemory(64 * 1024).withSegments(4).build();
+
+    for (int i = 0; i < 20000; i++) {
+      Assert.assertTrue(cache.setAsync("key-" + i, "value-" + i).get());
+    }
+
+    Assert.assertTrue(cache.getAllocatedBytes() <= 64 * 1024);
+    Assert.assertTrue(cache.getLiveBytes() <= cache.getAllocatedBytes());
+    Assert.assertTrue(cache.size() < 20000);
+    Assert.assertTrue(cache.getEvictionCount() + cache.getRejectionCount() > 0);
+    Assert.assertEquals("value-19999", cache.getAsync("key-19999").get());
+
+    for (int i = 0; i < 20000; i++) {
+      final String value = cache.getAsync("key-" + i).get();
+      Assert.assertTrue(value == null || value.equals("value-" + i));
+    }
+  }
+
+  @Test
+  public void testFrequentlyReadEntriesSurviveAScan() throws Exception {
+    final OffHeapTypedCache<String, String> cache = newBuilder().withSlabSize(4096).withMaxMemory(64 * 1024).withSegments(1).build();
+
+    final List<String> hotKeys = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      hotKeys.add("hot-" + i);
+      cache.setAsync("hot-" + i, "hot-value-" + i).get();
+    }
+
+    for (int i = 0; i < 50000; i++) {
+      if (i % 5 == 0) {
+        final String key = hotKeys.get(ThreadLocalRandom.current().nextInt(hotKeys.size()));
+        Assert.assertNotNull(key + " should stay cached", cache.getAsync(key).get());
+      } else {
+        cache.setAsync("scan-" + i, "scan-value-" + i).get();
+      }
+    }
+
+    Assert.assertTrue(cache.getRejectionCount() > 0);
+  }
+
+  @Test
+  public void testConcurrentReadsAndWrites() throws Exception {
+    final OffHeapTypedCache<String, String> cache = newBuilder().withSlabSize(4096).withMaxMemory(128 * 1024).withSegments(2).build();
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final List<Thread> threads = new ArrayList<>();
+
+    for (int t = 0; t < 4; t++) {
+      final Thread thread = new Thread(() -> {
+        try {
+          final ThreadLocalRandom random = ThreadLocalRandom.current();
+          for (int i = 0; i < 50000; i++) {
+            final int key = random.nextInt(5000);
+            if (random.nextInt(4) == 0) {
+              cache.setAsync("key-" + key, repeat((char) ('a' + key % 26), 1 + key % 50)).get();
+            } else {
+              final String value = cache.getAsync("key-" + key).get();
+              if (value != null && !value.equals(repeat((char) ('a' + key % 26), 1 + key % 50))) {
+                throw new AssertionError("wrong value for key-" + key + ": " + value);
+              }
+            }
+          }
+        } catch (final Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+  }
+
+  private static String repeat(final char c, final int times) {
+    final char[] chars = new char[times];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+}
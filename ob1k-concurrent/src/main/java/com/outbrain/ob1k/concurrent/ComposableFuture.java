@@ -45,10 +45,13 @@ import static com.outbrain.ob1k.concurrent.ComposableFutures.schedule;
  * manner by calling the get method. however, in a non-blocking asynchronous environment
  * such as Ob1k <b>it should never be used.</b>
  * </p>
+ * <p>
+ * Eager futures can be cancelled, which propagates the cancellation upstream to the computations producing them.
+ * </p>
  *
  * @author marenzon, aronen
  */
-public interface ComposableFuture<T> {
+public interface ComposableFuture<T> extends CancellationToken {
 
   /**
    * Continues a future with a handler that will be called only if the original future resulted with success
@@ -275,6 +278,24 @@ public interface ComposableFuture<T> {
     throw new TimeoutException("Timeout occurred while waiting for a value");
   }
 
+  /**
+   * Requests the cancellation of the computation producing the value of this future, which fails with a CancellationException.
+   * cancellation is cooperative: the request flows upstream through the futures this one was composed from,
+   * up to the producers that can abort their work (e.g. an http request).
+   * computations that can't be aborted keep running, but their results are no longer awaited by the cancelled futures.
+   * a future that other futures were composed from is cancelled only once all of them were, so cancelling one
+   * of several futures composed from a shared one fails only the cancelled future.
+   * <p>
+   * lazy futures have no single computation to cancel, and ignore the request.
+   *
+   * @param mayInterrupt whether the computation may be interrupted if it's already running
+   * @return true if this is the first cancellation request of a future that is not completed yet.
+   */
+  @Override
+  default boolean cancel(final boolean mayInterrupt) {
+    return false;
+  }
+
   /**
    * Turns the current future into an eager one.
    *
@@ -285,6 +306,7 @@ public interface ComposableFuture<T> {
   /**
    * Caps the max time for producing a value(or error) for this future.
    * the returned future will return the original result if available within the specified time or a TimeoutException.
+   * a timeout doesn't cancel this future, which may be awaited by others; cancelling the returned future does.
    *
    * @param duration max wait time for a result before producing a timeout
    * @param unit     the duration timeout.
@@ -17,6 +17,7 @@ import com.outbrain.ob1k.concurrent.handlers.FutureSuccessHandler;
 import com.outbrain.ob1k.concurrent.handlers.RecursiveFutureProvider;
 import com.outbrain.ob1k.concurrent.lazy.LazyComposableFuture;
 import com.outbrain.ob1k.concurrent.stream.FutureProviderToStreamHandler;
+import com.outbrain.ob1k.concurrent.stream.MapAsyncStreamHandler;
 import rx.Observable;
 import rx.Subscriber;
 import rx.subjects.ReplaySubject;
@@ -26,9 +27,13 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -192,13 +197,13 @@ public class ComposableFutures {
    */
   public static <T, R> ComposableFuture<List<R>> batch(final List<T> elements, final int batchSize,
                                                        final FutureSuccessHandler<T, R> producer) {
-    return batch(elements, 0, batchSize, producer);
+    return batch(elements, 0, batchSize, producer, new ArrayList<>(elements.size()));
   }
 
   private static <T, R> ComposableFuture<List<R>> batch(final List<T> elements, final int index, final int batchSize,
-                                                        final FutureSuccessHandler<T, R> producer) {
+                                                        final FutureSuccessHandler<T, R> producer, final List<R> results) {
     if (index >= elements.size()) {
-      return ComposableFutures.fromValue(Collections.<R>emptyList());
+      return ComposableFutures.fromValue(results);
     }
 
     final List<ComposableFuture<R>> singleBatch = new ArrayList<>(batchSize);
@@ -208,13 +213,9 @@ public class ComposableFutures {
 
     final ComposableFuture<List<R>> batchRes = all(true, singleBatch);
     return batchRes.flatMap(batchResult -> {
-      final ComposableFuture<List<R>> rest = batch(elements, index + batchSize, batchSize, producer);
-      return rest.map(result -> {
-        final List<R> res = new ArrayList<>(result.size() + batchResult.size());
-        res.addAll(batchResult);
-        res.addAll(result);
-        return res;
-      });
+      // batches run one after the other, so the results are accumulated in order
+      results.addAll(batchResult);
+      return batch(elements, index + batchSize, batchSize, producer, results);
     });
   }
 
@@ -340,6 +341,41 @@ public class ComposableFutures {
     return Observable.create(subscriber -> batchToStream(elements, batchSize, 0, subscriber, producer));
   }
 
+  /**
+   * Execute the producer on each element and return a stream of the results.
+   * Exactly parallelism futures are kept in flight: the next element is processed as soon as a result is emitted,
+   * so a slow element doesn't hold back the others (as opposed to batchToStream).
+   * <p>
+   * The stream honors downstream backpressure: results that can't be emitted yet hold their slot,
+   * so at most parallelism elements are processed or buffered at any time.
+   * An error in one of the futures produced by the producer will end the stream with the error,
+   * and cancel the futures in flight.
+   *
+   * @param elements    the input to the producer
+   * @param parallelism how many items will be processed in parallel
+   * @param ordered     whether the results are emitted by the order of their elements, or as soon as they are ready
+   * @param producer    produces a future based on input from the element list
+   * @param <T>         the type of the input elements
+   * @param <R>         the result type of the future returning from the producer
+   * @return a stream of the results of the producer
+   */
+  public static <T, R> Observable<R> mapAsync(final Iterable<T> elements, final int parallelism, final boolean ordered,
+                                              final FutureSuccessHandler<T, R> producer) {
+    return mapAsync(Observable.from(elements), parallelism, ordered, producer);
+  }
+
+  /**
+   * Execute the producer on each element of the stream and return a stream of the results,
+   * requesting elements from the source only when a slot is free.
+   *
+   * @see #mapAsync(Iterable, int, boolean, FutureSuccessHandler)
+   */
+  public static <T, R> Observable<R> mapAsync(final Observable<T> elements, final int parallelism, final boolean ordered,
+                                              final FutureSuccessHandler<T, R> producer) {
+    Preconditions.checkArgument(parallelism > 0, "Parallelism must be > 0, not %s", parallelism);
+    return Observable.create(new MapAsyncStreamHandler<>(elements, parallelism, ordered, producer));
+  }
+
   private static <T, R> void batchToStream(final List<T> elements, final int batchSize, final int index,
                                            final Subscriber<? super List<R>> subscriber,
                                            final FutureSuccessHandler<T, R> producer) {
@@ -425,11 +461,11 @@ public class ComposableFutures {
   }
 
   public static <T> ComposableFuture<T> submitEager(final boolean delegateHandler, final Callable<T> task) {
-    return EagerComposableFuture.submit(ExecutorServiceHolder.INSTANCE, task, delegateHandler);
+    return EagerComposableFuture.submit(getExecutor(), task, delegateHandler);
   }
 
   public static <T> ComposableFuture<T> submitLazy(final boolean delegateHandler, final Callable<T> task) {
-    return LazyComposableFuture.submit(ExecutorServiceHolder.INSTANCE, task, delegateHandler);
+    return LazyComposableFuture.submit(getExecutor(), task, delegateHandler);
   }
 
   public static <T, S> ComposableFuture<S> from(final T value,
@@ -471,7 +507,7 @@ public class ComposableFutures {
 
   public static <T> ComposablePromise<T> newPromise(final boolean delegateHandler) {
     if (delegateHandler) {
-      return new EagerComposableFuture<>(ExecutorServiceHolder.INSTANCE);
+      return new EagerComposableFuture<>(getExecutor());
     } else {
       return new EagerComposableFuture<>();
     }
@@ -505,6 +541,46 @@ public class ComposableFutures {
     return EagerComposableFuture.build(producer);
   }
 
+  /**
+   * builds a new eager future from a producer, that can be cancelled.
+   *
+   * @param producer            the result producer
+   * @param cancellationHandler aborts the computation of the producer once the future is cancelled
+   * @param <T>                 the future type
+   * @return the future
+   */
+  public static <T> ComposableFuture<T> buildEager(final Producer<T> producer, final CancellationToken cancellationHandler) {
+    return EagerComposableFuture.build(producer, cancellationHandler);
+  }
+
+  /**
+   * makes a future combined from the given ones their dependent.
+   * cancelling the combined future fails it, and cancels each of the given futures that no other future depends on,
+   * so futures shared with other computations keep running.
+   *
+   * @param futures the futures being combined
+   * @return the cancellation handler of the combined future, see {@link #buildEager(Producer, CancellationToken)}
+   */
+  public static CancellationToken dependencyOn(final Iterable<? extends ComposableFuture<?>> futures) {
+    return EagerComposableFuture.dependencyOn(futures);
+  }
+
+  /**
+   * cancels all the given futures.
+   *
+   * @param futures      the futures to cancel
+   * @param mayInterrupt whether running computations may be interrupted
+   * @return true if any of the futures was cancelled by this call
+   */
+  public static boolean cancelAll(final Iterable<? extends ComposableFuture<?>> futures, final boolean mayInterrupt) {
+    boolean cancelled = false;
+    for (final ComposableFuture<?> future : futures) {
+      cancelled |= future.cancel(mayInterrupt);
+    }
+
+    return cancelled;
+  }
+
   /**
    * adds a time cap to the provided future.
    * if response do not arrive after the specified time a TimeoutException is returned from the returned future.
@@ -731,7 +807,28 @@ public class ComposableFutures {
   }
 
   public static ExecutorService getExecutor() {
-    return ExecutorServiceHolder.INSTANCE;
+    return ExecutorServiceHolder.instance;
+  }
+
+  /**
+   * @return the default executor, exposing its saturation (queue size, queue wait time and active threads).
+   */
+  public static InstrumentedExecutorService getInstrumentedExecutor() {
+    return ExecutorServiceHolder.instance;
+  }
+
+  /**
+   * replaces the default executor, which is otherwise created according to {@link Configuration}.
+   * should be called on startup, before the default executor is used, as components may keep a reference to it.
+   * the previous executor is not shut down.
+   *
+   * @param executor the new default executor
+   */
+  public static void setExecutor(final ExecutorService executor) {
+    Preconditions.checkNotNull(executor, "executor may not be null");
+    ExecutorServiceHolder.instance = executor instanceof InstrumentedExecutorService ?
+      (InstrumentedExecutorService) executor :
+      new InstrumentedExecutorService(executor);
   }
 
   public static Scheduler getScheduler() {
@@ -739,23 +836,58 @@ public class ComposableFutures {
   }
 
   private static class ExecutorServiceHolder {
-    private static final ExecutorService INSTANCE =
-      createExecutor(Configuration.getExecutorCoreSize(), Configuration.getExecutorMaxSize());
+    private static volatile InstrumentedExecutorService instance =
+      new InstrumentedExecutorService(createExecutor(Configuration.getExecutorType()));
+
+    private static ExecutorService createExecutor(final String type) {
+      if (Configuration.EXECUTOR_TYPE_FORK_JOIN.equalsIgnoreCase(type)) {
+        return createForkJoinPool(Configuration.getExecutorParallelism());
+      }
+
+      if (Configuration.EXECUTOR_TYPE_BOUNDED.equalsIgnoreCase(type)) {
+        return createThreadPool(Configuration.getExecutorCoreSize(), Configuration.getExecutorMaxSize(),
+          new ArrayBlockingQueue<>(Configuration.getExecutorQueueSize()));
+      }
+
+      return createThreadPool(Configuration.getExecutorCoreSize(), Configuration.getExecutorMaxSize(),
+        new LinkedBlockingQueue<>());
+    }
 
-    private static ExecutorService createExecutor(final int coreSize, final int maxSize) {
+    private static ExecutorService createThreadPool(final int coreSize, final int maxSize,
+                                                    final BlockingQueue<Runnable> queue) {
+      // threads above the core size are only created once the queue is full, i.e. for bounded queues
       final ThreadPoolExecutor threadPool = new ThreadPoolExecutor(coreSize, maxSize,
-        0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+        60L, TimeUnit.SECONDS, queue,
         new PrefixBasedThreadFactory("ob1k-main"));
       threadPool.allowCoreThreadTimeOut(false);
 
       return threadPool;
     }
+
+    private static ExecutorService createForkJoinPool(final int parallelism) {
+      final AtomicInteger threadNumber = new AtomicInteger();
+      final ForkJoinPool.ForkJoinWorkerThreadFactory threadFactory = pool -> {
+        final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("ob1k-main-pool-thread-" + threadNumber.getAndIncrement());
+        return thread;
+      };
+
+      // async mode keeps the tasks in FIFO order, which fits event style tasks that are never joined
+      return new ForkJoinPool(parallelism, threadFactory, null, true);
+    }
   }
 
   private static class SchedulerServiceHolder {
-    private static final Scheduler INSTANCE =
-      new ThreadPoolBasedScheduler(Configuration.getSchedulerCoreSize(),
-        new PrefixBasedThreadFactory("ob1k-scheduler-service").withDaemonThreads());
+    private static final Scheduler INSTANCE = createScheduler(Configuration.getSchedulerType());
+
+    private static Scheduler createScheduler(final String type) {
+      final PrefixBasedThreadFactory threadFactory = new PrefixBasedThreadFactory("ob1k-scheduler-service").withDaemonThreads();
+      if (Configuration.SCHEDULER_TYPE_HASHED_WHEEL.equalsIgnoreCase(type)) {
+        return new HashedWheelScheduler(threadFactory, Configuration.getSchedulerTickDurationMs(), TimeUnit.MILLISECONDS);
+      }
+
+      return new ThreadPoolBasedScheduler(Configuration.getSchedulerCoreSize(), threadFactory);
+    }
 
   }
 }
@@ -0,0 +1,73 @@
+package com.outbrain.ob1k.concurrent;
+
+import java.util.concurrent.Executor;
+
+/**
+ * binds an executor to the work done on behalf of a request, so its continuations resume there.
+ *
+ * the server binds e.g. the event loop of the request's channel while the request is dispatched.
+ * adapters of third party futures (of http clients, memcached clients, database drivers, etc.) capture the bound
+ * executor when a future is created, and complete it on that executor instead of hopping to their default executor
+ * and back, so the whole request stays on a single thread. with no bound executor, they complete as they always did.
+ *
+ * an executor binding itself while running its tasks keeps the binding along the whole continuation chain.
+ * only meant for cheap continuations, as they share the executor with all the other requests bound to it.
+ * for the same reason, blocking on such a future from a thread of the bound executor deadlocks if it's a single thread,
+ * as the future can only complete on the thread that waits for it.
+ */
+public final class ExecutionAffinity {
+
+  private static final ThreadLocal<Executor> CURRENT = new ThreadLocal<>();
+
+  private ExecutionAffinity() {
+  }
+
+  /**
+   * @return the executor bound to the calling thread, or null if there's none.
+   */
+  public static Executor current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * @return the executor bound to the calling thread, or the fallback executor if there's none.
+   */
+  public static Executor currentOr(final Executor fallback) {
+    final Executor current = CURRENT.get();
+    return current != null ? current : fallback;
+  }
+
+  /**
+   * binds an executor to the calling thread, until the previous binding is restored.
+   *
+   * @return the previously bound executor, to be passed to {@link #restore(Executor)}.
+   */
+  public static Executor bind(final Executor executor) {
+    final Executor previous = CURRENT.get();
+    CURRENT.set(executor);
+    return previous;
+  }
+
+  /**
+   * restores the binding that preceded a call to {@link #bind(Executor)}.
+   */
+  public static void restore(final Executor previous) {
+    if (previous == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(previous);
+    }
+  }
+
+  /**
+   * runs a task with an executor bound to the calling thread.
+   */
+  public static void run(final Executor executor, final Runnable task) {
+    final Executor previous = bind(executor);
+    try {
+      task.run();
+    } finally {
+      restore(previous);
+    }
+  }
+}
@@ -0,0 +1,273 @@
+package com.outbrain.ob1k.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * a scheduler based on a hashed wheel timer.
+ *
+ * tasks are hashed into the buckets of a wheel by their deadline, and a single worker thread
+ * advances the wheel one bucket per tick, expiring the due tasks of the current bucket.
+ * scheduling and cancelling are O(1) and lock free, at the price of the timing accuracy
+ * being bound to the tick duration, which makes it a good fit for a large number of short lived
+ * timers that are usually cancelled before expiring (e.g. timeouts).
+ *
+ * cancelled tasks are dropped before entering the wheel, or removed from it the next time their bucket is visited,
+ * i.e. within a single rotation of the wheel.
+ * expired tasks run on the worker thread unless an executor is supplied, so they should be short and non blocking.
+ */
+public class HashedWheelScheduler implements Scheduler {
+  private static final Logger logger = LoggerFactory.getLogger(HashedWheelScheduler.class);
+
+  public static final long DEFAULT_TICK_DURATION_MS = 10;
+  public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+  // bounds the amount of work done on a single tick when scheduling is bursty
+  private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+  private final long tickDuration;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final Executor executor;
+  private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+  private final Thread workerThread;
+  private final long startTime;
+  private volatile boolean shutdown;
+
+  public HashedWheelScheduler(final String threadNamePrefix) {
+    this(new PrefixBasedThreadFactory(threadNamePrefix).withDaemonThreads(), DEFAULT_TICK_DURATION_MS,
+      TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL, null);
+  }
+
+  public HashedWheelScheduler(final ThreadFactory threadFactory, final long tickDuration, final TimeUnit unit) {
+    this(threadFactory, tickDuration, unit, DEFAULT_TICKS_PER_WHEEL, null);
+  }
+
+  /**
+   * @param threadFactory the factory of the worker thread
+   * @param tickDuration  the duration of a single tick, i.e. the accuracy of the scheduler
+   * @param unit          the unit of the tick duration
+   * @param ticksPerWheel the number of buckets in the wheel, rounded up to a power of two
+   * @param executor      the executor to run the expired tasks on, or null to run them on the worker thread
+   */
+  public HashedWheelScheduler(final ThreadFactory threadFactory, final long tickDuration, final TimeUnit unit,
+                              final int ticksPerWheel, final Executor executor) {
+    checkNotNull(threadFactory, "threadFactory may not be null");
+    checkNotNull(unit, "unit may not be null");
+    checkArgument(tickDuration > 0, "tickDuration must be positive");
+    checkArgument(ticksPerWheel > 0 && ticksPerWheel <= 1 << 30, "ticksPerWheel must be between 1 and 2^30");
+
+    this.tickDuration = unit.toNanos(tickDuration);
+    this.wheel = createWheel(ticksPerWheel);
+    this.mask = wheel.length - 1;
+    this.executor = executor;
+    this.startTime = System.nanoTime();
+    this.workerThread = threadFactory.newThread(new Worker());
+    this.workerThread.start();
+  }
+
+  private static Bucket[] createWheel(final int ticksPerWheel) {
+    int size = 1;
+    while (size < ticksPerWheel) {
+      size <<= 1;
+    }
+
+    final Bucket[] wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+
+    return wheel;
+  }
+
+  @Override
+  public CancellationToken schedule(final Runnable task, final long delay, final TimeUnit timeUnit) {
+    checkNotNull(task, "task may not be null");
+    checkNotNull(timeUnit, "timeUnit may not be null");
+    if (shutdown) {
+      throw new RejectedExecutionException("scheduler was shut down");
+    }
+
+    final Timeout timeout = new Timeout(task, System.nanoTime() - startTime + timeUnit.toNanos(Math.max(delay, 0)));
+    pendingTimeouts.add(timeout);
+    return timeout;
+  }
+
+  /**
+   * stops the worker thread, tasks that were not expired yet will never run.
+   */
+  @Override
+  public void shutdown() {
+    shutdown = true;
+    workerThread.interrupt();
+  }
+
+  private final class Worker implements Runnable {
+    private long tick;
+
+    @Override
+    public void run() {
+      while (!shutdown) {
+        if (!waitForNextTick()) {
+          continue;
+        }
+
+        transferPendingTimeouts();
+        wheel[(int) (tick & mask)].expireTimeouts();
+        tick++;
+      }
+    }
+
+    private boolean waitForNextTick() {
+      final long deadline = tickDuration * (tick + 1);
+      while (true) {
+        final long sleepTimeMs = TimeUnit.NANOSECONDS.toMillis(deadline - (System.nanoTime() - startTime) + 999999);
+        if (sleepTimeMs <= 0) {
+          return true;
+        }
+
+        try {
+          Thread.sleep(sleepTimeMs);
+        } catch (final InterruptedException e) {
+          if (shutdown) {
+            return false;
+          }
+        }
+      }
+    }
+
+    private void transferPendingTimeouts() {
+      for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+        final Timeout timeout = pendingTimeouts.poll();
+        if (timeout == null) {
+          return;
+        }
+
+        if (timeout.state == Timeout.ST_CANCELLED) {
+          continue;
+        }
+
+        final long expirationTick = timeout.deadline / tickDuration;
+        timeout.remainingRounds = (expirationTick - tick) / wheel.length;
+
+        // a timeout that already passed goes to the current bucket, to be expired right away
+        final long bucketTick = Math.max(expirationTick, tick);
+        wheel[(int) (bucketTick & mask)].add(timeout);
+      }
+    }
+  }
+
+  /**
+   * a doubly linked list of timeouts, accessed by the worker thread only.
+   */
+  private static final class Bucket {
+    private Timeout head;
+    private Timeout tail;
+
+    private void add(final Timeout timeout) {
+      if (head == null) {
+        head = tail = timeout;
+      } else {
+        tail.next = timeout;
+        timeout.prev = tail;
+        tail = timeout;
+      }
+    }
+
+    private void expireTimeouts() {
+      Timeout timeout = head;
+      while (timeout != null) {
+        final Timeout next = timeout.next;
+        if (timeout.remainingRounds <= 0) {
+          remove(timeout);
+          timeout.expire();
+        } else if (timeout.state == Timeout.ST_CANCELLED) {
+          remove(timeout);
+        } else {
+          timeout.remainingRounds--;
+        }
+
+        timeout = next;
+      }
+    }
+
+    private void remove(final Timeout timeout) {
+      final Timeout next = timeout.next;
+      if (timeout.prev != null) {
+        timeout.prev.next = next;
+      }
+      if (next != null) {
+        next.prev = timeout.prev;
+      }
+
+      if (timeout == head) {
+        head = next;
+      }
+      if (timeout == tail) {
+        tail = timeout.prev;
+      }
+
+      timeout.prev = null;
+      timeout.next = null;
+    }
+  }
+
+  private final class Timeout implements CancellationToken {
+    private static final int ST_INIT = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+
+    private final Runnable task;
+    private final long deadline;
+    // not private, to be accessible by the field updater
+    volatile int state = ST_INIT;
+
+    // accessed by the worker thread only
+    private long remainingRounds;
+    private Timeout next;
+    private Timeout prev;
+
+    private Timeout(final Runnable task, final long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterrupt) {
+      return STATE_UPDATER.compareAndSet(this, ST_INIT, ST_CANCELLED);
+    }
+
+    private void expire() {
+      if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+        return;
+      }
+
+      try {
+        if (executor != null) {
+          executor.execute(task);
+        } else {
+          task.run();
+        }
+      } catch (final VirtualMachineError e) {
+        throw e;
+      } catch (final Throwable t) {
+        // same as a scheduled thread pool, a failing task does not affect the other tasks
+        logger.warn("scheduled task {} failed", task, t);
+      }
+    }
+  }
+
+  private static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER =
+    AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+}
@@ -0,0 +1,184 @@
+package com.outbrain.ob1k.concurrent;
+
+import com.google.common.base.Ticker;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * an executor service that tracks the saturation of the executor it delegates to:
+ * the number of queued tasks, the number of running tasks and the time tasks wait in the queue.
+ *
+ * the counters are striped, so tracking doesn't add a shared point of contention on top of the delegate.
+ */
+public class InstrumentedExecutorService extends AbstractExecutorService {
+
+  // the queue wait time is averaged per tick, decaying over a window of about a minute
+  private static final long TICK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+  private static final double ALPHA = 1 - Math.exp(-5.0 / 60);
+
+  private final ExecutorService delegate;
+  private final Ticker ticker;
+  private final LongAdder submitted = new LongAdder();
+  private final LongAdder started = new LongAdder();
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder queueWaitNanos = new LongAdder();
+
+  private volatile long lastTick;
+  private volatile double averageQueueWaitMs;
+  // the totals as of the last tick, and the decaying averages of their per tick deltas, guarded by this
+  private long tickedStarted;
+  private long tickedQueueWaitNanos;
+  private double decayedStarted;
+  private double decayedQueueWaitNanos;
+
+  public InstrumentedExecutorService(final ExecutorService delegate) {
+    this(delegate, Ticker.systemTicker());
+  }
+
+  InstrumentedExecutorService(final ExecutorService delegate, final Ticker ticker) {
+    this.delegate = checkNotNull(delegate, "delegate may not be null");
+    this.ticker = checkNotNull(ticker, "ticker may not be null");
+    this.lastTick = ticker.read();
+  }
+
+  public ExecutorService getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public void execute(final Runnable command) {
+    checkNotNull(command, "command may not be null");
+    submitted.increment();
+    try {
+      delegate.execute(new TimedTask(command, ticker.read()));
+    } catch (final RejectedExecutionException e) {
+      submitted.decrement();
+      throw e;
+    }
+  }
+
+  /**
+   * @return the number of tasks waiting to run.
+   */
+  public long getQueueSize() {
+    // reading the started tasks first, so that a concurrently started task is never counted as negative
+    final long startedTasks = started.sum();
+    return Math.max(submitted.sum() - startedTasks, 0);
+  }
+
+  /**
+   * @return the number of tasks currently running.
+   */
+  public long getActiveCount() {
+    final long completedTasks = completed.sum();
+    return Math.max(started.sum() - completedTasks, 0);
+  }
+
+  /**
+   * @return the total number of tasks that started running.
+   */
+  public long getStartedCount() {
+    return started.sum();
+  }
+
+  /**
+   * the average time tasks waited in the queue, decaying over about a minute.
+   * the average advances on fixed ticks, so reading it doesn't change it, no matter how often it is read.
+   * ticks without started tasks keep the average of the previous ones.
+   *
+   * @return the average queue wait time in milliseconds, or 0 if no task started yet.
+   */
+  public double getAverageQueueWaitMs() {
+    tickIfNecessary(ticker.read());
+    return averageQueueWaitMs;
+  }
+
+  private void tickIfNecessary(final long now) {
+    if (now - lastTick < TICK_INTERVAL_NANOS) {
+      return;
+    }
+
+    synchronized (this) {
+      final long ticks = (now - lastTick) / TICK_INTERVAL_NANOS;
+      if (ticks == 0) {
+        return;
+      }
+
+      lastTick += ticks * TICK_INTERVAL_NANOS;
+      final long startedTasks = started.sum();
+      final long waitNanos = queueWaitNanos.sum();
+
+      // the tasks started since the last tick fall in the first of the elapsed ticks, the rest were idle
+      final double idleDecay = Math.pow(1 - ALPHA, ticks - 1);
+      decayedStarted = idleDecay * (decayedStarted + ALPHA * (startedTasks - tickedStarted - decayedStarted));
+      decayedQueueWaitNanos = idleDecay * (decayedQueueWaitNanos +
+        ALPHA * (waitNanos - tickedQueueWaitNanos - decayedQueueWaitNanos));
+      tickedStarted = startedTasks;
+      tickedQueueWaitNanos = waitNanos;
+
+      if (decayedStarted > 0) {
+        averageQueueWaitMs = decayedQueueWaitNanos / decayedStarted / TimeUnit.MILLISECONDS.toNanos(1);
+      }
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    delegate.shutdown();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    return delegate.shutdownNow();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return delegate.isShutdown();
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return delegate.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+    return delegate.awaitTermination(timeout, unit);
+  }
+
+  @Override
+  public String toString() {
+    return "InstrumentedExecutorService(" + delegate + ")";
+  }
+
+  private final class TimedTask implements Runnable {
+    private final Runnable task;
+    private final long submitTime;
+
+    private TimedTask(final Runnable task, final long submitTime) {
+      this.task = task;
+      this.submitTime = submitTime;
+    }
+
+    @Override
+    public void run() {
+      final long now = ticker.read();
+      tickIfNecessary(now);
+      queueWaitNanos.add(now - submitTime);
+      started.increment();
+      try {
+        task.run();
+      } finally {
+        completed.increment();
+      }
+    }
+  }
+}
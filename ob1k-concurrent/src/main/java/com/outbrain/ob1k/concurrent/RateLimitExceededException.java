@@ -0,0 +1,15 @@
+package com.outbrain.ob1k.concurrent;
+
+/**
+ * Indicates that a {@link RateLimiter} rejected a request for permits,
+ * as waiting for them would have taken longer than the limiter allows.
+ */
+public class RateLimitExceededException extends RuntimeException {
+
+  // As Exception implements Serializable
+  private static final long serialVersionUID = 0;
+
+  public RateLimitExceededException(final String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,217 @@
+package com.outbrain.ob1k.concurrent;
+
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * a non blocking rate limiter, handing out permits as futures.
+ *
+ * permits are spaced evenly at the configured rate, with up to burst permits handed out at once after an idle period.
+ * a request that is over the rate gets a future that completes once its permits are due,
+ * on the executor bound to the request (see {@link ExecutionAffinity}) or the default executor, but never on the scheduler,
+ * whose thread is shared by all the timers. otherwise the request is rejected with a {@link RateLimitExceededException} if they are due later than the max wait.
+ * bursts are thereby smoothed instead of passed on, and no thread is ever blocked waiting for permits.
+ *
+ * implemented as a generic cell rate algorithm: the whole state is the theoretical arrival time of the next permit,
+ * updated with a single compare and set, so the limiter is lock free under contention.
+ */
+public class RateLimiter {
+
+  private final Scheduler scheduler;
+  private final long permitIntervalNanos;
+  private final long burstNanos;
+  private final long maxWaitNanos;
+
+  // the time at which the permits handed out so far are all due, had they been spaced evenly
+  private final AtomicLong theoreticalArrivalTime;
+
+  private final LongAdder acquired = new LongAdder();
+  private final LongAdder delayed = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+
+  public RateLimiter(final double permitsPerSecond, final int burst, final long maxWait, final TimeUnit unit) {
+    this(permitsPerSecond, burst, maxWait, unit, ComposableFutures.getScheduler());
+  }
+
+  public RateLimiter(final double permitsPerSecond, final int burst, final long maxWait, final TimeUnit unit,
+                     final Scheduler scheduler) {
+    checkArgument(permitsPerSecond > 0, "permitsPerSecond must be positive");
+    checkArgument(burst > 0, "burst must be positive");
+    checkArgument(maxWait >= 0, "maxWait must not be negative");
+
+    this.scheduler = checkNotNull(scheduler, "scheduler may not be null");
+    this.permitIntervalNanos = Math.max((long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond), 1);
+    this.burstNanos = burst * permitIntervalNanos;
+    this.maxWaitNanos = unit.toNanos(maxWait);
+    this.theoreticalArrivalTime = new AtomicLong(System.nanoTime());
+  }
+
+  /**
+   * acquires a single permit.
+   *
+   * @see #acquire(int)
+   */
+  public ComposableFuture<Void> acquire() {
+    return acquire(1);
+  }
+
+  /**
+   * acquires permits, waiting for them without blocking if they aren't available yet.
+   *
+   * cancelling the returned future while it waits gives the permits back.
+   *
+   * @param permits the number of permits; more permits than the burst always wait.
+   * @return a future that completes once the permits are acquired,
+   * or fails with a {@link RateLimitExceededException} if they would take longer than the max wait.
+   */
+  public ComposableFuture<Void> acquire(final int permits) {
+    checkArgument(permits > 0, "permits must be positive");
+
+    final long cost = permits * permitIntervalNanos;
+    final long waitNanos = reserve(cost, maxWaitNanos);
+    if (waitNanos < 0) {
+      rejected.increment();
+      return ComposableFutures.fromError(new RateLimitExceededException("rate limit exceeded, acquiring " + permits +
+        " permits would take more than " + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + "ms"));
+    }
+
+    acquired.add(permits);
+    if (waitNanos == 0) {
+      return ComposableFutures.fromNull();
+    }
+
+    delayed.increment();
+    final Executor resumeOn = ExecutionAffinity.currentOr(ComposableFutures.getExecutor());
+    final ComposablePromise<Void> promise = ComposableFutures.newPromise();
+    final CancellationToken scheduled = scheduler.schedule(() -> grant(promise, resumeOn), waitNanos, TimeUnit.NANOSECONDS);
+    promise.onCancel(mayInterrupt -> {
+      if (scheduled.cancel(mayInterrupt)) {
+        giveBack(cost);
+        acquired.add(-permits);
+        promise.setException(new CancellationException("waiting for permits was cancelled"));
+        return true;
+      }
+
+      return false;
+    });
+
+    return promise.future();
+  }
+
+  private static void grant(final ComposablePromise<Void> promise, final Executor resumeOn) {
+    try {
+      resumeOn.execute(() -> promise.set(null));
+    } catch (final RejectedExecutionException e) {
+      // a saturated executor, granting the permits on the scheduler rather than never
+      promise.set(null);
+    }
+  }
+
+  /**
+   * acquires a single permit only if it's available right away.
+   *
+   * @see #tryAcquire(int)
+   */
+  public boolean tryAcquire() {
+    return tryAcquire(1);
+  }
+
+  /**
+   * acquires permits only if they are available right away.
+   *
+   * @return true if the permits were acquired.
+   */
+  public boolean tryAcquire(final int permits) {
+    checkArgument(permits > 0, "permits must be positive");
+
+    if (reserve(permits * permitIntervalNanos, 0) == 0) {
+      acquired.add(permits);
+      return true;
+    }
+
+    rejected.increment();
+    return false;
+  }
+
+  /**
+   * reserves permits costing the given time.
+   *
+   * @return the time to wait for the reserved permits, or -1 if they were not reserved as they are due after the max wait.
+   */
+  private long reserve(final long cost, final long maxWait) {
+    while (true) {
+      final long now = System.nanoTime();
+      final long current = theoreticalArrivalTime.get();
+      // an idle period doesn't accumulate permits beyond the burst
+      final long base = current - now > 0 ? current : now;
+      final long next = base + cost;
+      final long wait = next - burstNanos - now;
+      if (wait > maxWait) {
+        return -1;
+      }
+
+      if (theoreticalArrivalTime.compareAndSet(current, next)) {
+        return Math.max(wait, 0);
+      }
+    }
+  }
+
+  /**
+   * gives back permits that were reserved but not used.
+   */
+  private void giveBack(final long cost) {
+    while (true) {
+      final long now = System.nanoTime();
+      final long current = theoreticalArrivalTime.get();
+      // permits that would have been due in the past are not handed out on top of the burst
+      final long previous = current - cost - now > 0 ? current - cost : now;
+      if (theoreticalArrivalTime.compareAndSet(current, previous)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the total number of permits acquired, either right away or after waiting.
+   */
+  public long getAcquiredCount() {
+    return acquired.sum();
+  }
+
+  /**
+   * @return the number of requests that had to wait for their permits.
+   */
+  public long getDelayedCount() {
+    return delayed.sum();
+  }
+
+  /**
+   * @return the number of requests rejected for exceeding the rate.
+   */
+  public long getRejectedCount() {
+    return rejected.sum();
+  }
+
+  /**
+   * @return the time a single permit requested now would wait for, in milliseconds.
+   */
+  public long getCurrentWaitMs() {
+    final long wait = theoreticalArrivalTime.get() + permitIntervalNanos - burstNanos - System.nanoTime();
+    return wait > 0 ? TimeUnit.NANOSECONDS.toMillis(wait) : 0;
+  }
+
+  @Override
+  public String toString() {
+    return "RateLimiter(" + TimeUnit.SECONDS.toNanos(1) / permitIntervalNanos + " permits/sec, burst " +
+      burstNanos / permitIntervalNanos + ")";
+  }
+}
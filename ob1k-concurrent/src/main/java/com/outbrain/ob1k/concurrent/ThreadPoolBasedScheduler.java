@@ -1,24 +1,24 @@
 package com.outbrain.ob1k.concurrent;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 /**
  * a scheduler based on java's ScheduledExecutorService.
+ * cancelled tasks are removed from the queue right away, so they don't pile up until their delay elapses.
  *
  * @author aronen
  */
 public class ThreadPoolBasedScheduler implements Scheduler {
-  private final ScheduledExecutorService scheduledThreadPool;
+  private final ScheduledThreadPoolExecutor scheduledThreadPool;
 
   public ThreadPoolBasedScheduler(final int numOfThreads,String threadNamePrefix) {
-    this.scheduledThreadPool = Executors.newScheduledThreadPool(numOfThreads,
-      new PrefixBasedThreadFactory(threadNamePrefix));
+    this(numOfThreads, new PrefixBasedThreadFactory(threadNamePrefix));
   }
   public ThreadPoolBasedScheduler(final int numOfThreads,ThreadFactory threadFactory) {
-    this.scheduledThreadPool = Executors.newScheduledThreadPool(numOfThreads,threadFactory);
+    this.scheduledThreadPool = new ScheduledThreadPoolExecutor(numOfThreads,threadFactory);
+    this.scheduledThreadPool.setRemoveOnCancelPolicy(true);
   }
 
   @Override
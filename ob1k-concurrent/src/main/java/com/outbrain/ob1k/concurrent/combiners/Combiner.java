@@ -26,7 +26,7 @@ import static com.outbrain.ob1k.concurrent.ComposableFutures.schedule;
 public class Combiner {
 
   public static <T> ComposableFuture<T> any(final Iterable<ComposableFuture<T>> elements) {
-    return ComposableFutures.build(consumer -> {
+    return ComposableFutures.buildEager(consumer -> {
       final AtomicBoolean done = new AtomicBoolean();
       for (final ComposableFuture<T> future : elements) {
         future.consume(result -> {
@@ -35,7 +35,7 @@ public class Combiner {
           }
         });
       }
-    });
+    }, ComposableFutures.dependencyOn(elements));
   }
 
   public static <T> ComposableFuture<List<T>> all(final boolean failOnError, final Iterable<ComposableFuture<T>> elements) {
@@ -101,7 +101,7 @@ public class Combiner {
       return fromValue(empty);
     }
 
-    return ComposableFutures.build(consumer -> {
+    return ComposableFutures.buildEager(consumer -> {
       final AtomicReferenceArray<KeyValue<K, T>> results = new AtomicReferenceArray<>(elements.size());
       final AtomicReference<Status> status = new AtomicReference<>(new Status(elements.size(), numOfSuccess, 0, 0, false));
       int counter = 0;
@@ -179,7 +179,7 @@ public class Combiner {
           }
         });
       }
-    });
+    }, ComposableFutures.dependencyOn(elements.values()));
   }
 
   private static <K, T> Map<K, T> collectResults(final AtomicReferenceArray<KeyValue<K, T>> elements) {
@@ -18,7 +18,17 @@ public class Configuration {
 
   public static final String OB1K_THREAD_POOL_CORE_SIZE = "ob1k.threadPool.coreSize";
   public static final String OB1K_THREAD_POOL_MAX_SIZE = "ob1k.threadPool.maxSize";
+  public static final String OB1K_THREAD_POOL_TYPE = "ob1k.threadPool.type";
+  public static final String OB1K_THREAD_POOL_QUEUE_SIZE = "ob1k.threadPool.queueSize";
+  public static final String OB1K_THREAD_POOL_PARALLELISM = "ob1k.threadPool.parallelism";
+  public static final String EXECUTOR_TYPE_THREAD_POOL = "threadPool";
+  public static final String EXECUTOR_TYPE_BOUNDED = "bounded";
+  public static final String EXECUTOR_TYPE_FORK_JOIN = "forkJoin";
   public static final String OB1K_SCHEDULER_CORE_SIZE = "ob1k.scheduler.coreSize";
+  public static final String OB1K_SCHEDULER_TYPE = "ob1k.scheduler.type";
+  public static final String OB1K_SCHEDULER_TICK_DURATION_MS = "ob1k.scheduler.tickDurationMs";
+  public static final String SCHEDULER_TYPE_THREAD_POOL = "threadPool";
+  public static final String SCHEDULER_TYPE_HASHED_WHEEL = "hashedWheel";
   public static final String OB1K_DEFAULT_LAZY = "ob1k.default.lazy";
 
   static {
@@ -46,10 +56,30 @@ public class Configuration {
       configuration.put(OB1K_THREAD_POOL_MAX_SIZE, "100");
     }
 
+    if (!configuration.containsKey(OB1K_THREAD_POOL_TYPE)) {
+      configuration.put(OB1K_THREAD_POOL_TYPE, EXECUTOR_TYPE_THREAD_POOL);
+    }
+
+    if (!configuration.containsKey(OB1K_THREAD_POOL_QUEUE_SIZE)) {
+      configuration.put(OB1K_THREAD_POOL_QUEUE_SIZE, "10000");
+    }
+
+    if (!configuration.containsKey(OB1K_THREAD_POOL_PARALLELISM)) {
+      configuration.put(OB1K_THREAD_POOL_PARALLELISM, String.valueOf(Runtime.getRuntime().availableProcessors()));
+    }
+
     if (!configuration.containsKey(OB1K_SCHEDULER_CORE_SIZE)) {
       configuration.put(OB1K_SCHEDULER_CORE_SIZE, "10");
     }
 
+    if (!configuration.containsKey(OB1K_SCHEDULER_TYPE)) {
+      configuration.put(OB1K_SCHEDULER_TYPE, SCHEDULER_TYPE_THREAD_POOL);
+    }
+
+    if (!configuration.containsKey(OB1K_SCHEDULER_TICK_DURATION_MS)) {
+      configuration.put(OB1K_SCHEDULER_TICK_DURATION_MS, "10");
+    }
+
     if (!configuration.containsKey(OB1K_DEFAULT_LAZY)) {
       configuration.put(OB1K_DEFAULT_LAZY, "false");
     }
@@ -67,10 +97,40 @@ public class Configuration {
     return Integer.parseInt(configuration.get(OB1K_THREAD_POOL_MAX_SIZE));
   }
 
+  /**
+   * @return the type of the default executor:
+   * {@link #EXECUTOR_TYPE_THREAD_POOL} - a thread pool of core size threads with an unbounded queue,
+   * {@link #EXECUTOR_TYPE_BOUNDED} - a thread pool with a bounded queue, that grows up to max size threads once the queue is full,
+   * and rejects tasks once both are exhausted,
+   * {@link #EXECUTOR_TYPE_FORK_JOIN} - a work stealing pool of parallelism threads, each with its own queue.
+   */
+  public static String getExecutorType() {
+    return configuration.get(OB1K_THREAD_POOL_TYPE);
+  }
+
+  public static int getExecutorQueueSize() {
+    return Integer.parseInt(configuration.get(OB1K_THREAD_POOL_QUEUE_SIZE));
+  }
+
+  public static int getExecutorParallelism() {
+    return Integer.parseInt(configuration.get(OB1K_THREAD_POOL_PARALLELISM));
+  }
+
   public static int getSchedulerCoreSize() {
     return Integer.parseInt(configuration.get(OB1K_SCHEDULER_CORE_SIZE));
   }
 
+  /**
+   * @return the type of the default scheduler, either {@link #SCHEDULER_TYPE_THREAD_POOL} or {@link #SCHEDULER_TYPE_HASHED_WHEEL}
+   */
+  public static String getSchedulerType() {
+    return configuration.get(OB1K_SCHEDULER_TYPE);
+  }
+
+  public static long getSchedulerTickDurationMs() {
+    return Long.parseLong(configuration.get(OB1K_SCHEDULER_TICK_DURATION_MS));
+  }
+
   public static boolean isDefaultLazy() {
     return Boolean.parseBoolean(configuration.get(OB1K_DEFAULT_LAZY));
   }
@@ -1,5 +1,6 @@
 package com.outbrain.ob1k.concurrent.eager;
 
+import com.outbrain.ob1k.concurrent.CancellationToken;
 import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.outbrain.ob1k.concurrent.Try;
 
@@ -38,6 +39,15 @@ public interface ComposablePromise<T> {
    */
   void setException(Throwable error);
 
+  /**
+   * sets the handler that aborts the computation of the value once the future is cancelled.
+   * the handler is called immediately if the future was already cancelled, and replaces any previously set handler.
+   * an eager future set as the handler gets this future as a dependent, and is cancelled only once all its dependents were.
+   *
+   * @param cancellationHandler the handler, usually cancelling the source of the value.
+   */
+  void onCancel(CancellationToken cancellationHandler);
+
   /**
    * returns the corresponding future(always the same one)
    *
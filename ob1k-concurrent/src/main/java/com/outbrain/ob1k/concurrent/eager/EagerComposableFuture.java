@@ -18,14 +18,18 @@ import com.outbrain.ob1k.concurrent.handlers.SuccessHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Function;
 
 import static java.util.Arrays.asList;
@@ -35,39 +39,78 @@ import static java.util.function.Function.identity;
  * User: aronen
  * Date: 6/6/13
  * Time: 2:08 PM
+ *
+ * the whole state of the future is kept in a single field, which is either:
+ * null - not completed and no handlers,
+ * a {@link Consumer} - not completed with a single handler (the common case),
+ * a {@link HandlerNode} - not completed with a stack of handlers (the most recent first),
+ * a {@link Try} - completed.
+ *
+ * cancelling the future fails it, and calls the cancellation handler set by its producer,
+ * which is either the future it was composed from or the source of its value, and which decides whether to abort.
+ * a future composed from others is their dependent, and as the futures it depends on may be shared,
+ * they are cancelled only once none of their dependents awaits them; until then, only the cancelled future fails.
  */
 public final class EagerComposableFuture<T> implements ComposableFuture<T>, ComposablePromise<T> {
 
   private static final Logger logger = LoggerFactory.getLogger(EagerComposableFuture.class);
 
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<EagerComposableFuture, Object> STATE =
+    AtomicReferenceFieldUpdater.newUpdater(EagerComposableFuture.class, Object.class, "state");
+
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<EagerComposableFuture, CancellationToken> CANCELLATION =
+    AtomicReferenceFieldUpdater.newUpdater(EagerComposableFuture.class, CancellationToken.class, "cancellationHandler");
+
+  @SuppressWarnings("rawtypes")
+  private static final AtomicIntegerFieldUpdater<EagerComposableFuture> DEPENDENTS =
+    AtomicIntegerFieldUpdater.newUpdater(EagerComposableFuture.class, "dependents");
+
+  // markers of a cancelled future, kept instead of its cancellation handler
+  private static final CancellationToken CANCELLED = mayInterrupt -> false;
+  private static final CancellationToken CANCELLED_MAY_INTERRUPT = mayInterrupt -> false;
+
   private final Executor threadPool;
-  private final HandlersList handlers;
-  private final AtomicReference<Try<T>> value = new AtomicReference<>();
+  private volatile Object state;
+  private volatile CancellationToken cancellationHandler;
+  // the futures composed from this one that didn't complete yet, and would cancel it
+  private volatile int dependents;
 
   public EagerComposableFuture() {
     threadPool = null;
-    handlers = new HandlersList();
   }
 
   public EagerComposableFuture(final Executor threadPool) {
     this.threadPool = threadPool;
-    handlers = new HandlersList();
+  }
+
+  private EagerComposableFuture(final Executor threadPool, final Try<T> result) {
+    this.threadPool = threadPool;
+    this.state = result;
+  }
+
+  private EagerComposableFuture(final Executor threadPool, final CancellationToken cancellationHandler) {
+    this.threadPool = threadPool;
+    this.cancellationHandler = cancellationHandler;
+    dependOn(cancellationHandler);
   }
 
   public static <T> ComposableFuture<T> fromValue(final T value) {
-    final EagerComposableFuture<T> result = new EagerComposableFuture<>();
-    result.set(value);
-    return result;
+    return new EagerComposableFuture<>(null, Try.fromValue(value));
   }
 
   public static <T> ComposableFuture<T> fromError(final Throwable error) {
-    final EagerComposableFuture<T> result = new EagerComposableFuture<>();
-    result.setException(error);
-    return result;
+    return new EagerComposableFuture<>(null, Try.fromError(error));
   }
 
   public static <T> ComposableFuture<T> build(final Producer<? extends T> producer) {
-    final EagerComposableFuture<T> future = new EagerComposableFuture<>();
+    return build(producer, null);
+  }
+
+  public static <T> ComposableFuture<T> build(final Producer<? extends T> producer,
+                                              final CancellationToken cancellationHandler) {
+    final EagerComposableFuture<T> future = new EagerComposableFuture<>(null, cancellationHandler);
     producer.produce(result -> {
       if (result.isSuccess()) {
         future.set(result.getValue());
@@ -87,13 +130,29 @@ public final class EagerComposableFuture<T> implements ComposableFuture<T>, Comp
       new EagerComposableFuture<>(executor) :
       new EagerComposableFuture<>();
 
-    executor.execute(() -> future.setTry(Try.apply(task::call)));
+    final SubmittedTask<T> submittedTask = new SubmittedTask<>(future, task);
+    future.onCancel(submittedTask);
+    try {
+      executor.execute(submittedTask);
+    } catch (final RejectedExecutionException e) {
+      future.setException(e);
+    }
+
     return future;
   }
 
   public static <T> ComposableFuture<T> schedule(final Scheduler scheduler, final Callable<T> task, final long delay, final TimeUnit unit) {
     final EagerComposableFuture<T> future = new EagerComposableFuture<>();
-    scheduler.schedule(() -> future.setTry(Try.apply(task::call)), delay, unit);
+    final CancellationToken cancellationToken = scheduler.schedule(() -> future.setTry(Try.apply(task::call)), delay, unit);
+    future.onCancel(mayInterrupt -> {
+      if (cancellationToken.cancel(mayInterrupt)) {
+        future.setException(new CancellationException("scheduled task was cancelled"));
+        return true;
+      }
+
+      return false;
+    });
+
     return future;
   }
 
@@ -105,7 +164,7 @@ public final class EagerComposableFuture<T> implements ComposableFuture<T>, Comp
     first.consume(result -> done.compareAndSet(false, true));
 
     final EagerComposableFuture<T> second = new EagerComposableFuture<>();
-    scheduler.schedule(() -> {
+    final CancellationToken cancellationToken = scheduler.schedule(() -> {
       if (done.compareAndSet(false, true)) {
         try {
           final ComposableFuture<T> innerSecond = action.execute();
@@ -122,6 +181,8 @@ public final class EagerComposableFuture<T> implements ComposableFuture<T>, Comp
       }
     }, duration, unit);
 
+    first.consume(result -> cancellationToken.cancel(false));
+
     return collectFirst(asList(first, second));
   }
 
@@ -131,7 +192,7 @@ public final class EagerComposableFuture<T> implements ComposableFuture<T>, Comp
       return fromError(new IllegalArgumentException("empty future list"));
     }
 
-    final EagerComposableFuture<T> res = new EagerComposableFuture<>();
+    final EagerComposableFuture<T> res = new EagerComposableFuture<>(null, dependencyOn(futures));
     final AtomicBoolean done = new AtomicBoolean();
 
     for (final ComposableFuture<T> future : futures) {
@@ -150,26 +211,19 @@ public final class EagerComposableFuture<T> implements ComposableFuture<T>, Comp
   }
 
   @Override
+  @SuppressWarnings("unchecked")
   public void setTry(final Try<? extends T> value) {
-    if (value.isSuccess()) {
-      set(value.getValue());
-    } else {
-      setException(value.getError());
-    }
+    complete((Try<T>) value);
   }
 
   @Override
   public void set(final T result) {
-    if (value.compareAndSet(null, Try.fromValue(result))) {
-      done();
-    }
+    complete(Try.fromValue(result));
   }
 
   @Override
   public void setException(final Throwable t) {
-    if (value.compareAndSet(null, Try.fromError(t))) {
-      done();
-    }
+    complete(Try.fromError(t));
   }
 
   @Override
@@ -177,13 +231,234 @@ public final class EagerComposableFuture<T> implements ComposableFuture<T>, Comp
     return this;
   }
 
-  private void done() {
-    handlers.execute(threadPool);
+  private void complete(final Try<T> result) {
+    while (true) {
+      final Object current = state;
+      if (current instanceof Try) {
+        return;
+      }
+
+      if (STATE.compareAndSet(this, current, result)) {
+        releaseCancellationHandler();
+        runHandlers(current, result);
+        return;
+      }
+    }
+  }
+
+  /**
+   * makes a future combined from the given ones their dependent.
+   *
+   * @return the cancellation handler of the combined future.
+   */
+  public static CancellationToken dependencyOn(final Iterable<? extends ComposableFuture<?>> futures) {
+    return new Dependencies(futures);
+  }
+
+  @Override
+  public boolean cancel(final boolean mayInterrupt) {
+    final CancellationToken handler = markCancelled(mayInterrupt);
+    if (handler == null) {
+      return false;
+    }
+
+    // walking up a chain of eager futures iteratively, as it may be long
+    EagerComposableFuture<?> source = abandon(handler, mayInterrupt);
+    while (source != null) {
+      final CancellationToken sourceHandler = source.markCancelled(mayInterrupt);
+      source = sourceHandler == null ? null : source.abandon(sourceHandler, mayInterrupt);
+    }
+
+    return true;
+  }
+
+  /**
+   * gives up on the producer of this cancelled future.
+   *
+   * @return the future this one was composed from, if no other future depends on it and it should be cancelled next.
+   */
+  private EagerComposableFuture<?> abandon(final CancellationToken handler, final boolean mayInterrupt) {
+    EagerComposableFuture<?> next = null;
+    if (handler instanceof EagerComposableFuture) {
+      // a source still awaited by other futures keeps running, and only this one stops waiting for it
+      final EagerComposableFuture<?> source = (EagerComposableFuture<?>) handler;
+      if (source.release()) {
+        next = source;
+      }
+    } else if (handler instanceof Dependencies) {
+      ((Dependencies) handler).cancel(mayInterrupt);
+    } else if (handler != CANCELLED) {
+      handler.cancel(mayInterrupt);
+    }
+
+    // whether or not the producer could abort, nothing awaits its value anymore
+    setException(new CancellationException("future was cancelled"));
+    return next;
+  }
+
+  /**
+   * @return the cancellation handler to call, {@link #CANCELLED} if there is none,
+   * or null if the future is already completed or cancelled.
+   */
+  private CancellationToken markCancelled(final boolean mayInterrupt) {
+    while (true) {
+      final CancellationToken handler = cancellationHandler;
+      if (state instanceof Try || isCancelled(handler)) {
+        return null;
+      }
+
+      if (CANCELLATION.compareAndSet(this, handler, mayInterrupt ? CANCELLED_MAY_INTERRUPT : CANCELLED)) {
+        return handler == null ? CANCELLED : handler;
+      }
+    }
+  }
+
+  @Override
+  public void onCancel(final CancellationToken handler) {
+    dependOn(handler);
+    while (true) {
+      final CancellationToken current = cancellationHandler;
+      if (isCancelled(current)) {
+        final EagerComposableFuture<?> source = abandon(handler, current == CANCELLED_MAY_INTERRUPT);
+        if (source != null) {
+          source.cancel(current == CANCELLED_MAY_INTERRUPT);
+        }
+        return;
+      }
+
+      if (state instanceof Try) {
+        detach(handler);
+        return;
+      }
+
+      if (CANCELLATION.compareAndSet(this, current, handler)) {
+        detach(current);
+        return;
+      }
+    }
+  }
+
+  private static boolean isCancelled(final CancellationToken handler) {
+    return handler == CANCELLED || handler == CANCELLED_MAY_INTERRUPT;
+  }
+
+  private void releaseCancellationHandler() {
+    // the producer of a completed future has nothing to abort, and is no longer referenced
+    final CancellationToken handler = cancellationHandler;
+    if (handler != null && !isCancelled(handler) && CANCELLATION.compareAndSet(this, handler, null)) {
+      detach(handler);
+    }
+  }
+
+  private static void dependOn(final CancellationToken handler) {
+    if (handler instanceof EagerComposableFuture) {
+      DEPENDENTS.incrementAndGet((EagerComposableFuture<?>) handler);
+    }
+  }
+
+  /**
+   * stops depending on the producer, without cancelling it.
+   */
+  private static void detach(final CancellationToken handler) {
+    if (handler instanceof EagerComposableFuture) {
+      ((EagerComposableFuture<?>) handler).release();
+    } else if (handler instanceof Dependencies) {
+      ((Dependencies) handler).detach();
+    }
+  }
+
+  /**
+   * @return true if the last dependent of the future released it.
+   */
+  private boolean release() {
+    return DEPENDENTS.decrementAndGet(this) <= 0;
+  }
+
+  private void runHandlers(final Object handlers, final Try<T> result) {
+    if (handlers == null) {
+      return;
+    }
+
+    if (!(handlers instanceof HandlerNode)) {
+      runHandler((Consumer<?>) handlers, result);
+      return;
+    }
+
+    // the handlers are stacked, running them in their registration order
+    int size = 0;
+    for (Object node = handlers; node instanceof HandlerNode; node = ((HandlerNode) node).next) {
+      size++;
+    }
+
+    final Consumer<?>[] ordered = new Consumer<?>[size + 1];
+    Object node = handlers;
+    for (int i = size; i > 0; i--) {
+      ordered[i] = ((HandlerNode) node).consumer;
+      node = ((HandlerNode) node).next;
+    }
+    ordered[0] = (Consumer<?>) node;
+
+    for (final Consumer<?> consumer : ordered) {
+      runHandler(consumer, result);
+    }
+  }
+
+  private void runHandler(final Consumer<?> consumer, final Try<T> result) {
+    if (threadPool != null) {
+      try {
+        threadPool.execute(() -> consumeSafely(consumer, result));
+        return;
+      } catch (final RejectedExecutionException e) {
+        // a saturated executor, running the handler on the calling thread rather than losing it
+      }
+    }
+
+    final Trampoline trampoline = Trampoline.enter();
+    if (trampoline == null) {
+      Trampoline.defer(() -> consumeSafely(consumer, result));
+      return;
+    }
+
+    try {
+      consumeSafely(consumer, result);
+    } finally {
+      trampoline.exit();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> void consumeSafely(final Consumer<T> consumer, final Try<?> result) {
+    try {
+      consumer.consume((Try<T>) result);
+    } catch (final Throwable error) {
+      logger.warn("error while handling future callbacks", error);
+    }
+  }
+
+  /**
+   * @return the result of the future if it is completed, and its continuations can run on the calling thread.
+   */
+  @SuppressWarnings("unchecked")
+  private Try<T> completedInline() {
+    final Object current = state;
+    return threadPool == null && current instanceof Try ? (Try<T>) current : null;
   }
 
   @Override
   public <R> ComposableFuture<R> map(final Function<? super T, ? extends R> handler) {
-    final EagerComposableFuture<R> future = new EagerComposableFuture<>(threadPool);
+    final Try<T> completed = completedInline();
+    if (completed != null) {
+      final Trampoline trampoline = Trampoline.enter();
+      if (trampoline != null) {
+        try {
+          return mapCompleted(completed, handler);
+        } finally {
+          trampoline.exit();
+        }
+      }
+    }
+
+    final EagerComposableFuture<R> future = new EagerComposableFuture<>(threadPool, this);
     this.consume(result -> {
       if (result.isSuccess()) {
         try {
@@ -201,9 +476,35 @@ public final class EagerComposableFuture<T> implements ComposableFuture<T>, Comp
     return future;
   }
 
+  private static <T, R> ComposableFuture<R> mapCompleted(final Try<T> completed, final Function<? super T, ? extends R> handler) {
+    if (!completed.isSuccess()) {
+      return fromError(completed.getError());
+    }
+
+    try {
+      return fromValue(handler.apply(completed.getValue()));
+    } catch (final UncheckedExecutionException e) {
+      return fromError(e.getCause() != null ? e.getCause() : e);
+    } catch (final Throwable e) {
+      return fromError(e);
+    }
+  }
+
   @Override
   public <R> ComposableFuture<R> flatMap(final Function<? super T, ? extends ComposableFuture<? extends R>> handler) {
-    final EagerComposableFuture<R> future = new EagerComposableFuture<>(threadPool);
+    final Try<T> completed = completedInline();
+    if (completed != null) {
+      final Trampoline trampoline = Trampoline.enter();
+      if (trampoline != null) {
+        try {
+          return flatMapCompleted(completed, handler);
+        } finally {
+          trampoline.exit();
+        }
+      }
+    }
+
+    final EagerComposableFuture<R> future = new EagerComposableFuture<>(threadPool, this);
     this.consume(result -> {
       if (result.isSuccess()) {
         try {
@@ -220,9 +521,35 @@ public final class EagerComposableFuture<T> implements ComposableFuture<T>, Comp
     return future;
   }
 
+  @SuppressWarnings("unchecked")
+  private static <T, R> ComposableFuture<R> flatMapCompleted(final Try<T> completed,
+                                                             final Function<? super T, ? extends ComposableFuture<? extends R>> handler) {
+    if (!completed.isSuccess()) {
+      return fromError(completed.getError());
+    }
+
+    try {
+      final ComposableFuture<? extends R> res = handler.apply(completed.getValue());
+      if (res == null) {
+        return fromValue(null);
+      }
+
+      if (res instanceof EagerComposableFuture && ((EagerComposableFuture<? extends R>) res).threadPool == null) {
+        // same behavior as a new future that consumes it, without the extra future
+        return (ComposableFuture<R>) res;
+      }
+
+      final EagerComposableFuture<R> future = new EagerComposableFuture<>();
+      consumeFrom(future, res);
+      return future;
+    } catch (final Throwable e) {
+      return fromError(e);
+    }
+  }
+
   @Override
   public <E extends Throwable> ComposableFuture<T> recover(final Class<E> errorType, final Function<E, ? extends T> handler) {
-    final EagerComposableFuture<T> future = new EagerComposableFuture<>(threadPool);
+    final EagerComposableFuture<T> future = new EagerComposableFuture<>(threadPool, this);
     this.consume(result -> {
       if (result.isSuccess()) {
         future.set(result.getValue());
@@ -249,7 +576,7 @@ public final class EagerComposableFuture<T> implements ComposableFuture<T>, Comp
 
   @Override
   public <E extends Throwable> ComposableFuture<T> recoverWith(final Class<E> errorType, final Function<E, ? extends ComposableFuture<? extends T>> handler) {
-    final EagerComposableFuture<T> future = new EagerComposableFuture<>(threadPool);
+    final EagerComposableFuture<T> future = new EagerComposableFuture<>(threadPool, this);
     this.consume(result -> {
       if (result.isSuccess()) {
         future.set(result.getValue());
@@ -274,7 +601,7 @@ public final class EagerComposableFuture<T> implements ComposableFuture<T>, Comp
 
   @Override
   public <R> ComposableFuture<R> always(final Function<Try<T>, ? extends R> handler) {
-    final EagerComposableFuture<R> future = new EagerComposableFuture<>(threadPool);
+    final EagerComposableFuture<R> future = new EagerComposableFuture<>(threadPool, this);
     this.consume(res -> {
       try {
         future.set(handler.apply(res));
@@ -290,7 +617,7 @@ public final class EagerComposableFuture<T> implements ComposableFuture<T>, Comp
 
   @Override
   public <R> ComposableFuture<R> alwaysWith(final Function<Try<T>, ? extends ComposableFuture<? extends R>> handler) {
-    final EagerComposableFuture<R> future = new EagerComposableFuture<>(threadPool);
+    final EagerComposableFuture<R> future = new EagerComposableFuture<>(threadPool, this);
     this.consume(res -> {
       try {
         final ComposableFuture<? extends R> nextResult = handler.apply(res);
@@ -305,7 +632,7 @@ public final class EagerComposableFuture<T> implements ComposableFuture<T>, Comp
 
   @Override
   public ComposableFuture<T> andThen(final Consumer<? super T> resultConsumer) {
-    final EagerComposableFuture<T> future = new EagerComposableFuture<>(threadPool);
+    final EagerComposableFuture<T> future = new EagerComposableFuture<>(threadPool, this);
     this.consume(result -> {
       try {
         resultConsumer.consume(result.map(identity()));
@@ -318,8 +645,57 @@ public final class EagerComposableFuture<T> implements ComposableFuture<T>, Comp
   }
 
   @Override
+  public T get() throws InterruptedException, ExecutionException {
+    final Object current = completeQueued();
+    // a completed future is read directly, as its handlers may be deferred by a trampoline of the calling thread
+    return current instanceof Try ? valueOf(current) : ComposableFuture.super.get();
+  }
+
+  @Override
+  public T get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+    final Object current = completeQueued();
+    return current instanceof Try ? valueOf(current) : ComposableFuture.super.get(timeout, unit);
+  }
+
+  /**
+   * @return the state of the future once the handlers queued on the calling thread, which may complete it, ran.
+   */
+  private Object completeQueued() {
+    final Object current = state;
+    if (current instanceof Try) {
+      return current;
+    }
+
+    // otherwise, a get() called from a deep continuation would wait forever for a handler queued behind it
+    Trampoline.runQueued();
+    return state;
+  }
+
+  @SuppressWarnings("unchecked")
+  private T valueOf(final Object completed) throws ExecutionException {
+    final Try<T> result = (Try<T>) completed;
+    if (result.isSuccess()) {
+      return result.getValue();
+    }
+
+    throw new ExecutionException(result.getError());
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
   public void consume(final Consumer<? super T> consumer) {
-    handlers.addHandler(new ConsumerAction<>(consumer, this), threadPool);
+    while (true) {
+      final Object current = state;
+      if (current instanceof Try) {
+        runHandler(consumer, (Try<T>) current);
+        return;
+      }
+
+      final Object handlers = current == null ? consumer : new HandlerNode(consumer, current);
+      if (STATE.compareAndSet(this, current, handlers)) {
+        return;
+      }
+    }
   }
 
   @Override
@@ -330,8 +706,10 @@ public final class EagerComposableFuture<T> implements ComposableFuture<T>, Comp
   @Override
   public ComposableFuture<T> withTimeout(final Scheduler scheduler, final long timeout, final TimeUnit unit, final String taskDescription) {
     final ComposablePromise<T> deadline = new EagerComposableFuture<>();
+    // the source is left running, as other futures may await it; cancelling the returned future cancels it
     final CancellationToken cancellationToken = scheduler.schedule(() ->
-      deadline.setException(new TimeoutException("Timeout occurred on task ('" + taskDescription + "' " + timeout + " " + unit + ")")), timeout, unit);
+      deadline.setException(new TimeoutException("Timeout occurred on task ('" + taskDescription + "' " + timeout + " " + unit + ")")),
+      timeout, unit);
 
     this.consume(result -> cancellationToken.cancel(false));
     return collectFirst(asList(this, deadline.future()));
@@ -352,10 +730,12 @@ public final class EagerComposableFuture<T> implements ComposableFuture<T>, Comp
     return this;
   }
 
-  private <R> void consumeFrom(final ComposablePromise<R> promise, final ComposableFuture<? extends R> future) {
+  private static <R> void consumeFrom(final ComposablePromise<R> promise, final ComposableFuture<? extends R> future) {
     if (future == null) {
       promise.set(null);
     } else {
+      // from now on, cancelling the promise cancels the future it consumes
+      promise.onCancel(future);
       future.consume(promise::setTry);
     }
   }
@@ -423,23 +803,79 @@ public final class EagerComposableFuture<T> implements ComposableFuture<T>, Comp
     return map(function::apply);
   }
 
-  private static class ConsumerAction<T> implements Runnable {
-    final Consumer<? super T> inner;
-    final EagerComposableFuture<T> current;
+  /**
+   * a task that runs only if it was not cancelled before it started.
+   */
+  private static final class SubmittedTask<T> extends AtomicBoolean implements Runnable, CancellationToken {
+    private final EagerComposableFuture<T> future;
+    private final Callable<T> task;
 
-    private ConsumerAction(final Consumer<? super T> inner, final EagerComposableFuture<T> current) {
-      this.inner = inner;
-      this.current = current;
+    private SubmittedTask(final EagerComposableFuture<T> future, final Callable<T> task) {
+      this.future = future;
+      this.task = task;
     }
 
     @Override
     public void run() {
-      try {
-        final Try<T> currentValue = current.value.get();
-        inner.consume(currentValue.map(identity()));
-      } catch (final Throwable error) {
-        logger.warn("error while handling future callbacks", error);
+      if (compareAndSet(false, true)) {
+        future.setTry(Try.apply(task::call));
+      }
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterrupt) {
+      if (compareAndSet(false, true)) {
+        future.setException(new CancellationException("task was cancelled before it started"));
+        return true;
       }
+
+      return false;
+    }
+  }
+
+  /**
+   * the cancellation handler of a future combined from others, which depends on each of them.
+   */
+  private static final class Dependencies implements CancellationToken {
+    private final List<ComposableFuture<?>> futures = new ArrayList<>();
+
+    private Dependencies(final Iterable<? extends ComposableFuture<?>> futures) {
+      for (final ComposableFuture<?> future : futures) {
+        this.futures.add(future);
+        dependOn(future);
+      }
+    }
+
+    /**
+     * cancels the futures that no other future depends on.
+     */
+    @Override
+    public boolean cancel(final boolean mayInterrupt) {
+      boolean cancelled = false;
+      for (final ComposableFuture<?> future : futures) {
+        if (!(future instanceof EagerComposableFuture) || ((EagerComposableFuture<?>) future).release()) {
+          cancelled |= future.cancel(mayInterrupt);
+        }
+      }
+
+      return cancelled;
+    }
+
+    private void detach() {
+      for (final ComposableFuture<?> future : futures) {
+        EagerComposableFuture.detach(future);
+      }
+    }
+  }
+
+  private static final class HandlerNode {
+    private final Consumer<?> consumer;
+    // either another node or the first registered consumer
+    private final Object next;
+
+    private HandlerNode(final Consumer<?> consumer, final Object next) {
+      this.consumer = consumer;
+      this.next = next;
     }
   }
 }
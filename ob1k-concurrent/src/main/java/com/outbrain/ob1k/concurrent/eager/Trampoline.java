@@ -0,0 +1,79 @@
+package com.outbrain.ob1k.concurrent.eager;
+
+import java.util.ArrayDeque;
+
+/**
+ * runs the continuations of completed futures on the calling thread, in constant stack depth.
+ *
+ * continuations run inline while the nesting depth on the current thread is low.
+ * deeper continuations, e.g. of a recursive flatMap over completed futures, are queued instead,
+ * and run by the outermost continuation once it returns, so the thread is never switched.
+ *
+ * a continuation that blocks on a future may wait for a handler queued behind it on its own thread,
+ * so the queued tasks are run before the thread blocks, see {@link #runQueued()}.
+ */
+final class Trampoline {
+
+  // low enough to be safe on small thread stacks, high enough to keep short chains allocation free
+  private static final int MAX_INLINE_DEPTH = 32;
+
+  private static final ThreadLocal<Trampoline> CURRENT = ThreadLocal.withInitial(Trampoline::new);
+
+  private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+  private int depth;
+
+  private Trampoline() {
+  }
+
+  /**
+   * queues a task that is too deep to run inline, to run once the current continuations return.
+   */
+  static void defer(final Runnable task) {
+    CURRENT.get().queue.add(task);
+  }
+
+  /**
+   * runs the tasks queued on the calling thread, before it blocks waiting for a future that one of them may complete.
+   * continuations queued by these tasks are run as well, as the thread is still as deep as it was.
+   */
+  static void runQueued() {
+    final ArrayDeque<Runnable> queue = CURRENT.get().queue;
+    Runnable task;
+    while ((task = queue.poll()) != null) {
+      task.run();
+    }
+  }
+
+  /**
+   * enters an inline continuation on the calling thread, that must be followed by {@link #exit()}.
+   *
+   * @return the trampoline of the calling thread, or null if the continuation is too deep to run inline.
+   */
+  static Trampoline enter() {
+    final Trampoline trampoline = CURRENT.get();
+    if (trampoline.depth >= MAX_INLINE_DEPTH) {
+      return null;
+    }
+
+    trampoline.depth++;
+    return trampoline;
+  }
+
+  void exit() {
+    if (--depth == 0) {
+      drain();
+    }
+  }
+
+  private void drain() {
+    depth = 1;
+    try {
+      Runnable task;
+      while ((task = queue.poll()) != null) {
+        task.run();
+      }
+    } finally {
+      depth = 0;
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package com.outbrain.ob1k.concurrent.lazy;
 
 import com.google.common.base.Supplier;
+import com.outbrain.ob1k.concurrent.CancellationToken;
 import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.outbrain.ob1k.concurrent.ComposableFutures;
 import com.outbrain.ob1k.concurrent.Consumer;
@@ -16,13 +17,13 @@ import com.outbrain.ob1k.concurrent.handlers.ResultHandler;
 import com.outbrain.ob1k.concurrent.handlers.SuccessHandler;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -73,8 +74,13 @@ public final class LazyComposableFuture<T> implements ComposableFuture<T> {
   }
 
   public static <T> LazyComposableFuture<T> submit(final Executor executor, final Callable<T> task, final boolean delegateHandler) {
-    return new LazyComposableFuture<>(consumer -> executor.execute(() ->
-      consumer.consume(Try.apply(task::call))), delegateHandler ? executor : null);
+    return new LazyComposableFuture<>(consumer -> {
+      try {
+        executor.execute(() -> consumer.consume(Try.apply(task::call)));
+      } catch (final RejectedExecutionException e) {
+        consumer.consume(Try.fromError(e));
+      }
+    }, delegateHandler ? executor : null);
   }
 
   public static <T> LazyComposableFuture<T> schedule(final Scheduler scheduler, final Callable<T> task, final long delay, final TimeUnit timeUnit) {
@@ -267,10 +273,15 @@ public final class LazyComposableFuture<T> implements ComposableFuture<T> {
   @Override
   public void consume(final Consumer<? super T> consumer) {
     if (executor != null) {
-      executor.execute(() -> consumeValue(consumer));
-    } else {
-      consumeValue(consumer);
+      try {
+        executor.execute(() -> consumeValue(consumer));
+        return;
+      } catch (final RejectedExecutionException e) {
+        // a saturated executor, running the consumer on the calling thread rather than losing it
+      }
     }
+
+    consumeValue(consumer);
   }
 
   private void consumeValue(final Consumer<? super T> consumer) {
@@ -280,15 +291,27 @@ public final class LazyComposableFuture<T> implements ComposableFuture<T> {
   @Override
   public LazyComposableFuture<T> withTimeout(final Scheduler scheduler, final long timeout, final TimeUnit unit,
                                              final String taskDescription) {
-    final LazyComposableFuture<T> deadline = new LazyComposableFuture<>(consumer -> scheduler.schedule(() ->
-        consumer.consume(Try.fromError(
-          new TimeoutException("Timeout occurred on task ('" +
-            taskDescription + "' " +
-            timeout + " " +
-            unit + ")"))),
-      timeout, unit));
+    final LazyComposableFuture<T> outer = this;
+    return new LazyComposableFuture<>(consumer -> {
+      final AtomicBoolean done = new AtomicBoolean();
+      final CancellationToken cancellationToken = scheduler.schedule(() -> {
+        if (done.compareAndSet(false, true)) {
+          consumer.consume(Try.fromError(
+            new TimeoutException("Timeout occurred on task ('" +
+              taskDescription + "' " +
+              timeout + " " +
+              unit + ")")));
+        }
+      }, timeout, unit);
 
-    return collectFirst(Arrays.asList(this, deadline));
+      outer.consume(result -> {
+        if (done.compareAndSet(false, true)) {
+          // the deadline is no longer needed, no reason to keep it in the scheduler until it expires
+          cancellationToken.cancel(false);
+          consumer.consume(result);
+        }
+      });
+    });
   }
 
   @Override
@@ -316,13 +339,7 @@ public final class LazyComposableFuture<T> implements ComposableFuture<T> {
     return new LazyComposableFuture<>(consumer -> {
       final AtomicBoolean done = new AtomicBoolean();
 
-      outer.consume(firstRes -> {
-        if (done.compareAndSet(false, true)) {
-          consumer.consume(firstRes);
-        }
-      });
-
-      scheduler.schedule(() -> {
+      final CancellationToken cancellationToken = scheduler.schedule(() -> {
         if (!done.get()) {
           outer.consume(secondRes -> {
             if (done.compareAndSet(false, true)) {
@@ -331,6 +348,13 @@ public final class LazyComposableFuture<T> implements ComposableFuture<T> {
           });
         }
       }, timeout, unit);
+
+      outer.consume(firstRes -> {
+        if (done.compareAndSet(false, true)) {
+          cancellationToken.cancel(false);
+          consumer.consume(firstRes);
+        }
+      });
     });
   }
 
@@ -0,0 +1,223 @@
+package com.outbrain.ob1k.concurrent.stream;
+
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.Try;
+import com.outbrain.ob1k.concurrent.handlers.FutureSuccessHandler;
+import rx.Observable;
+import rx.Subscriber;
+import rx.subscriptions.Subscriptions;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * creates a stream of the results of a producer applied on each element of a source stream,
+ * keeping up to parallelism futures of the producer in flight.
+ *
+ * a slot is taken from the time an element is requested from the source until its result is emitted downstream,
+ * so results waiting for their turn (ordered) or for downstream demand hold back the source,
+ * and the number of buffered elements is bounded by the parallelism.
+ *
+ * the first error, of either the source or a produced future, ends the stream and cancels the futures in flight.
+ */
+public class MapAsyncStreamHandler<T, R> implements Observable.OnSubscribe<R> {
+  private final Observable<T> source;
+  private final int parallelism;
+  private final boolean ordered;
+  private final FutureSuccessHandler<T, R> producer;
+
+  public MapAsyncStreamHandler(final Observable<T> source, final int parallelism, final boolean ordered,
+                               final FutureSuccessHandler<T, R> producer) {
+    this.source = source;
+    this.parallelism = parallelism;
+    this.ordered = ordered;
+    this.producer = producer;
+  }
+
+  @Override
+  public void call(final Subscriber<? super R> child) {
+    final SourceSubscriber<T, R> sourceSubscriber = new SourceSubscriber<>(child, parallelism, ordered, producer);
+    child.add(sourceSubscriber);
+    child.add(Subscriptions.create(sourceSubscriber::cancelInFlight));
+    child.setProducer(sourceSubscriber::requestDownstream);
+    source.unsafeSubscribe(sourceSubscriber);
+  }
+
+  private static final class Slot<R> {
+    private volatile Try<R> result;
+  }
+
+  private static final class SourceSubscriber<T, R> extends Subscriber<T> {
+    private final Subscriber<? super R> child;
+    private final int parallelism;
+    private final boolean ordered;
+    private final FutureSuccessHandler<T, R> producer;
+
+    // ordered: all the taken slots, by the order of their elements. unordered: the completed slots.
+    private final Queue<Slot<R>> slots = new ConcurrentLinkedQueue<>();
+    private final Set<ComposableFuture<R>> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger taken = new AtomicInteger();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+    private volatile boolean sourceDone;
+    private boolean terminated;
+
+    private SourceSubscriber(final Subscriber<? super R> child, final int parallelism, final boolean ordered,
+                             final FutureSuccessHandler<T, R> producer) {
+      this.child = child;
+      this.parallelism = parallelism;
+      this.ordered = ordered;
+      this.producer = producer;
+    }
+
+    @Override
+    public void onStart() {
+      request(parallelism);
+    }
+
+    @Override
+    public void onNext(final T element) {
+      if (isUnsubscribed()) {
+        return;
+      }
+
+      taken.incrementAndGet();
+      final Slot<R> slot = new Slot<>();
+      if (ordered) {
+        slots.offer(slot);
+      }
+
+      ComposableFuture<R> future;
+      try {
+        future = producer.handle(element);
+      } catch (final RuntimeException e) {
+        future = ComposableFutures.fromError(e);
+      }
+
+      final ComposableFuture<R> produced = future;
+      inFlight.add(produced);
+      produced.consume(result -> {
+        inFlight.remove(produced);
+        if (result.isSuccess()) {
+          slot.result = result;
+          if (!ordered) {
+            slots.offer(slot);
+          }
+        } else {
+          error.compareAndSet(null, result.getError());
+        }
+
+        drain();
+      });
+    }
+
+    @Override
+    public void onError(final Throwable e) {
+      error.compareAndSet(null, e);
+      drain();
+    }
+
+    @Override
+    public void onCompleted() {
+      sourceDone = true;
+      drain();
+    }
+
+    private void requestDownstream(final long n) {
+      if (n <= 0) {
+        return;
+      }
+
+      while (true) {
+        final long current = requested.get();
+        final long next = current + n < 0 ? Long.MAX_VALUE : current + n;
+        if (requested.compareAndSet(current, next)) {
+          break;
+        }
+      }
+
+      drain();
+    }
+
+    private void cancelInFlight() {
+      ComposableFutures.cancelAll(inFlight, false);
+    }
+
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+
+      int missed = 1;
+      do {
+        if (terminated) {
+          return;
+        }
+
+        if (child.isUnsubscribed()) {
+          terminated = true;
+          return;
+        }
+
+        final Throwable e = error.get();
+        if (e != null) {
+          terminate();
+          child.onError(e);
+          return;
+        }
+
+        final long demand = requested.get();
+        long emitted = 0;
+        while (emitted < demand) {
+          final Slot<R> slot = ordered ? pollCompletedHead() : slots.poll();
+          if (slot == null) {
+            break;
+          }
+
+          child.onNext(slot.result.getValue());
+          emitted++;
+        }
+
+        if (emitted > 0) {
+          if (demand != Long.MAX_VALUE) {
+            requested.addAndGet(-emitted);
+          }
+          taken.addAndGet((int) -emitted);
+          // the emitted results free their slots
+          request(emitted);
+        }
+
+        if (sourceDone && taken.get() == 0) {
+          terminated = true;
+          child.onCompleted();
+          return;
+        }
+
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private Slot<R> pollCompletedHead() {
+      final Slot<R> head = slots.peek();
+      if (head == null || head.result == null) {
+        return null;
+      }
+
+      return slots.poll();
+    }
+
+    private void terminate() {
+      terminated = true;
+      unsubscribe();
+      cancelInFlight();
+      slots.clear();
+    }
+  }
+}
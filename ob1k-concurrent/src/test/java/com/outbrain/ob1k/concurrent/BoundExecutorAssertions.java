@@ -0,0 +1,75 @@
+package com.outbrain.ob1k.concurrent;
+
+import org.junit.Assert;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * asserts that adapters of third party futures complete them on the executor bound by {@link ExecutionAffinity},
+ * shared by the tests of the adapters in the different modules.
+ */
+public final class BoundExecutorAssertions {
+
+  private static final String LOOP_THREAD = "bound-loop";
+
+  private BoundExecutorAssertions() {
+  }
+
+  /**
+   * @see #assertResumesOnTheBoundExecutor(Supplier, Runnable)
+   */
+  public static void assertResumesOnTheBoundExecutor(final Supplier<? extends ComposableFuture<?>> adapt) throws Exception {
+    assertResumesOnTheBoundExecutor(adapt, () -> {});
+  }
+
+  /**
+   * creates a future with a single thread executor bound, the way an event loop binds itself while running its tasks,
+   * and asserts its continuation runs on that thread.
+   * the executor is held until the continuation is registered, so it can't run inline on the calling thread.
+   *
+   * @param adapt creates the adapted future.
+   * @param complete completes the source of the adapted future, on another thread, once the continuation is registered.
+   */
+  public static void assertResumesOnTheBoundExecutor(final Supplier<? extends ComposableFuture<?>> adapt,
+                                                     final Runnable complete) throws Exception {
+    final ExecutorService loop = Executors.newSingleThreadExecutor(r -> new Thread(r, LOOP_THREAD));
+    final CountDownLatch registered = new CountDownLatch(1);
+    try {
+      final Executor bound = new Executor() {
+        @Override
+        public void execute(final Runnable task) {
+          loop.execute(() -> ExecutionAffinity.run(this, task));
+        }
+      };
+
+      loop.execute(() -> {
+        try {
+          registered.await();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+
+      final Executor previous = ExecutionAffinity.bind(bound);
+      final ComposableFuture<?> future;
+      try {
+        future = adapt.get();
+      } finally {
+        ExecutionAffinity.restore(previous);
+      }
+
+      final ComposableFuture<String> resumedOn = future.map(result -> Thread.currentThread().getName());
+      registered.countDown();
+      new Thread(complete, "io").start();
+
+      Assert.assertEquals(LOOP_THREAD, resumedOn.get(1, TimeUnit.SECONDS));
+    } finally {
+      loop.shutdownNow();
+    }
+  }
+}
@@ -3,6 +3,7 @@ package com.outbrain.ob1k.concurrent;
 import com.google.common.collect.Ordering;
 import com.outbrain.ob1k.concurrent.combiners.BiFunction;
 import com.outbrain.ob1k.concurrent.combiners.TriFunction;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
 import com.outbrain.ob1k.concurrent.eager.EagerComposableFuture;
 import com.outbrain.ob1k.concurrent.handlers.FutureProvider;
 import com.outbrain.ob1k.concurrent.handlers.FutureSuccessHandler;
@@ -20,12 +21,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.IntStream;
@@ -40,6 +45,7 @@ import static com.outbrain.ob1k.concurrent.ComposableFutures.flatten;
 import static com.outbrain.ob1k.concurrent.ComposableFutures.foreach;
 import static com.outbrain.ob1k.concurrent.ComposableFutures.fromError;
 import static com.outbrain.ob1k.concurrent.ComposableFutures.fromValue;
+import static com.outbrain.ob1k.concurrent.ComposableFutures.mapAsync;
 import static com.outbrain.ob1k.concurrent.ComposableFutures.recursive;
 import static com.outbrain.ob1k.concurrent.ComposableFutures.repeat;
 import static com.outbrain.ob1k.concurrent.ComposableFutures.retry;
@@ -209,6 +215,62 @@ public class ComposableFutureTest {
 
   }
 
+  @Test
+  public void testLongRecursionOfCompletedFutures() throws Exception {
+    final AtomicInteger counter = new AtomicInteger();
+    final ComposableFuture<Integer> result = recursive(() -> fromValue(counter.incrementAndGet()), num -> num >= 1_000_000);
+
+    assertEquals(1_000_000, result.get().intValue());
+  }
+
+  @Test
+  public void testLongRecursionCompletedByAnotherFuture() throws Exception {
+    final ComposablePromise<Integer> start = ComposableFutures.newPromise();
+    final AtomicInteger counter = new AtomicInteger();
+    final ComposableFuture<Integer> result = start.future().
+      flatMap(zero -> recursive(() -> fromValue(counter.incrementAndGet()), num -> num >= 1_000_000));
+
+    // all the continuations run when the promise is set, on the calling thread
+    start.set(0);
+    assertEquals(1_000_000, result.get().intValue());
+  }
+
+  @Test
+  public void testLongLoopsOfCompletedFutures() throws Exception {
+    final List<Integer> ones = Collections.nCopies(1_000_000, 1);
+
+    assertEquals(1_000_000, repeat(1_000_000, 0, num -> fromValue(num + 1)).get().intValue());
+    assertEquals(1_000_000, foreach(ones, 0, (one, sum) -> fromValue(sum + one)).get().intValue());
+  }
+
+  @Test
+  public void testLongLoopsOfPendingFutures() throws Exception {
+    final ComposablePromise<Integer> start = ComposableFutures.newPromise();
+    final ComposableFuture<Integer> result = start.future().flatMap(zero -> repeat(1_000_000, zero, num -> fromValue(num + 1)));
+    final ComposablePromise<Integer> first = ComposableFutures.newPromise();
+    final ComposableFuture<Integer> chain = repeat(1_000_000, 0, num -> num == 0 ? first.future() : fromValue(num + 1));
+
+    start.set(0);
+    first.set(1);
+    assertEquals(1_000_000, result.get().intValue());
+    assertEquals(1_000_000, chain.get().intValue());
+  }
+
+  @Test
+  public void testLongRetry() throws Exception {
+    final RuntimeException error = new RuntimeException("not yet");
+    final ComposableFuture<Integer> result = retry(1_000_000, attempt -> attempt < 1_000_000 ? fromError(error) : fromValue(attempt));
+
+    assertEquals(1_000_000, result.get().intValue());
+  }
+
+  @Test
+  public void testLongBatch() throws Exception {
+    final List<Integer> nums = IntStream.range(0, 100_000).boxed().collect(toList());
+
+    assertEquals(nums, batch(nums, 2, ComposableFutures::fromValue).get());
+  }
+
   @Test
   public void testRetry() throws Exception {
     final int retries = 1;
@@ -342,6 +404,107 @@ public class ComposableFutureTest {
     assertEquals(totalElements, nums.size());
   }
 
+  @Test
+  public void testMapAsyncOrdered() throws Exception {
+    final List<Integer> nums = IntStream.range(0, 50).boxed().collect(toList());
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+
+    final Observable<String> stream = mapAsync(nums, 4, true, num -> {
+      maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+      // later elements complete first
+      return schedule(() -> {
+        inFlight.decrementAndGet();
+        return "num:" + num;
+      }, 10 - num % 5 * 2, MILLISECONDS);
+    });
+
+    final List<String> results = new ArrayList<>();
+    stream.toBlocking().toIterable().forEach(results::add);
+
+    assertEquals(nums.stream().map(num -> "num:" + num).collect(toList()), results);
+    assertTrue("parallelism exceeded: " + maxInFlight.get(), maxInFlight.get() <= 4);
+  }
+
+  @Test
+  public void testMapAsyncUnorderedDoesNotWaitForSlowElements() throws Exception {
+    final ComposablePromise<String> slow = ComposableFutures.newPromise();
+    final List<Integer> nums = IntStream.range(0, 20).boxed().collect(toList());
+
+    final List<String> results = new ArrayList<>();
+    final CountDownLatch fastDone = new CountDownLatch(nums.size() - 1);
+    mapAsync(nums, 2, false, num -> num == 0 ? slow.future() : submit(() -> "num:" + num)).
+      subscribe(result -> {
+        synchronized (results) {
+          results.add(result);
+        }
+        fastDone.countDown();
+      });
+
+    assertTrue("fast elements should pass the slow one", fastDone.await(1, TimeUnit.SECONDS));
+    slow.set("slow");
+    synchronized (results) {
+      assertEquals(nums.size(), results.size());
+      assertEquals("slow", results.get(results.size() - 1));
+    }
+  }
+
+  @Test
+  public void testMapAsyncHonorsBackpressure() throws Exception {
+    final List<Integer> nums = IntStream.range(0, 100).boxed().collect(toList());
+    final AtomicInteger produced = new AtomicInteger();
+    final List<Integer> results = new ArrayList<>();
+
+    mapAsync(nums, 3, true, num -> {
+      produced.incrementAndGet();
+      return fromValue(num);
+    }).subscribe(new rx.Subscriber<Integer>() {
+      @Override
+      public void onStart() {
+        request(2);
+      }
+
+      @Override
+      public void onNext(final Integer num) {
+        results.add(num);
+      }
+
+      @Override
+      public void onError(final Throwable e) {
+        fail(e.toString());
+      }
+
+      @Override
+      public void onCompleted() {
+      }
+    });
+
+    assertEquals(Arrays.asList(0, 1), results);
+    assertEquals("only the free slots should be taken", 5, produced.get());
+  }
+
+  @Test
+  public void testMapAsyncFailure() throws Exception {
+    final ComposablePromise<Integer> pending = ComposableFutures.newPromise();
+    final AtomicInteger cancelled = new AtomicInteger();
+    pending.onCancel(mayInterrupt -> {
+      cancelled.incrementAndGet();
+      return true;
+    });
+
+    final Observable<Integer> stream = mapAsync(Arrays.asList(1, 2, 3), 2, false,
+      num -> num == 1 ? pending.future() : fromError(new RuntimeException("failed " + num)));
+
+    try {
+      stream.toBlocking().toIterable().forEach(num -> fail("no results expected"));
+      fail("stream should fail");
+    } catch (final RuntimeException e) {
+      assertEquals("failed 2", e.getMessage());
+    }
+
+    assertEquals("in flight futures should be cancelled", 1, cancelled.get());
+  }
+
   @Test
   @Ignore("performance test")
   public void testThreadPool() {
@@ -742,6 +905,319 @@ public class ComposableFutureTest {
     }
   }
 
+  @Test
+  public void testHandlersRunInRegistrationOrder() throws Exception {
+    final ComposablePromise<String> promise = ComposableFutures.newPromise(false);
+    final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+
+    for (int i = 0; i < 5; i++) {
+      final int index = i;
+      promise.future().consume(result -> order.add(index));
+    }
+
+    Assert.assertTrue("handlers should not run before completion", order.isEmpty());
+    promise.set("done");
+    promise.future().consume(result -> order.add(5));
+
+    Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), order);
+  }
+
+  @Test
+  public void testBlockingInDeepContinuationsRunsTheQueuedHandlers() throws Exception {
+    final ComposablePromise<String> promise = ComposableFutures.newPromise(false);
+    final ComposableFuture<String> upperCase = promise.future().map(String::toUpperCase);
+    final AtomicReference<Try<String>> blocked = new AtomicReference<>();
+
+    whenContinuationsAreQueued(() -> {
+      // both the blocking continuation and the mapping it waits for are queued, the mapping last
+      fromValue(0).consume(ignored -> blocked.set(Try.apply(() -> upperCase.get(1, TimeUnit.SECONDS))));
+      promise.set("deep");
+    });
+
+    Assert.assertEquals("DEEP", blocked.get().getValue());
+  }
+
+  /**
+   * nests continuations of completed futures, running the task in the first one too deep to run its own inline.
+   */
+  private static void whenContinuationsAreQueued(final Runnable task) {
+    final AtomicBoolean ranInline = new AtomicBoolean();
+    fromValue(0).consume(ignored -> {
+      if (ranInline.compareAndSet(false, true)) {
+        whenContinuationsAreQueued(task);
+      }
+    });
+
+    if (ranInline.compareAndSet(false, true)) {
+      task.run();
+    }
+  }
+
+  @Test
+  public void testCompletedFutureContinuationsRunInline() throws Exception {
+    final Thread caller = Thread.currentThread();
+    final AtomicReference<Thread> mapThread = new AtomicReference<>();
+
+    final ComposableFuture<Integer> result = fromValue(1).
+      map(value -> {
+        mapThread.set(Thread.currentThread());
+        return value + 1;
+      }).
+      flatMap(value -> fromValue(value * 10)).
+      flatMap(value -> fromError(new IllegalStateException("boom " + value))).
+      map(value -> 0);
+
+    Assert.assertSame(caller, mapThread.get());
+    try {
+      result.get();
+      fail("should have failed");
+    } catch (final ExecutionException e) {
+      Assert.assertEquals("boom 20", e.getCause().getMessage());
+    }
+  }
+
+  @Test
+  public void testConcurrentHandlerRegistration() throws Exception {
+    final int threads = 4;
+    final int handlersPerThread = 1000;
+    for (int i = 0; i < 100; i++) {
+      final ComposablePromise<String> promise = ComposableFutures.newPromise(false);
+      final AtomicInteger handled = new AtomicInteger();
+      final CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+      final List<Thread> registrators = new ArrayList<>();
+
+      for (int t = 0; t < threads; t++) {
+        final Thread registrator = new Thread(() -> {
+          try {
+            barrier.await();
+          } catch (final InterruptedException | BrokenBarrierException e) {
+            throw new RuntimeException(e);
+          }
+          for (int h = 0; h < handlersPerThread; h++) {
+            promise.future().consume(result -> handled.incrementAndGet());
+          }
+        });
+        registrator.start();
+        registrators.add(registrator);
+      }
+
+      barrier.await();
+      promise.set("done");
+      for (final Thread registrator : registrators) {
+        registrator.join();
+      }
+
+      Assert.assertEquals("every handler should run exactly once", threads * handlersPerThread, handled.get());
+    }
+  }
+
+  @Test
+  public void testCancellationPropagatesUpstream() throws Exception {
+    final ComposablePromise<String> source = ComposableFutures.newPromise(false);
+    final ComposablePromise<String> inner = ComposableFutures.newPromise(false);
+    final AtomicInteger sourceCancellations = new AtomicInteger();
+    source.onCancel(mayInterrupt -> {
+      sourceCancellations.incrementAndGet();
+      return true;
+    });
+    inner.onCancel(mayInterrupt -> {
+      inner.setException(new CancellationException("aborted"));
+      return true;
+    });
+
+    final ComposableFuture<Integer> result = source.future().
+      flatMap(value -> inner.future()).
+      map(String::length).
+      recover(error -> -1);
+
+    // the source completes, so the inner future is the one to cancel
+    source.set("source");
+    Assert.assertTrue("first cancellation should succeed", result.cancel(false));
+    Assert.assertFalse("second cancellation should fail", result.cancel(false));
+
+    Assert.assertEquals("a completed future has nothing to abort", 0, sourceCancellations.get());
+    assertCancelled(result);
+    try {
+      inner.future().get();
+      Assert.fail("the inner future should be aborted");
+    } catch (final ExecutionException e) {
+      Assert.assertEquals("aborted", e.getCause().getMessage());
+    }
+  }
+
+  @Test
+  public void testCancellationReachesFuturesRegisteredLater() throws Exception {
+    final ComposablePromise<String> promise = ComposableFutures.newPromise(false);
+    final ComposablePromise<String> inner = ComposableFutures.newPromise(false);
+    final AtomicInteger innerCancellations = new AtomicInteger();
+    inner.onCancel(mayInterrupt -> {
+      innerCancellations.incrementAndGet();
+      return true;
+    });
+
+    Assert.assertTrue(promise.future().cancel(false));
+    // the handler set after the cancellation is called right away
+    promise.onCancel(inner.future());
+    Assert.assertEquals(1, innerCancellations.get());
+  }
+
+  @Test
+  public void testCancellingFuturesThatCantBeAborted() throws Exception {
+    final ComposablePromise<String> bare = ComposableFutures.newPromise();
+    Assert.assertTrue(bare.future().cancel(false));
+    assertCancelled(bare.future());
+
+    final ComposablePromise<String> ignoring = ComposableFutures.newPromise(false);
+    ignoring.onCancel(mayInterrupt -> false);
+    final ComposableFuture<Integer> length = ignoring.future().map(String::length);
+    Assert.assertTrue(length.cancel(false));
+    assertCancelled(length);
+    assertCancelled(ignoring.future());
+
+    // the computation may still complete, but its result is no longer awaited
+    ignoring.set("late");
+    assertCancelled(length);
+  }
+
+  private static void assertCancelled(final ComposableFuture<?> future) throws InterruptedException {
+    try {
+      future.get();
+      Assert.fail("a cancelled future should fail");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof CancellationException);
+    }
+  }
+
+  @Test
+  public void testCancellingCombinedFutures() throws Exception {
+    final List<ComposablePromise<String>> promises = new ArrayList<>();
+    final List<ComposableFuture<String>> futures = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      final ComposablePromise<String> promise = ComposableFutures.newPromise(false);
+      promise.onCancel(mayInterrupt -> {
+        promise.setException(new CancellationException());
+        return true;
+      });
+      promises.add(promise);
+      futures.add(promise.future());
+    }
+
+    promises.get(0).set("done");
+    final ComposableFuture<List<String>> allResults = all(true, futures);
+    final ComposableFuture<String> anyResult = ComposableFutures.any(futures.get(1), futures.get(2));
+
+    Assert.assertTrue(allResults.cancel(false));
+    Assert.assertEquals("done", futures.get(0).get());
+    try {
+      allResults.get();
+      Assert.fail("all should fail with the cancellation");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof CancellationException);
+    }
+
+    // the pending futures are awaited by any as well, so they keep running
+    promises.get(1).set("second");
+    Assert.assertEquals("second", anyResult.get());
+
+    Assert.assertTrue(futures.get(2).map(String::length).cancel(false));
+    try {
+      futures.get(2).get();
+      Assert.fail("a future awaited by none should be cancelled");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof CancellationException);
+    }
+  }
+
+  @Test
+  public void testCancellingOneOfSharedSourceDependents() throws Exception {
+    final ComposablePromise<String> source = ComposableFutures.newPromise(false);
+    final AtomicInteger sourceCancellations = new AtomicInteger();
+    source.onCancel(mayInterrupt -> {
+      sourceCancellations.incrementAndGet();
+      return true;
+    });
+
+    final ComposableFuture<Integer> first = source.future().map(String::length);
+    final ComposableFuture<String> second = source.future().map(String::toUpperCase);
+    final ComposableFuture<String> third = source.future().flatMap(ComposableFutures::fromValue);
+
+    Assert.assertTrue(first.cancel(false));
+    Assert.assertTrue(second.cancel(false));
+    Assert.assertEquals("the source is still awaited", 0, sourceCancellations.get());
+    try {
+      first.get();
+      Assert.fail("a cancelled future should fail");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof CancellationException);
+    }
+
+    Assert.assertTrue(third.cancel(false));
+    Assert.assertEquals("the last dependent cancels the source", 1, sourceCancellations.get());
+  }
+
+  @Test
+  public void testCancelledTaskDoesNotRun() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final CountDownLatch release = new CountDownLatch(1);
+      final AtomicInteger runs = new AtomicInteger();
+      final ComposableFuture<Boolean> blocking = ComposableFutures.submit(executor, () -> release.await(5, TimeUnit.SECONDS));
+      final ComposableFuture<Integer> queued = ComposableFutures.submit(executor, runs::incrementAndGet);
+
+      Assert.assertTrue(queued.cancel(false));
+      release.countDown();
+      Assert.assertTrue(blocking.get());
+
+      try {
+        queued.get();
+        Assert.fail("a cancelled task should fail");
+      } catch (final ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof CancellationException);
+      }
+
+      executor.submit(() -> {}).get();
+      Assert.assertEquals("a cancelled task should not run", 0, runs.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testTimeoutLeavesTheFutureRunning() throws Exception {
+    final ComposablePromise<String> source = ComposableFutures.newPromise(false);
+    final AtomicInteger sourceCancellations = new AtomicInteger();
+    source.onCancel(mayInterrupt -> {
+      sourceCancellations.incrementAndGet();
+      return true;
+    });
+
+    final ComposableFuture<Integer> length = source.future().map(String::length);
+    try {
+      length.withTimeout(10, TimeUnit.MILLISECONDS).get();
+      Assert.fail("should have timed out");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof TimeoutException);
+    }
+
+    Assert.assertEquals("a timeout should not cancel the source", 0, sourceCancellations.get());
+    source.set("source");
+    Assert.assertEquals(6, length.get().intValue());
+  }
+
+  @Test
+  public void testCancellingTimedFutureCancelsTheSource() throws Exception {
+    final ComposablePromise<String> source = ComposableFutures.newPromise(false);
+    final AtomicInteger sourceCancellations = new AtomicInteger();
+    source.onCancel(mayInterrupt -> {
+      sourceCancellations.incrementAndGet();
+      return true;
+    });
+
+    final ComposableFuture<Integer> timed = source.future().map(String::length).withTimeout(1, TimeUnit.MINUTES);
+    Assert.assertTrue(timed.cancel(false));
+    Assert.assertEquals(1, sourceCancellations.get());
+  }
+
   class PassThroughCount {
     final CountDownLatch waitersLatch;
     final CountDownLatch passersLatch;
@@ -0,0 +1,67 @@
+package com.outbrain.ob1k.concurrent;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+public class ExecutionAffinityTest {
+
+  @Test
+  public void testBindAndRestore() {
+    final Executor bound = task -> {};
+    final Executor other = Runnable::run;
+    Assert.assertNull(ExecutionAffinity.current());
+    Assert.assertSame(other, ExecutionAffinity.currentOr(other));
+
+    final Executor previous = ExecutionAffinity.bind(bound);
+    try {
+      Assert.assertNull(previous);
+      Assert.assertSame(bound, ExecutionAffinity.current());
+
+      ExecutionAffinity.run(other, () -> Assert.assertSame(other, ExecutionAffinity.current()));
+      Assert.assertSame("the outer binding should be restored", bound, ExecutionAffinity.current());
+    } finally {
+      ExecutionAffinity.restore(previous);
+    }
+
+    Assert.assertNull(ExecutionAffinity.current());
+  }
+
+  @Test
+  public void testContinuationsResumeOnTheBoundExecutor() throws Exception {
+    final CompletableFuture<String> first = new CompletableFuture<>();
+    final CompletableFuture<String> second = new CompletableFuture<>();
+    final CountDownLatch secondAdapted = new CountDownLatch(1);
+
+    // a future created by a resumed continuation is bound to the same executor
+    BoundExecutorAssertions.assertResumesOnTheBoundExecutor(() -> fromCompletable(first).flatMap(value -> {
+      final ComposableFuture<String> adapted = fromCompletable(second);
+      secondAdapted.countDown();
+      return adapted;
+    }), () -> {
+      first.complete("a");
+      Uninterruptibles.awaitUninterruptibly(secondAdapted);
+      second.complete("b");
+    });
+  }
+
+  // a minimal adapter of a third party future, the real adapters are tested in their own modules
+  private static <T> ComposableFuture<T> fromCompletable(final CompletableFuture<T> source) {
+    final ComposablePromise<T> promise = ComposableFutures.newPromise();
+    final Executor resumeOn = ExecutionAffinity.currentOr(Runnable::run);
+    source.whenComplete((value, error) -> resumeOn.execute(() -> {
+      if (error == null) {
+        promise.set(value);
+      } else {
+        promise.setException(error);
+      }
+    }));
+
+    return promise.future();
+  }
+}
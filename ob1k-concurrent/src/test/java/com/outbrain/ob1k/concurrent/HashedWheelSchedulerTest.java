@@ -0,0 +1,161 @@
+package com.outbrain.ob1k.concurrent;
+
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import com.outbrain.ob1k.concurrent.lazy.LazyComposableFuture;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+public class HashedWheelSchedulerTest {
+
+  private HashedWheelScheduler scheduler;
+
+  @Before
+  public void setup() {
+    // a small wheel, so that long delays span several rounds
+    scheduler = new HashedWheelScheduler(new PrefixBasedThreadFactory("wheel-test").withDaemonThreads(), 5, MILLISECONDS, 8, null);
+  }
+
+  @After
+  public void tearDown() {
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void testScheduledTasksRunAfterTheirDelay() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(3);
+    final long start = System.nanoTime();
+    final long[] elapsed = new long[3];
+    final long[] delays = {200, 20, 0};
+
+    for (int i = 0; i < delays.length; i++) {
+      final int index = i;
+      scheduler.schedule(() -> {
+        elapsed[index] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        latch.countDown();
+      }, delays[i], MILLISECONDS);
+    }
+
+    Assert.assertTrue("all tasks should have run", latch.await(2, TimeUnit.SECONDS));
+    for (int i = 0; i < delays.length; i++) {
+      Assert.assertTrue("task should not run before its delay", elapsed[i] >= delays[i]);
+    }
+  }
+
+  @Test
+  public void testCancelledTaskDoesNotRun() throws InterruptedException {
+    final AtomicBoolean ran = new AtomicBoolean();
+    final CancellationToken token = scheduler.schedule(() -> ran.set(true), 50, MILLISECONDS);
+
+    Assert.assertTrue("first cancel should succeed", token.cancel(false));
+    Assert.assertFalse("second cancel should fail", token.cancel(false));
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    scheduler.schedule(latch::countDown, 100, MILLISECONDS);
+    Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+    Assert.assertFalse("cancelled task should not run", ran.get());
+  }
+
+  @Test
+  public void testFailingTaskDoesNotAffectTheOthers() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(1);
+    scheduler.schedule(() -> {
+      throw new IllegalStateException("failing task");
+    }, 10, MILLISECONDS);
+    scheduler.schedule(latch::countDown, 50, MILLISECONDS);
+
+    Assert.assertTrue("the task after the failing one should run", latch.await(2, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testManyTimeouts() throws InterruptedException {
+    final int count = 10000;
+    final CountDownLatch latch = new CountDownLatch(count / 2);
+    final AtomicInteger cancelledRuns = new AtomicInteger();
+
+    for (int i = 0; i < count; i++) {
+      if (i % 2 == 0) {
+        scheduler.schedule(latch::countDown, i % 100, MILLISECONDS);
+      } else {
+        scheduler.schedule(cancelledRuns::incrementAndGet, i % 100, MILLISECONDS).cancel(false);
+      }
+    }
+
+    Assert.assertTrue("all tasks should have run", latch.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals("cancelled tasks should not run", 0, cancelledRuns.get());
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void testScheduleAfterShutdown() {
+    scheduler.shutdown();
+    scheduler.schedule(() -> {}, 1, MILLISECONDS);
+  }
+
+  @Test
+  public void testWithTimeout() throws InterruptedException {
+    final ComposablePromise<String> promise = ComposableFutures.newPromise(false);
+
+    try {
+      promise.future().withTimeout(scheduler, 20, MILLISECONDS).get();
+      Assert.fail("should have timed out");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof TimeoutException);
+    }
+  }
+
+  @Test
+  public void testWithTimeoutCancelsTimerOnCompletion() throws Exception {
+    final CountingScheduler countingScheduler = new CountingScheduler(scheduler);
+
+    final ComposablePromise<String> promise = ComposableFutures.newPromise(false);
+    final ComposableFuture<String> eager = promise.future().withTimeout(countingScheduler, 1, TimeUnit.MINUTES);
+    promise.set("eager");
+    Assert.assertEquals("eager", eager.get());
+
+    final ComposableFuture<String> lazy =
+      LazyComposableFuture.fromValue("lazy").withTimeout(countingScheduler, 1, TimeUnit.MINUTES);
+    Assert.assertEquals("lazy", lazy.get());
+
+    Assert.assertEquals(2, countingScheduler.scheduled.get());
+    Assert.assertEquals("timers should be cancelled once the futures complete", 2, countingScheduler.cancelled.get());
+  }
+
+  private static class CountingScheduler implements Scheduler {
+    private final Scheduler delegate;
+    private final AtomicInteger scheduled = new AtomicInteger();
+    private final AtomicInteger cancelled = new AtomicInteger();
+
+    private CountingScheduler(final Scheduler delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public CancellationToken schedule(final Runnable task, final long delay, final TimeUnit timeUnit) {
+      scheduled.incrementAndGet();
+      final CancellationToken token = delegate.schedule(task, delay, timeUnit);
+      return mayInterrupt -> {
+        final boolean result = token.cancel(mayInterrupt);
+        if (result) {
+          cancelled.incrementAndGet();
+        }
+        return result;
+      };
+    }
+
+    @Override
+    public void shutdown() {
+      delegate.shutdown();
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package com.outbrain.ob1k.concurrent;
+
+import com.outbrain.ob1k.concurrent.eager.EagerComposableFuture;
+import com.google.common.base.Ticker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class InstrumentedExecutorServiceTest {
+
+  private InstrumentedExecutorService executor;
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testSaturationTracking() throws Exception {
+    executor = new InstrumentedExecutorService(Executors.newSingleThreadExecutor());
+    final CountDownLatch running = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    executor.execute(() -> {
+      running.countDown();
+      awaitUninterruptibly(release);
+    });
+    executor.execute(() -> {});
+    executor.execute(() -> {});
+
+    Assert.assertTrue(running.await(1, TimeUnit.SECONDS));
+    Assert.assertEquals(1, executor.getActiveCount());
+    Assert.assertEquals(2, executor.getQueueSize());
+
+    Thread.sleep(50);
+    release.countDown();
+    executor.submit(() -> {}).get();
+    // the future completes from within the task, right before it is counted as completed
+    for (int i = 0; i < 100 && executor.getActiveCount() > 0; i++) {
+      Thread.sleep(10);
+    }
+
+    Assert.assertEquals(0, executor.getActiveCount());
+    Assert.assertEquals(0, executor.getQueueSize());
+    Assert.assertEquals(4, executor.getStartedCount());
+  }
+
+  @Test
+  public void testAverageQueueWaitTime() throws Exception {
+    final AtomicLong time = new AtomicLong();
+    executor = new InstrumentedExecutorService(Executors.newSingleThreadExecutor(), new Ticker() {
+      @Override
+      public long read() {
+        return time.get();
+      }
+    });
+    final CountDownLatch running = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    executor.execute(() -> {
+      running.countDown();
+      awaitUninterruptibly(release);
+    });
+    Assert.assertTrue(running.await(1, TimeUnit.SECONDS));
+    final Future<?> queued = executor.submit(() -> {});
+    time.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+    release.countDown();
+    queued.get();
+
+    Assert.assertEquals("the average advances on ticks only", 0, executor.getAverageQueueWaitMs(), 0);
+    time.addAndGet(TimeUnit.SECONDS.toNanos(5));
+    Assert.assertEquals(50, executor.getAverageQueueWaitMs(), 0.001);
+    Assert.assertEquals("reading the average should not change it", 50, executor.getAverageQueueWaitMs(), 0.001);
+
+    time.addAndGet(TimeUnit.MINUTES.toNanos(1));
+    Assert.assertEquals("idle ticks should keep the average", 50, executor.getAverageQueueWaitMs(), 0.001);
+
+    executor.submit(() -> {}).get();
+    time.addAndGet(TimeUnit.SECONDS.toNanos(5));
+    final double average = executor.getAverageQueueWaitMs();
+    Assert.assertTrue("tasks that didn't wait should lower the average: " + average, average > 0 && average < 50);
+  }
+
+  @Test
+  public void testWorkStealingPool() throws Exception {
+    executor = new InstrumentedExecutorService(new ForkJoinPool(2));
+
+    final ComposableFuture<Integer> sum = ComposableFutures.submit(executor, () -> 1).
+      flatMap(value -> ComposableFutures.submit(executor, () -> value + 1));
+
+    Assert.assertEquals(2, sum.get().intValue());
+    Assert.assertEquals(2, executor.getStartedCount());
+  }
+
+  @Test
+  public void testRejectedTaskFailsTheFuture() throws Exception {
+    executor = new InstrumentedExecutorService(new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+      new ArrayBlockingQueue<>(1)));
+    final CountDownLatch release = new CountDownLatch(1);
+
+    final ComposableFuture<Boolean> blocking = EagerComposableFuture.submit(executor, () -> awaitUninterruptibly(release), false);
+    final ComposableFuture<Boolean> queued = EagerComposableFuture.submit(executor, () -> true, false);
+    final ComposableFuture<Boolean> rejected = EagerComposableFuture.submit(executor, () -> true, false);
+
+    try {
+      rejected.get();
+      Assert.fail("a saturated executor should reject the task");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+
+    release.countDown();
+    Assert.assertTrue(blocking.get());
+    Assert.assertTrue(queued.get());
+    Assert.assertEquals("rejected tasks should not be counted as queued", 0, executor.getQueueSize());
+  }
+
+  private static boolean awaitUninterruptibly(final CountDownLatch latch) {
+    try {
+      return latch.await(5, TimeUnit.SECONDS);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
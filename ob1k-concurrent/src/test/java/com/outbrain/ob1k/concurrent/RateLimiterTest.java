@@ -0,0 +1,176 @@
+package com.outbrain.ob1k.concurrent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RateLimiterTest {
+
+  @Test
+  public void testBurstIsAcquiredRightAway() throws Exception {
+    final RateLimiter limiter = new RateLimiter(1, 5, 0, TimeUnit.MILLISECONDS);
+
+    for (int i = 0; i < 5; i++) {
+      Assert.assertTrue("permit " + i + " should be in the burst", isDone(limiter.acquire()));
+    }
+
+    Assert.assertFalse(limiter.tryAcquire());
+    try {
+      limiter.acquire().get();
+      Assert.fail("permits beyond the burst should be rejected when the limiter doesn't wait");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof RateLimitExceededException);
+    }
+
+    Assert.assertEquals(5, limiter.getAcquiredCount());
+    Assert.assertEquals(2, limiter.getRejectedCount());
+    Assert.assertEquals(0, limiter.getDelayedCount());
+  }
+
+  @Test
+  public void testPermitsOverTheRateAreDelayed() throws Exception {
+    final RateLimiter limiter = new RateLimiter(20, 1, 1, TimeUnit.SECONDS);
+
+    final long start = System.nanoTime();
+    final List<ComposableFuture<Void>> permits = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      permits.add(limiter.acquire());
+    }
+
+    Assert.assertTrue(isDone(permits.get(0)));
+    Assert.assertFalse("the second permit is over the rate", isDone(permits.get(1)));
+
+    ComposableFutures.all(permits).get(1, TimeUnit.SECONDS);
+    final long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    Assert.assertTrue("4 permits over the rate should take ~200ms, took " + elapsedMs, elapsedMs >= 180);
+    Assert.assertEquals(5, limiter.getAcquiredCount());
+    Assert.assertEquals(4, limiter.getDelayedCount());
+  }
+
+  @Test
+  public void testPermitsDueAfterTheMaxWaitAreRejected() throws Exception {
+    final RateLimiter limiter = new RateLimiter(10, 1, 250, TimeUnit.MILLISECONDS);
+
+    final List<ComposableFuture<Void>> permits = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      permits.add(limiter.acquire());
+    }
+
+    // the first permit is due now, the next two within 200ms
+    for (int i = 0; i < 3; i++) {
+      permits.get(i).get(1, TimeUnit.SECONDS);
+    }
+    for (int i = 3; i < 5; i++) {
+      try {
+        permits.get(i).get();
+        Assert.fail("permit " + i + " is due after the max wait");
+      } catch (final ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof RateLimitExceededException);
+      }
+    }
+
+    Assert.assertEquals(2, limiter.getRejectedCount());
+  }
+
+  @Test
+  public void testCancelledWaitGivesPermitsBack() throws Exception {
+    final RateLimiter limiter = new RateLimiter(2, 1, 10, TimeUnit.SECONDS);
+
+    Assert.assertTrue(limiter.tryAcquire());
+    final ComposableFuture<Void> waiting = limiter.acquire(4);
+    Assert.assertTrue("4 permits over the rate wait ~2 seconds", limiter.getCurrentWaitMs() > 1500);
+
+    Assert.assertTrue(waiting.cancel(false));
+    try {
+      waiting.get();
+      Assert.fail("the wait was cancelled");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof CancellationException);
+    }
+
+    Assert.assertTrue("the cancelled permits should be given back", limiter.getCurrentWaitMs() <= 500);
+    Assert.assertEquals(1, limiter.getAcquiredCount());
+  }
+
+  @Test
+  public void testDelayedPermitsAreGrantedOnTheBoundExecutor() throws Exception {
+    final RateLimiter limiter = new RateLimiter(20, 1, 1, TimeUnit.SECONDS);
+    final AtomicInteger granted = new AtomicInteger();
+    final Executor executor = task -> {
+      granted.incrementAndGet();
+      task.run();
+    };
+
+    Assert.assertTrue(limiter.tryAcquire());
+    final AtomicReference<ComposableFuture<Void>> permit = new AtomicReference<>();
+    ExecutionAffinity.run(executor, () -> permit.set(limiter.acquire()));
+
+    permit.get().get(1, TimeUnit.SECONDS);
+    Assert.assertEquals("the delayed permit should be granted off the scheduler", 1, granted.get());
+  }
+
+  @Test
+  public void testCancelledWaitDoesntGiveBackElapsedPermits() throws Exception {
+    final RateLimiter limiter = new RateLimiter(20, 1, 10, TimeUnit.SECONDS);
+
+    // an idle limiter, so the wait for the permits starts now
+    final ComposableFuture<Void> waiting = limiter.acquire(10);
+    Thread.sleep(100);
+    Assert.assertTrue(waiting.cancel(false));
+
+    // the permits due while waiting are gone, so only the burst is available right away
+    Assert.assertTrue(limiter.tryAcquire());
+    Assert.assertFalse(limiter.tryAcquire());
+  }
+
+  @Test
+  public void testContendedAcquiresHandOutExactlyTheBurst() throws Exception {
+    final RateLimiter limiter = new RateLimiter(0.001, 1000, 0, TimeUnit.MILLISECONDS);
+    final AtomicInteger acquired = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Thread> threads = new ArrayList<>();
+
+    for (int i = 0; i < 8; i++) {
+      final Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (final InterruptedException e) {
+          return;
+        }
+
+        for (int j = 0; j < 500; j++) {
+          if (limiter.tryAcquire()) {
+            acquired.incrementAndGet();
+          }
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    start.countDown();
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+
+    Assert.assertEquals(1000, acquired.get());
+    Assert.assertEquals(1000, limiter.getAcquiredCount());
+    Assert.assertEquals(3000, limiter.getRejectedCount());
+  }
+
+  private static boolean isDone(final ComposableFuture<?> future) {
+    final AtomicBoolean done = new AtomicBoolean();
+    future.consume(result -> done.set(true));
+    return done.get();
+  }
+}
@@ -9,9 +9,11 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
@@ -29,16 +31,27 @@ public class ConsulBasedTargetProvider implements TargetProvider, HealthyTargets
   private final Map<String, Integer> tag2weight;
   private final HealthyTargetsList healthyTargetsList;
   private final LoadBalancer loadBalancer;
+  private final TargetsSubsetter subsetter;
+  private final List<TargetsListener> targetsListeners = new CopyOnWriteArrayList<>();
+  private volatile List<String> distinctTargets;
 
   public ConsulBasedTargetProvider(final HealthyTargetsList healthyTargetsList, final String urlSuffix, final Map<String, Integer> tag2weight) {
     this(healthyTargetsList, urlSuffix, tag2weight, new ThreadLocalRoundRobinLoadBalancer());
   }
 
   public ConsulBasedTargetProvider(final HealthyTargetsList healthyTargetsList, final String urlSuffix, final Map<String, Integer> tag2weight, final LoadBalancer loadBalancer) {
+    this(healthyTargetsList, urlSuffix, tag2weight, loadBalancer, TargetsSubsetter.ALL_TARGETS);
+  }
+
+  /**
+   * @param subsetter selects the subset of the healthy targets this client will use, e.g. a {@link RendezvousHashTargetsSubsetter}.
+   */
+  public ConsulBasedTargetProvider(final HealthyTargetsList healthyTargetsList, final String urlSuffix, final Map<String, Integer> tag2weight, final LoadBalancer loadBalancer, final TargetsSubsetter subsetter) {
     this.urlSuffix = urlSuffix == null ? "" : urlSuffix;
     this.tag2weight = tag2weight == null ? Collections.emptyMap() : new HashMap<>(tag2weight);
     this.healthyTargetsList = Preconditions.checkNotNull(healthyTargetsList, "healthyTargetsList must not be null");
     this.loadBalancer = loadBalancer;
+    this.subsetter = Preconditions.checkNotNull(subsetter, "subsetter must not be null");
     healthyTargetsList.addListener(this);
   }
 
@@ -73,10 +86,15 @@ public class ConsulBasedTargetProvider implements TargetProvider, HealthyTargets
 
   @Override
   public void onTargetsChanged(final List<HealthInfoInstance> healthTargets) {
-    final List<String> targets = new ArrayList<>(healthTargets.size());
+    final Map<String, Integer> url2weight = new LinkedHashMap<>(healthTargets.size());
     for (final HealthInfoInstance healthInfo : healthTargets) {
-      final String targetUrl = createTargetUrl(healthInfo);
-      final int weight = instanceWeight(healthInfo.Service);
+      url2weight.merge(createTargetUrl(healthInfo), instanceWeight(healthInfo.Service), Integer::sum);
+    }
+
+    final List<String> subset = Collections.unmodifiableList(subsetter.subset(new ArrayList<>(url2weight.keySet())));
+    final List<String> targets = new ArrayList<>(healthTargets.size());
+    for (final String targetUrl : subset) {
+      final int weight = url2weight.get(targetUrl);
       for (int i = 0; i < weight; i++) {
         targets.add(targetUrl);
       }
@@ -85,6 +103,21 @@ public class ConsulBasedTargetProvider implements TargetProvider, HealthyTargets
     Collections.shuffle(targets);
     loadBalancer.onTargetsChanged(targets);
     log.debug("New weighed targets: {}", targets);
+
+    distinctTargets = subset;
+    for (final TargetsListener listener : targetsListeners) {
+      listener.targetsChanged(subset);
+    }
+  }
+
+  @Override
+  public boolean addTargetsListener(final TargetsListener listener) {
+    targetsListeners.add(listener);
+    final List<String> currTargets = distinctTargets;
+    if (currTargets != null) {
+      listener.targetsChanged(currTargets);
+    }
+    return true;
   }
 
   private String createTargetUrl(final HealthInfoInstance healthInfo) {
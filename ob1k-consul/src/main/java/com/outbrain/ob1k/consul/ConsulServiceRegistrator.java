@@ -1,6 +1,8 @@
 package com.outbrain.ob1k.consul;
 
 import com.google.common.base.Preconditions;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
 import com.outbrain.ob1k.server.Server;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,10 +22,21 @@ public class ConsulServiceRegistrator implements Server.Listener {
   private static final Logger logger = LoggerFactory.getLogger(ConsulServiceRegistrator.class);
 
   private final ServiceRegistrationDataProvider serviceRegistrationDataProvider;
+  private final ComposableFuture<?> readyFuture;
   private final AtomicBoolean v1 = new AtomicBoolean(true);
 
   public ConsulServiceRegistrator(final ServiceRegistrationDataProvider serviceRegistrationDataProvider) {
+    this(serviceRegistrationDataProvider, ComposableFutures.fromNull());
+  }
+
+  /**
+   * @param readyFuture the registration is delayed until this future completes (successfully or not),
+   *                    e.g. until the server's clients connections are warm (see <code>Clients.whenReady()</code>, which is
+   *                    bounded by the pre-warm timeout of the clients).
+   */
+  public ConsulServiceRegistrator(final ServiceRegistrationDataProvider serviceRegistrationDataProvider, final ComposableFuture<?> readyFuture) {
     this.serviceRegistrationDataProvider = Preconditions.checkNotNull(serviceRegistrationDataProvider, "serviceRegistrationDataProvider must not be null");
+    this.readyFuture = Preconditions.checkNotNull(readyFuture, "readyFuture must not be null");
   }
 
   @Override
@@ -35,8 +48,12 @@ public class ConsulServiceRegistrator implements Server.Listener {
       return;
     }
 
-    registerService(serviceRegistration);
-    registerShutdownHook(serviceRegistration);
+    readyFuture.consume(ready -> {
+      if (!ready.isSuccess()) {
+        logger.warn("Service is not ready, registering anyway: {}", ready.getError().toString());
+      }
+      registerService(serviceRegistration);
+    });
   }
 
   private void registerService(final ServiceRegistration registration) {
@@ -51,6 +68,8 @@ public class ConsulServiceRegistrator implements Server.Listener {
               logger.info("{} registration success={}", registration.getID(), responseFuture.isSuccess());
               if (responseFuture.isSuccess()) {
                 v1.set(responseFuture.getValue());
+                // only a registered service is deregistered on shutdown
+                registerShutdownHook(registration);
               } else {
                 logger.warn("Failed to register service: {}", responseFuture.getError());
               }
@@ -58,7 +77,7 @@ public class ConsulServiceRegistrator implements Server.Listener {
   }
 
   private void registerShutdownHook(final ServiceRegistration registration) {
-    Runtime.getRuntime().addShutdownHook(new Thread() {
+    final Thread shutdownHook = new Thread() {
       @Override
       public void run() {
         logger.info("Going to deregister service {}", registration.getID());
@@ -74,7 +93,14 @@ public class ConsulServiceRegistrator implements Server.Listener {
           logger.error("Failed to deregister service {}", registration.getID(), e);
         }
       }
-    });
+    };
+
+    try {
+      Runtime.getRuntime().addShutdownHook(shutdownHook);
+    } catch (final IllegalStateException e) {
+      // the registration completed while shutting down, the hook is run inline instead
+      shutdownHook.run();
+    }
   }
 
 }
@@ -0,0 +1,82 @@
+package com.outbrain.ob1k.consul;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link TargetsSubsetter} based on rendezvous (highest random weight) hashing.
+ * Each target is scored by hashing the client id together with the target, and the client
+ * uses the <code>subsetSize</code> targets with the highest scores.
+ * <p>
+ * The subset is deterministic per client id, and membership changes move the minimal number of
+ * targets: a new target only replaces the lowest scored member of the subsets it wins,
+ * and a removed target is only replaced in the subsets it was part of.
+ * Different client ids spread evenly across all the targets.
+ */
+public class RendezvousHashTargetsSubsetter implements TargetsSubsetter {
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private final String clientId;
+  private final int subsetSize;
+
+  /**
+   * @param clientId a stable identifier of this client instance (e.g. host name + port).
+   * @param subsetSize the max number of targets this client will use.
+   */
+  public RendezvousHashTargetsSubsetter(final String clientId, final int subsetSize) {
+    this.clientId = Preconditions.checkNotNull(clientId, "clientId must not be null");
+    checkArgument(subsetSize > 0, "subsetSize must be positive but was %s", subsetSize);
+    this.subsetSize = subsetSize;
+  }
+
+  @Override
+  public List<String> subset(final List<String> targets) {
+    if (targets.size() <= subsetSize) {
+      return targets;
+    }
+
+    final List<ScoredTarget> scoredTargets = new ArrayList<>(targets.size());
+    for (final String target : targets) {
+      scoredTargets.add(new ScoredTarget(target, score(target)));
+    }
+
+    return scoredTargets.stream().
+      sorted(Comparator.comparingLong((ScoredTarget scoredTarget) -> scoredTarget.score).reversed().
+        thenComparing(scoredTarget -> scoredTarget.target)).
+      limit(subsetSize).
+      map(scoredTarget -> scoredTarget.target).
+      collect(Collectors.toList());
+  }
+
+  /**
+   * the client id is prefixed by its length, so different client id and target pairs that concatenate
+   * to the same string (e.g. "client1" + "0" and "client" + "10") still get independent scores.
+   */
+  long score(final String target) {
+    return HASH_FUNCTION.newHasher().
+      putInt(clientId.length()).
+      putString(clientId, Charsets.UTF_8).
+      putString(target, Charsets.UTF_8).
+      hash().asLong();
+  }
+
+  private static class ScoredTarget {
+    private final String target;
+    private final long score;
+
+    private ScoredTarget(final String target, final long score) {
+      this.target = target;
+      this.score = score;
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package com.outbrain.ob1k.consul;
+
+import java.util.List;
+
+/**
+ * Selects the subset of the healthy targets a client should talk to.
+ * Used by {@link ConsulBasedTargetProvider} to limit the number of servers (and connection pools)
+ * each client instance keeps open when both the client and the server fleets are large.
+ */
+public interface TargetsSubsetter {
+
+  /**
+   * A subsetter that keeps all the targets.
+   */
+  TargetsSubsetter ALL_TARGETS = targets -> targets;
+
+  /**
+   * @param targets the full list of distinct target urls.
+   * @return the targets this client should use. Must not be <code>null</code>.
+   */
+  List<String> subset(List<String> targets);
+}
@@ -0,0 +1,97 @@
+package com.outbrain.ob1k.consul;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RendezvousHashTargetsSubsetterTest {
+
+  private static final int SUBSET_SIZE = 10;
+
+  @Test
+  public void testSubsetIsDeterministic() {
+    final List<String> targets = createTargets(100);
+    final List<String> subset = new RendezvousHashTargetsSubsetter("client1", SUBSET_SIZE).subset(targets);
+
+    assertEquals("subset size", SUBSET_SIZE, subset.size());
+    assertEquals("same client should get the same subset", subset,
+      new RendezvousHashTargetsSubsetter("client1", SUBSET_SIZE).subset(shuffled(targets)));
+  }
+
+  @Test
+  public void testSmallTargetsListIsNotSubset() {
+    final List<String> targets = createTargets(SUBSET_SIZE - 1);
+    assertEquals(targets, new RendezvousHashTargetsSubsetter("client1", SUBSET_SIZE).subset(targets));
+  }
+
+  @Test
+  public void testMinimalRebalanceOnTargetRemoval() {
+    final List<String> targets = createTargets(100);
+    final RendezvousHashTargetsSubsetter subsetter = new RendezvousHashTargetsSubsetter("client1", SUBSET_SIZE);
+    final List<String> subset = subsetter.subset(targets);
+
+    final String removed = subset.get(0);
+    final List<String> remainingTargets = new ArrayList<>(targets);
+    remainingTargets.remove(removed);
+    final Set<String> newSubset = new HashSet<>(subsetter.subset(remainingTargets));
+
+    assertFalse(newSubset.contains(removed));
+    assertTrue("only the removed target should be replaced", newSubset.containsAll(subset.subList(1, subset.size())));
+
+    final List<String> nonMember = new ArrayList<>(targets);
+    nonMember.removeAll(subset);
+    final List<String> targetsWithoutNonMember = new ArrayList<>(targets);
+    targetsWithoutNonMember.remove(nonMember.get(0));
+    assertEquals("removing a non member should not change the subset",
+      subset, subsetter.subset(targetsWithoutNonMember));
+  }
+
+  @Test
+  public void testClientIdAndTargetAreHashedApart() {
+    final long score = new RendezvousHashTargetsSubsetter("client1", SUBSET_SIZE).score("0.0.0.1");
+    assertNotEquals("concatenating to the same string should not collide",
+      score, new RendezvousHashTargetsSubsetter("client", SUBSET_SIZE).score("10.0.0.1"));
+  }
+
+  @Test
+  public void testClientsSpreadAcrossTargets() {
+    final List<String> targets = createTargets(30);
+    final Map<String, Integer> target2clients = new HashMap<>();
+    for (int i = 0; i < 500; i++) {
+      for (final String target : new RendezvousHashTargetsSubsetter("client" + i, SUBSET_SIZE).subset(targets)) {
+        target2clients.merge(target, 1, Integer::sum);
+      }
+    }
+
+    assertEquals("all targets should be used", targets.size(), target2clients.size());
+    final int expectedClientsPerTarget = 500 * SUBSET_SIZE / targets.size();
+    for (final int clients : target2clients.values()) {
+      assertTrue("unbalanced subsets: " + target2clients, Math.abs(clients - expectedClientsPerTarget) < expectedClientsPerTarget / 2);
+    }
+  }
+
+  private static List<String> createTargets(final int targetsNum) {
+    return IntStream.range(0, targetsNum).
+      mapToObj(i -> "http://10.0.0." + i + ":8080/service").
+      collect(Collectors.toList());
+  }
+
+  private static List<String> shuffled(final List<String> targets) {
+    final List<String> shuffled = new ArrayList<>(targets);
+    Collections.shuffle(shuffled);
+    return shuffled;
+  }
+}
@@ -16,9 +16,12 @@ import com.outbrain.ob1k.common.filters.ServiceFilter;
 import com.outbrain.ob1k.common.filters.StreamFilter;
 import com.outbrain.ob1k.common.marshalling.RequestMarshallerRegistry;
 import com.outbrain.ob1k.common.marshalling.TypeHelper;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
 import com.outbrain.ob1k.http.HttpClient;
 import com.outbrain.ob1k.http.common.ContentType;
 import com.outbrain.swinfra.metrics.api.MetricFactory;
+import io.netty.channel.EventLoopGroup;
 
 import java.io.Closeable;
 import java.lang.reflect.Method;
@@ -28,6 +31,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static com.outbrain.ob1k.common.endpoints.ServiceEndpointContract.isAsyncMethod;
 import static com.outbrain.ob1k.common.endpoints.ServiceEndpointContract.isEndpoint;
@@ -38,6 +42,9 @@ import static com.outbrain.ob1k.common.endpoints.ServiceEndpointContract.isStrea
  */
 public class ClientBuilder<T extends Service> {
 
+  private static final long DEFAULT_PRE_WARM_TIMEOUT_MS = 10000;
+  private static final long DEFAULT_KEEP_WARM_INTERVAL_MS = 30000;
+
   private final Class<T> type;
   private final List<AsyncFilter> asyncFilters;
   private final List<StreamFilter> streamFilters;
@@ -48,6 +55,9 @@ public class ClientBuilder<T extends Service> {
   private ContentType clientType = ContentType.JSON;
   private Module[] jsonModules;
   private DispatchStrategy dispatchStrategy = DefaultDispatchStrategy.INSTANCE;
+  private int preWarmConnectionsPerTarget;
+  private long preWarmTimeoutMs = DEFAULT_PRE_WARM_TIMEOUT_MS;
+  private long keepWarmIntervalMs = DEFAULT_KEEP_WARM_INTERVAL_MS;
 
   public ClientBuilder(final Class<T> type) {
     this.type = type;
@@ -130,6 +140,60 @@ public class ClientBuilder<T extends Service> {
     return this;
   }
 
+  /**
+   * Uses the Netty 4 based http transport instead of AsyncHttpClient.
+   */
+  public ClientBuilder<T> useNettyTransport() {
+    httpClientBuilder.useNettyTransport();
+    return this;
+  }
+
+  /**
+   * Uses the Netty 4 based http transport on the given event loop group,
+   * e.g. {@link com.outbrain.ob1k.server.netty.NettyServer#getEventLoopGroup()} of an in-process server.
+   */
+  public ClientBuilder<T> setEventLoopGroup(final EventLoopGroup eventLoopGroup) {
+    httpClientBuilder.setEventLoopGroup(eventLoopGroup);
+    return this;
+  }
+
+  /**
+   * Opens the given number of connections to each target as soon as it becomes known (on build, and
+   * whenever new targets are added), so first requests won't pay the connect time.
+   * Use {@link Clients#whenReady(Service)} to wait for the initial warm up to complete, which fails with a
+   * TimeoutException if no targets were known, or warmed up, within 10 seconds.
+   * The targets are warmed up again every 30 seconds, see {@link #setKeepWarmInterval(long, TimeUnit)}.
+   *
+   * @param connectionsPerTarget number of connections to open per target, 0 disables pre-warming (the default)
+   */
+  public ClientBuilder<T> setPreWarmConnections(final int connectionsPerTarget) {
+    return setPreWarmConnections(connectionsPerTarget, DEFAULT_PRE_WARM_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param connectionsPerTarget number of connections to open per target, 0 disables pre-warming
+   * @param readyTimeout         how long {@link Clients#whenReady(Service)} waits for the initial warm up
+   * @see #setPreWarmConnections(int)
+   */
+  public ClientBuilder<T> setPreWarmConnections(final int connectionsPerTarget, final long readyTimeout, final TimeUnit unit) {
+    this.preWarmConnectionsPerTarget = connectionsPerTarget;
+    this.preWarmTimeoutMs = unit.toMillis(readyTimeout);
+    return this;
+  }
+
+  /**
+   * Sets how often the pre-warmed targets are warmed up again, replacing the connections closed while idle,
+   * so each target keeps at least the pre-warmed number of connections.
+   * It should be shorter than the idle timeout of the connections.
+   *
+   * @param interval the interval between warm ups, 0 warms up new targets only
+   * @see #setPreWarmConnections(int)
+   */
+  public ClientBuilder<T> setKeepWarmInterval(final long interval, final TimeUnit unit) {
+    this.keepWarmIntervalMs = unit.toMillis(interval);
+    return this;
+  }
+
   public ClientBuilder<T> setTargetProvider(final TargetProvider targetProvider) {
     this.targetProvider = targetProvider == null ? new EmptyTargetProvider() : targetProvider;
     return this;
@@ -181,13 +245,32 @@ public class ClientBuilder<T extends Service> {
     final ClassLoader loader = ClientBuilder.class.getClassLoader();
     final HttpClient httpClient = httpClientBuilder.build();
     final Map<Method, AbstractClientEndpoint> endpoints = extractEndpointsFromType(httpClient);
-    final HttpInvocationHandler handler = new HttpInvocationHandler(targetProvider, httpClient, endpoints, dispatchStrategy);
+    final ConnectionPreWarmer preWarmer = preWarmConnectionsPerTarget <= 0 ? null :
+      new ConnectionPreWarmer(httpClient, targetProvider.getTargetLogicalName(), preWarmConnectionsPerTarget, keepWarmIntervalMs);
+    final ComposableFuture<?> readyFuture = preWarmConnections(preWarmer);
+    final HttpInvocationHandler handler =
+      new HttpInvocationHandler(targetProvider, httpClient, endpoints, dispatchStrategy, readyFuture, preWarmer);
 
     @SuppressWarnings("unchecked")
-    final T proxy = (T) Proxy.newProxyInstance(loader, new Class[]{type, Closeable.class}, handler);
+    final T proxy = (T) Proxy.newProxyInstance(loader, new Class[]{type, Closeable.class, ReadyAware.class}, handler);
     return proxy;
   }
 
+  private ComposableFuture<?> preWarmConnections(final ConnectionPreWarmer preWarmer) {
+    if (preWarmer == null) {
+      return ComposableFutures.fromNull();
+    }
+
+    if (!targetProvider.addTargetsListener(preWarmer)) {
+      // the provider never reports its targets, so there's nothing to wait for
+      preWarmer.close();
+      return ComposableFutures.fromNull();
+    }
+
+    return preWarmer.ready().withTimeout(preWarmTimeoutMs, TimeUnit.MILLISECONDS,
+      "pre-warming connections to " + targetProvider.getTargetLogicalName());
+  }
+
   private RequestMarshallerRegistry createRegistry(final Class type) {
     final RequestMarshallerRegistry.Builder marshallerBuilder = new RequestMarshallerRegistry.Builder();
 
@@ -1,6 +1,8 @@
 package com.outbrain.ob1k.client;
 
 import com.outbrain.ob1k.Service;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
 
 /**
  * Created by aronen on 7/15/14.
@@ -14,4 +16,15 @@ public class Clients {
     final AutoCloseable service = (AutoCloseable) clientService;
     service.close();
   }
+
+  /**
+   * @return a future that completes when the client is ready, e.g. after its connections were pre-warmed.
+   */
+  public static ComposableFuture<?> whenReady(final Service clientService) {
+    if (clientService instanceof ReadyAware) {
+      return ((ReadyAware) clientService).whenReady();
+    }
+
+    return ComposableFutures.fromNull();
+  }
 }
@@ -0,0 +1,122 @@
+package com.outbrain.ob1k.client;
+
+import com.outbrain.ob1k.client.targets.TargetProvider;
+import com.outbrain.ob1k.concurrent.CancellationToken;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import com.outbrain.ob1k.http.HttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Opens connections eagerly to every new target of a {@link TargetProvider},
+ * so the first requests to a target won't pay the connect time inside their latency budget.
+ *
+ * The ready future completes once the first non empty targets list was warmed up.
+ *
+ * Idle connections are eventually closed, by the client's pool or by the server, so with a keep warm interval
+ * all the targets are warmed up again periodically. Warming up sends the requests concurrently, so each of them
+ * takes an idle connection of the pool, or opens a new one, and the pool is topped up to the warmed up size.
+ */
+class ConnectionPreWarmer implements TargetProvider.TargetsListener, Closeable {
+
+  private static final Logger logger = LoggerFactory.getLogger(ConnectionPreWarmer.class);
+
+  private final HttpClient httpClient;
+  private final String targetLogicalName;
+  private final int connectionsPerTarget;
+  private final long keepWarmIntervalMs;
+  private final Set<String> warmedTargets = ConcurrentHashMap.newKeySet();
+  private final ComposablePromise<Void> ready = ComposableFutures.newPromise(false);
+
+  private volatile List<String> targets = Collections.emptyList();
+  private volatile CancellationToken keepWarmTask;
+  private volatile boolean closed;
+
+  /**
+   * @param keepWarmIntervalMs how often the targets are warmed up again, 0 warms up new targets only.
+   */
+  ConnectionPreWarmer(final HttpClient httpClient, final String targetLogicalName, final int connectionsPerTarget,
+                      final long keepWarmIntervalMs) {
+    this.httpClient = checkNotNull(httpClient, "httpClient may not be null");
+    this.targetLogicalName = targetLogicalName;
+    checkArgument(connectionsPerTarget > 0, "connectionsPerTarget must be positive");
+    this.connectionsPerTarget = connectionsPerTarget;
+    checkArgument(keepWarmIntervalMs >= 0, "keepWarmIntervalMs must not be negative");
+    this.keepWarmIntervalMs = keepWarmIntervalMs;
+    scheduleKeepWarm();
+  }
+
+  ComposableFuture<Void> ready() {
+    return ready.future();
+  }
+
+  @Override
+  public void targetsChanged(final List<String> targets) {
+    this.targets = targets;
+    // forget removed targets, so they will be warmed up again if they come back
+    warmedTargets.retainAll(targets);
+
+    final List<ComposableFuture<Integer>> warmUps = new ArrayList<>();
+    for (final String target : targets) {
+      if (warmedTargets.add(target)) {
+        warmUps.add(warmUp(target));
+      }
+    }
+
+    if (targets.isEmpty()) {
+      return;
+    }
+
+    ComposableFutures.all(false, warmUps).consume(result -> ready.set(null));
+  }
+
+  /**
+   * stops warming up the targets.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    final CancellationToken task = keepWarmTask;
+    if (task != null) {
+      task.cancel(false);
+    }
+  }
+
+  private ComposableFuture<Integer> warmUp(final String target) {
+    return httpClient.warmUp(target, connectionsPerTarget).peek(connected ->
+      logger.debug("{}: warmed up {}/{} connections to {}", targetLogicalName, connected, connectionsPerTarget, target));
+  }
+
+  private void scheduleKeepWarm() {
+    if (keepWarmIntervalMs == 0 || closed) {
+      return;
+    }
+
+    keepWarmTask = ComposableFutures.getScheduler().schedule(() -> {
+      if (closed) {
+        return;
+      }
+
+      final List<ComposableFuture<Integer>> warmUps = new ArrayList<>();
+      for (final String target : targets) {
+        warmUps.add(warmUp(target));
+      }
+
+      // the next round starts once this one is done, so slow targets don't pile up warm ups
+      ComposableFutures.all(false, warmUps).consume(result -> scheduleKeepWarm());
+    }, keepWarmIntervalMs, TimeUnit.MILLISECONDS);
+  }
+}
@@ -6,6 +6,7 @@ import com.outbrain.ob1k.client.dispatch.DispatchStrategy;
 import com.outbrain.ob1k.client.endpoints.AbstractClientEndpoint;
 import com.outbrain.ob1k.client.endpoints.DispatchAction;
 import com.outbrain.ob1k.client.targets.TargetProvider;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.outbrain.ob1k.http.HttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,25 +26,40 @@ class HttpInvocationHandler implements InvocationHandler {
   private final Map<Method, AbstractClientEndpoint> endpoints;
   private final TargetProvider targetProvider;
   private final DispatchStrategy dispatchStrategy;
+  private final ComposableFuture<?> readyFuture;
+  private final ConnectionPreWarmer preWarmer;
 
+  /**
+   * @param preWarmer stopped once the client is closed, may be null.
+   */
   HttpInvocationHandler(final TargetProvider targetProvider, final HttpClient client,
-                        final Map<Method, AbstractClientEndpoint> endpoints, final DispatchStrategy dispatchStrategy) {
+                        final Map<Method, AbstractClientEndpoint> endpoints, final DispatchStrategy dispatchStrategy,
+                        final ComposableFuture<?> readyFuture, final ConnectionPreWarmer preWarmer) {
 
     this.client = checkNotNull(client, "client may not be null");
     this.targetProvider = checkNotNull(targetProvider, "targetProvider may not be null");
     this.endpoints = checkNotNull(endpoints, "endpoints may not be null");
     this.dispatchStrategy = checkNotNull(dispatchStrategy, "dispatchStrategy may not be null");
+    this.readyFuture = checkNotNull(readyFuture, "readyFuture may not be null");
+    this.preWarmer = preWarmer;
   }
 
   @Override
   public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
 
     if (isCloseInvoke(method)) {
+      if (preWarmer != null) {
+        preWarmer.close();
+      }
       client.close();
       logger.debug("client {} is closed.", targetProvider.getTargetLogicalName());
       return null;
     }
 
+    if (method.getDeclaringClass() == ReadyAware.class) {
+      return readyFuture;
+    }
+
     final AbstractClientEndpoint endpoint = endpoints.get(method);
     final DispatchAction dispatchAction = endpoint.createDispatchAction(args);
 
@@ -0,0 +1,17 @@
+package com.outbrain.ob1k.client;
+
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+
+/**
+ * Implemented by clients created by {@link ClientBuilder}, allowing to wait for the client to be ready,
+ * e.g. for its connections to be pre-warmed.
+ *
+ * @see Clients#whenReady(com.outbrain.ob1k.Service)
+ */
+public interface ReadyAware {
+
+  /**
+   * @return a future that completes when the client is ready to serve requests without a warm up penalty.
+   */
+  ComposableFuture<?> whenReady();
+}
@@ -12,6 +12,7 @@ import com.outbrain.ob1k.common.filters.StreamFilter;
 import com.outbrain.ob1k.http.RequestBuilder;
 import com.outbrain.ob1k.http.Response;
 import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
+import com.outbrain.ob1k.http.marshalling.StreamDecoder;
 import org.apache.commons.codec.EncoderException;
 import rx.Observable;
 
@@ -38,6 +39,12 @@ public class StreamClientEndpoint extends AbstractClientEndpoint {
     public byte[] marshall(final Object value) throws IOException {
       return marshallObject(value);
     }
+
+    @Override
+    public <T> StreamDecoder<T> createStreamDecoder(final Type type, final Response response) throws IOException {
+      final RequestMarshaller marshaller = getMarshaller(response);
+      return marshaller.createStreamDecoder(type);
+    }
   };
 
   public StreamClientEndpoint(final HttpClient httpClient, final RequestMarshallerRegistry marshallerRegistry,
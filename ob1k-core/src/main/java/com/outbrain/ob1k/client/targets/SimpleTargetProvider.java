@@ -7,6 +7,7 @@ import org.slf4j.LoggerFactory;
 import java.util.List;
 
 import static java.util.Collections.nCopies;
+import static java.util.Collections.singletonList;
 
 /**
  * A {@link TargetProvider} that provides a fixed target.
@@ -35,4 +36,10 @@ public class SimpleTargetProvider implements TargetProvider {
   public List<String> provideTargets(final int targetsNum) {
     return nCopies(targetsNum, target);
   }
+
+  @Override
+  public boolean addTargetsListener(final TargetsListener listener) {
+    listener.targetsChanged(singletonList(target));
+    return true;
+  }
 }
@@ -53,4 +53,26 @@ public interface TargetProvider {
    */
   default void targetDispatchEnded(String target, boolean success, final long startTimeNanos) {
   }
+
+  /**
+   * Registers a listener for changes in the full list of targets.
+   * The listener is notified with the current targets upon registration (if known), and on every change.
+   * The default implementation never notifies, for providers that can't expose their targets.
+   *
+   * @param listener targets listener
+   * @return true if the provider notifies its listeners, false if it can't expose its targets
+   */
+  default boolean addTargetsListener(TargetsListener listener) {
+    return false;
+  }
+
+  /**
+   * Listens for changes in the targets list of a {@link TargetProvider}.
+   */
+  interface TargetsListener {
+    /**
+     * @param targets the new distinct targets list
+     */
+    void targetsChanged(List<String> targets);
+  }
 }
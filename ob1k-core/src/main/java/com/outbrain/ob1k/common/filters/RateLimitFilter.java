@@ -0,0 +1,33 @@
+package com.outbrain.ob1k.common.filters;
+
+import com.google.common.base.Preconditions;
+import com.outbrain.ob1k.AsyncRequestContext;
+import com.outbrain.ob1k.common.metrics.RateLimiterGaugesBuilder;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.RateLimiter;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+
+/**
+ * a client/server filter that caps the rate of all the calls going through it with a single rate limiter.
+ *
+ * mostly meant for clients, capping the outbound calls to a dependency that can't take bursts:
+ * calls over the rate are delayed, and failed with a {@link com.outbrain.ob1k.concurrent.RateLimitExceededException}
+ * once they would wait longer than the limiter allows.
+ */
+public class RateLimitFilter<T> implements AsyncFilter<T, AsyncRequestContext> {
+  private final RateLimiter limiter;
+
+  public RateLimitFilter(final RateLimiter limiter) {
+    this.limiter = Preconditions.checkNotNull(limiter, "limiter must not be null");
+  }
+
+  public RateLimitFilter(final RateLimiter limiter, final MetricFactory metricFactory, final String componentName) {
+    this(limiter);
+    RateLimiterGaugesBuilder.registerRateLimiterGauges(metricFactory, limiter, componentName);
+  }
+
+  @Override
+  public ComposableFuture<T> handleAsync(final AsyncRequestContext ctx) {
+    return limiter.acquire().flatMap(permit -> ctx.<T>invokeAsync());
+  }
+}
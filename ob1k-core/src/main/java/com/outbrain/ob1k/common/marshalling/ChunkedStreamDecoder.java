@@ -0,0 +1,117 @@
+package com.outbrain.ob1k.common.marshalling;
+
+import com.outbrain.ob1k.http.marshalling.StreamDecoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Incrementally decodes ob1k stream responses, framed as {@link ChunkHeader} + element body + new line,
+ * where an error frame may only be the last one in the stream.
+ *
+ * The received body parts are accumulated (without copying) into a composite buffer, and the elements
+ * are parsed directly from it. Parsing the element body itself is left to the concrete marshaller.
+ *
+ * @param <T> type of the stream elements
+ */
+public abstract class ChunkedStreamDecoder<T> implements StreamDecoder<T> {
+
+  private static final byte[] ELEMENT_HEADER = ChunkHeader.ELEMENT_HEADER.getBytes(CharsetUtil.UTF_8);
+  private static final byte[] ERROR_HEADER = ChunkHeader.ERROR_HEADER.getBytes(CharsetUtil.UTF_8);
+  private static final byte NEW_LINE = '\n';
+
+  private final CompositeByteBuf cumulation = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+  private boolean awaitingNewLine;
+  private boolean remoteError;
+
+  @Override
+  public List<T> decode(final ByteBuffer bodyPart) throws IOException {
+    if (!bodyPart.hasRemaining()) {
+      return Collections.emptyList();
+    }
+
+    final ByteBuf part = Unpooled.wrappedBuffer(bodyPart);
+    cumulation.addComponent(part);
+    cumulation.writerIndex(cumulation.writerIndex() + part.readableBytes());
+
+    final List<T> elements = new ArrayList<>(1);
+    while (!remoteError && cumulation.isReadable()) {
+      if (awaitingNewLine) {
+        if (cumulation.readByte() != NEW_LINE) {
+          throw new IOException("bad stream response - missing new line after element");
+        }
+        awaitingNewLine = false;
+        continue;
+      }
+
+      if (cumulation.readableBytes() < ELEMENT_HEADER.length) {
+        break;
+      }
+
+      if (headerEquals(ELEMENT_HEADER)) {
+        final int frameStart = cumulation.readerIndex();
+        cumulation.skipBytes(ELEMENT_HEADER.length);
+        if (!decodeElement(cumulation, elements)) {
+          // incomplete element, waiting for the next parts
+          cumulation.readerIndex(frameStart);
+          break;
+        }
+        awaitingNewLine = true;
+      } else if (headerEquals(ERROR_HEADER)) {
+        // the error message spans until the end of the stream
+        cumulation.skipBytes(ERROR_HEADER.length);
+        remoteError = true;
+      } else {
+        final String header = cumulation.toString(cumulation.readerIndex(), ELEMENT_HEADER.length, CharsetUtil.UTF_8);
+        throw new IOException("invalid chunk header - unsupported " + header);
+      }
+    }
+
+    cumulation.discardReadComponents();
+    return elements;
+  }
+
+  @Override
+  public void end() throws IOException {
+    try {
+      if (remoteError) {
+        throw new RuntimeException(cumulation.toString(CharsetUtil.UTF_8));
+      }
+
+      if (cumulation.isReadable()) {
+        throw new IOException("bad stream response - stream ended in the middle of an element");
+      }
+    } finally {
+      cumulation.release();
+    }
+  }
+
+  /**
+   * Decodes a single element body, starting at the reader index of the buffer.
+   * On success, the reader index is advanced to the end of the element body (the new line is not consumed).
+   *
+   * @param buffer buffer holding the element body
+   * @param elements list to add the decoded element to
+   * @return false if the buffer doesn't hold the whole element yet
+   * @throws IOException in case the element can't be unmarshalled
+   */
+  protected abstract boolean decodeElement(ByteBuf buffer, List<T> elements) throws IOException;
+
+  private boolean headerEquals(final byte[] header) {
+    final int readerIndex = cumulation.readerIndex();
+    for (int i = 0; i < header.length; i++) {
+      if (cumulation.getByte(readerIndex + i) != header[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
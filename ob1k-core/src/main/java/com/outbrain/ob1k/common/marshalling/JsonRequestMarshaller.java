@@ -32,7 +32,7 @@ import com.outbrain.ob1k.Request;
 import com.outbrain.ob1k.http.Response;
 import com.outbrain.ob1k.http.common.ContentType;
 import com.outbrain.ob1k.http.marshalling.JacksonMarshallingStrategy;
-import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
+import com.outbrain.ob1k.http.marshalling.StreamDecoder;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
@@ -49,9 +49,13 @@ import io.netty.util.CharsetUtil;
  * @author aronen
  */
 public class JsonRequestMarshaller implements RequestMarshaller {
+  private static final byte[] ELEMENT_HEADER = ChunkHeader.ELEMENT_HEADER.getBytes(CharsetUtil.UTF_8);
+  private static final byte[] ERROR_HEADER = ChunkHeader.ERROR_HEADER.getBytes(CharsetUtil.UTF_8);
+
   private final ObjectMapper mapper;
   private final JsonFactory factory;
-  private final MarshallingStrategy marshallingStrategy;
+  private final List<Module> modules = new ArrayList<>();
+  private final JacksonMarshallingStrategy marshallingStrategy;
 
   public JsonRequestMarshaller(Module... module) {
     factory = new JsonFactory();
@@ -61,6 +65,7 @@ public class JsonRequestMarshaller implements RequestMarshaller {
     mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
     for (Module m : module) {
       mapper.registerModule(m);
+      modules.add(m);
     }
     marshallingStrategy = new JacksonMarshallingStrategy(mapper);
   }
@@ -149,34 +154,62 @@ public class JsonRequestMarshaller implements RequestMarshaller {
   public <T> T unmarshallStreamResponse(final Response response, final Type type) throws IOException {
 
     final ByteBuffer byteBufferBody = response.getResponseBodyAsByteBuffer();
-    final int chunkHeaderSize = ChunkHeader.ELEMENT_HEADER.length();
 
-    if (byteBufferBody.remaining() < chunkHeaderSize) {
+    if (byteBufferBody.remaining() < ELEMENT_HEADER.length) {
       throw new IOException("bad stream response - no chunk header");
     }
 
-    final byte[] header = new byte[chunkHeaderSize];
-    byteBufferBody.get(header);
-
-    final int remaining = byteBufferBody.remaining();
-    final byte[] body = new byte[remaining];
-    byteBufferBody.get(body);
+    // parsing in place, right after the header
+    final ByteBuffer body = byteBufferBody.duplicate();
+    body.position(body.position() + ELEMENT_HEADER.length);
 
-    if (Arrays.equals(ChunkHeader.ELEMENT_HEADER.getBytes(CharsetUtil.UTF_8), header)) {
+    if (headerEquals(byteBufferBody, ELEMENT_HEADER)) {
 
-      if (remaining == 0) {
+      if (!body.hasRemaining()) {
         // on empty body the object mapper throws "JsonMappingException: No content to map due to end-of-input"
         return null;
       }
 
-      return mapper.readValue(body, getJacksonType(type));
+      return marshallingStrategy.readValue(type, body);
 
-    } else if (Arrays.equals(ChunkHeader.ERROR_HEADER.getBytes(CharsetUtil.UTF_8), header)) {
+    } else if (headerEquals(byteBufferBody, ERROR_HEADER)) {
 
-      throw new RuntimeException(new String(body, CharsetUtil.UTF_8));
+      throw new RuntimeException(CharsetUtil.UTF_8.decode(body).toString());
     }
 
-    throw new IOException("invalid chunk header - unsupported " + new String(header, CharsetUtil.UTF_8));
+    final ByteBuffer header = byteBufferBody.duplicate();
+    header.limit(header.position() + ELEMENT_HEADER.length);
+    throw new IOException("invalid chunk header - unsupported " + CharsetUtil.UTF_8.decode(header));
+  }
+
+  @Override
+  public <T> StreamDecoder<T> createStreamDecoder(final Type type) {
+    return new ChunkedStreamDecoder<T>() {
+      // how much of the current element was already searched for its new line, relative to its start
+      private int scanned;
+
+      @Override
+      protected boolean decodeElement(final ByteBuf buffer, final List<T> elements) throws IOException {
+        final int start = buffer.readerIndex();
+        final int end = buffer.indexOf(start + scanned, buffer.writerIndex(), (byte) '\n');
+        if (end < 0) {
+          scanned = buffer.writerIndex() - start;
+          return false;
+        }
+
+        scanned = 0;
+
+        if (end == start) {
+          // on empty body the object mapper throws "JsonMappingException: No content to map due to end-of-input"
+          elements.add(null);
+        } else {
+          elements.add(marshallingStrategy.readValue(type, buffer.slice(start, end - start)));
+        }
+
+        buffer.readerIndex(end);
+        return true;
+      }
+    };
   }
 
   private Object[] parseURLRequestParams(final Request request,
@@ -271,13 +304,42 @@ public class JsonRequestMarshaller implements RequestMarshaller {
     return typeFactory.constructType(type);
   }
 
+  private static boolean headerEquals(final ByteBuffer buffer, final byte[] header) {
+    final int position = buffer.position();
+    for (int i = 0; i < header.length; i++) {
+      if (buffer.get(position + i) != header[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
   private boolean isBodyEmpty(final Request request) {
     return request.getContentLength() == 0;
   }
 
+  /**
+   * @return a new marshaller that registers the given modules on top of this one's, leaving this one as is.
+   */
+  public JsonRequestMarshaller copyWithModules(Module ... modules) {
+    final List<Module> combined = new ArrayList<>(this.modules);
+    combined.addAll(Arrays.asList(modules));
+    return new JsonRequestMarshaller(combined.toArray(new Module[combined.size()]));
+  }
+
+  /**
+   * registers the modules on this marshaller's mapper.
+   * readers are created from the mapper once per type and cached, so types already unmarshalled don't see the modules.
+   *
+   * @deprecated changes a marshaller that may already be in use, pass the modules to the constructor
+   * or use {@link #copyWithModules(Module...)} instead.
+   */
+  @Deprecated
   public JsonRequestMarshaller withModules(Module ... modules) {
     for (Module module : modules) {
       mapper.registerModule(module);
+      this.modules.add(module);
     }
     return this;
   }
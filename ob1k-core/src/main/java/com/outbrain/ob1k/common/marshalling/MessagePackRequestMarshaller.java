@@ -5,8 +5,9 @@ import com.outbrain.ob1k.Request;
 import com.outbrain.ob1k.http.Response;
 import com.outbrain.ob1k.http.common.ContentType;
 import com.outbrain.ob1k.http.marshalling.MessagePackMarshallingStrategy;
-import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
+import com.outbrain.ob1k.http.marshalling.StreamDecoder;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.*;
 import io.netty.util.CharsetUtil;
@@ -18,6 +19,7 @@ import org.msgpack.template.builder.BuildContext;
 import org.msgpack.template.builder.TemplateBuildException;
 import org.msgpack.type.Value;
 import org.msgpack.unpacker.Converter;
+import org.msgpack.unpacker.Unpacker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,7 +61,7 @@ public class MessagePackRequestMarshaller implements RequestMarshaller {
   private static final byte[] HTML_NEW_LINE = "<br/>\n".getBytes(CharsetUtil.UTF_8);
   private static final byte[] HEADER = ChunkHeader.ELEMENT_HEADER.getBytes(CharsetUtil.UTF_8);
 
-  private final MarshallingStrategy msgPackMarshallingStrategy;
+  private final MessagePackMarshallingStrategy msgPackMarshallingStrategy;
   private final MessagePack msgPack;
 
   public MessagePackRequestMarshaller() {
@@ -261,10 +263,7 @@ public class MessagePackRequestMarshaller implements RequestMarshaller {
         return null;
       }
 
-      final Value value = msgPack.read(byteBufferBody);
-      @SuppressWarnings("unchecked")
-      final Template<T> template = (Template<T>) msgPack.lookup(type);
-      return template.read(new Converter(msgPack, value), null);
+      return msgPackMarshallingStrategy.readValue(type, byteBufferBody);
 
     } else if (Arrays.equals(ChunkHeader.ERROR_HEADER.getBytes(CharsetUtil.UTF_8), header)) {
 
@@ -276,6 +275,30 @@ public class MessagePackRequestMarshaller implements RequestMarshaller {
     throw new IOException("invalid chunk header - unsupported " + new String(header, CharsetUtil.UTF_8));
   }
 
+  @Override
+  public <T> StreamDecoder<T> createStreamDecoder(final Type type) {
+    @SuppressWarnings("unchecked")
+    final Template<T> template = (Template<T>) msgPack.lookup(type);
+
+    return new ChunkedStreamDecoder<T>() {
+      private final MessagePackValueScanner scanner = new MessagePackValueScanner();
+
+      @Override
+      protected boolean decodeElement(final ByteBuf buffer, final List<T> elements) throws IOException {
+        // the element is parsed once all of it was received, instead of again with every part
+        final int length = scanner.scan(buffer);
+        if (length < 0) {
+          return false;
+        }
+
+        final Unpacker unpacker = msgPack.createUnpacker(new ByteBufInputStream(buffer.slice(buffer.readerIndex(), length)));
+        elements.add(template.read(unpacker, null));
+        buffer.skipBytes(length);
+        return true;
+      }
+    };
+  }
+
   private void registerBean(final Set<Class> processed, final Class cls) {
     if (cls == Request.class || cls == HttpRequest.class || cls == HttpResponse.class)
       return;
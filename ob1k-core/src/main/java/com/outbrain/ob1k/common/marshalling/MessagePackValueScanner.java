@@ -0,0 +1,101 @@
+package com.outbrain.ob1k.common.marshalling;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+/**
+ * Finds the end of a msgpack value that may arrive split across many stream parts.
+ *
+ * msgpack values are not delimited, so the only way to find where one ends is to walk its headers.
+ * The scanner keeps its position between calls, so every header is read once no matter how many parts
+ * the value is split into, and the value itself is parsed only once all of it was received.
+ */
+final class MessagePackValueScanner {
+
+  // the offset of the next header, relative to the start of the value, may pass the received bytes while skipping a payload
+  private long scanned;
+  // the values left to walk, the value itself and the elements of the arrays and maps already walked
+  private long pendingValues = 1;
+
+  /**
+   * @param buffer holds the value, or a prefix of it, from its reader index on.
+   *               the start of the value must stay at the reader index between calls.
+   * @return the length of the value, or -1 if the buffer doesn't hold all of it yet.
+   * @throws IOException if the buffer doesn't hold a msgpack value
+   */
+  int scan(final ByteBuf buffer) throws IOException {
+    final int start = buffer.readerIndex();
+    final long available = buffer.readableBytes();
+
+    while (pendingValues > 0) {
+      if (scanned >= available) {
+        return -1;
+      }
+
+      final int type = buffer.getUnsignedByte(start + (int) scanned);
+      final int headerLength = headerLength(type);
+      if (scanned + headerLength > available) {
+        return -1;
+      }
+
+      final int lengthIndex = start + (int) scanned + 1;
+      pendingValues--;
+      scanned += headerLength;
+      if (type <= 0x7f || type >= 0xe0) {
+        continue;
+      }
+
+      switch (type >> 4) {
+        case 0x8: pendingValues += 2 * (type & 0x0f); continue;
+        case 0x9: pendingValues += type & 0x0f; continue;
+        case 0xa:
+        case 0xb: scanned += type & 0x1f; continue;
+      }
+
+      switch (type) {
+        case 0xc4: case 0xc7: case 0xd9: scanned += buffer.getUnsignedByte(lengthIndex); break;
+        case 0xc5: case 0xc8: case 0xda: scanned += buffer.getUnsignedShort(lengthIndex); break;
+        case 0xc6: case 0xc9: case 0xdb: scanned += buffer.getUnsignedInt(lengthIndex); break;
+        case 0xdc: pendingValues += buffer.getUnsignedShort(lengthIndex); break;
+        case 0xdd: pendingValues += buffer.getUnsignedInt(lengthIndex); break;
+        case 0xde: pendingValues += 2L * buffer.getUnsignedShort(lengthIndex); break;
+        case 0xdf: pendingValues += 2L * buffer.getUnsignedInt(lengthIndex); break;
+      }
+    }
+
+    if (scanned > available) {
+      return -1;
+    }
+
+    final int length = (int) scanned;
+    scanned = 0;
+    pendingValues = 1;
+    return length;
+  }
+
+  /**
+   * @return the length of the type byte and the fields that follow it, up to the payload or the elements.
+   */
+  private static int headerLength(final int type) throws IOException {
+    if (type <= 0xbf || type >= 0xe0) {
+      // fixint, fixmap, fixarray and fixraw
+      return 1;
+    }
+
+    switch (type) {
+      case 0xc0: case 0xc2: case 0xc3: return 1;
+      case 0xc4: case 0xcc: case 0xd0: case 0xd9: return 2;
+      case 0xc5: case 0xcd: case 0xd1: case 0xda: case 0xdc: case 0xde: return 3;
+      case 0xc7: case 0xd4: return 3;
+      case 0xc8: case 0xd5: return 4;
+      case 0xc6: case 0xca: case 0xce: case 0xd2: case 0xdb: case 0xdd: case 0xdf: return 5;
+      case 0xc9: case 0xd6: return 6;
+      case 0xcb: case 0xcf: case 0xd3: return 9;
+      case 0xd7: return 10;
+      case 0xd8: return 18;
+      default:
+        throw new IOException("bad stream response - invalid msgpack type 0x" + Integer.toHexString(type));
+    }
+  }
+}
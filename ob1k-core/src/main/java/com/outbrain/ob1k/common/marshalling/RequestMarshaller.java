@@ -2,6 +2,7 @@ package com.outbrain.ob1k.common.marshalling;
 
 import com.outbrain.ob1k.Request;
 import com.outbrain.ob1k.http.Response;
+import com.outbrain.ob1k.http.marshalling.StreamDecoder;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpResponse;
@@ -26,4 +27,12 @@ public interface RequestMarshaller {
   byte[] marshallRequestParams(Object[] requestParams) throws IOException;
   <T> T unmarshallResponse(Response response, Type type) throws IOException;
   <T> T unmarshallStreamResponse(Response response, Type type) throws IOException;
+
+  /**
+   * @return an incremental decoder of a whole stream response, or null if each received body part
+   * should be unmarshalled as a single element by {@link #unmarshallStreamResponse(Response, Type)}
+   */
+  default <T> StreamDecoder<T> createStreamDecoder(final Type type) {
+    return null;
+  }
 }
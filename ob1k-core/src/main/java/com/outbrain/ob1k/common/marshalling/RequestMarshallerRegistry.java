@@ -71,7 +71,7 @@ public class RequestMarshallerRegistry {
     }
 
     public Builder withJsonModules(final Module... modules) {
-      marshallers.put(JSON.requestEncoding(), new JsonRequestMarshaller().withModules(modules));
+      marshallers.put(JSON.requestEncoding(), new JsonRequestMarshaller(modules));
       return this;
     }
 
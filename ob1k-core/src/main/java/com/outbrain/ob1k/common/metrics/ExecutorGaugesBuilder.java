@@ -0,0 +1,21 @@
+package com.outbrain.ob1k.common.metrics;
+
+import com.outbrain.ob1k.concurrent.InstrumentedExecutorService;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+
+/**
+ * register gauges on the saturation of an executor: its queue size, the time tasks wait in its queue and its active threads.
+ */
+public class ExecutorGaugesBuilder {
+  public static void registerExecutorGauges(final MetricFactory factory, final InstrumentedExecutorService executor,
+                                            final String componentName) {
+    if (factory == null || executor == null) {
+      return;
+    }
+
+    final String component = "Executor-" + componentName;
+    factory.registerGauge(component, "queueSize", executor::getQueueSize);
+    factory.registerGauge(component, "queueWaitTimeMs", executor::getAverageQueueWaitMs);
+    factory.registerGauge(component, "activeThreads", executor::getActiveCount);
+  }
+}
@@ -0,0 +1,22 @@
+package com.outbrain.ob1k.common.metrics;
+
+import com.outbrain.ob1k.concurrent.RateLimiter;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+
+/**
+ * register gauges on a rate limiter: the permits it handed out, the requests it delayed or rejected and its current wait.
+ */
+public class RateLimiterGaugesBuilder {
+  public static void registerRateLimiterGauges(final MetricFactory factory, final RateLimiter limiter,
+                                               final String componentName) {
+    if (factory == null || limiter == null) {
+      return;
+    }
+
+    final String component = "RateLimiter-" + componentName;
+    factory.registerGauge(component, "acquired", limiter::getAcquiredCount);
+    factory.registerGauge(component, "delayed", limiter::getDelayedCount);
+    factory.registerGauge(component, "rejected", limiter::getRejectedCount);
+    factory.registerGauge(component, "currentWaitMs", limiter::getCurrentWaitMs);
+  }
+}
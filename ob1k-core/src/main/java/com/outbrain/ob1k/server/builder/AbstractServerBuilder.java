@@ -9,10 +9,12 @@ import com.outbrain.ob1k.common.marshalling.RequestMarshaller;
 import com.outbrain.ob1k.common.marshalling.RequestMarshallerRegistry;
 import com.outbrain.ob1k.server.Server;
 import com.outbrain.ob1k.server.StaticPathResolver;
+import com.outbrain.ob1k.server.cache.ResponseCacheConfig;
 import com.outbrain.ob1k.server.cors.CorsConfig;
 import com.outbrain.ob1k.server.netty.NettyServer;
 import com.outbrain.ob1k.server.registry.ServiceRegistry;
 import com.outbrain.ob1k.server.registry.ServiceRegistryView;
+import com.outbrain.ob1k.server.timing.RequestTimingConfig;
 import com.outbrain.swinfra.metrics.api.MetricFactory;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
@@ -56,6 +58,8 @@ public abstract class AbstractServerBuilder {
   private boolean supportZip = true;
   private int maxContentLength = DEFAULT_MAX_CONTENT_LENGTH;
   private long requestTimeoutMs = -1;
+  private boolean resumeOnEventLoop = false;
+  private RequestTimingConfig requestTimingConfig = RequestTimingConfig.disabled();
   private long idleTimeoutMs = 60_000;
   private int threadPoolMinSize;
   private int threadPoolMaxSize;
@@ -79,7 +83,7 @@ public abstract class AbstractServerBuilder {
     final StaticPathResolver staticResolver = new StaticPathResolver(contextPath, staticFolders, staticMappings, staticResources);
 
     final NettyServer server = new NettyServer(port, registry, staticResolver,  activeChannels, contextPath,
-            appName, acceptKeepAlive, idleTimeoutMs, supportZip, metricFactory, maxContentLength, requestTimeoutMs, corsConfig);
+            appName, acceptKeepAlive, idleTimeoutMs, supportZip, metricFactory, maxContentLength, requestTimeoutMs, corsConfig, resumeOnEventLoop, requestTimingConfig);
     server.addListeners(listeners);
     return server;
   }
@@ -143,6 +147,16 @@ public abstract class AbstractServerBuilder {
       requestTimeoutMs = requestTimeoutMsToUse;
     }
 
+    @Override
+    public void setResumeOnEventLoop(final boolean resumeOnEventLoopToUse) {
+      resumeOnEventLoop = resumeOnEventLoopToUse;
+    }
+
+    @Override
+    public void setRequestTiming(final RequestTimingConfig requestTimingConfigToUse) {
+      requestTimingConfig = requestTimingConfigToUse;
+    }
+
     @Override
     public void setThreadPoolMinSize(final int threadPoolMinSizeToUse) {
       threadPoolMinSize = threadPoolMinSizeToUse;
@@ -257,6 +271,19 @@ public abstract class AbstractServerBuilder {
       }
 
       endpointDescriptors.put(methodType, new ServiceRegistry.EndpointDescriptor(method, Arrays.asList(filters), methodType));
+      descriptor.setLastEndpoint(endpointDescriptors, methodType);
+    }
+
+    @Override
+    public void setResponseCacheToLastEndpoint(final ResponseCacheConfig responseCacheConfig) {
+      final ServiceDescriptor descriptor = serviceDescriptors.getLast();
+      if (descriptor.lastEndpointDescriptors == null) {
+        throw new IllegalStateException("Responses can only be cached after binding an endpoint");
+      }
+
+      final ServiceRegistry.EndpointDescriptor endpoint = descriptor.lastEndpointDescriptors.get(descriptor.lastEndpointMethodType);
+      descriptor.lastEndpointDescriptors.put(descriptor.lastEndpointMethodType,
+        new ServiceRegistry.EndpointDescriptor(endpoint.method, endpoint.filters, endpoint.requestMethodType, responseCacheConfig));
     }
 
     @Override
@@ -309,6 +336,16 @@ public abstract class AbstractServerBuilder {
       return requestTimeoutMs;
     }
 
+    @Override
+    public boolean isResumeOnEventLoop() {
+      return resumeOnEventLoop;
+    }
+
+    @Override
+    public RequestTimingConfig getRequestTiming() {
+      return requestTimingConfig;
+    }
+
     @Override
     public long getIdleTimeoutMs() {
       return idleTimeoutMs;
@@ -371,6 +408,8 @@ public abstract class AbstractServerBuilder {
     private final List<AsyncFilter> asyncFilters;
     private final List<StreamFilter> streamFilters;
     private Map<String, Map<HttpRequestMethodType, ServiceRegistry.EndpointDescriptor>> endpointBinding;
+    private Map<HttpRequestMethodType, ServiceRegistry.EndpointDescriptor> lastEndpointDescriptors;
+    private HttpRequestMethodType lastEndpointMethodType;
     private boolean bindPrefix;
 
     private ServiceDescriptor(final String name, final Service service, final List<AsyncFilter> asyncFilters,
@@ -393,6 +432,12 @@ public abstract class AbstractServerBuilder {
       this.endpointBinding = endpointBinding;
     }
 
+    public void setLastEndpoint(final Map<HttpRequestMethodType, ServiceRegistry.EndpointDescriptor> endpointDescriptors,
+                                final HttpRequestMethodType methodType) {
+      this.lastEndpointDescriptors = endpointDescriptors;
+      this.lastEndpointMethodType = methodType;
+    }
+
     public void addFilters(final ServiceFilter... filters) {
       sortFiltersTo(asyncFilters, streamFilters, filters);
     }
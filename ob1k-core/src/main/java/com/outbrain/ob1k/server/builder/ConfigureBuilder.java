@@ -5,6 +5,7 @@ import com.outbrain.ob1k.common.marshalling.RequestMarshallerRegistry;
 import com.outbrain.ob1k.http.common.ContentType;
 import com.outbrain.ob1k.server.Server;
 import com.outbrain.ob1k.server.cors.CorsConfig;
+import com.outbrain.ob1k.server.timing.RequestTimingConfig;
 import com.outbrain.swinfra.metrics.api.MetricFactory;
 
 import java.util.Map;
@@ -52,6 +53,19 @@ public class ConfigureBuilder<B extends ConfigureBuilder<B>> {
     return self();
   }
 
+  /**
+   * resumes the continuations of a request's futures on the event loop of its channel,
+   * instead of hopping to the default executor and back to the event loop for the response.
+   *
+   * saves the context switches of cheap continuations, but expensive ones hold up all the channels of the event loop.
+   * a service must never block on such a future (e.g. by calling get()) while handling a request,
+   * as the future can only complete on the event loop that waits for it, which deadlocks.
+   */
+  public B resumeOnEventLoop(final boolean resumeOnEventLoop) {
+    state.setResumeOnEventLoop(resumeOnEventLoop);
+    return self();
+  }
+
   public B idleTimeout(final long timeout, final TimeUnit unit) {
     state.setIdleTimeoutMs(unit.toMillis(timeout));
     return self();
@@ -93,6 +107,11 @@ public class ConfigureBuilder<B extends ConfigureBuilder<B>> {
     return self();
   }
 
+  public B withRequestTiming(final RequestTimingConfig requestTimingConfig) {
+    state.setRequestTiming(requestTimingConfig);
+    return self();
+  }
+
   @SuppressWarnings("unchecked")
   private B self() {
     return (B) this;
@@ -7,8 +7,10 @@ import com.outbrain.ob1k.common.marshalling.RequestMarshaller;
 import com.outbrain.ob1k.common.marshalling.RequestMarshallerRegistry;
 import com.outbrain.ob1k.http.common.ContentType;
 import com.outbrain.ob1k.server.Server;
+import com.outbrain.ob1k.server.cache.ResponseCacheConfig;
 import com.outbrain.ob1k.server.cors.CorsConfig;
 import com.outbrain.ob1k.server.registry.ServiceRegistryView;
+import com.outbrain.ob1k.server.timing.RequestTimingConfig;
 import com.outbrain.swinfra.metrics.api.MetricFactory;
 
 import java.util.List;
@@ -38,6 +40,10 @@ public interface ServerBuilderState {
 
   void setRequestTimeoutMs(long requestTimeoutMs);
 
+  void setResumeOnEventLoop(boolean resumeOnEventLoop);
+
+  void setRequestTiming(RequestTimingConfig requestTimingConfig);
+
   void setThreadPoolMinSize(int threadPoolMinSize);
 
   void setThreadPoolMaxSize(int threadPoolMaxSize);
@@ -62,6 +68,8 @@ public interface ServerBuilderState {
 
   void setEndpointBinding(HttpRequestMethodType methodType, String methodName, String path, ServiceFilter[] filters);
 
+  void setResponseCacheToLastEndpoint(ResponseCacheConfig responseCacheConfig);
+
   void setMarshallerRegistry(RequestMarshallerRegistry marshallers);
 
   void setCors(CorsConfig corsConfig);
@@ -84,6 +92,10 @@ public interface ServerBuilderState {
 
   long getRequestTimeoutMs();
 
+  boolean isResumeOnEventLoop();
+
+  RequestTimingConfig getRequestTiming();
+
   long getIdleTimeoutMs();
 
   int getThreadPoolMinSize();
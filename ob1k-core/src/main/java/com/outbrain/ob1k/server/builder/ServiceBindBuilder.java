@@ -2,6 +2,7 @@ package com.outbrain.ob1k.server.builder;
 
 import com.outbrain.ob1k.HttpRequestMethodType;
 import com.outbrain.ob1k.common.filters.ServiceFilter;
+import com.outbrain.ob1k.server.cache.ResponseCacheConfig;
 /**
  * portion of the ServerBuilder methods used for binding endpoints of a specific registered service.
  *
@@ -39,6 +40,19 @@ public class ServiceBindBuilder<B extends ServiceBindBuilder<B>> {
     return self();
   }
 
+  /**
+   * caches the marshalled responses of the last bound endpoint, answering requests for the same
+   * arguments without calling it, and requests for a response the client already has with a 304.
+   * cached responses would skip the endpoint's filters too, so endpoints with filters, of their own
+   * or of their service, can't cache their responses.
+   * only the responses of GET requests are cached: endpoints bound to other methods can't cache their
+   * responses, and endpoints bound to any method call the service for requests other than GET.
+   */
+  public B cacheResponses(final ResponseCacheConfig responseCacheConfig) {
+    state.setResponseCacheToLastEndpoint(responseCacheConfig);
+    return self();
+  }
+
   @SuppressWarnings("unchecked")
   protected B self() {
     return (B) this;
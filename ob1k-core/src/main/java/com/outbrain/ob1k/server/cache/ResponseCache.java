@@ -0,0 +1,126 @@
+package com.outbrain.ob1k.server.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.outbrain.ob1k.Request;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the marshalled responses of a single endpoint to GET requests, keyed by the request's method, uri, content type
+ * and a hash of its body, i.e. by the marshalled arguments of the call and the encoding of its response.
+ *
+ * every response is kept with a strong entity tag, a hash of its bytes, so requests whose If-None-Match
+ * header holds the tag of the current response can be answered with a 304 and no body.
+ * being a hash of the bytes, the tag of a response stays the same across expirations and servers.
+ */
+public final class ResponseCache {
+
+  private static final HashFunction HASH = Hashing.murmur3_128();
+
+  private final Cache<String, CachedResponse> responses;
+
+  public ResponseCache(final ResponseCacheConfig config) {
+    this.responses = CacheBuilder.newBuilder().
+      maximumWeight(config.getMaximumBytes()).
+      <String, CachedResponse>weigher((key, response) -> key.length() + response.body.length).
+      expireAfterWrite(config.getTtlMs(), TimeUnit.MILLISECONDS).
+      build();
+  }
+
+  /**
+   * @return the key of the request's response, the body of the request is read without being consumed.
+   */
+  public static String keyOf(final Request request) throws IOException {
+    final Hasher body = HASH.newHasher();
+    try (final InputStream input = request.getRequestInputStream()) {
+      ByteStreams.copy(input, Funnels.asOutputStream(body));
+    }
+
+    // the key keeps only a hash of the body, so large requests don't take up the cache
+    return request.getMethod() + " " + request.getUri() + '\n' + request.getContentType() + '\n' + body.hash();
+  }
+
+  /**
+   * @return the cached response, or null if there's none.
+   */
+  public CachedResponse get(final String key) {
+    return responses.getIfPresent(key);
+  }
+
+  /**
+   * caches the marshalled response.
+   *
+   * @return the cached response, carrying its entity tag.
+   */
+  public CachedResponse put(final String key, final byte[] body, final String contentType) {
+    final CachedResponse response = new CachedResponse(body, contentType);
+    responses.put(key, response);
+    return response;
+  }
+
+  public long size() {
+    return responses.size();
+  }
+
+  public static final class CachedResponse {
+    private final byte[] body;
+    private final String contentType;
+    private final String etag;
+
+    private CachedResponse(final byte[] body, final String contentType) {
+      this.body = body;
+      this.contentType = contentType;
+      this.etag = '"' + HASH.hashBytes(body).toString() + '"';
+    }
+
+    /**
+     * @return the marshalled response, shared by all the requests it is served to and must not be modified.
+     */
+    public byte[] getBody() {
+      return body;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public String getETag() {
+      return etag;
+    }
+
+    /**
+     * @param ifNoneMatch the If-None-Match header of a request, may be null.
+     * @return true if the header holds the tag of this response, and the client's copy is up to date.
+     */
+    public boolean matches(final String ifNoneMatch) {
+      if (ifNoneMatch == null) {
+        return false;
+      }
+
+      for (final String candidate : ifNoneMatch.split(",")) {
+        String tag = candidate.trim();
+        if (tag.equals("*")) {
+          return true;
+        }
+
+        // If-None-Match compares the tags weakly
+        if (tag.startsWith("W/")) {
+          tag = tag.substring(2);
+        }
+        if (tag.equals(etag)) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.outbrain.ob1k.server.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * configures the cache of an endpoint's marshalled responses, see {@link ResponseCache}.
+ *
+ * responses are kept for a fixed ttl, as nothing tells the server when the result of a call changes,
+ * so only endpoints whose results may be that stale should cache them.
+ */
+public final class ResponseCacheConfig {
+
+  private final long ttlMs;
+  private final long maximumBytes;
+
+  private ResponseCacheConfig(final Builder builder) {
+    ttlMs = builder.ttlMs;
+    maximumBytes = builder.maximumBytes;
+  }
+
+  public long getTtlMs() {
+    return ttlMs;
+  }
+
+  /**
+   * @return the total size of the responses, and their keys, kept by the cache.
+   */
+  public long getMaximumBytes() {
+    return maximumBytes;
+  }
+
+  public static class Builder {
+    private final long ttlMs;
+    private long maximumBytes = 16 * 1024 * 1024;
+
+    /**
+     * @param ttl how long a response is served from the cache before the endpoint is called again.
+     */
+    public Builder(final long ttl, final TimeUnit unit) {
+      checkArgument(ttl > 0, "ttl must be positive");
+      ttlMs = unit.toMillis(ttl);
+    }
+
+    public Builder maximumBytes(final long maximumBytes) {
+      checkArgument(maximumBytes > 0, "maximumBytes must be positive");
+      this.maximumBytes = maximumBytes;
+      return this;
+    }
+
+    public ResponseCacheConfig build() {
+      return new ResponseCacheConfig(this);
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package com.outbrain.ob1k.server.filters;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.outbrain.ob1k.common.filters.AsyncFilter;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.RateLimitExceededException;
+import com.outbrain.ob1k.concurrent.RateLimiter;
+import com.outbrain.ob1k.server.ctx.AsyncServerRequestContext;
+import com.outbrain.swinfra.metrics.api.Counter;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * gives each caller its own quota, identifying callers by the value of a request header.
+ * requests without the header share a single quota.
+ *
+ * requests over the quota are delayed, and rejected with 429 (too many requests)
+ * once they would wait longer than the max wait.
+ *
+ * the header is set by the callers and may take any number of values, so the tracked callers are kept
+ * in a cache capped at 10000 callers, evicting the least recently seen ones first.
+ * a caller idle long enough to have its whole burst back is simply forgotten, and an evicted one starts over
+ * with a full burst, so the cap must stay well above the number of callers expected at once.
+ */
+public class CallerRateLimitFilter<T> implements AsyncFilter<T, AsyncServerRequestContext> {
+  private static final int MAX_TRACKED_CALLERS = 10000;
+  private static final long MIN_IDLE_EXPIRY_MS = TimeUnit.MINUTES.toMillis(1);
+
+  private final String headerName;
+  private final LoadingCache<String, RateLimiter> limiters;
+  private final Counter rejected;
+
+  public CallerRateLimitFilter(final String headerName, final double permitsPerSecond, final int burst,
+                               final long maxWait, final TimeUnit unit, final MetricFactory metricFactory) {
+    Preconditions.checkArgument(permitsPerSecond > 0, "permitsPerSecond must be positive");
+    Preconditions.checkArgument(burst > 0, "burst must be positive");
+    this.headerName = Preconditions.checkNotNull(headerName, "headerName must not be null");
+
+    final long maxWaitMs = unit.toMillis(maxWait);
+    final long refillMs = (long) (TimeUnit.SECONDS.toMillis(burst) / permitsPerSecond) + maxWaitMs;
+    this.limiters = CacheBuilder.newBuilder().
+      maximumSize(MAX_TRACKED_CALLERS).
+      expireAfterAccess(Math.max(refillMs, MIN_IDLE_EXPIRY_MS), TimeUnit.MILLISECONDS).
+      build(CacheLoader.from(caller -> new RateLimiter(permitsPerSecond, burst, maxWaitMs, TimeUnit.MILLISECONDS)));
+
+    if (metricFactory != null) {
+      final String component = "CallerRateLimitFilter-" + headerName;
+      this.rejected = metricFactory.createCounter(component, "rejected");
+      metricFactory.registerGauge(component, "trackedCallers", limiters::size);
+    } else {
+      this.rejected = null;
+    }
+  }
+
+  @Override
+  public ComposableFuture<T> handleAsync(final AsyncServerRequestContext ctx) {
+    final String caller = ctx.getRequest().getHeader(headerName);
+    final ComposableFuture<Void> permit = limiters.getUnchecked(caller == null ? "" : caller).acquire();
+    if (rejected != null) {
+      permit.consume(result -> {
+        if (result.getError() instanceof RateLimitExceededException) {
+          rejected.inc();
+        }
+      });
+    }
+
+    return permit.flatMap(ignore -> ctx.<T>invokeAsync());
+  }
+}
@@ -0,0 +1,57 @@
+package com.outbrain.ob1k.server.filters;
+
+import com.google.common.base.Preconditions;
+import com.outbrain.ob1k.AsyncRequestContext;
+import com.outbrain.ob1k.RequestContext;
+import com.outbrain.ob1k.common.filters.AsyncFilter;
+import com.outbrain.ob1k.common.metrics.RateLimiterGaugesBuilder;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.RateLimiter;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * gives each endpoint its own quota, with a rate limiter per endpoint.
+ *
+ * requests over the quota are delayed, and rejected with 429 (too many requests)
+ * once they would wait longer than the max wait.
+ */
+public class EndpointRateLimitFilter<T> implements AsyncFilter<T, AsyncRequestContext> {
+  private final ConcurrentMap<String, RateLimiter> limiters = new ConcurrentHashMap<>();
+  private final MetricFactory metricFactory;
+  private final double permitsPerSecond;
+  private final int burst;
+  private final long maxWaitMs;
+
+  public EndpointRateLimitFilter(final double permitsPerSecond, final int burst, final long maxWait,
+                                 final TimeUnit unit, final MetricFactory metricFactory) {
+    Preconditions.checkArgument(permitsPerSecond > 0, "permitsPerSecond must be positive");
+    Preconditions.checkArgument(burst > 0, "burst must be positive");
+    this.permitsPerSecond = permitsPerSecond;
+    this.burst = burst;
+    this.maxWaitMs = unit.toMillis(maxWait);
+    this.metricFactory = metricFactory;
+  }
+
+  @Override
+  public ComposableFuture<T> handleAsync(final AsyncRequestContext ctx) {
+    return getLimiter(ctx).acquire().flatMap(permit -> ctx.<T>invokeAsync());
+  }
+
+  private RateLimiter getLimiter(final RequestContext ctx) {
+    final String endpoint = ctx.getServiceClassName() + "." + ctx.getServiceMethodName();
+    final RateLimiter limiter = limiters.get(endpoint);
+    if (limiter != null) {
+      return limiter;
+    }
+
+    return limiters.computeIfAbsent(endpoint, key -> {
+      final RateLimiter newLimiter = new RateLimiter(permitsPerSecond, burst, maxWaitMs, TimeUnit.MILLISECONDS);
+      RateLimiterGaugesBuilder.registerRateLimiterGauges(metricFactory, newLimiter, key);
+      return newLimiter;
+    });
+  }
+}
@@ -0,0 +1,34 @@
+package com.outbrain.ob1k.server.netty;
+
+import com.outbrain.ob1k.concurrent.ExecutionAffinity;
+import io.netty.channel.EventLoop;
+
+import java.util.concurrent.Executor;
+
+/**
+ * runs the continuations of a channel's requests on the channel's event loop.
+ *
+ * tasks submitted from the event loop itself run right away,
+ * and every task runs with this executor bound, so continuations they start resume on the event loop as well.
+ */
+final class EventLoopAffineExecutor implements Executor {
+  private final EventLoop eventLoop;
+
+  EventLoopAffineExecutor(final EventLoop eventLoop) {
+    this.eventLoop = eventLoop;
+  }
+
+  @Override
+  public void execute(final Runnable task) {
+    if (eventLoop.inEventLoop()) {
+      ExecutionAffinity.run(this, task);
+    } else {
+      eventLoop.execute(() -> ExecutionAffinity.run(this, task));
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "EventLoopAffineExecutor(" + eventLoop + ")";
+  }
+}
@@ -5,9 +5,14 @@ import com.outbrain.ob1k.common.marshalling.RequestMarshaller;
 import com.outbrain.ob1k.common.marshalling.RequestMarshallerRegistry;
 import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.ExecutionAffinity;
+import com.outbrain.ob1k.concurrent.RateLimitExceededException;
 import com.outbrain.ob1k.concurrent.Try;
 import com.outbrain.ob1k.server.ResponseHandler;
 import com.outbrain.ob1k.server.StaticPathResolver;
+import com.outbrain.ob1k.server.timing.RequestPhase;
+import com.outbrain.ob1k.server.timing.RequestTimeline;
+import com.outbrain.ob1k.server.timing.RequestTimingRecorder;
 import com.outbrain.swinfra.metrics.api.Counter;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
@@ -35,6 +40,7 @@ import rx.Subscriber;
 import rx.Subscription;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import static com.outbrain.ob1k.http.common.ContentType.JSON;
@@ -47,6 +53,7 @@ import static io.netty.handler.codec.http.HttpHeaders.is100ContinueExpected;
 import static io.netty.handler.codec.http.HttpHeaders.isKeepAlive;
 import static io.netty.handler.codec.http.HttpResponseStatus.CONTINUE;
 import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_MODIFIED;
 import static io.netty.handler.codec.http.HttpResponseStatus.OK;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
@@ -73,9 +80,16 @@ public class HttpRequestDispatcherHandler extends SimpleChannelInboundHandler<Ob
   private final Counter unexpectedErrors;
   private final Counter ioErrors;
   private final long requestTimeoutMs;
+  private final boolean resumeOnEventLoop;
+  private final RequestTimingRecorder timingRecorder;
 
   private io.netty.handler.codec.http.HttpRequest request;
   private Subscription subscription;
+  // the response being computed, cancelled if the client goes away before it's ready
+  private volatile ComposableFuture<Object> pendingResponse;
+  private Executor eventLoopExecutor;
+  private long requestStartNanos;
+  private volatile RequestTimeline timeline;
 
   HttpRequestDispatcherHandler(final String contextPath,
                                final ServiceDispatcher dispatcher,
@@ -84,6 +98,8 @@ public class HttpRequestDispatcherHandler extends SimpleChannelInboundHandler<Ob
                                final ChannelGroup activeChannels,
                                final boolean acceptKeepAlive,
                                final long requestTimeoutMs,
+                               final boolean resumeOnEventLoop,
+                               final RequestTimingRecorder timingRecorder,
                                final Counter internalErrors,
                                final Counter requestTimeoutErrors,
                                final Counter notFoundErrors,
@@ -98,6 +114,8 @@ public class HttpRequestDispatcherHandler extends SimpleChannelInboundHandler<Ob
     this.activeChannels = activeChannels;
     this.acceptKeepAlive = acceptKeepAlive;
     this.requestTimeoutMs = requestTimeoutMs;
+    this.resumeOnEventLoop = resumeOnEventLoop;
+    this.timingRecorder = timingRecorder;
     this.internalErrors = internalErrors;
     this.requestTimeoutErrors = requestTimeoutErrors;
     this.notFoundErrors = notFoundErrors;
@@ -127,6 +145,10 @@ public class HttpRequestDispatcherHandler extends SimpleChannelInboundHandler<Ob
   protected void channelRead0(final ChannelHandlerContext ctx, final Object msg) throws IOException {
     if (msg instanceof HttpRequest) {
       request = (HttpRequest) msg;
+      timeline = null;
+      if (timingRecorder.isEnabled()) {
+        requestStartNanos = RequestStartTimeHandler.takeStartNanos(ctx.channel());
+      }
 
       // if there's no available marshaller for this request, throw it
       if (getMarshaller() == null) {
@@ -154,9 +176,16 @@ public class HttpRequestDispatcherHandler extends SimpleChannelInboundHandler<Ob
 
     if (msg instanceof LastHttpContent) {
       final HttpContent req = (HttpContent) msg;
+      final RequestTimeline requestTimeline = timingRecorder.newTimeline(requestStartNanos);
+      if (requestTimeline != null) {
+        requestTimeline.end(RequestPhase.AGGREGATION);
+        timeline = requestTimeline;
+      }
 
+      // continuations of the request's futures resume on this channel's event loop
+      final Executor previousExecutor = resumeOnEventLoop ? ExecutionAffinity.bind(getEventLoopExecutor(ctx)) : null;
       try {
-        dispatcher.callServiceRequest(new NettyRequest(request, req, ctx.channel(), contextPath), new ResponseHandler() {
+        dispatcher.callServiceRequest(new NettyRequest(request, req, ctx.channel(), contextPath, requestTimeline), new ResponseHandler() {
           @Override
           public void handleAsyncResponse(final ComposableFuture<Object> response) {
             HttpRequestDispatcherHandler.this.handleAsyncResponse(ctx, response);
@@ -171,11 +200,24 @@ public class HttpRequestDispatcherHandler extends SimpleChannelInboundHandler<Ob
         handleInternalError(error, ctx);
       } catch (final Exception error) {
         handleUnexpectedRequest(error, ctx);
+      } finally {
+        if (resumeOnEventLoop) {
+          ExecutionAffinity.restore(previousExecutor);
+        }
       }
     }
   }
 
+  private Executor getEventLoopExecutor(final ChannelHandlerContext ctx) {
+    if (eventLoopExecutor == null) {
+      eventLoopExecutor = new EventLoopAffineExecutor(ctx.channel().eventLoop());
+    }
+
+    return eventLoopExecutor;
+  }
+
   private void handleAsyncResponse(final ChannelHandlerContext ctx, final ComposableFuture<Object> response) {
+    pendingResponse = response;
     final ComposableFuture<Object> finalResponse;
     if (requestTimeoutMs > 0) {
       final ComposableFuture<Object> timeout = scheduleRequestTimeout(ctx);
@@ -185,13 +227,27 @@ public class HttpRequestDispatcherHandler extends SimpleChannelInboundHandler<Ob
     }
 
     finalResponse.consume(result -> {
+      pendingResponse = null;
+      final RequestTimeline requestTimeline = timeline;
+      if (requestTimeline != null) {
+        requestTimeline.end(RequestPhase.RESPONSE_FILTERS);
+      }
+
       try {
         if (result.isSuccess()) {
           handleOK(result.getValue(), ctx);
         } else {
           final Throwable error = result.getError();
+          if (error instanceof RateLimitExceededException) {
+            // an expected rejection, letting the client back off
+            handleResponse(error.getMessage(), getMarshaller(), HttpResponseStatus.TOO_MANY_REQUESTS, ctx);
+            return;
+          }
+
           if (error instanceof RequestTimeoutException) {
             requestTimeoutErrors.inc();
+            // nobody waits for the response anymore
+            response.cancel(false);
           }
           handleInternalError(error, ctx);
         }
@@ -289,6 +345,11 @@ public class HttpRequestDispatcherHandler extends SimpleChannelInboundHandler<Ob
       subscription.unsubscribe();
     }
 
+    final ComposableFuture<Object> response = pendingResponse;
+    if (response != null) {
+      response.cancel(false);
+    }
+
     super.channelInactive(ctx);
   }
 
@@ -334,19 +395,40 @@ public class HttpRequestDispatcherHandler extends SimpleChannelInboundHandler<Ob
   }
 
   private void handleResponse(final FullHttpResponse response, final ChannelHandlerContext ctx) {
-    response.headers().set(CONTENT_LENGTH, response.content().readableBytes());
+    // a 304 has no body, its length would be the one of the response the client already has
+    if (!NOT_MODIFIED.equals(response.getStatus())) {
+      response.headers().set(CONTENT_LENGTH, response.content().readableBytes());
+    }
 
+    final RequestTimeline requestTimeline = timeline;
+    timeline = null;
+    if (requestTimeline != null) {
+      requestTimeline.end(RequestPhase.MARSHALLING);
+      final String timelineHeader = timingRecorder.getTimelineHeader();
+      if (timelineHeader != null && request.headers().contains(timelineHeader)) {
+        response.headers().set(timelineHeader, requestTimeline.toString());
+      }
+    }
+
+    final ChannelFuture writeFuture;
     final boolean keepAlive = isKeepAlive(request);
     if (acceptKeepAlive && keepAlive) {
       // Add keep alive header as per:
       // - http://www.w3.org/Protocols/HTTP/1.1/draft-ietf-http-v11-spec-01.html#Connection
       response.headers().set(CONNECTION, KEEP_ALIVE);
-      ctx.writeAndFlush(response);
+      writeFuture = ctx.writeAndFlush(response);
     } else {
       response.headers().set(CONNECTION, CLOSE);
-      ctx.writeAndFlush(response).
+      writeFuture = ctx.writeAndFlush(response).
               addListener(ChannelFutureListener.CLOSE);
     }
+
+    if (requestTimeline != null) {
+      writeFuture.addListener(future -> {
+        requestTimeline.end(RequestPhase.WRITE);
+        timingRecorder.record(requestTimeline);
+      });
+    }
   }
 
   private void handleResponse(final Object message,
@@ -2,7 +2,8 @@ package com.outbrain.ob1k.server.netty;
 
 import com.google.common.collect.Maps;
 import com.outbrain.ob1k.HttpRequestMethodType;
-import com.outbrain.ob1k.Request;
+import com.outbrain.ob1k.server.timing.RequestTimeline;
+import com.outbrain.ob1k.server.timing.TimedRequest;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
 import io.netty.channel.Channel;
@@ -29,7 +30,7 @@ import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
  * Date: 6/30/13
  * Time: 12:02 PM
  */
-public class NettyRequest implements Request {
+public class NettyRequest implements TimedRequest {
 
   private final HttpRequest inner;
   private final Channel channel;
@@ -37,6 +38,7 @@ public class NettyRequest implements Request {
   private final HttpContent content;
   private final String contextPath;
   private final Map<String, String> pathParams;
+  private final RequestTimeline timeline;
   private volatile QueryStringDecoder postQueryDecoder;
   private volatile Map<String, Cookie> cookies;
   private volatile String body;
@@ -45,12 +47,26 @@ public class NettyRequest implements Request {
                final HttpContent content,
                final Channel channel,
                final String contextPath) {
+    this(inner, content, channel, contextPath, null);
+  }
+
+  NettyRequest(final HttpRequest inner,
+               final HttpContent content,
+               final Channel channel,
+               final String contextPath,
+               final RequestTimeline timeline) {
     this.inner = inner;
     this.content = content;
     this.channel = channel;
     this.getQueryDecoder = new QueryStringDecoder(inner.getUri());
     this.contextPath = contextPath;
     this.pathParams = new HashMap<>();
+    this.timeline = timeline;
+  }
+
+  @Override
+  public RequestTimeline getTimeline() {
+    return timeline;
   }
 
   @Override
@@ -120,7 +136,8 @@ public class NettyRequest implements Request {
 
   @Override
   public InputStream getRequestInputStream() {
-    return new ByteBufInputStream(content.content());
+    // reading the stream leaves the body in place for other readers
+    return new ByteBufInputStream(content.content().duplicate());
   }
 
   @Override
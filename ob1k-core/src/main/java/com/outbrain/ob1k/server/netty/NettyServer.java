@@ -1,11 +1,15 @@
 package com.outbrain.ob1k.server.netty;
 
 import com.outbrain.ob1k.common.marshalling.RequestMarshallerRegistry;
+import com.outbrain.ob1k.common.metrics.ExecutorGaugesBuilder;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
 import com.outbrain.ob1k.server.Server;
 import com.outbrain.ob1k.server.StaticPathResolver;
 import com.outbrain.ob1k.server.cors.CorsConfig;
 import com.outbrain.ob1k.server.cors.CorsWrapperHandler;
 import com.outbrain.ob1k.server.registry.ServiceRegistry;
+import com.outbrain.ob1k.server.timing.RequestTimingConfig;
+import com.outbrain.ob1k.server.timing.RequestTimingRecorder;
 import com.outbrain.swinfra.metrics.api.Counter;
 import com.outbrain.swinfra.metrics.api.MetricFactory;
 import io.netty.bootstrap.ServerBootstrap;
@@ -66,12 +70,24 @@ public class NettyServer implements Server {
   private final int maxContentLength;
   private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
   private final CorsConfig corsConfig;
+  private final boolean resumeOnEventLoop;
+  private final RequestTimingRecorder timingRecorder;
 
   public NettyServer(final int port, final ServiceRegistry registry,
                      final StaticPathResolver staticResolver,
                      final ChannelGroup activeChannels, final String contextPath, final String applicationName,
                      final boolean acceptKeepAlive, final long idleTimeoutMs, final boolean supportZip, final MetricFactory metricFactory,
                      final int maxContentLength, final long requestTimeoutMs, final CorsConfig corsConfig) {
+    this(port, registry, staticResolver, activeChannels, contextPath, applicationName, acceptKeepAlive, idleTimeoutMs,
+      supportZip, metricFactory, maxContentLength, requestTimeoutMs, corsConfig, false, RequestTimingConfig.disabled());
+  }
+
+  public NettyServer(final int port, final ServiceRegistry registry,
+                     final StaticPathResolver staticResolver,
+                     final ChannelGroup activeChannels, final String contextPath, final String applicationName,
+                     final boolean acceptKeepAlive, final long idleTimeoutMs, final boolean supportZip, final MetricFactory metricFactory,
+                     final int maxContentLength, final long requestTimeoutMs, final CorsConfig corsConfig,
+                     final boolean resumeOnEventLoop, final RequestTimingConfig requestTimingConfig) {
     System.setProperty("com.outbrain.web.context.path", contextPath);
     this.port = port;
     this.staticResolver = staticResolver;
@@ -87,6 +103,8 @@ public class NettyServer implements Server {
     this.requestTimeoutMs = requestTimeoutMs;
     this.idleTimeoutMs = idleTimeoutMs;
     this.corsConfig = corsConfig;
+    this.resumeOnEventLoop = resumeOnEventLoop;
+    this.timingRecorder = new RequestTimingRecorder(requestTimingConfig, metricFactory);
     registry.logRegisteredEndpoints();
     this.internalErrors = metricFactory.createCounter("Ob1kDispatcher", "internalErrors");
     this.requestTimeoutErrors = metricFactory.createCounter("Ob1kDispatcher", "requestTimeoutErrors");
@@ -94,6 +112,7 @@ public class NettyServer implements Server {
     this.unexpectedErrors = metricFactory.createCounter("Ob1kDispatcher", "unexpectedErrors");
     this.ioErrors = metricFactory.createCounter("Ob1kDispatcher", "ioErrors");
     metricFactory.registerGauge("Ob1kDispatcher", "currentConnections", activeChannels::size);
+    ExecutorGaugesBuilder.registerExecutorGauges(metricFactory, ComposableFutures.getInstrumentedExecutor(), "ComposableFutures");
   }
 
   @Override
@@ -161,6 +180,14 @@ public class NettyServer implements Server {
     return applicationName;
   }
 
+  /**
+   * @return the server's io event loop group, which may be shared by in-process http clients
+   * (see {@link com.outbrain.ob1k.http.HttpClient.Builder#setEventLoopGroup(EventLoopGroup)})
+   */
+  public EventLoopGroup getEventLoopGroup() {
+    return nioGroup;
+  }
+
   @Override
   public void stop() {
     logger.info("################## Stopping OB1K server for module '{}' ##################", applicationName);
@@ -216,6 +243,10 @@ public class NettyServer implements Server {
       //engine.setUseClientMode(false);
       //p.addLast("ssl", new SslHandler(engine));
 
+      if (timingRecorder.isEnabled()) {
+        p.addLast("requestStartTime", RequestStartTimeHandler.INSTANCE);
+      }
+
       p.addLast("decoder", new HttpRequestDecoder(16384, 8192, 16384));
       p.addLast("encoder", new HttpResponseEncoder());
       p.addLast("aggregator", new HttpObjectAggregator(maxContentLength));
@@ -236,7 +267,7 @@ public class NettyServer implements Server {
       }
 
       p.addLast("handler", new HttpRequestDispatcherHandler(contextPath, dispatcher, staticResolver,
-          marshallerRegistry, activeChannels, acceptKeepAlive, requestTimeoutMs, internalErrors, requestTimeoutErrors, notFoundErrors, unexpectedErrors, ioErrors));
+          marshallerRegistry, activeChannels, acceptKeepAlive, requestTimeoutMs, resumeOnEventLoop, timingRecorder, internalErrors, requestTimeoutErrors, notFoundErrors, unexpectedErrors, ioErrors));
     }
 
   }
@@ -0,0 +1,40 @@
+package com.outbrain.ob1k.server.netty;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+/**
+ * stamps the time the first bytes of a request are read, before the request is decoded and aggregated.
+ * only installed when request phases are timed.
+ */
+@ChannelHandler.Sharable
+final class RequestStartTimeHandler extends ChannelInboundHandlerAdapter {
+  static final RequestStartTimeHandler INSTANCE = new RequestStartTimeHandler();
+
+  private static final AttributeKey<Long> START_NANOS = AttributeKey.valueOf("ob1k.requestStartNanos");
+
+  private RequestStartTimeHandler() {
+  }
+
+  @Override
+  public void channelRead(final ChannelHandlerContext ctx, final Object msg) throws Exception {
+    final Attribute<Long> startNanos = ctx.channel().attr(START_NANOS);
+    if (startNanos.get() == null) {
+      startNanos.set(System.nanoTime());
+    }
+
+    ctx.fireChannelRead(msg);
+  }
+
+  /**
+   * @return the time the current request started to be read, or the current time if it wasn't stamped.
+   */
+  static long takeStartNanos(final Channel channel) {
+    final Long startNanos = channel.attr(START_NANOS).getAndRemove();
+    return startNanos != null ? startNanos : System.nanoTime();
+  }
+}
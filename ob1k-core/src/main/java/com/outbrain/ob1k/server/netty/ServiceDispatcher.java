@@ -4,14 +4,33 @@ import com.outbrain.ob1k.HttpRequestMethodType;
 import com.outbrain.ob1k.Request;
 import com.outbrain.ob1k.common.marshalling.RequestMarshaller;
 import com.outbrain.ob1k.common.marshalling.RequestMarshallerRegistry;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.outbrain.ob1k.server.ResponseHandler;
+import com.outbrain.ob1k.server.cache.ResponseCache;
+import com.outbrain.ob1k.server.cache.ResponseCache.CachedResponse;
 import com.outbrain.ob1k.server.registry.ServiceRegistry;
 import com.outbrain.ob1k.server.registry.endpoints.ServerEndpoint;
+import com.outbrain.ob1k.server.timing.RequestPhase;
+import com.outbrain.ob1k.server.timing.RequestTimeline;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import rx.Observable;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
+import static com.outbrain.ob1k.concurrent.ComposableFutures.fromError;
+import static com.outbrain.ob1k.concurrent.ComposableFutures.fromValue;
+import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
+import static io.netty.handler.codec.http.HttpHeaders.Names.ETAG;
+import static io.netty.handler.codec.http.HttpHeaders.Names.IF_NONE_MATCH;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_MODIFIED;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+
 /**
  * User: aronen
  * Date: 8/8/13
@@ -44,7 +63,75 @@ public class ServiceDispatcher {
       throw new IllegalArgumentException("No matching service/method found for path: " + path);
     }
 
-    callMethod(endpoint, request, handler);
+    final ResponseCache responseCache = endpoint.getResponseCache();
+    // endpoints bound to any method cache the responses of their GET requests only
+    if (responseCache == null || methodType != HttpRequestMethodType.GET) {
+      callMethod(endpoint, request, handler);
+    } else {
+      callCachedMethod(endpoint, responseCache, request, handler);
+    }
+  }
+
+  private void callCachedMethod(final ServerEndpoint endpoint, final ResponseCache responseCache,
+                                final Request request, final ResponseHandler handler) throws IOException {
+
+    final String key = ResponseCache.keyOf(request);
+    final CachedResponse cached = responseCache.get(key);
+    if (cached != null) {
+      final RequestTimeline timeline = RequestTimeline.of(request);
+      if (timeline != null) {
+        final Method method = endpoint.getMethod();
+        timeline.setEndpoint(method.getDeclaringClass().getSimpleName(), method.getName());
+      }
+
+      handler.handleAsyncResponse(fromValue(toResponse(cached, request)));
+      return;
+    }
+
+    final RequestMarshaller marshaller = marshallerRegistry.getMarshaller(request.getContentType());
+    callMethod(endpoint, request, new ResponseHandler() {
+      @Override
+      public void handleAsyncResponse(final ComposableFuture<Object> response) {
+        handler.handleAsyncResponse(response.flatMap(result -> {
+          if (result instanceof NettyResponse) {
+            // a response built by the service may depend on more than the arguments
+            return fromValue(result);
+          }
+
+          try {
+            final FullHttpResponse marshalled = marshaller.marshallResponse(result, OK);
+            final ByteBuf content = marshalled.content();
+            final byte[] body = new byte[content.readableBytes()];
+            content.getBytes(content.readerIndex(), body);
+            final String contentType = marshalled.headers().get(CONTENT_TYPE);
+            marshalled.release();
+
+            return fromValue(toResponse(responseCache.put(key, body, contentType), request));
+          } catch (final IOException e) {
+            return fromError(e);
+          }
+        }));
+      }
+
+      @Override
+      public void handleStreamResponse(final Observable<Object> response, final boolean rawStream) {
+        handler.handleStreamResponse(response, rawStream);
+      }
+    });
+  }
+
+  private static NettyResponse toResponse(final CachedResponse cached, final Request request) {
+    final HttpHeaders headers = new DefaultHttpHeaders();
+    headers.set(ETAG, cached.getETag());
+    if (cached.matches(request.getHeader(IF_NONE_MATCH))) {
+      return new NettyResponse(NOT_MODIFIED, null, null, headers);
+    }
+
+    if (cached.getContentType() != null) {
+      headers.set(CONTENT_TYPE, cached.getContentType());
+    }
+    // every response gets its own buffer over the shared bytes
+    return new NettyResponse(OK, Unpooled.wrappedBuffer(cached.getBody()), null, headers);
   }
 
   private void callMethod(final ServerEndpoint endpoint, final Request request, final ResponseHandler handler) throws IOException {
@@ -62,6 +149,12 @@ public class ServiceDispatcher {
       params = marshaller.unmarshallRequestParams(request, method, endpoint.getParamNames());
     }
 
+    final RequestTimeline timeline = RequestTimeline.of(request);
+    if (timeline != null) {
+      timeline.setEndpoint(method.getDeclaringClass().getSimpleName(), method.getName());
+      timeline.end(RequestPhase.UNMARSHALLING);
+    }
+
     endpoint.invoke(request, params, handler);
   }
 
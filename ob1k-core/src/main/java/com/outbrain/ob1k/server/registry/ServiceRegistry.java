@@ -11,6 +11,8 @@ import com.outbrain.ob1k.common.filters.StreamFilter;
 import com.outbrain.ob1k.common.marshalling.RequestMarshallerRegistry;
 import com.outbrain.ob1k.common.marshalling.TypeHelper;
 import com.outbrain.ob1k.server.MethodParamNamesExtractor;
+import com.outbrain.ob1k.server.cache.ResponseCache;
+import com.outbrain.ob1k.server.cache.ResponseCacheConfig;
 import com.outbrain.ob1k.server.registry.endpoints.AsyncServerEndpoint;
 import com.outbrain.ob1k.server.registry.endpoints.ServerEndpoint;
 import com.outbrain.ob1k.server.registry.endpoints.ServerEndpointView;
@@ -80,13 +82,22 @@ public class ServiceRegistry implements ServiceRegistryView {
     public final Method method;
     public final List<? extends ServiceFilter> filters;
     public final HttpRequestMethodType requestMethodType;
+    public final ResponseCacheConfig responseCache;
 
     public EndpointDescriptor(final Method method,
                               final List<? extends ServiceFilter> filters,
                               final HttpRequestMethodType requestMethodType) {
+      this(method, filters, requestMethodType, null);
+    }
+
+    public EndpointDescriptor(final Method method,
+                              final List<? extends ServiceFilter> filters,
+                              final HttpRequestMethodType requestMethodType,
+                              final ResponseCacheConfig responseCache) {
       this.method = method;
       this.filters = filters;
       this.requestMethodType = requestMethodType;
+      this.responseCache = responseCache;
     }
   }
 
@@ -139,10 +150,25 @@ public class ServiceRegistry implements ServiceRegistryView {
 
         final String[] params = methodParamNames.toArray(new String[methodParamNames.size()]);
         if (isAsyncMethod(method)) {
+          final AsyncFilter[] filters = getFilters(endpointDesc.filters, asyncFilters, methodBind, AsyncFilter.class);
+          if (endpointDesc.responseCache != null && filters.length > 0) {
+            // cached responses are served without calling the filters, e.g. authorization or rate limits
+            throw new RuntimeException("Responses of the filtered method '" + method.getName() + "' can't be cached");
+          }
+          if (endpointDesc.responseCache != null && endpointDesc.requestMethodType != HttpRequestMethodType.GET &&
+            endpointDesc.requestMethodType != HttpRequestMethodType.ANY) {
+            // requests of other methods change state, and must reach the service every time
+            throw new RuntimeException("Responses of the method '" + method.getName() + "' bound to " +
+              endpointDesc.requestMethodType + " can't be cached, only GET responses can");
+          }
+          final ResponseCache responseCache = endpointDesc.responseCache == null ? null :
+            new ResponseCache(endpointDesc.responseCache);
           endpointsMap.put(endpointDescriptorEntry.getKey(),
-            new AsyncServerEndpoint(service, getFilters(endpointDesc.filters, asyncFilters, methodBind,
-              AsyncFilter.class), method, endpointDesc.requestMethodType, params));
+            new AsyncServerEndpoint(service, filters, method, endpointDesc.requestMethodType, params, responseCache));
         } else if (isStreamingMethod(method)) {
+          if (endpointDesc.responseCache != null) {
+            throw new RuntimeException("Responses of the streaming method '" + method.getName() + "' can't be cached");
+          }
           endpointsMap.put(endpointDescriptorEntry.getKey(),
             new StreamServerEndpoint(service, getFilters(endpointDesc.filters, streamFilters, methodBind,
               StreamFilter.class), method, endpointDesc.requestMethodType, params));
@@ -8,8 +8,11 @@ import com.outbrain.ob1k.common.filters.AsyncFilter;
 import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.outbrain.ob1k.concurrent.ComposableFutures;
 import com.outbrain.ob1k.server.ResponseHandler;
+import com.outbrain.ob1k.server.cache.ResponseCache;
 import com.outbrain.ob1k.server.ctx.AsyncServerRequestContext;
 import com.outbrain.ob1k.server.ctx.DefaultAsyncServerRequestContext;
+import com.outbrain.ob1k.server.timing.RequestPhase;
+import com.outbrain.ob1k.server.timing.RequestTimeline;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -19,8 +22,17 @@ import java.lang.reflect.Method;
 */
 public class AsyncServerEndpoint extends AbstractServerEndpoint<AsyncFilter> {
 
+  private final ResponseCache responseCache;
+
   public AsyncServerEndpoint(final Service service, final AsyncFilter[] filters, final Method method, final HttpRequestMethodType requestMethodType, final String[] paramNames) {
+    this(service, filters, method, requestMethodType, paramNames, null);
+  }
+
+  public AsyncServerEndpoint(final Service service, final AsyncFilter[] filters, final Method method,
+                             final HttpRequestMethodType requestMethodType, final String[] paramNames,
+                             final ResponseCache responseCache) {
     super(service, method, requestMethodType, paramNames, filters);
+    this.responseCache = responseCache;
   }
 
   public <T> ComposableFuture<T> invokeAsync(final AsyncServerRequestContext ctx) {
@@ -31,10 +43,16 @@ public class AsyncServerEndpoint extends AbstractServerEndpoint<AsyncFilter> {
       final ComposableFuture<T> result = ComposableFutureHelper.cast(filter.handleAsync(ctx.nextPhase()));
       return result;
     } else {
+      final RequestTimeline timeline = RequestTimeline.of(ctx.getRequest());
+      if (timeline != null) {
+        timeline.end(RequestPhase.FILTERS);
+      }
+
       try {
         @SuppressWarnings("unchecked")
         final ComposableFuture<T> result = ComposableFutureHelper.cast(invokeMethodOnService(ctx.getParams()));
-        return result;
+        // not consuming the result directly, as lazy results are computed once per consumption
+        return timeline == null ? result : result.andThen(done -> timeline.end(RequestPhase.SERVICE));
       } catch (final IllegalAccessException | InvocationTargetException e) {
         return ComposableFutures.fromError(e);
       }
@@ -47,4 +65,9 @@ public class AsyncServerEndpoint extends AbstractServerEndpoint<AsyncFilter> {
     final ComposableFuture<Object> response = invokeAsync(ctx);
     handler.handleAsyncResponse(response);
   }
+
+  @Override
+  public ResponseCache getResponseCache() {
+    return responseCache;
+  }
 }
@@ -4,9 +4,17 @@ import com.outbrain.ob1k.Request;
 import com.outbrain.ob1k.Service;
 import com.outbrain.ob1k.common.filters.ServiceFilter;
 import com.outbrain.ob1k.server.ResponseHandler;
+import com.outbrain.ob1k.server.cache.ResponseCache;
 
 public interface ServerEndpoint<F extends ServiceFilter> extends ServerEndpointView<F> {
 
   void invoke(final Request request, final Object[] params, final ResponseHandler handler);
 
+  /**
+   * @return the cache of the endpoint's marshalled responses, or null if they aren't cached.
+   */
+  default ResponseCache getResponseCache() {
+    return null;
+  }
+
 }
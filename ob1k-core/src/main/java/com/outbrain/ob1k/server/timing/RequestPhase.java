@@ -0,0 +1,31 @@
+package com.outbrain.ob1k.server.timing;
+
+/**
+ * the consecutive phases a request goes through in the server, each ending when the next one starts.
+ */
+public enum RequestPhase {
+  /** from the first bytes of the request read from the socket, until the whole request is aggregated and dispatched. */
+  AGGREGATION("aggregation"),
+  /** unmarshalling the request parameters. */
+  UNMARSHALLING("unmarshalling"),
+  /** the filter chain, until the service method is called. marked by async endpoints only, as streamed responses aren't timed. */
+  FILTERS("filters"),
+  /** the service method, until its result is ready. marked by async endpoints only. */
+  SERVICE("service"),
+  /** the filter chain again, on the way back with the result. */
+  RESPONSE_FILTERS("responseFilters"),
+  /** marshalling the response. */
+  MARSHALLING("marshalling"),
+  /** writing the response to the socket. */
+  WRITE("write");
+
+  private final String metricName;
+
+  RequestPhase(final String metricName) {
+    this.metricName = metricName;
+  }
+
+  public String getMetricName() {
+    return metricName;
+  }
+}
@@ -0,0 +1,113 @@
+package com.outbrain.ob1k.server.timing;
+
+import com.google.common.base.Ticker;
+import com.outbrain.ob1k.Request;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the time a single request spent in each of its phases.
+ *
+ * every phase is marked once by the thread running it; the phases of a request run one after the other,
+ * so the marks are published from phase to phase by the futures chaining them.
+ * phases a request skips, e.g. unmarshalling when failing to find the endpoint, are simply not marked.
+ */
+public final class RequestTimeline {
+  private static final RequestPhase[] PHASES = RequestPhase.values();
+
+  private final Ticker ticker;
+  private final long startNanos;
+  private final long[] endNanos = new long[PHASES.length];
+  private String serviceName;
+  private String methodName;
+
+  public RequestTimeline(final long startNanos) {
+    this(startNanos, Ticker.systemTicker());
+  }
+
+  /**
+   * @param startNanos the time the request started, read from the ticker.
+   * @param ticker     the source of the phases' end times.
+   */
+  public RequestTimeline(final long startNanos, final Ticker ticker) {
+    this.ticker = ticker;
+    this.startNanos = startNanos;
+  }
+
+  /**
+   * @return the timeline of the request, or null if the request is not timed.
+   */
+  public static RequestTimeline of(final Request request) {
+    return request instanceof TimedRequest ? ((TimedRequest) request).getTimeline() : null;
+  }
+
+  public void end(final RequestPhase phase) {
+    endNanos[phase.ordinal()] = ticker.read();
+  }
+
+  public void setEndpoint(final String serviceName, final String methodName) {
+    this.serviceName = serviceName;
+    this.methodName = methodName;
+  }
+
+  public String getServiceName() {
+    return serviceName;
+  }
+
+  public String getMethodName() {
+    return methodName;
+  }
+
+  public boolean hasEnded(final RequestPhase phase) {
+    return endNanos[phase.ordinal()] != 0;
+  }
+
+  /**
+   * @return the time spent in the phase, since the end of the previous marked phase, or 0 if the phase wasn't marked.
+   */
+  public long getDurationNanos(final RequestPhase phase) {
+    final long end = endNanos[phase.ordinal()];
+    if (end == 0) {
+      return 0;
+    }
+
+    for (int i = phase.ordinal() - 1; i >= 0; i--) {
+      if (endNanos[i] != 0) {
+        return end - endNanos[i];
+      }
+    }
+
+    return end - startNanos;
+  }
+
+  /**
+   * @return the time since the request started until the end of its last marked phase.
+   */
+  public long getTotalNanos() {
+    for (int i = PHASES.length - 1; i >= 0; i--) {
+      if (endNanos[i] != 0) {
+        return endNanos[i] - startNanos;
+      }
+    }
+
+    return 0;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder timeline = new StringBuilder();
+    timeline.append("total=").append(formatMs(getTotalNanos()));
+    for (final RequestPhase phase : PHASES) {
+      if (hasEnded(phase)) {
+        timeline.append(' ').append(phase.getMetricName()).append('=').append(formatMs(getDurationNanos(phase)));
+      }
+    }
+
+    return timeline.toString();
+  }
+
+  private static String formatMs(final long nanos) {
+    return String.format(Locale.ROOT, "%.3fms", (double) nanos / TimeUnit.MILLISECONDS.toNanos(1));
+  }
+}
@@ -0,0 +1,99 @@
+package com.outbrain.ob1k.server.timing;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * configures the timing of request phases, see {@link RequestPhase}.
+ *
+ * once enabled, the duration of every phase is recorded into per endpoint histograms.
+ * on top of that, a sample of the requests slower than a threshold may have their whole timeline logged,
+ * and requests carrying a debug header may get their timeline back in the same response header.
+ */
+public final class RequestTimingConfig {
+
+  private static final RequestTimingConfig DISABLED = new Builder().build();
+
+  private final boolean enabled;
+  private final long slowRequestThresholdNanos;
+  private final double slowRequestSampleRate;
+  private final String timelineHeader;
+
+  private RequestTimingConfig(final Builder builder) {
+    enabled = builder.enabled;
+    slowRequestThresholdNanos = builder.slowRequestThresholdNanos;
+    slowRequestSampleRate = builder.slowRequestSampleRate;
+    timelineHeader = builder.timelineHeader;
+  }
+
+  public static RequestTimingConfig disabled() {
+    return DISABLED;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return the duration above which requests are sampled for logging, or -1 if slow requests aren't logged.
+   */
+  public long getSlowRequestThresholdNanos() {
+    return slowRequestThresholdNanos;
+  }
+
+  public double getSlowRequestSampleRate() {
+    return slowRequestSampleRate;
+  }
+
+  /**
+   * @return the request header asking for the timeline in the response, or null if timelines aren't exposed.
+   */
+  public String getTimelineHeader() {
+    return timelineHeader;
+  }
+
+  public static class Builder {
+    private boolean enabled;
+    private long slowRequestThresholdNanos = -1;
+    private double slowRequestSampleRate;
+    private String timelineHeader;
+
+    /**
+     * records the duration of the phases of all requests, into per endpoint histograms.
+     */
+    public Builder recordPhases() {
+      enabled = true;
+      return this;
+    }
+
+    /**
+     * logs the timeline of a sample of the requests taking longer than the threshold.
+     *
+     * @param sampleRate the fraction of the slow requests to log, between 0 and 1.
+     */
+    public Builder logSlowRequests(final long threshold, final TimeUnit unit, final double sampleRate) {
+      checkArgument(threshold >= 0, "threshold must not be negative");
+      checkArgument(sampleRate >= 0 && sampleRate <= 1, "sampleRate must be between 0 and 1");
+      enabled = true;
+      slowRequestThresholdNanos = unit.toNanos(threshold);
+      slowRequestSampleRate = sampleRate;
+      return this;
+    }
+
+    /**
+     * returns the timeline of requests carrying the header in the same response header.
+     * the timeline covers the phases up to the response marshalling, as it's sent before being written.
+     */
+    public Builder exposeTimelineHeader(final String headerName) {
+      enabled = true;
+      timelineHeader = checkNotNull(headerName, "headerName must not be null");
+      return this;
+    }
+
+    public RequestTimingConfig build() {
+      return new RequestTimingConfig(this);
+    }
+  }
+}
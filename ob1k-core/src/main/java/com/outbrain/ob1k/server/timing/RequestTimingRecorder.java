@@ -0,0 +1,78 @@
+package com.outbrain.ob1k.server.timing;
+
+import com.outbrain.swinfra.metrics.api.Histogram;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * records the timelines of completed requests into per endpoint phase histograms, and logs sampled slow ones.
+ */
+public class RequestTimingRecorder {
+  private static final Logger logger = LoggerFactory.getLogger(RequestTimingRecorder.class);
+  private static final RequestPhase[] PHASES = RequestPhase.values();
+
+  private final RequestTimingConfig config;
+  private final MetricFactory metricFactory;
+  private final ConcurrentMap<String, Histogram[]> histograms = new ConcurrentHashMap<>();
+
+  public RequestTimingRecorder(final RequestTimingConfig config, final MetricFactory metricFactory) {
+    this.config = config;
+    this.metricFactory = metricFactory;
+  }
+
+  public boolean isEnabled() {
+    return config.isEnabled();
+  }
+
+  public String getTimelineHeader() {
+    return config.getTimelineHeader();
+  }
+
+  /**
+   * @return a timeline for a new request, or null if requests aren't timed.
+   */
+  public RequestTimeline newTimeline(final long startNanos) {
+    return config.isEnabled() ? new RequestTimeline(startNanos) : null;
+  }
+
+  public void record(final RequestTimeline timeline) {
+    if (timeline.getServiceName() != null) {
+      final Histogram[] endpointHistograms = getHistograms(timeline.getServiceName(), timeline.getMethodName());
+      for (final RequestPhase phase : PHASES) {
+        if (timeline.hasEnded(phase)) {
+          endpointHistograms[phase.ordinal()].update(TimeUnit.NANOSECONDS.toMicros(timeline.getDurationNanos(phase)));
+        }
+      }
+    }
+
+    final long threshold = config.getSlowRequestThresholdNanos();
+    if (threshold >= 0 && timeline.getTotalNanos() > threshold &&
+      ThreadLocalRandom.current().nextDouble() < config.getSlowRequestSampleRate()) {
+      logger.info("slow request to {}.{}: {}", timeline.getServiceName(), timeline.getMethodName(), timeline);
+    }
+  }
+
+  private Histogram[] getHistograms(final String serviceName, final String methodName) {
+    final String endpoint = serviceName + "." + methodName;
+    final Histogram[] endpointHistograms = histograms.get(endpoint);
+    if (endpointHistograms != null) {
+      return endpointHistograms;
+    }
+
+    return histograms.computeIfAbsent(endpoint, key -> {
+      final Histogram[] newHistograms = new Histogram[PHASES.length];
+      for (final RequestPhase phase : PHASES) {
+        newHistograms[phase.ordinal()] =
+          metricFactory.createHistogram(serviceName, methodName + ".phases." + phase.getMetricName() + "Micros", true);
+      }
+
+      return newHistograms;
+    });
+  }
+}
@@ -0,0 +1,14 @@
+package com.outbrain.ob1k.server.timing;
+
+import com.outbrain.ob1k.Request;
+
+/**
+ * a request that may carry the timeline of its phases, see {@link RequestTimeline#of(Request)}.
+ */
+public interface TimedRequest extends Request {
+
+  /**
+   * @return the timeline of the request's phases, or null if the request is not timed.
+   */
+  RequestTimeline getTimeline();
+}
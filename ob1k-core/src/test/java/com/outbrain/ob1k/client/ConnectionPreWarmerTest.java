@@ -0,0 +1,44 @@
+package com.outbrain.ob1k.client;
+
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.http.HttpClient;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+
+public class ConnectionPreWarmerTest {
+
+  private final HttpClient httpClient = Mockito.mock(HttpClient.class);
+
+  @Test
+  public void testTargetsAreWarmedUpAgainUntilClosed() throws Exception {
+    Mockito.when(httpClient.warmUp(anyString(), anyInt())).thenReturn(ComposableFutures.fromValue(2));
+    final ConnectionPreWarmer preWarmer = new ConnectionPreWarmer(httpClient, "target", 2, 20);
+
+    preWarmer.targetsChanged(Collections.singletonList("http://target"));
+    preWarmer.ready().get(1, TimeUnit.SECONDS);
+    Mockito.verify(httpClient, Mockito.timeout(1000).atLeast(3)).warmUp("http://target", 2);
+
+    preWarmer.close();
+    Thread.sleep(50);
+    Mockito.reset(httpClient);
+    Thread.sleep(100);
+    Mockito.verifyZeroInteractions(httpClient);
+  }
+
+  @Test
+  public void testOnlyNewTargetsAreWarmedUpWithoutInterval() throws Exception {
+    Mockito.when(httpClient.warmUp(anyString(), anyInt())).thenReturn(ComposableFutures.fromValue(2));
+    final ConnectionPreWarmer preWarmer = new ConnectionPreWarmer(httpClient, "target", 2, 0);
+
+    preWarmer.targetsChanged(Collections.singletonList("http://target"));
+    preWarmer.targetsChanged(Collections.singletonList("http://target"));
+    preWarmer.ready().get(1, TimeUnit.SECONDS);
+    Mockito.verify(httpClient, Mockito.times(1)).warmUp("http://target", 2);
+  }
+}
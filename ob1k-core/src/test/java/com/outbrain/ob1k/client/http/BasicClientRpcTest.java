@@ -13,6 +13,7 @@ import com.outbrain.ob1k.http.TypedResponse;
 import com.outbrain.ob1k.http.common.ContentType;
 import com.outbrain.ob1k.server.Server;
 import com.outbrain.ob1k.server.builder.ServerBuilder;
+import com.outbrain.ob1k.server.netty.NettyServer;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -26,6 +27,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import static com.outbrain.swinfra.metrics.DummyMetricFactory.newDummyMetricFactory;
@@ -82,6 +84,28 @@ public class BasicClientRpcTest {
     Assert.assertTrue("response should contain hello world", response.getResponseBody().contains("hello world"));
   }
 
+  @Test
+  public void testPreWarmedClient() throws Exception {
+    final HelloServiceClient helloServiceClient = new ClientBuilder<>(HelloServiceClient.class).
+      setTargetProvider(new SimpleTargetProvider("http://localhost:" + port + CTX_PATH + HELLO_SERVICE_PATH)).
+      setPreWarmConnections(3).
+      build();
+
+    Clients.whenReady(helloServiceClient).get(5, TimeUnit.SECONDS);
+    final Response response = helloServiceClient.helloWorld().get();
+    Assert.assertTrue("response should contain hello world", response.getResponseBody().contains("hello world"));
+  }
+
+  @Test
+  public void testPreWarmedClientWithoutKnownTargetsIsReady() throws Exception {
+    final HelloServiceClient helloServiceClient = new ClientBuilder<>(HelloServiceClient.class).
+      setPreWarmConnections(3).
+      build();
+
+    // the empty target provider never reports targets
+    Clients.whenReady(helloServiceClient).get(1, TimeUnit.SECONDS);
+  }
+
   @Test
   public void testSimpleResponseStream() throws Exception {
     final HelloServiceClient helloServiceClient = new ClientBuilder<>(HelloServiceClient.class).
@@ -132,6 +156,28 @@ public class BasicClientRpcTest {
     Assert.assertTrue("first name should contain haim", names.get(0).contains("haim"));
   }
 
+  @Test
+  public void testNettyTransportOnServerEventLoop() throws Exception {
+    final HelloServiceTypedClient helloServiceClient = new ClientBuilder<>(HelloServiceTypedClient.class).
+      setTargetProvider(new SimpleTargetProvider("http://localhost:" + port + CTX_PATH + HELLO_SERVICE_PATH)).
+      setEventLoopGroup(((NettyServer) server).getEventLoopGroup()).
+      build();
+
+    Assert.assertEquals("response should be hello world", "hello world", helloServiceClient.helloWorld().get().getTypedBody());
+
+    final List<String> names = new ArrayList<>(5);
+    helloServiceClient.getMessages("haim", 5, false).toBlocking().forEach(response -> {
+      try {
+        names.add(response.getTypedBody());
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    Assert.assertEquals("all stream elements should be received", 5, names.size());
+    Assert.assertTrue("first name should contain haim", names.get(0).contains("haim"));
+  }
+
   @Test
   public void testEmptyJsonResponseBody() throws ExecutionException, InterruptedException {
     final IHelloService service = createClient(ContentType.JSON, port);
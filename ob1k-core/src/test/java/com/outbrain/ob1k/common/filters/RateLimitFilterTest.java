@@ -0,0 +1,54 @@
+package com.outbrain.ob1k.common.filters;
+
+import com.outbrain.ob1k.AsyncRequestContext;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.RateLimitExceededException;
+import com.outbrain.ob1k.concurrent.RateLimiter;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class RateLimitFilterTest {
+
+  private static final ComposableFuture<Object> RESULT = ComposableFutures.fromValue("result");
+
+  private final AsyncRequestContext context = Mockito.mock(AsyncRequestContext.class);
+
+  @Before
+  public void setup() {
+    Mockito.when(context.invokeAsync()).thenReturn(RESULT);
+  }
+
+  @Test
+  public void testCallsOverTheRateAreRejected() throws Exception {
+    final RateLimitFilter<String> filter = new RateLimitFilter<>(new RateLimiter(1, 1, 0, TimeUnit.MILLISECONDS));
+
+    Assert.assertEquals("result", filter.handleAsync(context).get());
+    try {
+      filter.handleAsync(context).get();
+      Assert.fail("the second call is over the rate");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof RateLimitExceededException);
+    }
+    Mockito.verify(context, Mockito.times(1)).invokeAsync();
+  }
+
+  @Test
+  public void testCallsOverTheRateAreDelayed() throws Exception {
+    final RateLimitFilter<String> filter = new RateLimitFilter<>(new RateLimiter(10, 1, 1, TimeUnit.SECONDS));
+
+    final long start = System.nanoTime();
+    Assert.assertEquals("result", filter.handleAsync(context).get());
+    final ComposableFuture<String> delayed = filter.handleAsync(context);
+    Mockito.verify(context, Mockito.times(1)).invokeAsync();
+
+    Assert.assertEquals("result", delayed.get(1, TimeUnit.SECONDS));
+    Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    Mockito.verify(context, Mockito.times(2)).invokeAsync();
+  }
+}
@@ -0,0 +1,111 @@
+package com.outbrain.ob1k.common.marshalling;
+
+import com.outbrain.ob1k.http.marshalling.StreamDecoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChunkedStreamDecoderTest {
+
+  private static final List<String> ELEMENTS = Arrays.asList("first", "second\nline", "", "fourth");
+
+  @Test
+  public void testJsonElementsSplitAcrossParts() throws IOException {
+    assertDecodesInAnySplit(new JsonRequestMarshaller());
+  }
+
+  @Test
+  public void testMessagePackElementsSplitAcrossParts() throws IOException {
+    assertDecodesInAnySplit(new MessagePackRequestMarshaller());
+  }
+
+  @Test
+  public void testMultipleElementsInSinglePart() throws IOException {
+    final RequestMarshaller marshaller = new JsonRequestMarshaller();
+    final StreamDecoder<String> decoder = marshaller.createStreamDecoder(String.class);
+
+    assertEquals(ELEMENTS, decoder.decode(ByteBuffer.wrap(marshallStream(marshaller))));
+    decoder.end();
+  }
+
+  @Test
+  public void testRemoteError() throws IOException {
+    final RequestMarshaller marshaller = new JsonRequestMarshaller();
+    final StreamDecoder<String> decoder = marshaller.createStreamDecoder(String.class);
+    final byte[] stream = concat(marshallStream(marshaller), (ChunkHeader.ERROR_HEADER + "boom").getBytes(UTF_8));
+
+    assertEquals(ELEMENTS, decoder.decode(ByteBuffer.wrap(stream)));
+    try {
+      decoder.end();
+      fail("remote error should be thrown on stream end");
+    } catch (final RuntimeException e) {
+      assertEquals("boom", e.getMessage());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedStream() throws IOException {
+    final RequestMarshaller marshaller = new JsonRequestMarshaller();
+    final StreamDecoder<String> decoder = marshaller.createStreamDecoder(String.class);
+    final byte[] stream = marshallStream(marshaller);
+
+    decoder.decode(ByteBuffer.wrap(Arrays.copyOf(stream, stream.length - 3)));
+    decoder.end();
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidHeader() throws IOException {
+    final StreamDecoder<String> decoder = new JsonRequestMarshaller().createStreamDecoder(String.class);
+    decoder.decode(ByteBuffer.wrap("Chunk-Status: 404\r\n\"a\"\n".getBytes(UTF_8)));
+  }
+
+  private static void assertDecodesInAnySplit(final RequestMarshaller marshaller) throws IOException {
+    final byte[] stream = marshallStream(marshaller);
+
+    for (int partSize = 1; partSize <= stream.length; partSize++) {
+      final StreamDecoder<String> decoder = marshaller.createStreamDecoder(String.class);
+      final List<String> decoded = new ArrayList<>();
+      for (int offset = 0; offset < stream.length; offset += partSize) {
+        final int length = Math.min(partSize, stream.length - offset);
+        decoded.addAll(decoder.decode(ByteBuffer.wrap(Arrays.copyOfRange(stream, offset, offset + length))));
+      }
+
+      decoder.end();
+      assertEquals("part size " + partSize, ELEMENTS, decoded);
+    }
+  }
+
+  private static byte[] marshallStream(final RequestMarshaller marshaller) throws IOException {
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    for (final String element : ELEMENTS) {
+      final HttpContent content = marshaller.marshallResponsePart(element, HttpResponseStatus.OK, false);
+      final ByteBuf buf = content.content();
+      final byte[] bytes = new byte[buf.readableBytes()];
+      buf.readBytes(bytes);
+      buf.release();
+      stream.write(bytes);
+    }
+
+    assertTrue(stream.size() > 0);
+    return stream.toByteArray();
+  }
+
+  private static byte[] concat(final byte[] first, final byte[] second) {
+    final byte[] result = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, result, first.length, second.length);
+    return result;
+  }
+}
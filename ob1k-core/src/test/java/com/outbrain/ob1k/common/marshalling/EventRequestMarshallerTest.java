@@ -13,6 +13,7 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -82,6 +83,7 @@ public class EventRequestMarshallerTest {
     when(response.getStatusCode()).thenReturn(statusCode);
     when(response.getResponseBody()).thenReturn(body);
     when(response.getResponseBodyAsBytes()).thenReturn(body == null ? null : body.getBytes());
+    when(response.getResponseBodyAsByteBuffer()).thenReturn(body == null ? null : ByteBuffer.wrap(body.getBytes()));
     when(response.hasResponseBody()).thenReturn(true);
     return response;
   }
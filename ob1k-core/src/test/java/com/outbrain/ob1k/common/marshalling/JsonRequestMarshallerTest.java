@@ -1,5 +1,9 @@
 package com.outbrain.ob1k.common.marshalling;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.outbrain.ob1k.http.Response;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import org.junit.After;
@@ -9,6 +13,8 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertEquals;
@@ -56,11 +62,62 @@ public class JsonRequestMarshallerTest {
     jsonRequestMarshaller.unmarshallResponse(response, TestBody.class);
   }
 
+  @Test
+  public void testUnmarshalStreamElementInPlace() throws IOException {
+    final byte[] part = ("garbage" + ChunkHeader.ELEMENT_HEADER + "{\"prop\": \"test\"}").getBytes(StandardCharsets.UTF_8);
+    final ByteBuffer body = ByteBuffer.wrap(part);
+    body.position("garbage".length());
+
+    final Response response = mock(Response.class);
+    when(response.getResponseBodyAsByteBuffer()).thenReturn(body.slice());
+
+    final TestBody result = jsonRequestMarshaller.unmarshallStreamResponse(response, TestBody.class);
+    assertEquals("test", result.getProp());
+  }
+
+  @Test
+  public void testUnmarshalStreamError() throws IOException {
+    expectedException.expect(RuntimeException.class);
+    expectedException.expectMessage("boom");
+
+    final Response response = mock(Response.class);
+    when(response.getResponseBodyAsByteBuffer()).thenReturn(
+      ByteBuffer.wrap((ChunkHeader.ERROR_HEADER + "boom").getBytes(StandardCharsets.UTF_8)));
+
+    jsonRequestMarshaller.unmarshallStreamResponse(response, TestBody.class);
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void testCopyWithModulesLeavesTheOriginalAsIs() throws IOException {
+    final SimpleModule module = new SimpleModule();
+    module.addDeserializer(TestBody.class, new JsonDeserializer<TestBody>() {
+      @Override
+      public TestBody deserialize(final JsonParser parser, final DeserializationContext context) throws IOException {
+        final TestBody body = new TestBody();
+        body.setProp("module");
+        parser.skipChildren();
+        return body;
+      }
+    });
+
+    final JsonRequestMarshaller withModule = jsonRequestMarshaller.copyWithModules(module);
+    final String body = "{\"prop\": \"test\"}";
+    assertEquals("module", withModule.unmarshallResponse(mockResponse(HttpResponseStatus.OK.code(), body), TestBody.class).getProp());
+    assertEquals("test", jsonRequestMarshaller.unmarshallResponse(mockResponse(HttpResponseStatus.OK.code(), body), TestBody.class).getProp());
+
+    // the deprecated method still registers the modules on the marshaller itself
+    final JsonRequestMarshaller mutated = new JsonRequestMarshaller();
+    mutated.withModules(module);
+    assertEquals("module", mutated.unmarshallResponse(mockResponse(HttpResponseStatus.OK.code(), body), TestBody.class).getProp());
+  }
+
   private Response mockResponse(final int statusCode, final String body) throws IOException {
     final Response response = mock(Response.class);
     when(response.getStatusCode()).thenReturn(statusCode);
     when(response.getResponseBody()).thenReturn(body);
     when(response.getResponseBodyAsBytes()).thenReturn(body == null ? null : body.getBytes());
+    when(response.getResponseBodyAsByteBuffer()).thenReturn(body == null ? null : ByteBuffer.wrap(body.getBytes()));
     when(response.hasResponseBody()).thenReturn(true);
     return response;
   }
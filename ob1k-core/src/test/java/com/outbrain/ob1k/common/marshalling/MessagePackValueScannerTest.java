@@ -0,0 +1,62 @@
+package com.outbrain.ob1k.common.marshalling;
+
+import com.google.common.base.Strings;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+import org.msgpack.MessagePack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class MessagePackValueScannerTest {
+
+  @Test
+  public void testFindsTheEndOfValuesReceivedByteByByte() throws IOException {
+    final MessagePack msgPack = new MessagePack();
+    final Map<String, Object> map = new HashMap<>();
+    map.put("key", Arrays.asList(1, "two", 3.0));
+    map.put("empty", Collections.emptyMap());
+
+    final List<Object> values = Arrays.asList(1, -1, 300, Long.MAX_VALUE, 1.5f, 2.5, true, "short",
+      Strings.repeat("a", 300), Strings.repeat("b", 70000), new byte[] {1, 2, 3}, Collections.nCopies(20, "c"), map);
+
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    final List<Integer> lengths = new ArrayList<>();
+    for (final Object value : values) {
+      final byte[] bytes = msgPack.write(value);
+      lengths.add(bytes.length);
+      stream.write(bytes);
+    }
+
+    final ByteBuf buffer = Unpooled.wrappedBuffer(stream.toByteArray());
+    final int end = buffer.writerIndex();
+    buffer.writerIndex(0);
+
+    final MessagePackValueScanner scanner = new MessagePackValueScanner();
+    final List<Integer> found = new ArrayList<>();
+    while (buffer.writerIndex() < end) {
+      buffer.writerIndex(buffer.writerIndex() + 1);
+      final int length = scanner.scan(buffer);
+      if (length >= 0) {
+        found.add(length);
+        buffer.skipBytes(length);
+      }
+    }
+
+    assertEquals(lengths, found);
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidType() throws IOException {
+    new MessagePackValueScanner().scan(Unpooled.wrappedBuffer(new byte[] {(byte) 0xc1}));
+  }
+}
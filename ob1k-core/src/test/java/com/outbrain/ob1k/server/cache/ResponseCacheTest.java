@@ -0,0 +1,175 @@
+package com.outbrain.ob1k.server.cache;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.Response;
+import com.google.common.base.Strings;
+import com.outbrain.ob1k.AsyncRequestContext;
+import com.outbrain.ob1k.HttpRequestMethodType;
+import com.outbrain.ob1k.Request;
+import com.outbrain.ob1k.common.filters.AsyncFilter;
+import com.outbrain.ob1k.server.Server;
+import com.outbrain.ob1k.server.builder.ServerBuilder;
+import com.outbrain.ob1k.server.services.SimpleTestServiceImpl;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import static com.outbrain.swinfra.metrics.DummyMetricFactory.newDummyMetricFactory;
+import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
+import static io.netty.handler.codec.http.HttpHeaders.Names.ETAG;
+import static io.netty.handler.codec.http.HttpHeaders.Names.IF_NONE_MATCH;
+
+public class ResponseCacheTest {
+
+  private static Server buildServer() {
+    final ResponseCacheConfig responseCacheConfig = new ResponseCacheConfig.Builder(1, TimeUnit.MINUTES).build();
+    return ServerBuilder.newBuilder().contextPath("/test").
+      configure(builder -> builder.useRandomPort().useMetricFactory(newDummyMetricFactory())).
+      service(builder -> builder.register(new SimpleTestServiceImpl(), "/simple", bind -> bind.
+        endpoint("nextRandom", "/cachedRandom").cacheResponses(responseCacheConfig).
+        endpoint("nextRandom", "/random"))).
+      build();
+  }
+
+  @Test
+  public void testCachedResponsesSkipTheService() throws Exception {
+    final Server server = buildServer();
+    final AsyncHttpClient client = new AsyncHttpClient();
+    try {
+      final int port = server.start().getPort();
+      final String cachedUri = String.format("http://localhost:%s/test/simple/cachedRandom", port);
+      final String uri = String.format("http://localhost:%s/test/simple/random", port);
+
+      final Response first = client.prepareGet(cachedUri).execute().get();
+      final Response second = client.prepareGet(cachedUri).execute().get();
+      Assert.assertEquals(200, first.getStatusCode());
+      Assert.assertEquals(200, second.getStatusCode());
+      Assert.assertEquals(first.getResponseBody(), second.getResponseBody());
+      Assert.assertNotNull(first.getHeader(ETAG));
+      Assert.assertEquals(first.getHeader(ETAG), second.getHeader(ETAG));
+
+      // the same method, bound without a cache, is called every time
+      final Response uncached = client.prepareGet(uri).execute().get();
+      Assert.assertNull(uncached.getHeader(ETAG));
+    } finally {
+      client.close();
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testOnlyGetResponsesAreCached() throws Exception {
+    final Server server = buildServer();
+    final AsyncHttpClient client = new AsyncHttpClient();
+    try {
+      final int port = server.start().getPort();
+      final String cachedUri = String.format("http://localhost:%s/test/simple/cachedRandom", port);
+
+      final Response posted = client.preparePost(cachedUri).setHeader(CONTENT_TYPE, "application/json").
+        setBody("[]").execute().get();
+      Assert.assertEquals(200, posted.getStatusCode());
+      Assert.assertNull(posted.getHeader(ETAG));
+    } finally {
+      client.close();
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testMatchingTagIsNotModified() throws Exception {
+    final Server server = buildServer();
+    final AsyncHttpClient client = new AsyncHttpClient();
+    try {
+      final int port = server.start().getPort();
+      final String cachedUri = String.format("http://localhost:%s/test/simple/cachedRandom", port);
+
+      final String etag = client.prepareGet(cachedUri).execute().get().getHeader(ETAG);
+      final Response notModified = client.prepareGet(cachedUri).addHeader(IF_NONE_MATCH, etag).execute().get();
+      Assert.assertEquals(304, notModified.getStatusCode());
+      Assert.assertEquals(etag, notModified.getHeader(ETAG));
+      Assert.assertEquals("", notModified.getResponseBody());
+
+      final Response modified = client.prepareGet(cachedUri).addHeader(IF_NONE_MATCH, "\"other\"").execute().get();
+      Assert.assertEquals(200, modified.getStatusCode());
+    } finally {
+      client.close();
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testKeysTellArgumentsApart() throws Exception {
+    final String key = ResponseCache.keyOf(request("/test/simple/method2?val1=1", "application/json", "[\"a\"]"));
+    Assert.assertEquals(key, ResponseCache.keyOf(request("/test/simple/method2?val1=1", "application/json", "[\"a\"]")));
+    Assert.assertNotEquals(key, ResponseCache.keyOf(request("/test/simple/method2?val1=2", "application/json", "[\"a\"]")));
+    Assert.assertNotEquals(key, ResponseCache.keyOf(request("/test/simple/method2?val1=1", "application/x-msgpack", "[\"a\"]")));
+    Assert.assertNotEquals(key, ResponseCache.keyOf(request("/test/simple/method2?val1=1", "application/json", "[\"b\"]")));
+  }
+
+  @Test
+  public void testKeysHoldAHashOfTheBody() throws Exception {
+    final String body = Strings.repeat("a", 100000);
+    final String key = ResponseCache.keyOf(request("/test/simple/method2", "application/json", body));
+    Assert.assertTrue(key, key.length() < 100);
+    Assert.assertEquals(key, ResponseCache.keyOf(request("/test/simple/method2", "application/json", body)));
+  }
+
+  @Test
+  public void testFilteredEndpointsCantCacheResponses() {
+    final ResponseCacheConfig responseCacheConfig = new ResponseCacheConfig.Builder(1, TimeUnit.MINUTES).build();
+    final AsyncFilter<Object, AsyncRequestContext> filter = AsyncRequestContext::invokeAsync;
+    try {
+      ServerBuilder.newBuilder().contextPath("/test").
+        configure(builder -> builder.useRandomPort().useMetricFactory(newDummyMetricFactory())).
+        service(builder -> builder.register(new SimpleTestServiceImpl(), "/simple", bind -> bind.
+          endpoint("nextRandom", "/cachedRandom", filter).cacheResponses(responseCacheConfig))).
+        build();
+      Assert.fail("cached responses would skip the filter");
+    } catch (final RuntimeException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("can't be cached"));
+    }
+  }
+
+  @Test
+  public void testEndpointsBoundToOtherMethodsCantCacheResponses() {
+    final ResponseCacheConfig responseCacheConfig = new ResponseCacheConfig.Builder(1, TimeUnit.MINUTES).build();
+    try {
+      ServerBuilder.newBuilder().contextPath("/test").
+        configure(builder -> builder.useRandomPort().useMetricFactory(newDummyMetricFactory())).
+        service(builder -> builder.register(new SimpleTestServiceImpl(), "/simple", bind -> bind.
+          endpoint(HttpRequestMethodType.POST, "nextRandom", "/cachedRandom").cacheResponses(responseCacheConfig))).
+        build();
+      Assert.fail("POST requests must reach the service");
+    } catch (final RuntimeException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("can't be cached"));
+    }
+  }
+
+  @Test
+  public void testTagMatching() {
+    final ResponseCache cache = new ResponseCache(new ResponseCacheConfig.Builder(1, TimeUnit.MINUTES).build());
+    final ResponseCache.CachedResponse response = cache.put("key", "body".getBytes(), "application/json");
+    final String etag = response.getETag();
+
+    Assert.assertSame(response, cache.get("key"));
+    Assert.assertEquals(etag, cache.put("other", "body".getBytes(), "application/json").getETag());
+    Assert.assertTrue(response.matches(etag));
+    Assert.assertTrue(response.matches("W/" + etag));
+    Assert.assertTrue(response.matches("\"other\", " + etag));
+    Assert.assertTrue(response.matches("*"));
+    Assert.assertFalse(response.matches(null));
+    Assert.assertFalse(response.matches("\"other\""));
+  }
+
+  private static Request request(final String uri, final String contentType, final String body) {
+    final Request request = Mockito.mock(Request.class);
+    Mockito.when(request.getMethod()).thenReturn(HttpRequestMethodType.GET);
+    Mockito.when(request.getUri()).thenReturn(uri);
+    Mockito.when(request.getContentType()).thenReturn(contentType);
+    Mockito.when(request.getRequestInputStream()).thenReturn(new ByteArrayInputStream(body.getBytes()));
+    return request;
+  }
+}
@@ -0,0 +1,99 @@
+package com.outbrain.ob1k.server.filters;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.Response;
+import com.outbrain.ob1k.Request;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.RateLimitExceededException;
+import com.outbrain.ob1k.server.Server;
+import com.outbrain.ob1k.server.builder.ServerBuilder;
+import com.outbrain.ob1k.server.ctx.AsyncServerRequestContext;
+import com.outbrain.ob1k.server.services.SimpleTestServiceImpl;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.outbrain.swinfra.metrics.DummyMetricFactory.newDummyMetricFactory;
+
+public class RateLimitFiltersTest {
+
+  private static final ComposableFuture<Object> RESULT = ComposableFutures.fromValue("result");
+  private static final String CALLER_HEADER = "X-Caller";
+
+  private static AsyncServerRequestContext context(final String methodName, final String caller) {
+    final Request request = Mockito.mock(Request.class);
+    Mockito.when(request.getHeader(CALLER_HEADER)).thenReturn(caller);
+
+    final AsyncServerRequestContext context = Mockito.mock(AsyncServerRequestContext.class);
+    Mockito.when(context.getServiceClassName()).thenReturn("SimpleTestService");
+    Mockito.when(context.getServiceMethodName()).thenReturn(methodName);
+    Mockito.when(context.getRequest()).thenReturn(request);
+    Mockito.when(context.invokeAsync()).thenReturn(RESULT);
+    return context;
+  }
+
+  private static void assertRejected(final ComposableFuture<?> result) throws InterruptedException {
+    try {
+      result.get();
+      Assert.fail("the call is over the rate");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof RateLimitExceededException);
+    }
+  }
+
+  @Test
+  public void testEndpointsHaveTheirOwnQuota() throws Exception {
+    final EndpointRateLimitFilter<String> filter =
+      new EndpointRateLimitFilter<>(1, 1, 0, TimeUnit.MILLISECONDS, newDummyMetricFactory());
+    final AsyncServerRequestContext method1 = context("method1", null);
+    final AsyncServerRequestContext method2 = context("method2", null);
+
+    Assert.assertEquals("result", filter.handleAsync(method1).get());
+    Assert.assertEquals("result", filter.handleAsync(method2).get());
+    assertRejected(filter.handleAsync(method1));
+    assertRejected(filter.handleAsync(method2));
+    Mockito.verify(method1, Mockito.times(1)).invokeAsync();
+  }
+
+  @Test
+  public void testCallersHaveTheirOwnQuota() throws Exception {
+    final CallerRateLimitFilter<String> filter =
+      new CallerRateLimitFilter<>(CALLER_HEADER, 1, 1, 0, TimeUnit.MILLISECONDS, newDummyMetricFactory());
+
+    Assert.assertEquals("result", filter.handleAsync(context("method1", "a")).get());
+    Assert.assertEquals("result", filter.handleAsync(context("method1", "b")).get());
+    Assert.assertEquals("result", filter.handleAsync(context("method1", null)).get());
+
+    // the quota of a caller is shared by all the endpoints, and callers without the header share one
+    assertRejected(filter.handleAsync(context("method2", "a")));
+    assertRejected(filter.handleAsync(context("method2", null)));
+  }
+
+  @Test
+  public void testRejectedRequestsAreAnsweredWithTooManyRequests() throws Exception {
+    final Server server = ServerBuilder.newBuilder().contextPath("/test").
+      configure(builder -> builder.useRandomPort().useMetricFactory(newDummyMetricFactory())).
+      service(builder -> builder.register(new SimpleTestServiceImpl(), "/simple", bind -> bind.
+        endpoint("nextRandom", "/random",
+          new CallerRateLimitFilter<>(CALLER_HEADER, 1, 1, 0, TimeUnit.MILLISECONDS, null)))).
+      build();
+    final AsyncHttpClient client = new AsyncHttpClient();
+    try {
+      final String uri = String.format("http://localhost:%s/test/simple/random", server.start().getPort());
+
+      final Response first = client.prepareGet(uri).addHeader(CALLER_HEADER, "a").execute().get();
+      final Response second = client.prepareGet(uri).addHeader(CALLER_HEADER, "a").execute().get();
+      final Response other = client.prepareGet(uri).addHeader(CALLER_HEADER, "b").execute().get();
+      Assert.assertEquals(200, first.getStatusCode());
+      Assert.assertEquals(429, second.getStatusCode());
+      Assert.assertEquals(200, other.getStatusCode());
+    } finally {
+      client.close();
+      server.stop();
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package com.outbrain.ob1k.server.netty;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.outbrain.ob1k.Service;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.ExecutionAffinity;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import com.outbrain.ob1k.server.Server;
+import com.outbrain.ob1k.server.builder.ServerBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+
+import static com.outbrain.swinfra.metrics.DummyMetricFactory.newDummyMetricFactory;
+
+public class ResumeOnEventLoopTest {
+
+  public static class ThreadsService implements Service {
+    /**
+     * @return the thread the request was dispatched on, and the thread a continuation completed elsewhere resumed on.
+     */
+    public ComposableFuture<String> resumedOn() {
+      final String dispatchedOn = Thread.currentThread().getName();
+      final Executor bound = ExecutionAffinity.current();
+      if (bound == null) {
+        return ComposableFutures.fromValue("unbound");
+      }
+
+      final ComposablePromise<String> promise = ComposableFutures.newPromise();
+      // completed from another thread, the way the adapters of third party futures are
+      new Thread(() -> bound.execute(() -> promise.set(dispatchedOn + "," + Thread.currentThread().getName()))).start();
+      return promise.future();
+    }
+  }
+
+  private static String callResumedOn(final boolean resumeOnEventLoop) throws Exception {
+    final Server server = ServerBuilder.newBuilder().contextPath("/test").
+      configure(builder -> builder.useRandomPort().resumeOnEventLoop(resumeOnEventLoop).useMetricFactory(newDummyMetricFactory())).
+      service(builder -> builder.register(new ThreadsService(), "/threads")).
+      build();
+    final AsyncHttpClient client = new AsyncHttpClient();
+    try {
+      final String uri = String.format("http://localhost:%s/test/threads/resumedOn", server.start().getPort());
+      // the body is a json string
+      return client.prepareGet(uri).execute().get().getResponseBody().replace("\"", "");
+    } finally {
+      client.close();
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testRequestsAreBoundToTheirEventLoop() throws Exception {
+    final String[] threads = callResumedOn(true).split(",");
+    Assert.assertEquals(2, threads.length);
+    Assert.assertEquals("the continuation should resume on the event loop of the request", threads[0], threads[1]);
+  }
+
+  @Test
+  public void testRequestsAreUnboundByDefault() throws Exception {
+    Assert.assertEquals("unbound", callResumedOn(false));
+  }
+}
@@ -0,0 +1,46 @@
+package com.outbrain.ob1k.server.timing;
+
+import com.google.common.base.Ticker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class RequestTimelineTest {
+
+  private static class FakeTicker extends Ticker {
+    private long nanos = 1000;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+
+    private void advance(final long ms) {
+      nanos += TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+  }
+
+  @Test
+  public void testPhaseDurations() {
+    final FakeTicker ticker = new FakeTicker();
+    final RequestTimeline timeline = new RequestTimeline(ticker.read(), ticker);
+
+    ticker.advance(10);
+    timeline.end(RequestPhase.AGGREGATION);
+    ticker.advance(1);
+    timeline.end(RequestPhase.UNMARSHALLING);
+    ticker.advance(20);
+    // the filters phase is skipped, so its time is counted in the service phase
+    timeline.end(RequestPhase.SERVICE);
+
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(10), timeline.getDurationNanos(RequestPhase.AGGREGATION));
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(1), timeline.getDurationNanos(RequestPhase.UNMARSHALLING));
+    Assert.assertFalse(timeline.hasEnded(RequestPhase.FILTERS));
+    Assert.assertEquals(0, timeline.getDurationNanos(RequestPhase.FILTERS));
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(20), timeline.getDurationNanos(RequestPhase.SERVICE));
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(31), timeline.getTotalNanos());
+
+    Assert.assertEquals("total=31.000ms aggregation=10.000ms unmarshalling=1.000ms service=20.000ms", timeline.toString());
+  }
+}
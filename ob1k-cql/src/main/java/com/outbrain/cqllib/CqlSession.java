@@ -16,6 +16,7 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.outbrain.ob1k.concurrent.*;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
 import com.outbrain.swinfra.metrics.api.MetricFactory;
 import com.outbrain.swinfra.metrics.api.Timer;
 import org.slf4j.Logger;
@@ -25,6 +26,7 @@ import rx.exceptions.Exceptions;
 import java.net.InetSocketAddress;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -94,30 +96,35 @@ public class CqlSession {
   private ComposableFuture<ResultSet> executeImpl(final Statement statement, final List<TagMetrics> tagMetrics) {
     statement.setRetryPolicy(new RetryPolicyWithMetrics(retryPolicy, tagMetrics));
     final Iterable<Timer.Context> timerContexts = measureOnStart(tagMetrics);
-    return ComposableFutures.<ResultSet>build(consumer -> {
-      final ResultSetFuture resultSetFuture = session.executeAsync(statement);
-      resultSetFuture.addListener(() -> {
-        try {
-          final ResultSet result = resultSetFuture.get();
-          consumer.consume(Try.fromValue(result));
-        } catch (final InterruptedException e) {
-          Thread.currentThread().interrupt();
-          consumer.consume(Try.fromError(e));
-        } catch (final ExecutionException e) {
-          final Throwable finalCause = Exceptions.getFinalCause(e);
-          if (finalCause instanceof NoHostAvailableException) {
-            final String tags = Joiner.on(',').join(tagMetrics);
-            final Map<InetSocketAddress, Throwable> errorsPerHost = ((NoHostAvailableException) finalCause).getErrors();
-            for (final Map.Entry<InetSocketAddress, Throwable> entry : errorsPerHost.entrySet()) {
-              logger.error("host " + entry.getKey() + " failed to perform statement " + tags + ": " +
-                  entry.getValue().getMessage(), entry.getValue().getMessage());
-            }
+    final ComposablePromise<ResultSet> promise = ComposableFutures.newPromise();
+    final ResultSetFuture resultSetFuture = session.executeAsync(statement);
+    // cancelling releases the connection's stream id, the statement itself may still be executed by the coordinator
+    promise.onCancel(resultSetFuture::cancel);
+    resultSetFuture.addListener(() -> {
+      try {
+        final ResultSet result = resultSetFuture.get();
+        promise.set(result);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        promise.setException(e);
+      } catch (final CancellationException e) {
+        promise.setException(e);
+      } catch (final ExecutionException e) {
+        final Throwable finalCause = Exceptions.getFinalCause(e);
+        if (finalCause instanceof NoHostAvailableException) {
+          final String tags = Joiner.on(',').join(tagMetrics);
+          final Map<InetSocketAddress, Throwable> errorsPerHost = ((NoHostAvailableException) finalCause).getErrors();
+          for (final Map.Entry<InetSocketAddress, Throwable> entry : errorsPerHost.entrySet()) {
+            logger.error("host " + entry.getKey() + " failed to perform statement " + tags + ": " +
+                entry.getValue().getMessage(), entry.getValue().getMessage());
           }
-
-          consumer.consume(Try.fromError(e.getCause() != null ? e.getCause() : e));
         }
-      }, ComposableFutures.getExecutor());
-    }).alwaysWith(result -> {
+
+        promise.setException(e.getCause() != null ? e.getCause() : e);
+      }
+    }, ComposableFutures.getExecutor());
+
+    return promise.future().alwaysWith(result -> {
       measureOnDone(timerContexts);
       return fromTry(result);
     });
@@ -9,6 +9,7 @@ import com.github.mauricio.async.db.pool.PoolConfiguration;
 import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.outbrain.ob1k.concurrent.ComposableFutures;
 import com.outbrain.ob1k.concurrent.Try;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
 import com.outbrain.swinfra.metrics.api.Counter;
 import com.outbrain.swinfra.metrics.api.MetricFactory;
 import com.outbrain.swinfra.metrics.api.Timer;
@@ -18,6 +19,8 @@ import scala.collection.JavaConversions;
 import scala.collection.mutable.Buffer;
 
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.outbrain.ob1k.concurrent.ComposableFutures.fromError;
 import static com.outbrain.ob1k.concurrent.ComposableFutures.fromValue;
@@ -86,10 +89,26 @@ class MySqlConnectionPool implements DbConnectionPool {
     return withMetricsPreparedStatement(ScalaFutureHelper.from(() -> _pool.sendPreparedStatement(query, scalaValues)));
   }
 
+  /**
+   * takes a connection from the pool.
+   * queries can't be aborted once sent, so cancelling the returned future while waiting for a connection
+   * gives the connection back as soon as it's taken, without running the queries of the caller.
+   */
   private ComposableFuture<MySqlAsyncConnection> take() {
-    final ComposableFuture<MySQLConnection> connFuture = ScalaFutureHelper.from(_pool::take);
+    final ComposablePromise<MySqlAsyncConnection> promise = ComposableFutures.newPromise();
+    final AtomicBoolean cancelled = new AtomicBoolean();
+    promise.onCancel(mayInterrupt -> cancelled.compareAndSet(false, true));
 
-    return connFuture.map(MySqlAsyncConnection::new);
+    ScalaFutureHelper.from(_pool::take).consume(result -> {
+      if (result.isSuccess() && cancelled.get()) {
+        _pool.giveBack(result.getValue());
+        promise.setException(new CancellationException("connection request was cancelled"));
+      } else {
+        promise.setTry(result.map(MySqlAsyncConnection::new));
+      }
+    });
+
+    return promise.future();
   }
 
   private ComposableFuture<Boolean> giveBack(final MySqlAsyncConnection conn) {
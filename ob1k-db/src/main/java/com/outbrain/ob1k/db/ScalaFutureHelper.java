@@ -7,6 +7,8 @@ import scala.concurrent.ExecutionContext$;
 import scala.concurrent.ExecutionContextExecutor;
 import scala.runtime.AbstractFunction1;
 
+import java.util.concurrent.Executor;
+
 /**
  * User: aronen
  * Date: 9/17/13
@@ -21,6 +23,8 @@ public class ScalaFutureHelper {
   }
 
   public static <T> ComposableFuture<T> from(final FutureProvider<T> source) {
+    final Executor resumeOn = ExecutionAffinity.current();
+    final ExecutionContextExecutor executionContext = resumeOn == null ? ctx : ExecutionContext$.MODULE$.fromExecutor(resumeOn);
     return ComposableFutures.build(consumer -> {
       final Future<T> future = source.provide();
       future.onComplete(new AbstractFunction1<Try<T>, Void>() {
@@ -33,7 +37,7 @@ public class ScalaFutureHelper {
 
           return null;
         }
-      }, ctx);
+      }, executionContext);
     });
   }
 }
@@ -2,9 +2,11 @@ package com.outbrain.ob1k.db.experimental;
 
 import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.ExecutionAffinity;
 import com.outbrain.ob1k.concurrent.Try;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * User: aronen
@@ -18,6 +20,7 @@ public class JavaFutureHelper {
   }
 
   public static <T> ComposableFuture<T> from(final FutureProvider<T> source) {
+    final Executor resumeOn = ExecutionAffinity.currentOr(ComposableFutures.getExecutor());
     return ComposableFutures.build(consumer -> {
       final CompletableFuture<T> future = source.provide();
       future.whenCompleteAsync((v, t) -> {
@@ -26,7 +29,7 @@ public class JavaFutureHelper {
         } else {
           consumer.consume(Try.fromError(t));
         }
-      }, ComposableFutures.getExecutor());
+      }, resumeOn);
     });
   }
 }
@@ -0,0 +1,16 @@
+package com.outbrain.ob1k.db;
+
+import org.junit.Test;
+import scala.concurrent.Promise;
+import scala.concurrent.Promise$;
+
+import static com.outbrain.ob1k.concurrent.BoundExecutorAssertions.assertResumesOnTheBoundExecutor;
+
+public class ScalaFutureHelperTest {
+
+  @Test
+  public void testResultsResumeOnTheBoundExecutor() throws Exception {
+    final Promise<String> source = Promise$.MODULE$.apply();
+    assertResumesOnTheBoundExecutor(() -> ScalaFutureHelper.from(source::future), () -> source.success("value"));
+  }
+}
@@ -0,0 +1,16 @@
+package com.outbrain.ob1k.db.experimental;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static com.outbrain.ob1k.concurrent.BoundExecutorAssertions.assertResumesOnTheBoundExecutor;
+
+public class JavaFutureHelperTest {
+
+  @Test
+  public void testResultsResumeOnTheBoundExecutor() throws Exception {
+    final CompletableFuture<String> source = new CompletableFuture<>();
+    assertResumesOnTheBoundExecutor(() -> JavaFutureHelper.from(() -> source), () -> source.complete("value"));
+  }
+}
@@ -6,16 +6,24 @@ import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.AsyncHttpClientConfig;
 import com.ning.http.client.providers.netty.NettyAsyncHttpProviderConfig;
 
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
 import com.outbrain.ob1k.http.marshalling.JacksonMarshallingStrategy;
 import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
+import com.outbrain.ob1k.http.netty.NettyHttpTransport;
 import com.outbrain.ob1k.http.ning.NingRequestBuilder;
+import com.outbrain.ob1k.http.utils.ComposableFutureAdapter;
 import com.outbrain.swinfra.metrics.api.MetricFactory;
 
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.codec.http.HttpMethod;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 import org.jboss.netty.util.HashedWheelTimer;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Ob1k's Http Client
@@ -23,7 +31,8 @@ import java.io.IOException;
  * Provides a simple async client for your http requests,
  * with shared client configuration and specific request configuration.
  *
- * Using AsyncHttpClient as the executor
+ * Using AsyncHttpClient as the executor by default, or a Netty 4 based transport
+ * (see {@link Builder#useNettyTransport()}).
  *
  * @author marenzon, insipred of aronen's previous HttpClient implemintation.
  */
@@ -35,15 +44,18 @@ public class HttpClient implements Closeable {
   public static final int REQUEST_TIMEOUT = 500;
   public static final int MAX_CONNECTIONS_PER_HOST = 100;
   public static final int MAX_TOTAL_CONNECTIONS = MAX_CONNECTIONS_PER_HOST * 2;
+  public static final int DEFAULT_READ_TIMEOUT = 60000;
 
   private final AsyncHttpClient asyncHttpClient;
+  private final NettyHttpTransport nettyTransport;
   private final MarshallingStrategy marshallingStrategy;
   private final long responseMaxSize;
 
-  private HttpClient(final AsyncHttpClient asyncHttpClient, final long responseMaxSize,
-                     final MarshallingStrategy marshallingStrategy) {
+  private HttpClient(final AsyncHttpClient asyncHttpClient, final NettyHttpTransport nettyTransport,
+                     final long responseMaxSize, final MarshallingStrategy marshallingStrategy) {
 
     this.asyncHttpClient = asyncHttpClient;
+    this.nettyTransport = nettyTransport;
     this.responseMaxSize = responseMaxSize;
     this.marshallingStrategy = marshallingStrategy;
   }
@@ -67,6 +79,10 @@ public class HttpClient implements Closeable {
   public RequestBuilder get(final String url) {
 
     checkNotNull(url, "url may not be null");
+    if (nettyTransport != null) {
+      return nettyTransport.prepare(HttpMethod.GET, url, responseMaxSize, marshallingStrategy);
+    }
+
     final AsyncHttpClient.BoundRequestBuilder ningRequestBuilder = asyncHttpClient.prepareGet(url);
     return createNewRequestBuilder(url, ningRequestBuilder);
   }
@@ -80,6 +96,10 @@ public class HttpClient implements Closeable {
   public RequestBuilder post(final String url) {
 
     checkNotNull(url, "url may not be null");
+    if (nettyTransport != null) {
+      return nettyTransport.prepare(HttpMethod.POST, url, responseMaxSize, marshallingStrategy);
+    }
+
     final AsyncHttpClient.BoundRequestBuilder ningRequestBuilder = asyncHttpClient.preparePost(url);
     return createNewRequestBuilder(url, ningRequestBuilder);
   }
@@ -93,6 +113,10 @@ public class HttpClient implements Closeable {
   public RequestBuilder put(final String url) {
 
     checkNotNull(url, "url may not be null");
+    if (nettyTransport != null) {
+      return nettyTransport.prepare(HttpMethod.PUT, url, responseMaxSize, marshallingStrategy);
+    }
+
     final AsyncHttpClient.BoundRequestBuilder ningRequestBuilder = asyncHttpClient.preparePut(url);
     return createNewRequestBuilder(url, ningRequestBuilder);
   }
@@ -106,6 +130,10 @@ public class HttpClient implements Closeable {
   public RequestBuilder delete(final String url) {
 
     checkNotNull(url, "url may not be null");
+    if (nettyTransport != null) {
+      return nettyTransport.prepare(HttpMethod.DELETE, url, responseMaxSize, marshallingStrategy);
+    }
+
     final AsyncHttpClient.BoundRequestBuilder ningRequestBuilder = asyncHttpClient.prepareDelete(url);
     return createNewRequestBuilder(url, ningRequestBuilder);
   }
@@ -119,10 +147,51 @@ public class HttpClient implements Closeable {
   public RequestBuilder head(final String url) {
 
     checkNotNull(url, "url may not be null");
+    if (nettyTransport != null) {
+      return nettyTransport.prepare(HttpMethod.HEAD, url, responseMaxSize, marshallingStrategy);
+    }
+
     final AsyncHttpClient.BoundRequestBuilder ningRequestBuilder = asyncHttpClient.prepareHead(url);
     return createNewRequestBuilder(url, ningRequestBuilder);
   }
 
+  /**
+   * Pre-warms the connection pool of the url's host, by opening the requested number of connections
+   * concurrently (using OPTIONS requests). The connections are kept in the pool as idle connections,
+   * so the first real requests to the host won't pay the connect time.
+   * OPTIONS rather than HEAD, as a server that answers a HEAD request with a body (as ob1k's does)
+   * leaves the connection out of sync, while the body of any other response is read in full.
+   *
+   * Any http response means the connection was established, so the response status is ignored.
+   *
+   * @param url         url of the host to warm up
+   * @param connections number of connections to open
+   * @return future of the number of connections successfully opened, never fails
+   */
+  public ComposableFuture<Integer> warmUp(final String url, final int connections) {
+
+    checkNotNull(url, "url may not be null");
+    if (nettyTransport != null) {
+      return nettyTransport.warmUp(url, connections);
+    }
+
+    final List<ComposableFuture<Integer>> warmUps = new ArrayList<>(connections);
+    for (int i = 0; i < connections; i++) {
+      final ComposableFuture<Integer> warmUp = ComposableFutureAdapter.
+        fromListenableFuture(() -> asyncHttpClient.prepareOptions(url).execute()).
+        always(result -> result.isSuccess() ? 1 : 0);
+      warmUps.add(warmUp);
+    }
+
+    return ComposableFutures.all(false, warmUps).map(results -> {
+      int connected = 0;
+      for (final Integer result : results) {
+        connected += result;
+      }
+      return connected;
+    });
+  }
+
   /**
    * Closing the http client
    *
@@ -131,7 +200,11 @@ public class HttpClient implements Closeable {
   @Override
   public void close() throws IOException {
 
-    asyncHttpClient.close();
+    if (nettyTransport != null) {
+      nettyTransport.close();
+    } else {
+      asyncHttpClient.close();
+    }
   }
 
   private NingRequestBuilder createNewRequestBuilder(final String url, final AsyncHttpClient.BoundRequestBuilder ningRequestBuilder) {
@@ -166,6 +239,8 @@ public class HttpClient implements Closeable {
     private boolean followRedirect;
     private boolean acceptAnySslCertificate;
     private long responseMaxSize;
+    private boolean useNettyTransport;
+    private EventLoopGroup eventLoopGroup;
 
     /**
      * Max retries for request
@@ -326,6 +401,34 @@ public class HttpClient implements Closeable {
       return this;
     }
 
+    /**
+     * Use the Netty 4 based transport instead of AsyncHttpClient.
+     * It reads responses into pooled buffers, and keeps a fixed size connection pool per host.
+     * Note that the max total connections limit isn't applied by this transport.
+     *
+     * @return builder
+     */
+    public Builder useNettyTransport() {
+
+      this.useNettyTransport = true;
+      return this;
+    }
+
+    /**
+     * Event loop group for the Netty 4 based transport, e.g. the one of an in-process ob1k server,
+     * so the client and the server will share the same io threads. Implies {@link #useNettyTransport()}.
+     * The group must be a nio one, and isn't shut down when the client is closed.
+     *
+     * @param eventLoopGroup nio event loop group
+     * @return builder
+     */
+    public Builder setEventLoopGroup(final EventLoopGroup eventLoopGroup) {
+
+      this.eventLoopGroup = checkNotNull(eventLoopGroup, "eventLoopGroup may not be null");
+      this.useNettyTransport = true;
+      return this;
+    }
+
     /**
      * Creates new HttpClient from the configuration set
      *
@@ -333,6 +436,14 @@ public class HttpClient implements Closeable {
      */
     public HttpClient build() {
 
+      if (useNettyTransport) {
+        final NettyHttpTransport nettyTransport = new NettyHttpTransport(eventLoopGroup, connectionTimeout, requestTimeout,
+          readTimeout != null ? readTimeout : DEFAULT_READ_TIMEOUT, retries, maxConnectionsPerHost,
+          compressionEnforced, disableUrlEncoding, followRedirect, acceptAnySslCertificate);
+
+        return new HttpClient(null, nettyTransport, responseMaxSize, marshallingStrategy);
+      }
+
       final AsyncHttpClientConfig.Builder configBuilder = new AsyncHttpClientConfig.Builder().
         setConnectTimeout(connectionTimeout).
         setMaxRequestRetry(retries).
@@ -349,7 +460,7 @@ public class HttpClient implements Closeable {
         configBuilder.setReadTimeout(readTimeout);
       }
 
-      return new HttpClient(new AsyncHttpClient(configBuilder.build()), responseMaxSize, marshallingStrategy);
+      return new HttpClient(new AsyncHttpClient(configBuilder.build()), null, responseMaxSize, marshallingStrategy);
     }
   }
 
@@ -5,14 +5,21 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.type.TypeFactory;
 import com.outbrain.ob1k.http.Response;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Jackson unmarshalling strategy implementation
@@ -24,12 +31,16 @@ public class JacksonMarshallingStrategy implements MarshallingStrategy {
   private static final Logger log = LoggerFactory.getLogger(JacksonMarshallingStrategy.class);
 
   private final ObjectMapper objectMapper;
+  private final ConcurrentMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
 
   public JacksonMarshallingStrategy() {
 
     this(createDefaultObjectMapper());
   }
 
+  /**
+   * @param objectMapper a fully configured object mapper, since readers per type are created from it once and cached
+   */
   public JacksonMarshallingStrategy(final ObjectMapper objectMapper) {
 
     this.objectMapper = objectMapper;
@@ -51,7 +62,41 @@ public class JacksonMarshallingStrategy implements MarshallingStrategy {
       return null;
     }
 
-    return objectMapper.readValue(response.getResponseBodyAsBytes(), getJacksonType(type));
+    return readValue(type, response.getResponseBodyAsByteBuffer());
+  }
+
+  /**
+   * Parses a value directly from the body buffer, without copying it
+   *
+   * @param type type of (T) to unmarshall
+   * @param body buffer holding the json value (and nothing else)
+   * @param <T> type of object to unmarshall to
+   * @return new instance of T
+   * @throws IOException in case of failed attempt to unmarshall
+   */
+  public <T> T readValue(final Type type, final ByteBuffer body) throws IOException {
+
+    return readValue(type, Unpooled.wrappedBuffer(body));
+  }
+
+  /**
+   * Parses a value directly from the readable bytes of the buffer, without copying them.
+   * The buffer's indexes are not modified.
+   *
+   * @param type type of (T) to unmarshall
+   * @param body buffer holding the json value (and nothing else)
+   * @param <T> type of object to unmarshall to
+   * @return new instance of T
+   * @throws IOException in case of failed attempt to unmarshall
+   */
+  public <T> T readValue(final Type type, final ByteBuf body) throws IOException {
+
+    final ObjectReader reader = getReader(type);
+    if (body.hasArray()) {
+      return reader.readValue(body.array(), body.arrayOffset() + body.readerIndex(), body.readableBytes());
+    }
+
+    return reader.readValue(new ByteBufInputStream(body.duplicate()));
   }
 
   @Override
@@ -60,6 +105,16 @@ public class JacksonMarshallingStrategy implements MarshallingStrategy {
     return objectMapper.writeValueAsBytes(value);
   }
 
+  private ObjectReader getReader(final Type type) {
+
+    final ObjectReader reader = readers.get(type);
+    if (reader != null) {
+      return reader;
+    }
+
+    return readers.computeIfAbsent(type, key -> objectMapper.reader(getJacksonType(key)));
+  }
+
   private JavaType getJacksonType(final Type type) {
 
     final TypeFactory typeFactory = TypeFactory.defaultInstance();
@@ -37,4 +37,19 @@ public interface MarshallingStrategy {
    * @throws IOException in case of failed attempt to marshall
    */
   byte[] marshall(final Object value) throws IOException;
+
+  /**
+   * Creates a decoder for a stream response of elements of type T.
+   * By default no decoder is provided, and each received body part is unmarshalled as a single element.
+   *
+   * @param type type of (T) to unmarshall
+   * @param response the stream response status and headers (without body)
+   * @param <T> type of the stream elements
+   * @return new decoder for a single stream, or null if each body part is a single element
+   * @throws IOException in case the stream response can't be decoded
+   */
+  default <T> StreamDecoder<T> createStreamDecoder(final Type type, final Response response) throws IOException {
+
+    return null;
+  }
 }
\ No newline at end of file
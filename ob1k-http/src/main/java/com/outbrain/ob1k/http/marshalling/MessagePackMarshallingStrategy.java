@@ -5,14 +5,13 @@ import io.netty.handler.codec.http.HttpResponseStatus;
 import org.msgpack.MessagePack;
 import org.msgpack.packer.Packer;
 import org.msgpack.template.Template;
-import org.msgpack.type.Value;
-import org.msgpack.unpacker.Converter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 
 /**
  * MessagePack unmarshalling strategy implementation
@@ -31,7 +30,6 @@ public class MessagePackMarshallingStrategy implements MarshallingStrategy {
   }
 
   @Override
-  @SuppressWarnings("unchecked")
   public <T> T unmarshall(final Type type, final Response response) throws IOException {
 
     final int statusCode = response.getStatusCode();
@@ -47,9 +45,24 @@ public class MessagePackMarshallingStrategy implements MarshallingStrategy {
       return null;
     }
 
-    final Value value = messagePack.read(response.getResponseBodyAsBytes());
+    return readValue(type, response.getResponseBodyAsByteBuffer());
+  }
+
+  /**
+   * Reads a value directly from the body buffer, without copying it
+   * or building an intermediate value tree
+   *
+   * @param type type of (T) to unmarshall
+   * @param body buffer holding the msgpack value
+   * @param <T> type of object to unmarshall to
+   * @return new instance of T
+   * @throws IOException in case of failed attempt to unmarshall
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T readValue(final Type type, final ByteBuffer body) throws IOException {
+
     final Template<T> template = (Template<T>) messagePack.lookup(type);
-    return template.read(new Converter(messagePack, value), null);
+    return messagePack.read(body, template);
   }
 
   @Override
@@ -0,0 +1,36 @@
+package com.outbrain.ob1k.http.marshalling;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Incrementally decodes the body of a stream response into elements,
+ * regardless of how the body was split into parts by the transport:
+ * an element may span several body parts, and a single body part may contain several elements.
+ *
+ * A decoder is stateful, and is used for a single stream response.
+ *
+ * @see MarshallingStrategy#createStreamDecoder(java.lang.reflect.Type, com.outbrain.ob1k.http.Response)
+ * @param <T> type of the decoded elements
+ */
+public interface StreamDecoder<T> {
+
+  /**
+   * Consumes the next received body part.
+   * Bytes of an incomplete element are kept until the next parts arrive.
+   *
+   * @param bodyPart the received bytes, must not be modified by the caller afterwards
+   * @return the elements completed by this part, possibly empty
+   * @throws IOException in case the stream is malformed
+   */
+  List<T> decode(ByteBuffer bodyPart) throws IOException;
+
+  /**
+   * Called when the stream response ends, and releases the decoder's resources.
+   *
+   * @throws IOException in case the stream ended in the middle of an element
+   * @throws RuntimeException in case the stream ended with a remote error
+   */
+  void end() throws IOException;
+}
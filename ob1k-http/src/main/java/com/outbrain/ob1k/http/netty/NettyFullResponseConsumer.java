@@ -0,0 +1,84 @@
+package com.outbrain.ob1k.http.netty;
+
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.handler.codec.http.HttpResponse;
+
+import java.lang.reflect.Type;
+import java.net.URI;
+
+/**
+ * Aggregates the response body parts, as retained pooled buffers, and copies them
+ * once into the response body when the response is completed.
+ */
+class NettyFullResponseConsumer<T> implements NettyResponseConsumer {
+
+  private final ComposablePromise<NettyResponse<T>> promise;
+  private final long responseMaxSize;
+  private final Type type;
+  private final MarshallingStrategy marshallingStrategy;
+  private URI uri;
+  private HttpResponse response;
+  private CompositeByteBuf body;
+
+  NettyFullResponseConsumer(final ComposablePromise<NettyResponse<T>> promise, final long responseMaxSize,
+                            final Type type, final MarshallingStrategy marshallingStrategy) {
+
+    this.promise = promise;
+    this.responseMaxSize = responseMaxSize;
+    this.type = type;
+    this.marshallingStrategy = marshallingStrategy;
+  }
+
+  @Override
+  public void onHeaders(final URI uri, final HttpResponse response) {
+
+    this.uri = uri;
+    this.response = response;
+  }
+
+  @Override
+  public void onContent(final ByteBuf content) {
+
+    if (body == null) {
+      body = content.alloc().compositeBuffer(Integer.MAX_VALUE);
+    }
+
+    if (responseMaxSize > 0 && body.readableBytes() + content.readableBytes() > responseMaxSize) {
+      throw new RuntimeException("Response size is bigger than the limit: " + responseMaxSize);
+    }
+
+    body.addComponent(content.retain());
+    body.writerIndex(body.writerIndex() + content.readableBytes());
+  }
+
+  @Override
+  public void onCompleted() {
+
+    byte[] bytes = null;
+    if (body != null) {
+      bytes = new byte[body.readableBytes()];
+      body.readBytes(bytes);
+      releaseBody();
+    }
+
+    promise.set(new NettyResponse<>(uri.toString(), response, bytes, type, marshallingStrategy));
+  }
+
+  @Override
+  public void onError(final Throwable error) {
+
+    releaseBody();
+    promise.setException(error);
+  }
+
+  private void releaseBody() {
+
+    if (body != null) {
+      body.release();
+      body = null;
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package com.outbrain.ob1k.http.netty;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.timeout.IdleStateEvent;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Dispatches the received response parts to the connection's current {@link NettyHttpExchange}.
+ * Connections receiving data without an exchange in progress, or waiting too long for a response, are closed.
+ */
+@ChannelHandler.Sharable
+final class NettyHttpClientHandler extends SimpleChannelInboundHandler<HttpObject> {
+
+  static final NettyHttpClientHandler INSTANCE = new NettyHttpClientHandler();
+
+  private NettyHttpClientHandler() {}
+
+  @Override
+  protected void channelRead0(final ChannelHandlerContext ctx, final HttpObject msg) throws Exception {
+
+    final NettyHttpExchange exchange = ctx.channel().attr(NettyHttpExchange.EXCHANGE).get();
+    if (exchange == null) {
+      ctx.close();
+      return;
+    }
+
+    if (msg.getDecoderResult().isFailure()) {
+      exchange.fail(msg.getDecoderResult().cause());
+      return;
+    }
+
+    if (msg instanceof HttpResponse) {
+      exchange.onResponse((HttpResponse) msg);
+    }
+
+    if (msg instanceof HttpContent) {
+      exchange.onContent((HttpContent) msg);
+    }
+  }
+
+  @Override
+  public void userEventTriggered(final ChannelHandlerContext ctx, final Object evt) throws Exception {
+
+    if (evt instanceof IdleStateEvent) {
+      final NettyHttpExchange exchange = ctx.channel().attr(NettyHttpExchange.EXCHANGE).get();
+      if (exchange != null) {
+        exchange.fail(new TimeoutException("read timeout on " + ctx.channel().remoteAddress()));
+      }
+      ctx.close();
+      return;
+    }
+
+    super.userEventTriggered(ctx, evt);
+  }
+
+  @Override
+  public void channelInactive(final ChannelHandlerContext ctx) throws Exception {
+
+    final NettyHttpExchange exchange = ctx.channel().attr(NettyHttpExchange.EXCHANGE).get();
+    if (exchange != null) {
+      exchange.fail(new ClosedChannelException());
+    }
+
+    super.channelInactive(ctx);
+  }
+
+  @Override
+  public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) throws Exception {
+
+    final NettyHttpExchange exchange = ctx.channel().attr(NettyHttpExchange.EXCHANGE).get();
+    if (exchange != null) {
+      exchange.fail(cause);
+    }
+
+    ctx.close();
+  }
+}
@@ -0,0 +1,191 @@
+package com.outbrain.ob1k.http.netty;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A single request-response exchange over a pooled connection.
+ *
+ * The exchange is attached to the connection while it is in progress, and the connection is released
+ * back to the pool when it ends; connections are reused only if the response was fully read and is keep alive.
+ * The read timeout is armed once the request is written and disarmed when the exchange ends, so connections
+ * that were idle in the pool aren't timed out by the idle time before the exchange.
+ * All the state changes happen on the connection's event loop.
+ */
+final class NettyHttpExchange {
+
+  static final AttributeKey<NettyHttpExchange> EXCHANGE = AttributeKey.valueOf("ob1k.http.exchange");
+
+  private static final String READ_TIMEOUT_HANDLER = "readTimeout";
+
+  private final ChannelPool pool;
+  private final Channel channel;
+  private final URI uri;
+  private final NettyResponseConsumer consumer;
+  private final Runnable retry;
+  private final int readTimeout;
+  private ScheduledFuture<?> timeout;
+  private boolean responseReceived;
+  private boolean keepAlive;
+  private boolean done;
+
+  NettyHttpExchange(final ChannelPool pool, final Channel channel, final URI uri,
+                    final NettyResponseConsumer consumer, final Runnable retry, final int readTimeout) {
+
+    this.pool = pool;
+    this.channel = channel;
+    this.uri = uri;
+    this.consumer = consumer;
+    this.retry = retry;
+    this.readTimeout = readTimeout;
+  }
+
+  /**
+   * @param request  request to send
+   * @param deadline nano time deadline of the request, 0 for none
+   */
+  void start(final FullHttpRequest request, final long deadline) {
+
+    if (!channel.eventLoop().inEventLoop()) {
+      channel.eventLoop().execute(() -> start(request, deadline));
+      return;
+    }
+
+    if (done) {
+      // cancelled before it started
+      request.release();
+      return;
+    }
+
+    channel.attr(EXCHANGE).set(this);
+
+    if (deadline != 0) {
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        request.release();
+        fail(new TimeoutException("request timed out before being sent to " + uri));
+        return;
+      }
+
+      timeout = channel.eventLoop().schedule(() -> fail(new TimeoutException("request to " + uri + " timed out")),
+        remaining, TimeUnit.NANOSECONDS);
+    }
+
+    if (readTimeout > 0) {
+      // counts the idle time from the request being written, rather than from the last read of the connection
+      channel.pipeline().addBefore("codec", READ_TIMEOUT_HANDLER,
+        new IdleStateHandler(readTimeout, 0, 0, TimeUnit.MILLISECONDS));
+    }
+
+    channel.writeAndFlush(request).addListener((ChannelFutureListener) future -> {
+      if (!future.isSuccess()) {
+        fail(future.cause());
+      }
+    });
+  }
+
+  void onResponse(final HttpResponse response) {
+
+    if (done) {
+      return;
+    }
+
+    responseReceived = true;
+    keepAlive = HttpHeaders.isKeepAlive(response);
+    try {
+      consumer.onHeaders(uri, response);
+    } catch (final Exception e) {
+      fail(e);
+    }
+  }
+
+  void onContent(final HttpContent content) {
+
+    if (done) {
+      return;
+    }
+
+    try {
+      if (content.content().isReadable()) {
+        consumer.onContent(content.content());
+      }
+    } catch (final Exception e) {
+      fail(e);
+      return;
+    }
+
+    // the consumer may have cancelled the exchange
+    if (content instanceof LastHttpContent && !done) {
+      complete();
+    }
+  }
+
+  void cancel() {
+
+    if (!channel.eventLoop().inEventLoop()) {
+      channel.eventLoop().execute(this::cancel);
+      return;
+    }
+
+    fail(new CancellationException("request to " + uri + " was cancelled"));
+  }
+
+  void fail(final Throwable error) {
+
+    if (done) {
+      return;
+    }
+
+    end(false);
+    if (!responseReceived && retry != null && error instanceof IOException) {
+      // the connection failed before getting any response (e.g. a stale pooled connection)
+      retry.run();
+    } else {
+      consumer.onError(error);
+    }
+  }
+
+  private void complete() {
+
+    end(keepAlive);
+    try {
+      consumer.onCompleted();
+    } catch (final Exception e) {
+      consumer.onError(e);
+    }
+  }
+
+  private void end(final boolean reuseConnection) {
+
+    done = true;
+    if (timeout != null) {
+      timeout.cancel(false);
+    }
+
+    if (channel.pipeline().get(READ_TIMEOUT_HANDLER) != null) {
+      channel.pipeline().remove(READ_TIMEOUT_HANDLER);
+    }
+
+    channel.attr(EXCHANGE).compareAndSet(this, null);
+    if (!reuseConnection) {
+      channel.close();
+    }
+
+    pool.release(channel);
+  }
+}
@@ -0,0 +1,394 @@
+package com.outbrain.ob1k.http.netty;
+
+import com.outbrain.ob1k.concurrent.CancellationToken;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.pool.AbstractChannelPoolMap;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.channel.pool.ChannelHealthChecker;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.channel.pool.FixedChannelPool;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpContentDecompressor;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.FutureListener;
+
+import javax.net.ssl.SSLException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A Netty 4 based transport for {@link com.outbrain.ob1k.http.HttpClient}.
+ *
+ * Keeps a fixed size connection pool per host (scheme, host and port), reads responses into pooled buffers,
+ * and runs on a given event loop group - e.g. the one of an in-process ob1k server, so the client
+ * and the server share the same io threads. If no event loop group is given, all the transports share
+ * a single default one (same as all the AsyncHttpClient based clients share a single netty 3 pool).
+ *
+ * Note that the max connections limit is applied per host.
+ */
+public class NettyHttpTransport implements Closeable {
+
+  private static final int MAX_REDIRECTS = 5;
+
+  private final Bootstrap bootstrap;
+  private final AbstractChannelPoolMap<PoolKey, FixedChannelPool> pools;
+  private final int requestTimeout;
+  private final int retries;
+  private final int readTimeout;
+  private final boolean compressionEnforced;
+  private final boolean disableUrlEncoding;
+  private final boolean followRedirect;
+  private final SslContext sslContext;
+
+  /**
+   * @param eventLoopGroup          nio event loop group to run on, or null for the shared default one
+   * @param connectionTimeout       connection timeout in ms
+   * @param requestTimeout          default request timeout in ms
+   * @param readTimeout             max idle time in ms while waiting for a response, counted from the request being written
+   * @param retries                 max retries of a request that failed before getting any response
+   * @param maxConnectionsPerHost   max connections per host
+   * @param compressionEnforced     requests compressed responses
+   * @param disableUrlEncoding      disables encoding of query params
+   * @param followRedirect          follows redirect responses
+   * @param acceptAnySslCertificate accepts any ssl certificate (NOT recommended)
+   */
+  public NettyHttpTransport(final EventLoopGroup eventLoopGroup, final int connectionTimeout, final int requestTimeout,
+                            final int readTimeout, final int retries, final int maxConnectionsPerHost,
+                            final boolean compressionEnforced, final boolean disableUrlEncoding,
+                            final boolean followRedirect, final boolean acceptAnySslCertificate) {
+
+    this.requestTimeout = requestTimeout;
+    this.retries = retries;
+    this.readTimeout = readTimeout;
+    this.compressionEnforced = compressionEnforced;
+    this.disableUrlEncoding = disableUrlEncoding;
+    this.followRedirect = followRedirect;
+    this.sslContext = createSslContext(acceptAnySslCertificate);
+
+    this.bootstrap = new Bootstrap().
+      group(eventLoopGroup != null ? eventLoopGroup : EventLoopGroupHolder.INSTANCE).
+      channel(NioSocketChannel.class).
+      option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT).
+      option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectionTimeout).
+      option(ChannelOption.TCP_NODELAY, true).
+      option(ChannelOption.SO_KEEPALIVE, true);
+
+    this.pools = new AbstractChannelPoolMap<PoolKey, FixedChannelPool>() {
+      @Override
+      protected FixedChannelPool newPool(final PoolKey key) {
+        final Bootstrap hostBootstrap = bootstrap.clone().remoteAddress(new InetSocketAddress(key.host, key.port));
+        if (requestTimeout > 0) {
+          return new FixedChannelPool(hostBootstrap, new PoolHandler(key), ChannelHealthChecker.ACTIVE,
+            FixedChannelPool.AcquireTimeoutAction.FAIL, requestTimeout, maxConnectionsPerHost, Integer.MAX_VALUE);
+        }
+
+        return new FixedChannelPool(hostBootstrap, new PoolHandler(key), maxConnectionsPerHost);
+      }
+    };
+  }
+
+  /**
+   * Creates a new request builder for the given method and url
+   *
+   * @param method              http method
+   * @param url                 request url
+   * @param responseMaxSize     response max size, 0 for unlimited
+   * @param marshallingStrategy default marshalling strategy of the request
+   * @return request builder
+   */
+  public NettyRequestBuilder prepare(final HttpMethod method, final String url, final long responseMaxSize,
+                                     final MarshallingStrategy marshallingStrategy) {
+
+    return new NettyRequestBuilder(this, method, url, requestTimeout, responseMaxSize, marshallingStrategy);
+  }
+
+  /**
+   * Pre-warms the connection pool of the url's host, by acquiring the requested number of connections
+   * concurrently, and releasing them back to the pool as idle connections.
+   *
+   * @param url         url of the host to warm up
+   * @param connections number of connections to open
+   * @return future of the number of connections successfully opened, never fails
+   */
+  public ComposableFuture<Integer> warmUp(final String url, final int connections) {
+
+    final ChannelPool pool;
+    try {
+      pool = pools.get(PoolKey.of(URI.create(url)));
+    } catch (final RuntimeException e) {
+      return ComposableFutures.fromValue(0);
+    }
+
+    final List<ComposableFuture<Channel>> acquired = new ArrayList<>(connections);
+    for (int i = 0; i < connections; i++) {
+      final ComposablePromise<Channel> promise = ComposableFutures.newPromise(false);
+      pool.acquire().addListener((FutureListener<Channel>) future -> {
+        if (future.isSuccess()) {
+          promise.set(future.getNow());
+        } else {
+          promise.setException(future.cause());
+        }
+      });
+      acquired.add(promise.future());
+    }
+
+    return ComposableFutures.all(false, acquired.stream().
+      map(future -> future.always(result -> result.isSuccess() ? result.getValue() : null)).
+      collect(Collectors.toList())).map(channels -> {
+        int connected = 0;
+        for (final Channel channel : channels) {
+          if (channel != null) {
+            pool.release(channel);
+            connected++;
+          }
+        }
+        return connected;
+      });
+  }
+
+  /**
+   * Closes all the pooled connections. The event loop group isn't shut down, since it may be shared.
+   */
+  @Override
+  public void close() throws IOException {
+
+    pools.close();
+  }
+
+  boolean isCompressionEnforced() {
+
+    return compressionEnforced;
+  }
+
+  boolean isUrlEncodingDisabled() {
+
+    return disableUrlEncoding;
+  }
+
+  int maxRedirects() {
+
+    return followRedirect ? MAX_REDIRECTS : 0;
+  }
+
+  /**
+   * Executes a request over a pooled connection of the uri's host.
+   * Requests that failed before any response was received are retried on a new connection.
+   *
+   * @param uri            request uri
+   * @param requestFactory creates the request to write, once per attempt
+   * @param requestTimeout timeout of the whole request in ms, including connection acquiring; non positive for none
+   * @param consumer       consumer of the response, called on the connection's event loop
+   * @return token cancelling the request, which closes its connection and fails the consumer
+   */
+  CancellationToken execute(final URI uri, final Supplier<FullHttpRequest> requestFactory, final int requestTimeout,
+                            final NettyResponseConsumer consumer) {
+
+    final ChannelPool pool;
+    try {
+      pool = pools.get(PoolKey.of(uri));
+    } catch (final RuntimeException e) {
+      consumer.onError(e);
+      return mayInterrupt -> false;
+    }
+
+    final long deadline = requestTimeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(requestTimeout) : 0;
+    final RequestCancellation cancellation = new RequestCancellation();
+    execute(pool, uri, requestFactory, deadline, retries, consumer, cancellation);
+    return cancellation;
+  }
+
+  private void execute(final ChannelPool pool, final URI uri, final Supplier<FullHttpRequest> requestFactory,
+                       final long deadline, final int retriesLeft, final NettyResponseConsumer consumer,
+                       final RequestCancellation cancellation) {
+
+    pool.acquire().addListener((FutureListener<Channel>) future -> {
+      if (!future.isSuccess()) {
+        if (retriesLeft > 0 && !isExpired(deadline) && !cancellation.cancelled) {
+          execute(pool, uri, requestFactory, deadline, retriesLeft - 1, consumer, cancellation);
+        } else {
+          consumer.onError(future.cause());
+        }
+        return;
+      }
+
+      if (cancellation.cancelled) {
+        pool.release(future.getNow());
+        consumer.onError(new CancellationException("request to " + uri + " was cancelled"));
+        return;
+      }
+
+      final Runnable retry = retriesLeft > 0 ?
+        () -> execute(pool, uri, requestFactory, deadline, retriesLeft - 1, consumer, cancellation) :
+        null;
+
+      final NettyHttpExchange exchange = new NettyHttpExchange(pool, future.getNow(), uri, consumer, retry, readTimeout);
+      cancellation.exchange = exchange;
+      exchange.start(requestFactory.get(), deadline);
+      if (cancellation.cancelled) {
+        // cancelled while the exchange was attached, which may have been missed by the cancelling thread
+        exchange.cancel();
+      }
+    });
+  }
+
+  /**
+   * Cancels the current exchange of a request, or the next one if the request is still acquiring a connection.
+   */
+  private static final class RequestCancellation implements CancellationToken {
+
+    private volatile boolean cancelled;
+    private volatile NettyHttpExchange exchange;
+
+    @Override
+    public boolean cancel(final boolean mayInterrupt) {
+
+      if (cancelled) {
+        return false;
+      }
+
+      cancelled = true;
+      final NettyHttpExchange current = exchange;
+      if (current != null) {
+        current.cancel();
+      }
+      return true;
+    }
+  }
+
+  private static boolean isExpired(final long deadline) {
+
+    return deadline != 0 && deadline - System.nanoTime() <= 0;
+  }
+
+  private static SslContext createSslContext(final boolean acceptAnySslCertificate) {
+
+    try {
+      final SslContextBuilder builder = SslContextBuilder.forClient();
+      if (acceptAnySslCertificate) {
+        builder.trustManager(InsecureTrustManagerFactory.INSTANCE);
+      }
+      return builder.build();
+    } catch (final SSLException e) {
+      throw new IllegalStateException("failed creating ssl context", e);
+    }
+  }
+
+  private class PoolHandler extends AbstractChannelPoolHandler {
+
+    private final PoolKey key;
+
+    private PoolHandler(final PoolKey key) {
+
+      this.key = key;
+    }
+
+    @Override
+    public void channelCreated(final Channel channel) throws Exception {
+
+      final ChannelPipeline pipeline = channel.pipeline();
+      if (key.secure) {
+        pipeline.addLast("ssl", sslContext.newHandler(channel.alloc(), key.host, key.port));
+      }
+
+      pipeline.addLast("codec", new HttpClientCodec());
+      pipeline.addLast("decompressor", new HttpContentDecompressor());
+      pipeline.addLast("handler", NettyHttpClientHandler.INSTANCE);
+    }
+  }
+
+  private static class PoolKey {
+
+    private final String host;
+    private final int port;
+    private final boolean secure;
+
+    private PoolKey(final String host, final int port, final boolean secure) {
+
+      this.host = host;
+      this.port = port;
+      this.secure = secure;
+    }
+
+    private static PoolKey of(final URI uri) {
+
+      final String scheme = uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase();
+      final boolean secure = scheme.equals("https");
+      if (!secure && !scheme.equals("http")) {
+        throw new IllegalArgumentException("unsupported scheme: " + scheme);
+      }
+
+      final String host = checkNotNull(uri.getHost(), "missing host in url: %s", uri);
+      final int port = uri.getPort() > 0 ? uri.getPort() : secure ? 443 : 80;
+      return new PoolKey(host, port, secure);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      final PoolKey poolKey = (PoolKey) o;
+      return port == poolKey.port && secure == poolKey.secure && host.equals(poolKey.host);
+    }
+
+    @Override
+    public int hashCode() {
+
+      return Objects.hash(host, port, secure);
+    }
+  }
+
+  /**
+   * A singleton of the default event loop group, so all the transports created without
+   * an explicit event loop group will share the same io threads.
+   */
+  private static class EventLoopGroupHolder {
+
+    private static final EventLoopGroup INSTANCE = createEventLoopGroup();
+
+    private static EventLoopGroup createEventLoopGroup() {
+
+      final EventLoopGroup eventLoopGroup = new NioEventLoopGroup(0, new DefaultThreadFactory("ob1k-http-client", true));
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+        @Override
+        public void run() {
+          eventLoopGroup.shutdownGracefully();
+        }
+      });
+
+      return eventLoopGroup;
+    }
+  }
+}
@@ -0,0 +1,498 @@
+package com.outbrain.ob1k.http.netty;
+
+import com.outbrain.ob1k.concurrent.CancellationToken;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import com.outbrain.ob1k.http.RequestBuilder;
+import com.outbrain.ob1k.http.Response;
+import com.outbrain.ob1k.http.TypedResponse;
+import com.outbrain.ob1k.http.common.ContentType;
+import com.outbrain.ob1k.http.common.Cookie;
+import com.outbrain.ob1k.http.common.Header;
+import com.outbrain.ob1k.http.common.Param;
+import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
+import com.outbrain.ob1k.http.utils.UrlUtils;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.cookie.ClientCookieEncoder;
+import io.netty.handler.codec.http.cookie.DefaultCookie;
+import org.apache.commons.codec.EncoderException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
+import rx.Subscriber;
+import rx.subscriptions.Subscriptions;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.outbrain.ob1k.concurrent.ComposableFutures.fromError;
+import static com.outbrain.ob1k.concurrent.ComposableFutures.fromValue;
+
+/**
+ * A {@link RequestBuilder} executing over the {@link NettyHttpTransport}.
+ *
+ * Stream requests are sent once subscribed to (per subscription), so no element is missed.
+ */
+public class NettyRequestBuilder implements RequestBuilder {
+
+  private static final Logger log = LoggerFactory.getLogger(RequestBuilder.class);
+
+  private final NettyHttpTransport transport;
+  private final HttpMethod method;
+  private final HttpHeaders headers = new DefaultHttpHeaders();
+  private final List<Param> queryParams = new ArrayList<>();
+  private final List<io.netty.handler.codec.http.cookie.Cookie> cookies = new ArrayList<>();
+
+  private MarshallingStrategy marshallingStrategy;
+  private String requestUrl;
+  private int requestTimeout;
+  private long responseMaxSize;
+  private String charset = DEFAULT_CHARSET;
+  private String bodyString;
+  private byte[] bodyByteArray;
+  private Object bodyObject;
+
+  NettyRequestBuilder(final NettyHttpTransport transport, final HttpMethod method, final String requestUrl,
+                      final int requestTimeout, final long responseMaxSize, final MarshallingStrategy marshallingStrategy) {
+
+    this.transport = checkNotNull(transport, "transport may not be null");
+    this.method = checkNotNull(method, "method may not be null");
+    this.requestUrl = checkNotNull(requestUrl, "requestUrl may not be null");
+    this.requestTimeout = requestTimeout;
+    this.responseMaxSize = responseMaxSize;
+    this.marshallingStrategy = marshallingStrategy;
+  }
+
+  @Override
+  public RequestBuilder setContentType(final ContentType contentType) {
+
+    return setContentType(contentType.requestEncoding());
+  }
+
+  @Override
+  public RequestBuilder setContentType(final String contentType) {
+
+    headers.set(CONTENT_TYPE_HEADER, contentType);
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setPathParam(final String param, final String value) throws EncoderException {
+
+    requestUrl = UrlUtils.replacePathParam(requestUrl, param, value);
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setPathParam(final Param param) throws EncoderException {
+
+    return setPathParam(param.getName(), param.getValue());
+  }
+
+  @Override
+  public RequestBuilder setPathParams(final List<Param> params) throws EncoderException {
+
+    for (final Param param : params) {
+      setPathParam(param);
+    }
+
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setUserAgent(final String userAgent) {
+
+    return addHeader(USER_AGENT_HEADER, userAgent);
+  }
+
+  @Override
+  public RequestBuilder addHeader(final String name, final String value) {
+
+    headers.add(name, value);
+    return this;
+  }
+
+  @Override
+  public RequestBuilder addHeader(final Header header) {
+
+    return addHeader(header.getName(), header.getValue());
+  }
+
+  @Override
+  public RequestBuilder addHeaders(final List<Header> headers) {
+
+    headers.forEach(this::addHeader);
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setBody(final String body) {
+
+    this.bodyString = body;
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setBody(final byte[] body) {
+
+    this.bodyByteArray = body;
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setBody(final Object body) {
+
+    this.bodyObject = body;
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setBodyEncoding(final String charset) {
+
+    this.charset = charset;
+    return this;
+  }
+
+  @Override
+  public RequestBuilder withBasicAuth(final String username, final String password) {
+
+    final byte[] credentials = (username + ":" + password).getBytes(Charset.forName(charset));
+    headers.set(HttpHeaders.Names.AUTHORIZATION, "Basic " + Base64.getEncoder().encodeToString(credentials));
+    return this;
+  }
+
+  @Override
+  public RequestBuilder addQueryParam(final String name, final String value) {
+
+    queryParams.add(new Param(name, value));
+    return this;
+  }
+
+  @Override
+  public RequestBuilder addQueryParams(final Map<String, String> params) {
+
+    for (final Map.Entry<String, String> param : params.entrySet()) {
+      addQueryParam(param.getKey(), param.getValue());
+    }
+
+    return this;
+  }
+
+  @Override
+  public RequestBuilder addQueryParam(final Param param) {
+
+    return addQueryParam(param.getName(), param.getValue());
+  }
+
+  @Override
+  public RequestBuilder addQueryParams(final List<Param> params) {
+
+    params.forEach(this::addQueryParam);
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setResponseMaxSize(final long responseMaxSize) {
+
+    this.responseMaxSize = responseMaxSize;
+    return this;
+  }
+
+  @Override
+  public RequestBuilder addCookie(final Cookie cookie) {
+
+    final DefaultCookie nettyCookie = new DefaultCookie(cookie.getName(), cookie.getValue());
+    nettyCookie.setDomain(cookie.getDomain());
+    nettyCookie.setPath(cookie.getPath());
+    nettyCookie.setMaxAge(cookie.getMaxAge());
+    nettyCookie.setSecure(cookie.isSecure());
+    nettyCookie.setHttpOnly(cookie.isHttpOnly());
+    cookies.add(nettyCookie);
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setRequestTimeout(final int requestTimeout) {
+
+    this.requestTimeout = requestTimeout;
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setMarshallingStrategy(final MarshallingStrategy marshallingStrategy) {
+
+    this.marshallingStrategy = checkNotNull(marshallingStrategy, "unmarshallingStrategy may not be null");
+    return this;
+  }
+
+  @Override
+  public ComposableFuture<Response> asResponse() {
+
+    return this.<Object>executeRequest(null).map(response -> response);
+  }
+
+  @Override
+  public Observable<Response> asStream() {
+
+    return Observable.create(subscriber ->
+      executeStream(subscriber, new NettyStreamResponseConsumer<>(subscriber, responseMaxSize, null, null)));
+  }
+
+  @Override
+  public <T> ComposableFuture<TypedResponse<T>> asTypedResponse(final Class<T> type) {
+
+    return asTypedResponse((Type) type);
+  }
+
+  @Override
+  public <T> Observable<TypedResponse<T>> asTypedStream(final Class<T> type) {
+
+    return asTypedStream((Type) type);
+  }
+
+  @Override
+  public <T> ComposableFuture<TypedResponse<T>> asTypedResponse(final Type type) {
+
+    return this.<T>executeRequest(type).map(response -> response);
+  }
+
+  @Override
+  public <T> Observable<TypedResponse<T>> asTypedStream(final Type type) {
+
+    checkNotNull(marshallingStrategy, "unmarshallingStrategy may not be null");
+
+    return Observable.create(subscriber ->
+      executeStream(subscriber, new NettyStreamResponseConsumer<T>(subscriber, responseMaxSize, type, marshallingStrategy)));
+  }
+
+  @Override
+  public <T> ComposableFuture<T> asValue(final Class<T> type) {
+
+    return asValue((Type) type);
+  }
+
+  @Override
+  public <T> ComposableFuture<T> asValue(final Type type) {
+
+    final ComposableFuture<TypedResponse<T>> responseFuture = asTypedResponse(type);
+
+    return responseFuture.flatMap(typedResponse -> {
+      try {
+        return fromValue(typedResponse.getTypedBody());
+      } catch (final IOException e) {
+        return fromError(e);
+      }
+    });
+  }
+
+  @Override
+  public <T> Observable<T> asStreamValue(final Class<T> type) {
+
+    return asStreamValue((Type) type);
+  }
+
+  @Override
+  public <T> Observable<T> asStreamValue(final Type type) {
+
+    final Observable<TypedResponse<T>> responseObservable = asTypedStream(type);
+
+    return responseObservable.flatMap(typedResponse -> {
+      try {
+        return Observable.just(typedResponse.getTypedBody());
+      } catch (final IOException e) {
+        return Observable.error(e);
+      }
+    });
+  }
+
+  static boolean isRedirect(final int statusCode) {
+
+    return statusCode == 301 || statusCode == 302 || statusCode == 303 || statusCode == 307 || statusCode == 308;
+  }
+
+  private <T> ComposableFuture<NettyResponse<T>> executeRequest(final Type type) {
+
+    final byte[] body;
+    final URI uri;
+    try {
+      body = prepareRequestBody();
+      uri = buildUri();
+    } catch (final IOException | URISyntaxException e) {
+      return fromError(e);
+    }
+
+    return execute(method, uri, body, type, transport.maxRedirects(), true);
+  }
+
+  /**
+   * @param withCredentials whether to send the authorization and cookies, which aren't sent along redirects to other origins
+   */
+  private <T> ComposableFuture<NettyResponse<T>> execute(final HttpMethod method, final URI uri, final byte[] body,
+                                                         final Type type, final int redirectsLeft,
+                                                         final boolean withCredentials) {
+
+    if (log.isTraceEnabled()) {
+      log.trace("Sending HTTP call to {}: headers=[{}], body=[{}]", uri, headers.entries(),
+        body == null ? null : new String(body, Charset.forName(charset)));
+    }
+
+    final ComposablePromise<NettyResponse<T>> promise = ComposableFutures.newPromise(false);
+    final NettyFullResponseConsumer<T> consumer = new NettyFullResponseConsumer<>(promise, responseMaxSize, type, marshallingStrategy);
+    promise.onCancel(transport.execute(uri, () -> createRequest(method, uri, body, withCredentials), requestTimeout, consumer));
+
+    return promise.future().flatMap(response -> {
+      final String location = response.getHeader(HttpHeaders.Names.LOCATION);
+      if (redirectsLeft <= 0 || !response.isRedirected() || location == null) {
+        return fromValue(response);
+      }
+
+      final int statusCode = response.getStatusCode();
+      final boolean switchToGet = statusCode == 303 ||
+        ((statusCode == 301 || statusCode == 302) && method.equals(HttpMethod.POST));
+
+      try {
+        final URI target = uri.resolve(location);
+        return execute(switchToGet ? HttpMethod.GET : method, target, switchToGet ? null : body, type,
+          redirectsLeft - 1, withCredentials && isSameOrigin(uri, target));
+      } catch (final IllegalArgumentException e) {
+        return fromError(e);
+      }
+    });
+  }
+
+  private void executeStream(final Subscriber<?> subscriber, final NettyStreamResponseConsumer<?> consumer) {
+
+    final byte[] body;
+    final URI uri;
+    try {
+      body = prepareRequestBody();
+      uri = buildUri();
+    } catch (final IOException | URISyntaxException e) {
+      consumer.onError(e);
+      return;
+    }
+
+    // streams may be open for a long time, so they have no request timeout
+    final CancellationToken request = transport.execute(uri, () -> createRequest(method, uri, body, true), -1, consumer);
+    // unsubscribing closes the connection, as the rest of the response can't be skipped
+    subscriber.add(Subscriptions.create(() -> request.cancel(true)));
+  }
+
+  private FullHttpRequest createRequest(final HttpMethod method, final URI uri, final byte[] body,
+                                        final boolean withCredentials) {
+
+    final String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+    final String pathAndQuery = uri.getRawQuery() == null ? path : path + "?" + uri.getRawQuery();
+    final FullHttpRequest request = body == null ?
+      new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, pathAndQuery) :
+      new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, pathAndQuery, Unpooled.wrappedBuffer(body));
+
+    final HttpHeaders requestHeaders = request.headers();
+    requestHeaders.set(headers);
+    HttpHeaders.setHost(request, uri.getPort() > 0 ? uri.getHost() + ":" + uri.getPort() : uri.getHost());
+
+    if (!requestHeaders.contains(HttpHeaders.Names.ACCEPT)) {
+      requestHeaders.set(HttpHeaders.Names.ACCEPT, "*/*");
+    }
+
+    if (transport.isCompressionEnforced() && !requestHeaders.contains(HttpHeaders.Names.ACCEPT_ENCODING)) {
+      requestHeaders.set(HttpHeaders.Names.ACCEPT_ENCODING, HttpHeaders.Values.GZIP + "," + HttpHeaders.Values.DEFLATE);
+    }
+
+    if (body != null) {
+      HttpHeaders.setContentLength(request, body.length);
+    } else if (method.equals(HttpMethod.POST) || method.equals(HttpMethod.PUT)) {
+      HttpHeaders.setContentLength(request, 0);
+    }
+
+    if (!withCredentials) {
+      requestHeaders.remove(HttpHeaders.Names.AUTHORIZATION);
+      requestHeaders.remove(HttpHeaders.Names.PROXY_AUTHORIZATION);
+      requestHeaders.remove(HttpHeaders.Names.COOKIE);
+    } else if (!cookies.isEmpty()) {
+      requestHeaders.set(HttpHeaders.Names.COOKIE, ClientCookieEncoder.LAX.encode(cookies));
+    }
+
+    return request;
+  }
+
+  static boolean isSameOrigin(final URI first, final URI second) {
+
+    return first.getScheme() != null && first.getScheme().equalsIgnoreCase(second.getScheme()) &&
+      first.getHost() != null && first.getHost().equalsIgnoreCase(second.getHost()) &&
+      portOf(first) == portOf(second);
+  }
+
+  private static int portOf(final URI uri) {
+
+    if (uri.getPort() > 0) {
+      return uri.getPort();
+    }
+
+    return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+  }
+
+  private URI buildUri() throws URISyntaxException, UnsupportedEncodingException {
+
+    if (queryParams.isEmpty()) {
+      return new URI(requestUrl);
+    }
+
+    final StringBuilder url = new StringBuilder(requestUrl);
+    char separator = requestUrl.indexOf('?') < 0 ? '?' : '&';
+    for (final Param param : queryParams) {
+      url.append(separator).append(encodeQueryComponent(param.getName()));
+      if (param.getValue() != null) {
+        url.append('=').append(encodeQueryComponent(param.getValue()));
+      }
+      separator = '&';
+    }
+
+    return new URI(url.toString());
+  }
+
+  private String encodeQueryComponent(final String value) throws UnsupportedEncodingException {
+
+    if (transport.isUrlEncodingDisabled()) {
+      return value;
+    }
+
+    return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+  }
+
+  /**
+   * Prepares the request body by its type
+   *
+   * @return the request body, or null if there's none
+   * @throws IOException
+   */
+  private byte[] prepareRequestBody() throws IOException {
+
+    if (bodyByteArray != null) {
+      return bodyByteArray;
+    } else if (bodyString != null) {
+      return bodyString.getBytes(charset);
+    } else if (bodyObject != null) {
+      return marshallingStrategy.marshall(bodyObject);
+    }
+
+    return null;
+  }
+}
@@ -0,0 +1,231 @@
+package com.outbrain.ob1k.http.netty;
+
+import com.outbrain.ob1k.concurrent.Try;
+import com.outbrain.ob1k.http.TypedResponse;
+import com.outbrain.ob1k.http.common.Cookie;
+import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.cookie.ClientCookieDecoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A response received by the {@link NettyHttpTransport}, holding the body as a byte array.
+ */
+public class NettyResponse<T> implements TypedResponse<T> {
+
+  private static final byte[] EMPTY_BODY = new byte[0];
+
+  private final String url;
+  private final HttpResponse response;
+  private final byte[] body;
+  private final MarshallingStrategy marshallingStrategy;
+  private final Type type;
+  private volatile T typedBody;
+  private volatile boolean unmarshalled;
+
+  public NettyResponse(final String url, final HttpResponse response, final byte[] body, final Type type,
+                       final MarshallingStrategy marshallingStrategy) {
+
+    this.url = checkNotNull(url, "url may not be null");
+    this.response = checkNotNull(response, "response may not be null");
+    this.body = body == null ? EMPTY_BODY : body;
+    this.type = type;
+    this.marshallingStrategy = marshallingStrategy;
+  }
+
+  /**
+   * Creates a response of an already unmarshalled body (e.g. a decoded stream element)
+   *
+   * @param url       the request url
+   * @param response  the response status and headers
+   * @param typedBody the unmarshalled body, may be null
+   */
+  public NettyResponse(final String url, final HttpResponse response, final T typedBody) {
+
+    this(url, response, null, null, null);
+    this.typedBody = typedBody;
+    this.unmarshalled = true;
+  }
+
+  @Override
+  public int getStatusCode() {
+
+    return response.getStatus().code();
+  }
+
+  @Override
+  public String getStatusText() {
+
+    return response.getStatus().reasonPhrase();
+  }
+
+  @Override
+  public URI getUri() throws URISyntaxException {
+
+    return new URI(url);
+  }
+
+  @Override
+  public String getUrl() {
+
+    return url;
+  }
+
+  @Override
+  public String getContentType() {
+
+    return response.headers().get(HttpHeaders.Names.CONTENT_TYPE);
+  }
+
+  @Override
+  public T getTypedBody() throws IOException {
+
+    if (typedBody == null && !unmarshalled) {
+
+      checkNotNull(marshallingStrategy, "unmarshallingStrategy may not be null");
+      checkNotNull(type, "class type may not be null");
+
+      typedBody = marshallingStrategy.unmarshall(type, this);
+    }
+
+    return typedBody;
+  }
+
+  @Override
+  public byte[] getResponseBodyAsBytes() throws IOException {
+
+    return body;
+  }
+
+  @Override
+  public InputStream getResponseBodyAsStream() throws IOException {
+
+    return new ByteArrayInputStream(body);
+  }
+
+  @Override
+  public ByteBuffer getResponseBodyAsByteBuffer() throws IOException {
+
+    return ByteBuffer.wrap(body);
+  }
+
+  @Override
+  public String getResponseBody() throws IOException {
+
+    return new String(body, charset());
+  }
+
+  @Override
+  public List<Cookie> getCookies() {
+
+    final List<Cookie> cookies = new ArrayList<>();
+    for (final String header : response.headers().getAll(HttpHeaders.Names.SET_COOKIE)) {
+      final io.netty.handler.codec.http.cookie.Cookie cookie = ClientCookieDecoder.LAX.decode(header);
+      if (cookie != null) {
+        final long maxAge = cookie.maxAge() == Long.MIN_VALUE ? -1 : cookie.maxAge();
+        cookies.add(new Cookie(cookie.name(), cookie.value(), cookie.domain(), cookie.path(), maxAge,
+          cookie.isSecure(), cookie.isHttpOnly()));
+      }
+    }
+
+    return cookies;
+  }
+
+  @Override
+  public String getHeader(final String name) {
+
+    return response.headers().get(name);
+  }
+
+  @Override
+  public List<String> getHeaders(final String name) {
+
+    return response.headers().getAll(name);
+  }
+
+  @Override
+  public Map<String, List<String>> getHeaders() {
+
+    final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    for (final Map.Entry<String, String> header : response.headers()) {
+      headers.computeIfAbsent(header.getKey(), name -> new ArrayList<>()).add(header.getValue());
+    }
+
+    return headers;
+  }
+
+  @Override
+  public boolean isRedirected() {
+
+    return NettyRequestBuilder.isRedirect(getStatusCode());
+  }
+
+  @Override
+  public boolean hasResponseBody() {
+
+    return body.length > 0;
+  }
+
+  @Override
+  public boolean hasResponseStatus() {
+
+    return true;
+  }
+
+  @Override
+  public boolean hasResponseHeaders() {
+
+    return !response.headers().isEmpty();
+  }
+
+  private Charset charset() {
+
+    final String contentType = getContentType();
+    if (contentType != null) {
+      for (final String part : contentType.split(";")) {
+        final String param = part.trim();
+        if (param.regionMatches(true, 0, "charset=", 0, "charset=".length())) {
+          try {
+            return Charset.forName(param.substring("charset=".length()).replace("\"", "").trim());
+          } catch (final IllegalArgumentException e) {
+            break;
+          }
+        }
+      }
+    }
+
+    // same default as AsyncHttpClient
+    return StandardCharsets.ISO_8859_1;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder response = new StringBuilder("Response(statusCode=[");
+
+    response.append(getStatusCode());
+    response.append("],");
+    response.append("headers=[");
+    response.append(getHeaders());
+    response.append("],responseBody=[");
+    response.append(Try.apply(this::getResponseBody));
+    response.append("]");
+
+    return response.toString();
+  }
+}
@@ -0,0 +1,31 @@
+package com.outbrain.ob1k.http.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpResponse;
+
+import java.net.URI;
+
+/**
+ * Consumes a response received by the {@link NettyHttpTransport}.
+ * All the methods are called on the connection's event loop, and exactly one of
+ * {@link #onCompleted()} and {@link #onError(Throwable)} is called per request.
+ *
+ * Throwing from any of the callbacks aborts the request, and fails it with the thrown exception.
+ */
+interface NettyResponseConsumer {
+
+  /**
+   * @param uri      the request uri
+   * @param response response status and headers
+   */
+  void onHeaders(URI uri, HttpResponse response) throws Exception;
+
+  /**
+   * @param content next part of the response body, released once the method returns
+   */
+  void onContent(ByteBuf content) throws Exception;
+
+  void onCompleted() throws Exception;
+
+  void onError(Throwable error);
+}
@@ -0,0 +1,99 @@
+package com.outbrain.ob1k.http.netty;
+
+import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
+import com.outbrain.ob1k.http.marshalling.StreamDecoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpResponse;
+import rx.Subscriber;
+
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+/**
+ * Emits the elements of a stream response.
+ *
+ * Without a type, each body part is emitted as a raw response.
+ * Otherwise, if the marshalling strategy provides a {@link StreamDecoder}, the body parts are decoded incrementally,
+ * and if not, each body part is unmarshalled as a single element.
+ * The stream ends silently once the subscriber unsubscribes.
+ */
+class NettyStreamResponseConsumer<T> implements NettyResponseConsumer {
+
+  private final Subscriber<? super NettyResponse<T>> target;
+  private final long responseMaxSize;
+  private final Type type;
+  private final MarshallingStrategy marshallingStrategy;
+  private String url;
+  private HttpResponse response;
+  private long responseSizesAggregated;
+  private StreamDecoder<T> decoder;
+
+  NettyStreamResponseConsumer(final Subscriber<? super NettyResponse<T>> target, final long responseMaxSize,
+                              final Type type, final MarshallingStrategy marshallingStrategy) {
+
+    this.target = target;
+    this.responseMaxSize = responseMaxSize;
+    this.type = type;
+    this.marshallingStrategy = marshallingStrategy;
+  }
+
+  @Override
+  public void onHeaders(final URI uri, final HttpResponse response) throws Exception {
+
+    this.url = uri.toString();
+    this.response = response;
+
+    if (type != null) {
+      decoder = marshallingStrategy.createStreamDecoder(type, new NettyResponse<>(url, response, null, type, marshallingStrategy));
+    }
+  }
+
+  @Override
+  public void onContent(final ByteBuf content) throws Exception {
+
+    if (responseMaxSize > 0) {
+      responseSizesAggregated += content.readableBytes();
+      if (responseSizesAggregated > responseMaxSize) {
+        throw new RuntimeException("Response size is bigger than the limit: " + responseMaxSize);
+      }
+    }
+
+    // the pooled content is released once consumed, while the elements (and the decoder) may keep the bytes
+    final byte[] bodyPart = new byte[content.readableBytes()];
+    content.readBytes(bodyPart);
+
+    if (decoder != null) {
+      for (final T element : decoder.decode(ByteBuffer.wrap(bodyPart))) {
+        target.onNext(new NettyResponse<>(url, response, element));
+      }
+      return;
+    }
+
+    final NettyResponse<T> element = new NettyResponse<>(url, response, bodyPart, type, marshallingStrategy);
+    if (type != null) {
+      // making sure that we can unmarshall the response, if not there is no reason to continue the stream
+      element.getTypedBody();
+    }
+
+    target.onNext(element);
+  }
+
+  @Override
+  public void onCompleted() throws Exception {
+
+    if (decoder != null) {
+      decoder.end();
+    }
+
+    target.onCompleted();
+  }
+
+  @Override
+  public void onError(final Throwable error) {
+
+    if (!target.isUnsubscribed()) {
+      target.onError(error);
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package com.outbrain.ob1k.http.ning;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 
 import com.ning.http.client.AsyncHandler;
@@ -10,11 +11,19 @@ import com.ning.http.client.HttpResponseStatus;
 import com.ning.http.client.providers.netty.response.NettyResponse;
 import com.outbrain.ob1k.http.TypedResponse;
 import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
+import com.outbrain.ob1k.http.marshalling.StreamDecoder;
 import rx.Observer;
 
 import java.lang.reflect.Type;
+import java.util.List;
 
 /**
+ * Emits the elements of a stream response.
+ *
+ * If the marshalling strategy provides a {@link StreamDecoder}, the body parts are decoded incrementally,
+ * so elements split across parts, or multiple elements in a single part are handled.
+ * Otherwise, each body part is unmarshalled as a single element.
+ *
  * @author aronen, marenzon
  * @param <T>
  */
@@ -27,6 +36,8 @@ public class NingHttpTypedStreamHandler<T> implements AsyncHandler<T> {
   private volatile HttpResponseHeaders headers;
   private volatile HttpResponseStatus status;
   private volatile long responseSizesAggregated;
+  private volatile StreamDecoder<T> decoder;
+  private volatile boolean decoderCreated;
 
   public NingHttpTypedStreamHandler(final long responseMaxSize, final Observer<TypedResponse<T>> target,
                                     final MarshallingStrategy marshallingStrategy, final Type type) {
@@ -48,6 +59,21 @@ public class NingHttpTypedStreamHandler<T> implements AsyncHandler<T> {
       }
     }
 
+    if (!decoderCreated) {
+      try {
+        decoder = marshallingStrategy.createStreamDecoder(type, new NingResponse<>(new NettyResponse(status, headers, emptyList()), null));
+      } catch (final Exception e) {
+        onThrowable(e);
+        return STATE.ABORT;
+      } finally {
+        decoderCreated = true;
+      }
+    }
+
+    if (decoder != null) {
+      return decodeBodyPart(bodyPart);
+    }
+
     final com.ning.http.client.Response ningResponse = new NettyResponse(status, headers, singletonList(bodyPart));
     final TypedResponse<T> response = new NingResponse<>(ningResponse, type, marshallingStrategy);
 
@@ -64,6 +90,24 @@ public class NingHttpTypedStreamHandler<T> implements AsyncHandler<T> {
     return STATE.CONTINUE;
   }
 
+  private STATE decodeBodyPart(final HttpResponseBodyPart bodyPart) {
+
+    final List<T> elements;
+    try {
+      elements = decoder.decode(bodyPart.getBodyByteBuffer());
+    } catch (final Exception e) {
+      onThrowable(e);
+      return STATE.ABORT;
+    }
+
+    final com.ning.http.client.Response ningResponse = new NettyResponse(status, headers, emptyList());
+    for (final T element : elements) {
+      target.onNext(new NingResponse<>(ningResponse, element));
+    }
+
+    return STATE.CONTINUE;
+  }
+
   @Override
   public STATE onStatusReceived(final HttpResponseStatus responseStatus) throws Exception {
 
@@ -87,6 +131,15 @@ public class NingHttpTypedStreamHandler<T> implements AsyncHandler<T> {
   @Override
   public T onCompleted() throws Exception {
 
+    if (decoder != null) {
+      try {
+        decoder.end();
+      } catch (final Exception e) {
+        target.onError(e);
+        return null;
+      }
+    }
+
     target.onCompleted();
     return null;
   }
@@ -29,6 +29,7 @@ public class NingResponse<T> implements TypedResponse<T> {
   private final Type type;
   private final Response ningResponse;
   private volatile T typedBody;
+  private volatile boolean unmarshalled;
 
   public NingResponse(final Response ningResponse, final Type type, final MarshallingStrategy marshallingStrategy) throws IOException {
 
@@ -37,6 +38,21 @@ public class NingResponse<T> implements TypedResponse<T> {
     this.type = type;
   }
 
+  /**
+   * Creates a response of an already unmarshalled body (e.g. a decoded stream element)
+   *
+   * @param ningResponse the response status and headers
+   * @param typedBody the unmarshalled body, may be null
+   */
+  public NingResponse(final Response ningResponse, final T typedBody) {
+
+    this.ningResponse = checkNotNull(ningResponse, "ningResponse may not be null");
+    this.marshallingStrategy = null;
+    this.type = null;
+    this.typedBody = typedBody;
+    this.unmarshalled = true;
+  }
+
   @Override
   public int getStatusCode() {
 
@@ -70,7 +86,7 @@ public class NingResponse<T> implements TypedResponse<T> {
   @Override
   public T getTypedBody() throws IOException {
 
-    if (typedBody == null) {
+    if (typedBody == null && !unmarshalled) {
 
       checkNotNull(marshallingStrategy, "unmarshallingStrategy may not be null");
       checkNotNull(type, "class type may not be null");
@@ -3,8 +3,11 @@ package com.outbrain.ob1k.http.utils;
 import com.ning.http.client.ListenableFuture;
 import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.outbrain.ob1k.concurrent.ComposableFutures;
-import com.outbrain.ob1k.concurrent.Try;
+import com.outbrain.ob1k.concurrent.ExecutionAffinity;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 public class ComposableFutureAdapter {
 
@@ -15,20 +18,27 @@ public class ComposableFutureAdapter {
 
   public static <T> ComposableFuture<T> fromListenableFuture(final Provider<T> provider) {
 
-    return ComposableFutures.build(consumer -> {
-
-      final ListenableFuture<T> source = provider.provide();
-      source.addListener(() -> {
-        try {
-          final T result = source.get();
-          consumer.consume(Try.fromValue(result));
-        } catch (final InterruptedException e) {
-          consumer.consume(Try.fromError(e));
-        } catch (final ExecutionException e) {
-          final Throwable error = e.getCause() != null ? e.getCause() : e;
-          consumer.consume(Try.fromError(error));
-        }
-      }, ComposableFutures.getExecutor());
+    final ComposablePromise<T> promise = ComposableFutures.newPromise();
+    final Executor resumeOn = ExecutionAffinity.currentOr(ComposableFutures.getExecutor());
+    final ListenableFuture<T> source = provider.provide();
+    // aborting closes the connection of the in-flight request, and fails the source with the cancellation
+    promise.onCancel(mayInterrupt -> {
+      source.abort(new CancellationException("http request was cancelled"));
+      return true;
     });
+
+    source.addListener(() -> {
+      try {
+        final T result = source.get();
+        promise.set(result);
+      } catch (final InterruptedException | CancellationException e) {
+        promise.setException(e);
+      } catch (final ExecutionException e) {
+        final Throwable error = e.getCause() != null ? e.getCause() : e;
+        promise.setException(error);
+      }
+    }, resumeOn);
+
+    return promise.future();
   }
-}
\ No newline at end of file
+}
@@ -23,6 +23,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static com.outbrain.ob1k.concurrent.BoundExecutorAssertions.assertResumesOnTheBoundExecutor;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -90,6 +91,31 @@ public class ClientBasicFlowsTest {
     assertEquals("response body should be " + expected, expected, response.getResponseBody());
   }
 
+  @Test
+  public void testWarmUp() throws Exception {
+
+    final HttpClient httpClient = HttpClient.createDefault();
+    final String url = server.url("/warmUp").toString();
+    final int connected = httpClient.warmUp(url, 3).get();
+
+    assertEquals("all connections should be warmed up", 3, connected);
+    assertEquals("warm up requests should be OPTIONS requests", "OPTIONS", dispatcher.getRequest().getMethod());
+
+    // the pooled connections are reused, so the bodies of the warm up responses must have been read in full
+    dispatcher.enqueue(new MockResponse().setBody("warm"));
+    assertEquals("warm", httpClient.get(url).asResponse().get().getResponseBody());
+  }
+
+  @Test
+  public void testResponsesResumeOnTheBoundExecutor() throws Exception {
+
+    dispatcher.enqueue(new MockResponse().setBody("resumed"));
+
+    final HttpClient httpClient = HttpClient.createDefault();
+    final String url = server.url("/resume").toString();
+    assertResumesOnTheBoundExecutor(() -> httpClient.get(url).asResponse());
+  }
+
   @Test
   @Ignore
   public void testStream() throws Exception {
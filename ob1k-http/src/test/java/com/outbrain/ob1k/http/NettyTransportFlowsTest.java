@@ -0,0 +1,260 @@
+package com.outbrain.ob1k.http;
+
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.http.common.Cookie;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NettyTransportFlowsTest {
+
+  private MockWebServer server;
+  private HttpClient httpClient;
+
+  @Before
+  public void setup() throws IOException {
+    server = new MockWebServer();
+    server.start();
+    httpClient = HttpClient.newBuilder().useNettyTransport().build();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    httpClient.close();
+    server.shutdown();
+  }
+
+  @Test
+  public void testSimpleRequestResponse() throws Exception {
+
+    server.enqueue(new MockResponse().setBody("hello world").addHeader("X-Test", "value"));
+
+    final Response response = httpClient.get(server.url("/helloWorld").toString()).asResponse().get();
+
+    assertEquals("hello world", response.getResponseBody());
+    assertEquals(200, response.getStatusCode());
+    assertEquals("value", response.getHeader("X-Test"));
+    assertEquals("GET", server.takeRequest().getMethod());
+  }
+
+  @Test
+  public void testConnectionsAreReused() throws Exception {
+
+    final String url = server.url("/reuse").toString();
+    for (int i = 0; i < 3; i++) {
+      server.enqueue(new MockResponse().setBody("response" + i));
+      assertEquals("response" + i, httpClient.get(url).asResponse().get().getResponseBody());
+    }
+
+    assertEquals(0, server.takeRequest().getSequenceNumber());
+    assertEquals(1, server.takeRequest().getSequenceNumber());
+    assertEquals("same connection should serve all requests", 2, server.takeRequest().getSequenceNumber());
+  }
+
+  @Test
+  public void testRequestWithBodyAndQueryParams() throws Exception {
+
+    server.enqueue(new MockResponse().setBody("[\"julia\",\"moshe\"]"));
+
+    final List<String> names = httpClient.post(server.url("/names").toString()).
+      addQueryParam("prefix", "a b").
+      addHeader("X-Test", "value").
+      setBody("julia").
+      <List<String>>asValue(List.class).get();
+
+    final RecordedRequest request = server.takeRequest();
+    assertEquals(2, names.size());
+    assertEquals("POST", request.getMethod());
+    assertEquals("/names?prefix=a%20b", request.getPath());
+    assertEquals("value", request.getHeader("X-Test"));
+    assertEquals("julia", request.getBody().readUtf8());
+  }
+
+  @Test
+  public void testStream() throws Exception {
+
+    server.enqueue(new MockResponse().setChunkedBody("Hello World", 5));
+
+    final StringBuilder body = new StringBuilder();
+    httpClient.get(server.url("/stream").toString()).asStream().toBlocking().forEach(part -> {
+      try {
+        body.append(part.getResponseBody());
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    assertEquals("Hello World", body.toString());
+  }
+
+  @Test
+  public void testUnsubscribingFromAStreamReleasesItsConnection() throws Exception {
+
+    server.enqueue(new MockResponse().setChunkedBody("Hello World", 5).throttleBody(10, 1, TimeUnit.SECONDS));
+    server.enqueue(new MockResponse().setBody("hello world"));
+
+    try (HttpClient singleConnectionClient = HttpClient.newBuilder().useNettyTransport().setMaxConnectionsPerHost(1).build()) {
+      final Response first = singleConnectionClient.get(server.url("/stream").toString()).asStream().
+        take(1).toBlocking().single();
+      assertEquals(200, first.getStatusCode());
+
+      // the rest of the stream would have held the only connection for seconds
+      final Response response = singleConnectionClient.get(server.url("/next").toString()).asResponse().
+        get(500, TimeUnit.MILLISECONDS);
+      assertEquals("hello world", response.getResponseBody());
+    }
+  }
+
+  @Test
+  public void testReadTimeout() throws Exception {
+
+    server.enqueue(new MockResponse().setBody("hello world").throttleBody(1, 1, TimeUnit.SECONDS));
+
+    try (HttpClient readTimeoutClient = HttpClient.newBuilder().useNettyTransport().setReadTimeout(100).build()) {
+      readTimeoutClient.get(server.url("/slow").toString()).asResponse().get();
+      fail("should have timed out reading the response");
+    } catch (final ExecutionException e) {
+      assertTrue(e.getCause() instanceof TimeoutException);
+    }
+  }
+
+  @Test
+  public void testConnectionsIdleLongerThanTheReadTimeoutAreReused() throws Exception {
+
+    final NioEventLoopGroup eventLoopGroup = new NioEventLoopGroup(1);
+    try (HttpClient readTimeoutClient = HttpClient.newBuilder().setEventLoopGroup(eventLoopGroup).setReadTimeout(100).build()) {
+      final String url = server.url("/idle").toString();
+      for (int i = 0; i < 2; i++) {
+        server.enqueue(new MockResponse().setBody("response" + i));
+        assertEquals("response" + i, readTimeoutClient.get(url).asResponse().get().getResponseBody());
+        // the read timeout of the idle connection would have fired on the same event loop before this task runs
+        eventLoopGroup.schedule(() -> {}, 300, TimeUnit.MILLISECONDS).sync();
+      }
+    } finally {
+      eventLoopGroup.shutdownGracefully();
+    }
+
+    assertEquals(0, server.takeRequest().getSequenceNumber());
+    assertEquals("the idle connection should serve the second request", 1, server.takeRequest().getSequenceNumber());
+  }
+
+  @Test(expected = ExecutionException.class)
+  public void testRequestTimeout() throws Exception {
+
+    server.enqueue(new MockResponse().setBody("hello world").throttleBody(1, 100, TimeUnit.MILLISECONDS));
+
+    final String url = server.url("/sleep").toString();
+    httpClient.get(url).setRequestTimeout(50).asResponse().get();
+
+    fail("should have throw ExecutionException - timeout exception");
+  }
+
+  @Test
+  public void testCancelledRequest() throws Exception {
+
+    server.enqueue(new MockResponse().setBody("hello world").throttleBody(1, 1, TimeUnit.SECONDS));
+
+    final ComposableFuture<Response> response = httpClient.get(server.url("/slow").toString()).asResponse();
+    assertTrue(response.cancel(false));
+
+    try {
+      response.get(500, TimeUnit.MILLISECONDS);
+      fail("should have been cancelled");
+    } catch (final ExecutionException e) {
+      assertTrue(e.getCause() instanceof CancellationException);
+    }
+  }
+
+  @Test(expected = ExecutionException.class)
+  public void testResponseMaxSize() throws Exception {
+
+    server.enqueue(new MockResponse().setBody("Hello World"));
+
+    httpClient.get(server.url("/helloWorld").toString()).setResponseMaxSize(1).asResponse().get();
+
+    fail("should have throw ExecutionException - response too big exception");
+  }
+
+  @Test
+  public void testFollowRedirect() throws Exception {
+
+    server.enqueue(new MockResponse().setResponseCode(302).addHeader("Location", "/target"));
+    server.enqueue(new MockResponse().setBody("redirected"));
+
+    try (HttpClient redirectingClient = HttpClient.newBuilder().useNettyTransport().setFollowRedirect(true).build()) {
+      final Response response = redirectingClient.get(server.url("/source").toString()).
+        withBasicAuth("user", "password").
+        addCookie(new Cookie("session", "secret", null, null, -1, false, false)).
+        asResponse().get();
+
+      assertEquals("redirected", response.getResponseBody());
+      assertTrue(response.getUrl().endsWith("/target"));
+    }
+
+    server.takeRequest();
+    final RecordedRequest redirected = server.takeRequest();
+    assertNotNull("credentials are kept on the same origin", redirected.getHeader("Authorization"));
+    assertEquals("session=secret", redirected.getHeader("Cookie"));
+  }
+
+  @Test
+  public void testRedirectToOtherOriginDropsTheCredentials() throws Exception {
+
+    final MockWebServer otherServer = new MockWebServer();
+    otherServer.start();
+    try (HttpClient redirectingClient = HttpClient.newBuilder().useNettyTransport().setFollowRedirect(true).build()) {
+      server.enqueue(new MockResponse().setResponseCode(302).addHeader("Location", otherServer.url("/target").toString()));
+      otherServer.enqueue(new MockResponse().setBody("redirected"));
+
+      final Response response = redirectingClient.get(server.url("/source").toString()).
+        withBasicAuth("user", "password").
+        addHeader("X-Test", "value").
+        addCookie(new Cookie("session", "secret", null, null, -1, false, false)).
+        asResponse().get();
+      assertEquals("redirected", response.getResponseBody());
+
+      final RecordedRequest source = server.takeRequest();
+      assertNotNull(source.getHeader("Authorization"));
+      assertEquals("session=secret", source.getHeader("Cookie"));
+
+      final RecordedRequest redirected = otherServer.takeRequest();
+      assertNull(redirected.getHeader("Authorization"));
+      assertNull(redirected.getHeader("Cookie"));
+      assertEquals("other headers are kept", "value", redirected.getHeader("X-Test"));
+    } finally {
+      otherServer.shutdown();
+    }
+  }
+
+  @Test
+  public void testWarmUpOnSharedEventLoopGroup() throws Exception {
+
+    final NioEventLoopGroup eventLoopGroup = new NioEventLoopGroup(1);
+    try (HttpClient sharedClient = HttpClient.newBuilder().setEventLoopGroup(eventLoopGroup).build()) {
+      assertEquals("all connections should be warmed up", 3, sharedClient.warmUp(server.url("/").toString(), 3).get().intValue());
+      assertEquals("warm up should not send requests", 0, server.getRequestCount());
+
+      server.enqueue(new MockResponse().setBody("hello world"));
+      assertEquals("hello world", sharedClient.get(server.url("/").toString()).asResponse().get().getResponseBody());
+    } finally {
+      eventLoopGroup.shutdownGracefully();
+    }
+  }
+}